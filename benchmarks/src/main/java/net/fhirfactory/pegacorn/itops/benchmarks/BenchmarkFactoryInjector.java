@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.benchmarks;
+
+import net.fhirfactory.pegacorn.communicate.matrix.credentials.MatrixAccessToken;
+import net.fhirfactory.pegacorn.communicate.matrixbridge.workshops.matrixbridge.common.RoomServerTransactionIDProvider;
+import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.symbols.ITOpsSymbolTable;
+
+import java.lang.reflect.Field;
+
+/**
+ * Wires the factories under measurement by hand. The factories are CDI beans with private @Inject fields, and the
+ * benchmarks run outside of a container, so the collaborators are created here and set reflectively.
+ */
+public class BenchmarkFactoryInjector {
+    public static final String BENCHMARK_USER_ID = "@itops-benchmark:localhost";
+
+    private final RoomServerTransactionIDProvider transactionIdProvider;
+    private final MatrixAccessToken matrixAccessToken;
+    private final ITOpsSymbolTable symbolTable;
+
+    //
+    // Constructor(s)
+    //
+
+    public BenchmarkFactoryInjector(){
+        this.transactionIdProvider = new RoomServerTransactionIDProvider();
+        this.matrixAccessToken = new MatrixAccessToken();
+        this.matrixAccessToken.setUserId(BENCHMARK_USER_ID);
+        this.symbolTable = new ITOpsSymbolTable();
+    }
+
+    //
+    // Getters (and Setters)
+    //
+
+    public RoomServerTransactionIDProvider getTransactionIdProvider() {
+        return transactionIdProvider;
+    }
+
+    public MatrixAccessToken getMatrixAccessToken() {
+        return matrixAccessToken;
+    }
+
+    public ITOpsSymbolTable getSymbolTable() {
+        return symbolTable;
+    }
+
+    //
+    // Business Methods
+    //
+
+    public <T> T inject(T factory){
+        for(Class<?> currentClass = factory.getClass(); currentClass != null && currentClass != Object.class; currentClass = currentClass.getSuperclass()){
+            for(Field currentField: currentClass.getDeclaredFields()){
+                Object collaborator = resolveCollaborator(currentField.getType());
+                if(collaborator != null){
+                    setField(factory, currentField, collaborator);
+                }
+            }
+        }
+        return(factory);
+    }
+
+    //
+    // Helpers
+    //
+
+    private Object resolveCollaborator(Class<?> fieldType){
+        if(fieldType == RoomServerTransactionIDProvider.class){
+            return(transactionIdProvider);
+        }
+        if(fieldType == MatrixAccessToken.class){
+            return(matrixAccessToken);
+        }
+        if(fieldType == ITOpsSymbolTable.class){
+            return(symbolTable);
+        }
+        return(null);
+    }
+
+    private void setField(Object target, Field field, Object value){
+        try {
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Unable to inject " + field.getDeclaringClass().getSimpleName() + "." + field.getName(), e);
+        }
+    }
+}
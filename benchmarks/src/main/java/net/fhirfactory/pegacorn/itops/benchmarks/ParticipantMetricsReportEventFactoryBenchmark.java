@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.benchmarks;
+
+import net.fhirfactory.pegacorn.communicate.matrix.model.r110.events.room.message.MRoomTextMessageEvent;
+import net.fhirfactory.pegacorn.core.model.petasos.oam.metrics.reporting.PetasosComponentMetricSet;
+import net.fhirfactory.pegacorn.core.model.petasos.oam.topology.valuesets.PetasosMonitoredComponentTypeEnum;
+import net.fhirfactory.pegacorn.itops.im.datatypes.MetricsReportContentBase;
+import net.fhirfactory.pegacorn.itops.im.workshops.transform.matrixbridge.metrics.ParticipantMetricsReportEventFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of ParticipantMetricsReportEventFactory (and the DefaultMetricsReportContentBodyFactory it extends)
+ * across metric set sizes. Run with "-prof gc" to get the allocation per event (gc.alloc.rate.norm).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ParticipantMetricsReportEventFactoryBenchmark {
+    private static final String ROOM_ID = "!itopsBenchmarkMetrics:localhost";
+
+    @Param({"8", "32", "128"})
+    private int metricCount;
+
+    private ParticipantMetricsReportEventFactory factory;
+    private PetasosComponentMetricSet processingPlantMetricSet;
+    private PetasosComponentMetricSet endpointMetricSet;
+    private PetasosComponentMetricSet workUnitProcessorMetricSet;
+
+    @Setup
+    public void setup(){
+        BenchmarkFactoryInjector injector = new BenchmarkFactoryInjector();
+        factory = injector.inject(new ParticipantMetricsReportEventFactory());
+        SyntheticMetricDataFactory dataFactory = new SyntheticMetricDataFactory(metricCount);
+        processingPlantMetricSet = dataFactory.newMetricSet("processing-plant", PetasosMonitoredComponentTypeEnum.PETASOS_MONITORED_COMPONENT_PROCESSING_PLANT, metricCount);
+        endpointMetricSet = dataFactory.newMetricSet("endpoint", PetasosMonitoredComponentTypeEnum.PETASOS_MONITORED_COMPONENT_ENDPOINT, metricCount);
+        workUnitProcessorMetricSet = dataFactory.newMetricSet("work-unit-processor", PetasosMonitoredComponentTypeEnum.PETASOS_MONITORED_COMPONENT_WORK_UNIT_PROCESSOR, metricCount);
+    }
+
+    @Benchmark
+    public List<MRoomTextMessageEvent> processingPlantMetricsEvent(){
+        return(factory.createProcessingPlantMetricsEvent(ROOM_ID, processingPlantMetricSet));
+    }
+
+    @Benchmark
+    public List<MRoomTextMessageEvent> endpointMetricsEvent(){
+        return(factory.createEndpointMetricsEvent(ROOM_ID, endpointMetricSet));
+    }
+
+    @Benchmark
+    public List<MRoomTextMessageEvent> workUnitProcessorMetricsEvent(){
+        return(factory.createWorkUnitProcessorMetricsEvent(ROOM_ID, workUnitProcessorMetricSet));
+    }
+
+    @Benchmark
+    public MetricsReportContentBase defaultContentReportFromMetricSet(){
+        return(factory.newDefaultMetricsContentReport(processingPlantMetricSet));
+    }
+}
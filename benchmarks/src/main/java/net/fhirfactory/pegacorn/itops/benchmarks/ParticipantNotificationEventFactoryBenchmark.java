@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.benchmarks;
+
+import net.fhirfactory.pegacorn.communicate.matrix.model.r110.events.room.message.MRoomTextMessageEvent;
+import net.fhirfactory.pegacorn.core.model.petasos.oam.notifications.PetasosComponentITOpsNotification;
+import net.fhirfactory.pegacorn.core.model.petasos.oam.notifications.valuesets.PetasosComponentITOpsNotificationTypeEnum;
+import net.fhirfactory.pegacorn.itops.im.workshops.transform.matrixbridge.notifications.ParticipantNotificationEventFactory;
+import net.fhirfactory.pegacorn.itops.im.workshops.transform.matrixbridge.reports.tasks.ParticipantTaskReportsEventFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of ParticipantNotificationEventFactory and ParticipantTaskReportsEventFactory for plain and
+ * formatted notifications of increasing length. Run with "-prof gc" to get the allocation per event.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ParticipantNotificationEventFactoryBenchmark {
+    private static final String ROOM_ID = "!itopsBenchmarkNotifications:localhost";
+
+    @Param({"1", "16", "64"})
+    private int lineCount;
+
+    private ParticipantNotificationEventFactory notificationEventFactory;
+    private ParticipantTaskReportsEventFactory taskReportsEventFactory;
+    private PetasosComponentITOpsNotification plainNotification;
+    private PetasosComponentITOpsNotification formattedNotification;
+    private PetasosComponentITOpsNotification taskReport;
+
+    @Setup
+    public void setup(){
+        BenchmarkFactoryInjector injector = new BenchmarkFactoryInjector();
+        notificationEventFactory = injector.inject(new ParticipantNotificationEventFactory());
+        taskReportsEventFactory = injector.inject(new ParticipantTaskReportsEventFactory());
+        SyntheticMetricDataFactory dataFactory = new SyntheticMetricDataFactory(lineCount);
+        plainNotification = dataFactory.newNotification("work-unit-processor", PetasosComponentITOpsNotificationTypeEnum.NORMAL_NOTIFICATION_TYPE, lineCount, false);
+        formattedNotification = dataFactory.newNotification("work-unit-processor", PetasosComponentITOpsNotificationTypeEnum.FAILURE_NOTIFICATION_TYPE, lineCount, true);
+        taskReport = dataFactory.newNotification("work-unit-processor", PetasosComponentITOpsNotificationTypeEnum.SUCCESS_NOTIFICATION_TYPE, lineCount, true);
+    }
+
+    @Benchmark
+    public MRoomTextMessageEvent plainNotificationEvent(){
+        return(notificationEventFactory.newNotificationEvent(ROOM_ID, plainNotification));
+    }
+
+    @Benchmark
+    public MRoomTextMessageEvent formattedNotificationEvent(){
+        return(notificationEventFactory.newNotificationEvent(ROOM_ID, formattedNotification));
+    }
+
+    @Benchmark
+    public MRoomTextMessageEvent taskReportEvent(){
+        return(taskReportsEventFactory.newTaskReportEvent(ROOM_ID, taskReport));
+    }
+}
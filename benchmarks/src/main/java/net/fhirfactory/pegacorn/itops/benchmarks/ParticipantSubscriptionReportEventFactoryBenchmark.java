@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.benchmarks;
+
+import net.fhirfactory.pegacorn.communicate.matrix.model.r110.events.room.message.MRoomTextMessageEvent;
+import net.fhirfactory.pegacorn.core.model.petasos.oam.subscriptions.reporting.PetasosPublisherSubscriptionSummary;
+import net.fhirfactory.pegacorn.core.model.petasos.oam.subscriptions.reporting.PetasosSubscriberSubscriptionSummary;
+import net.fhirfactory.pegacorn.core.model.petasos.oam.subscriptions.reporting.PetasosWorkUnitProcessorSubscriptionSummary;
+import net.fhirfactory.pegacorn.itops.im.workshops.transform.matrixbridge.reports.subscriptions.ParticipantSubscriptionReportEventFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of ParticipantSubscriptionReportEventFactory for subscriber, publisher and work unit processor
+ * summaries. Run with "-prof gc" to get the allocation per event.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ParticipantSubscriptionReportEventFactoryBenchmark {
+    private static final String ROOM_ID = "!itopsBenchmarkSubscriptions:localhost";
+
+    @Param({"1", "8", "32"})
+    private int summaryCount;
+
+    @Param({"4"})
+    private int topicCount;
+
+    private ParticipantSubscriptionReportEventFactory factory;
+    private List<PetasosSubscriberSubscriptionSummary> subscriberSummaries;
+    private List<PetasosPublisherSubscriptionSummary> publisherSummaries;
+    private PetasosWorkUnitProcessorSubscriptionSummary workUnitProcessorSummary;
+
+    @Setup
+    public void setup(){
+        BenchmarkFactoryInjector injector = new BenchmarkFactoryInjector();
+        factory = injector.inject(new ParticipantSubscriptionReportEventFactory());
+        SyntheticMetricDataFactory dataFactory = new SyntheticMetricDataFactory(summaryCount);
+        subscriberSummaries = dataFactory.newSubscriberSummaries(summaryCount, topicCount);
+        publisherSummaries = dataFactory.newPublisherSummaries(summaryCount, topicCount);
+        workUnitProcessorSummary = dataFactory.newWorkUnitProcessorSummary("work-unit-processor", topicCount * summaryCount);
+    }
+
+    @Benchmark
+    public MRoomTextMessageEvent subscriberSubscriptionReportEvent(){
+        return(factory.newAsASubscriberSubscriptionReportEvent(ROOM_ID, subscriberSummaries));
+    }
+
+    @Benchmark
+    public MRoomTextMessageEvent publisherSubscriptionReportEvent(){
+        return(factory.newAsAPublisherSubscriptionReportEvent(ROOM_ID, publisherSummaries));
+    }
+
+    @Benchmark
+    public MRoomTextMessageEvent workUnitProcessorSubscriptionReportEvent(){
+        return(factory.newWUPSubscriberSubscriptionReportEvent(ROOM_ID, workUnitProcessorSummary));
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.benchmarks;
+
+import net.fhirfactory.pegacorn.core.model.componentid.ComponentIdType;
+import net.fhirfactory.pegacorn.core.model.dataparcel.DataParcelTypeDescriptor;
+import net.fhirfactory.pegacorn.core.model.dataparcel.valuesets.DataParcelDirectionEnum;
+import net.fhirfactory.pegacorn.core.model.dataparcel.valuesets.DataParcelNormalisationStatusEnum;
+import net.fhirfactory.pegacorn.core.model.dataparcel.valuesets.DataParcelValidationStatusEnum;
+import net.fhirfactory.pegacorn.core.model.dataparcel.valuesets.PolicyEnforcementPointApprovalStatusEnum;
+import net.fhirfactory.pegacorn.core.model.petasos.oam.metrics.reporting.PetasosComponentMetric;
+import net.fhirfactory.pegacorn.core.model.petasos.oam.metrics.reporting.PetasosComponentMetricSet;
+import net.fhirfactory.pegacorn.core.model.petasos.oam.metrics.reporting.datatypes.PetasosComponentMetricValue;
+import net.fhirfactory.pegacorn.core.model.petasos.oam.metrics.reporting.valuesets.PetasosComponentMetricTypeEnum;
+import net.fhirfactory.pegacorn.core.model.petasos.oam.notifications.PetasosComponentITOpsNotification;
+import net.fhirfactory.pegacorn.core.model.petasos.oam.notifications.valuesets.PetasosComponentITOpsNotificationTypeEnum;
+import net.fhirfactory.pegacorn.core.model.petasos.oam.subscriptions.reporting.PetasosPublisherSubscriptionSummary;
+import net.fhirfactory.pegacorn.core.model.petasos.oam.subscriptions.reporting.PetasosSubscriberSubscriptionSummary;
+import net.fhirfactory.pegacorn.core.model.petasos.oam.subscriptions.reporting.PetasosWorkUnitProcessorSubscriptionSummary;
+import net.fhirfactory.pegacorn.core.model.petasos.oam.topology.valuesets.PetasosMonitoredComponentTypeEnum;
+import net.fhirfactory.pegacorn.core.model.petasos.task.datatypes.work.datatypes.TaskWorkItemSubscriptionType;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Builds deterministic (seeded) synthetic inputs for the event factory benchmarks. Metric sets always carry the
+ * task duration and task count metrics the work unit processor reports look up, padded out with a rotating mix of
+ * Long, Integer, Double, Boolean, Instant and String valued metrics up to the requested size.
+ */
+public class SyntheticMetricDataFactory {
+    private static final PetasosComponentMetricTypeEnum[] WORK_UNIT_PROCESSOR_DURATION_METRICS = {
+            PetasosComponentMetricTypeEnum.LAST_TASK_PROCESSING_TIME,
+            PetasosComponentMetricTypeEnum.ROLLING_TASK_PROCESSING_TIME,
+            PetasosComponentMetricTypeEnum.CUMULATIVE_TASK_PROCESSING_TIME
+    };
+    private static final PetasosComponentMetricTypeEnum[] WORK_UNIT_PROCESSOR_COUNT_METRICS = {
+            PetasosComponentMetricTypeEnum.REGISTERED_TASK_COUNT,
+            PetasosComponentMetricTypeEnum.STARTED_TASK_COUNT,
+            PetasosComponentMetricTypeEnum.FINISHED_TASK_COUNT,
+            PetasosComponentMetricTypeEnum.FAILED_TASK_COUNT,
+            PetasosComponentMetricTypeEnum.FINALISED_TASK_COUNT
+    };
+    private static final int VALUE_TYPE_COUNT = 6;
+
+    private final Random random;
+    private final Instant baseInstant;
+
+    //
+    // Constructor(s)
+    //
+
+    public SyntheticMetricDataFactory(long seed){
+        this.random = new Random(seed);
+        this.baseInstant = Instant.ofEpochMilli(1640995200000L);
+    }
+
+    //
+    // Metric Sets
+    //
+
+    public PetasosComponentMetricSet newMetricSet(String componentName, PetasosMonitoredComponentTypeEnum componentType, int metricCount){
+        ComponentIdType componentId = newComponentId(componentName);
+        PetasosComponentMetricSet metricSet = new PetasosComponentMetricSet();
+        metricSet.setMetricSourceComponentId(componentId);
+        metricSet.setSourceParticipantName("aether.itops.benchmark." + componentName);
+        metricSet.setComponentType(componentType);
+        metricSet.setReportingInstant(baseInstant);
+        int added = 0;
+        for(PetasosComponentMetricTypeEnum metricType: WORK_UNIT_PROCESSOR_DURATION_METRICS){
+            metricSet.addMetric(newMetric(componentId, metricType.getDisplayName(), metricType, new PetasosComponentMetricValue(random.nextDouble() * 250.0d)));
+            added += 1;
+        }
+        for(PetasosComponentMetricTypeEnum metricType: WORK_UNIT_PROCESSOR_COUNT_METRICS){
+            metricSet.addMetric(newMetric(componentId, metricType.getDisplayName(), metricType, new PetasosComponentMetricValue(random.nextInt(100000))));
+            added += 1;
+        }
+        for(int counter = 0; added < metricCount; counter += 1){
+            String metricName = "synthetic-metric-" + counter;
+            metricSet.addMetric(newMetric(componentId, metricName, null, newMetricValue(counter % VALUE_TYPE_COUNT)));
+            added += 1;
+        }
+        return(metricSet);
+    }
+
+    protected PetasosComponentMetric newMetric(ComponentIdType componentId, String metricName, PetasosComponentMetricTypeEnum metricType, PetasosComponentMetricValue metricValue){
+        PetasosComponentMetric metric = new PetasosComponentMetric();
+        metric.setMetricSource(componentId);
+        metric.setMetricName(metricName);
+        metric.setMetricType(metricType);
+        metric.setMetricValue(metricValue);
+        metric.setMetricTimestamp(baseInstant.plusMillis(random.nextInt(60000)));
+        return(metric);
+    }
+
+    protected PetasosComponentMetricValue newMetricValue(int valueType){
+        switch(valueType){
+            case 0:
+                return(new PetasosComponentMetricValue(random.nextLong()));
+            case 1:
+                return(new PetasosComponentMetricValue(random.nextInt()));
+            case 2:
+                return(new PetasosComponentMetricValue(random.nextDouble()));
+            case 3:
+                return(new PetasosComponentMetricValue(random.nextBoolean()));
+            case 4:
+                return(new PetasosComponentMetricValue(baseInstant.plusSeconds(random.nextInt(86400))));
+            default:
+                return(new PetasosComponentMetricValue("synthetic-value-" + Integer.toHexString(random.nextInt())));
+        }
+    }
+
+    //
+    // Notifications
+    //
+
+    public PetasosComponentITOpsNotification newNotification(String componentName, PetasosComponentITOpsNotificationTypeEnum notificationType, int lineCount, boolean formatted){
+        StringBuilder contentBuilder = new StringBuilder();
+        StringBuilder formattedContentBuilder = new StringBuilder();
+        formattedContentBuilder.append("<table>");
+        for(int counter = 0; counter < lineCount; counter += 1){
+            String line = "Task " + Integer.toHexString(random.nextInt()) + " --> " + componentName + " processed in " + random.nextInt(5000) + "ms";
+            contentBuilder.append(line).append("\n");
+            formattedContentBuilder.append("<tr><td>").append(line).append("</td></tr>");
+        }
+        formattedContentBuilder.append("</table>");
+        PetasosComponentITOpsNotification notification = new PetasosComponentITOpsNotification();
+        notification.setContent(contentBuilder.toString());
+        if(formatted){
+            notification.setFormattedContent(formattedContentBuilder.toString());
+        }
+        notification.setParticipantName("aether.itops.benchmark." + componentName);
+        notification.setNotificationType(notificationType);
+        notification.setComponentId(newComponentId(componentName));
+        notification.setContentHeading("Synthetic Report");
+        return(notification);
+    }
+
+    //
+    // Subscription Summaries
+    //
+
+    public List<PetasosSubscriberSubscriptionSummary> newSubscriberSummaries(int summaryCount, int topicCount){
+        List<PetasosSubscriberSubscriptionSummary> summaries = new ArrayList<>();
+        for(int counter = 0; counter < summaryCount; counter += 1){
+            PetasosSubscriberSubscriptionSummary summary = new PetasosSubscriberSubscriptionSummary();
+            summary.setParticipantName("aether.itops.benchmark.subscriber-" + counter);
+            summary.setPublisherParticipantName("aether.itops.benchmark.publisher-" + counter);
+            summary.setSubscribedTaskWorkItems(newSubscribedTopics(topicCount));
+            summaries.add(summary);
+        }
+        return(summaries);
+    }
+
+    public List<PetasosPublisherSubscriptionSummary> newPublisherSummaries(int summaryCount, int topicCount){
+        List<PetasosPublisherSubscriptionSummary> summaries = new ArrayList<>();
+        for(int counter = 0; counter < summaryCount; counter += 1){
+            PetasosPublisherSubscriptionSummary summary = new PetasosPublisherSubscriptionSummary();
+            summary.setParticipantName("aether.itops.benchmark.publisher-" + counter);
+            summary.setSubscriberParticipantName("aether.itops.benchmark.subscriber-" + counter);
+            summary.setSubscribedTaskWorkItems(newSubscribedTopics(topicCount));
+            summaries.add(summary);
+        }
+        return(summaries);
+    }
+
+    public PetasosWorkUnitProcessorSubscriptionSummary newWorkUnitProcessorSummary(String componentName, int topicCount){
+        PetasosWorkUnitProcessorSubscriptionSummary summary = new PetasosWorkUnitProcessorSubscriptionSummary();
+        summary.setParticipantName("aether.itops.benchmark." + componentName);
+        summary.setComponentID(newComponentId(componentName));
+        summary.setSubscribedTaskWorkItems(newSubscribedTopics(topicCount));
+        return(summary);
+    }
+
+    protected List<TaskWorkItemSubscriptionType> newSubscribedTopics(int topicCount){
+        List<TaskWorkItemSubscriptionType> topics = new ArrayList<>();
+        for(int counter = 0; counter < topicCount; counter += 1){
+            DataParcelTypeDescriptor descriptor = new DataParcelTypeDescriptor();
+            descriptor.setDataParcelDefiner("FHIRFactory");
+            descriptor.setDataParcelCategory("OAM");
+            descriptor.setDataParcelSubCategory("Reporting");
+            descriptor.setDataParcelResource("SyntheticResource" + counter);
+            TaskWorkItemSubscriptionType topic = new TaskWorkItemSubscriptionType();
+            topic.setContentDescriptor(descriptor);
+            topic.setNormalisationStatus(DataParcelNormalisationStatusEnum.DATA_PARCEL_CONTENT_NORMALISATION_TRUE);
+            topic.setValidationStatus(DataParcelValidationStatusEnum.DATA_PARCEL_CONTENT_VALIDATED_TRUE);
+            topic.setEnforcementPointApprovalStatus(PolicyEnforcementPointApprovalStatusEnum.POLICY_ENFORCEMENT_POINT_APPROVAL_NEGATIVE);
+            topic.setDataParcelFlowDirection(DataParcelDirectionEnum.INFORMATION_FLOW_WORKFLOW_OUTPUT);
+            topics.add(topic);
+        }
+        return(topics);
+    }
+
+    //
+    // Helpers
+    //
+
+    protected ComponentIdType newComponentId(String componentName){
+        ComponentIdType componentId = new ComponentIdType();
+        componentId.setId(componentName + "-" + Long.toHexString(random.nextLong()));
+        componentId.setDisplayName(componentName);
+        return(componentId);
+    }
+}
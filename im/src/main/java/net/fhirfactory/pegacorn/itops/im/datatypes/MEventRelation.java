@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.datatypes;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.io.Serializable;
+
+/**
+ * The "m.relates_to" block of a Matrix event that relates it to an earlier event (e.g. rel_type "m.replace").
+ */
+public class MEventRelation implements Serializable {
+    public static final String REPLACE_RELATION_TYPE = "m.replace";
+
+    @JsonProperty("rel_type")
+    private String relationType;
+    @JsonProperty("event_id")
+    private String eventId;
+
+    //
+    // Constructor(s)
+    //
+
+    public MEventRelation(){
+        this.relationType = null;
+        this.eventId = null;
+    }
+
+    public MEventRelation(String relationType, String eventId){
+        this.relationType = relationType;
+        this.eventId = eventId;
+    }
+
+    //
+    // Getters and Setters
+    //
+
+    public String getRelationType() {
+        return relationType;
+    }
+
+    public void setRelationType(String relationType) {
+        this.relationType = relationType;
+    }
+
+    public String getEventId() {
+        return eventId;
+    }
+
+    public void setEventId(String eventId) {
+        this.eventId = eventId;
+    }
+
+    //
+    // To String
+    //
+
+    @Override
+    public String toString() {
+        return "MEventRelation{" +
+                "relationType='" + relationType + '\'' +
+                ", eventId='" + eventId + '\'' +
+                '}';
+    }
+}
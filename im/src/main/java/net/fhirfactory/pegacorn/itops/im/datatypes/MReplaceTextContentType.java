@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.datatypes;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import net.fhirfactory.pegacorn.communicate.matrix.model.r110.events.room.message.contenttypes.MTextContentType;
+
+/**
+ * Content of an edit (replacement) event: the top level body is the fallback shown by clients that don't support
+ * edits, "m.new_content" is what the edited event now shows, and "m.relates_to" points at the event being replaced.
+ */
+public class MReplaceTextContentType extends MTextContentType {
+    @JsonProperty("m.new_content")
+    private MTextContentType newContent;
+    @JsonProperty("m.relates_to")
+    private MEventRelation relatesTo;
+
+    //
+    // Getters and Setters
+    //
+
+    public MTextContentType getNewContent() {
+        return newContent;
+    }
+
+    public void setNewContent(MTextContentType newContent) {
+        this.newContent = newContent;
+    }
+
+    public MEventRelation getRelatesTo() {
+        return relatesTo;
+    }
+
+    public void setRelatesTo(MEventRelation relatesTo) {
+        this.relatesTo = relatesTo;
+    }
+
+    //
+    // To String
+    //
+
+    @Override
+    public String toString() {
+        return "MReplaceTextContentType{" +
+                "newContent=" + newContent +
+                ", relatesTo=" + relatesTo +
+                ", super=" + super.toString() +
+                '}';
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.datatypes;
+
+import java.io.Serializable;
+import java.time.Instant;
+
+public class MetricHistorySample implements Serializable {
+    private Instant sampleInstant;
+    private boolean integral;
+    private long longValue;
+    private double doubleValue;
+
+    //
+    // Constructor(s)
+    //
+
+    public MetricHistorySample(){
+        this.sampleInstant = null;
+        this.integral = false;
+        this.longValue = 0L;
+        this.doubleValue = 0.0d;
+    }
+
+    public MetricHistorySample(Instant sampleInstant, long longValue){
+        this.sampleInstant = sampleInstant;
+        this.integral = true;
+        this.longValue = longValue;
+        this.doubleValue = (double)longValue;
+    }
+
+    public MetricHistorySample(Instant sampleInstant, double doubleValue){
+        this.sampleInstant = sampleInstant;
+        this.integral = false;
+        this.longValue = (long)doubleValue;
+        this.doubleValue = doubleValue;
+    }
+
+    //
+    // Getters and Setters
+    //
+
+    public Instant getSampleInstant() {
+        return sampleInstant;
+    }
+
+    public void setSampleInstant(Instant sampleInstant) {
+        this.sampleInstant = sampleInstant;
+    }
+
+    public boolean isIntegral() {
+        return integral;
+    }
+
+    public void setIntegral(boolean integral) {
+        this.integral = integral;
+    }
+
+    public long getLongValue() {
+        return longValue;
+    }
+
+    public void setLongValue(long longValue) {
+        this.longValue = longValue;
+    }
+
+    public double getDoubleValue() {
+        return doubleValue;
+    }
+
+    public void setDoubleValue(double doubleValue) {
+        this.doubleValue = doubleValue;
+    }
+
+    //
+    // To String
+    //
+
+    @Override
+    public String toString() {
+        return "MetricHistorySample{" +
+                "sampleInstant=" + sampleInstant +
+                ", integral=" + integral +
+                ", longValue=" + longValue +
+                ", doubleValue=" + doubleValue +
+                '}';
+    }
+}
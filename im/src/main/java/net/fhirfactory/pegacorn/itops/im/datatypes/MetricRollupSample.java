@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.datatypes;
+
+import net.fhirfactory.pegacorn.itops.im.valuesets.MetricRollupIntervalEnum;
+
+import java.io.Serializable;
+import java.time.Instant;
+
+public class MetricRollupSample implements Serializable {
+    private MetricRollupIntervalEnum rollupInterval;
+    private Instant bucketStartInstant;
+    private int sampleCount;
+    private double minimumValue;
+    private double maximumValue;
+    private double sumOfValues;
+
+    //
+    // Constructor(s)
+    //
+
+    public MetricRollupSample(){
+        this.rollupInterval = null;
+        this.bucketStartInstant = null;
+        this.sampleCount = 0;
+        this.minimumValue = 0.0d;
+        this.maximumValue = 0.0d;
+        this.sumOfValues = 0.0d;
+    }
+
+    //
+    // Getters and Setters
+    //
+
+    public MetricRollupIntervalEnum getRollupInterval() {
+        return rollupInterval;
+    }
+
+    public void setRollupInterval(MetricRollupIntervalEnum rollupInterval) {
+        this.rollupInterval = rollupInterval;
+    }
+
+    public Instant getBucketStartInstant() {
+        return bucketStartInstant;
+    }
+
+    public void setBucketStartInstant(Instant bucketStartInstant) {
+        this.bucketStartInstant = bucketStartInstant;
+    }
+
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    public void setSampleCount(int sampleCount) {
+        this.sampleCount = sampleCount;
+    }
+
+    public double getMinimumValue() {
+        return minimumValue;
+    }
+
+    public void setMinimumValue(double minimumValue) {
+        this.minimumValue = minimumValue;
+    }
+
+    public double getMaximumValue() {
+        return maximumValue;
+    }
+
+    public void setMaximumValue(double maximumValue) {
+        this.maximumValue = maximumValue;
+    }
+
+    public double getSumOfValues() {
+        return sumOfValues;
+    }
+
+    public void setSumOfValues(double sumOfValues) {
+        this.sumOfValues = sumOfValues;
+    }
+
+    public double getMeanValue(){
+        if(sampleCount == 0){
+            return(0.0d);
+        }
+        return(sumOfValues / sampleCount);
+    }
+
+    //
+    // To String
+    //
+
+    @Override
+    public String toString() {
+        return "MetricRollupSample{" +
+                "rollupInterval=" + rollupInterval +
+                ", bucketStartInstant=" + bucketStartInstant +
+                ", sampleCount=" + sampleCount +
+                ", minimumValue=" + minimumValue +
+                ", maximumValue=" + maximumValue +
+                ", sumOfValues=" + sumOfValues +
+                ", meanValue=" + getMeanValue() +
+                '}';
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.datatypes;
+
+import java.io.Serializable;
+import java.time.Instant;
+
+public class MetricSetDeltaCaptureOutcome implements Serializable {
+    private String metricSourceComponentId;
+    private boolean accepted;
+    private boolean resynchronisationRequired;
+    private long currentVersion;
+    private Instant captureInstant;
+
+    //
+    // Constructor(s)
+    //
+
+    public MetricSetDeltaCaptureOutcome(){
+        this.metricSourceComponentId = null;
+        this.accepted = false;
+        this.resynchronisationRequired = false;
+        this.currentVersion = 0L;
+        this.captureInstant = Instant.now();
+    }
+
+    //
+    // Getters and Setters
+    //
+
+    public String getMetricSourceComponentId() {
+        return metricSourceComponentId;
+    }
+
+    public void setMetricSourceComponentId(String metricSourceComponentId) {
+        this.metricSourceComponentId = metricSourceComponentId;
+    }
+
+    public boolean isAccepted() {
+        return accepted;
+    }
+
+    public void setAccepted(boolean accepted) {
+        this.accepted = accepted;
+    }
+
+    public boolean isResynchronisationRequired() {
+        return resynchronisationRequired;
+    }
+
+    public void setResynchronisationRequired(boolean resynchronisationRequired) {
+        this.resynchronisationRequired = resynchronisationRequired;
+    }
+
+    public long getCurrentVersion() {
+        return currentVersion;
+    }
+
+    public void setCurrentVersion(long currentVersion) {
+        this.currentVersion = currentVersion;
+    }
+
+    public Instant getCaptureInstant() {
+        return captureInstant;
+    }
+
+    public void setCaptureInstant(Instant captureInstant) {
+        this.captureInstant = captureInstant;
+    }
+
+    //
+    // To String
+    //
+
+    @Override
+    public String toString() {
+        return "MetricSetDeltaCaptureOutcome{" +
+                "metricSourceComponentId='" + metricSourceComponentId + '\'' +
+                ", accepted=" + accepted +
+                ", resynchronisationRequired=" + resynchronisationRequired +
+                ", currentVersion=" + currentVersion +
+                ", captureInstant=" + captureInstant +
+                '}';
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.datatypes;
+
+import net.fhirfactory.pegacorn.core.model.componentid.ComponentIdType;
+import net.fhirfactory.pegacorn.core.model.petasos.oam.metrics.reporting.PetasosComponentMetric;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+public class PetasosComponentMetricSetDelta implements Serializable {
+    private ComponentIdType metricSourceComponentId;
+    private String sourceParticipantName;
+    private long baseVersion;
+    private Instant reportingInstant;
+    private List<PetasosComponentMetric> changedMetrics;
+
+    //
+    // Constructor(s)
+    //
+
+    public PetasosComponentMetricSetDelta(){
+        this.metricSourceComponentId = null;
+        this.sourceParticipantName = null;
+        this.baseVersion = 0L;
+        this.reportingInstant = null;
+        this.changedMetrics = new ArrayList<>();
+    }
+
+    //
+    // Getters and Setters
+    //
+
+    public ComponentIdType getMetricSourceComponentId() {
+        return metricSourceComponentId;
+    }
+
+    public void setMetricSourceComponentId(ComponentIdType metricSourceComponentId) {
+        this.metricSourceComponentId = metricSourceComponentId;
+    }
+
+    public String getSourceParticipantName() {
+        return sourceParticipantName;
+    }
+
+    public void setSourceParticipantName(String sourceParticipantName) {
+        this.sourceParticipantName = sourceParticipantName;
+    }
+
+    public long getBaseVersion() {
+        return baseVersion;
+    }
+
+    public void setBaseVersion(long baseVersion) {
+        this.baseVersion = baseVersion;
+    }
+
+    public Instant getReportingInstant() {
+        return reportingInstant;
+    }
+
+    public void setReportingInstant(Instant reportingInstant) {
+        this.reportingInstant = reportingInstant;
+    }
+
+    public List<PetasosComponentMetric> getChangedMetrics() {
+        return changedMetrics;
+    }
+
+    public void setChangedMetrics(List<PetasosComponentMetric> changedMetrics) {
+        this.changedMetrics = changedMetrics;
+    }
+
+    //
+    // To String
+    //
+
+    @Override
+    public String toString() {
+        return "PetasosComponentMetricSetDelta{" +
+                "metricSourceComponentId=" + metricSourceComponentId +
+                ", sourceParticipantName='" + sourceParticipantName + '\'' +
+                ", baseVersion=" + baseVersion +
+                ", reportingInstant=" + reportingInstant +
+                ", changedMetrics=" + changedMetrics +
+                '}';
+    }
+}
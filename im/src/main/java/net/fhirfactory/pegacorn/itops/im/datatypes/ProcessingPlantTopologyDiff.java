@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.datatypes;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * The structural difference between the last reconciled ProcessingPlantTopologyShape of a plant and the newly
+ * reported one, as the actions needed to bring Matrix up to date:
+ * - create: nodes that are new (their spaces/rooms are created, or found, and attached to their parent),
+ * - attach: nodes that moved to another parent or whose signature changed (they are re-attached),
+ * - remove: nodes that are no longer reported.
+ * Create and attach keys keep the parents-first order of the new shape.
+ */
+public class ProcessingPlantTopologyDiff implements Serializable {
+    private String processingPlantName;
+    private LinkedHashSet<String> createNodeKeys;
+    private LinkedHashSet<String> attachNodeKeys;
+    private LinkedHashSet<String> removeNodeKeys;
+
+    //
+    // Constructor(s)
+    //
+
+    public ProcessingPlantTopologyDiff(String processingPlantName){
+        this.processingPlantName = processingPlantName;
+        this.createNodeKeys = new LinkedHashSet<>();
+        this.attachNodeKeys = new LinkedHashSet<>();
+        this.removeNodeKeys = new LinkedHashSet<>();
+    }
+
+    /**
+     * @param previous the last reconciled shape, or null if the plant has not been reconciled yet
+     * @param current the shape of the plant as now reported
+     */
+    public static ProcessingPlantTopologyDiff between(ProcessingPlantTopologyShape previous, ProcessingPlantTopologyShape current){
+        ProcessingPlantTopologyDiff diff = new ProcessingPlantTopologyDiff(current.getProcessingPlantName());
+        for(String currentNodeKey: current.getNodeKeys()){
+            if(previous == null || !previous.containsNode(currentNodeKey)){
+                diff.createNodeKeys.add(currentNodeKey);
+                continue;
+            }
+            boolean parentChanged = !equals(previous.getParentNodeKey(currentNodeKey), current.getParentNodeKey(currentNodeKey));
+            boolean signatureChanged = !equals(previous.getNodeSignature(currentNodeKey), current.getNodeSignature(currentNodeKey));
+            if(parentChanged || signatureChanged){
+                diff.attachNodeKeys.add(currentNodeKey);
+            }
+        }
+        if(previous != null){
+            for(String previousNodeKey: previous.getNodeKeys()){
+                if(!current.containsNode(previousNodeKey)){
+                    diff.removeNodeKeys.add(previousNodeKey);
+                }
+            }
+        }
+        return(diff);
+    }
+
+    //
+    // Getters and Setters
+    //
+
+    public String getProcessingPlantName() {
+        return processingPlantName;
+    }
+
+    public Set<String> getCreateNodeKeys() {
+        return Collections.unmodifiableSet(createNodeKeys);
+    }
+
+    public Set<String> getAttachNodeKeys() {
+        return Collections.unmodifiableSet(attachNodeKeys);
+    }
+
+    public Set<String> getRemoveNodeKeys() {
+        return Collections.unmodifiableSet(removeNodeKeys);
+    }
+
+    public boolean isEmpty(){
+        return(createNodeKeys.isEmpty() && attachNodeKeys.isEmpty() && removeNodeKeys.isEmpty());
+    }
+
+    public boolean requiresAction(String nodeKey){
+        return(createNodeKeys.contains(nodeKey) || attachNodeKeys.contains(nodeKey));
+    }
+
+    //
+    // Helpers
+    //
+
+    private static boolean equals(String first, String second){
+        if(first == null){
+            return(second == null);
+        }
+        return(first.equals(second));
+    }
+
+    //
+    // To String
+    //
+
+    @Override
+    public String toString() {
+        return "ProcessingPlantTopologyDiff{" +
+                "processingPlantName='" + processingPlantName + '\'' +
+                ", createNodeKeys=" + createNodeKeys +
+                ", attachNodeKeys=" + attachNodeKeys +
+                ", removeNodeKeys=" + removeNodeKeys +
+                '}';
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.datatypes;
+
+import net.fhirfactory.pegacorn.core.model.ui.resources.summaries.EndpointSummary;
+import net.fhirfactory.pegacorn.core.model.ui.resources.summaries.ProcessingPlantSummary;
+import net.fhirfactory.pegacorn.core.model.ui.resources.summaries.WorkUnitProcessorSummary;
+import net.fhirfactory.pegacorn.core.model.ui.resources.summaries.WorkshopSummary;
+import net.fhirfactory.pegacorn.itops.im.valuesets.ITOpsTopologyNodeTypeEnum;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Set;
+
+/**
+ * The structure of a ProcessingPlantSummary as far as the ITOps spaces/rooms are concerned: which workshops, work
+ * unit processors and endpoints it has, and which node each one hangs off. Nodes are keyed by type and participant
+ * name (see toNodeKey()) and are held parents-first, so a walk of getNodeKeys() never meets a child before its
+ * parent. An endpoint's signature is its endpoint type, which decides whether it is also attached to the plant space.
+ */
+public class ProcessingPlantTopologyShape implements Serializable {
+    private static final String NO_SIGNATURE = "";
+
+    private String processingPlantName;
+    // LinkedHashMap<nodeKey, parentNodeKey>, parents before children (the plant's own parent is null)
+    private LinkedHashMap<String, String> parentNodeKeys;
+    // HashMap<nodeKey, signature>
+    private HashMap<String, String> nodeSignatures;
+
+    //
+    // Constructor(s)
+    //
+
+    public ProcessingPlantTopologyShape(String processingPlantName){
+        this.processingPlantName = processingPlantName;
+        this.parentNodeKeys = new LinkedHashMap<>();
+        this.nodeSignatures = new HashMap<>();
+    }
+
+    public static ProcessingPlantTopologyShape fromSummary(ProcessingPlantSummary processingPlant){
+        String processingPlantName = processingPlant.getParticipantName();
+        ProcessingPlantTopologyShape shape = new ProcessingPlantTopologyShape(processingPlantName);
+        String processingPlantKey = toNodeKey(ITOpsTopologyNodeTypeEnum.TOPOLOGY_NODE_PROCESSING_PLANT, processingPlantName);
+        shape.addNode(processingPlantKey, null, NO_SIGNATURE);
+        for(WorkshopSummary currentWorkshop: processingPlant.getWorkshops().values()){
+            String workshopKey = toNodeKey(ITOpsTopologyNodeTypeEnum.TOPOLOGY_NODE_WORKSHOP, currentWorkshop.getParticipantName());
+            shape.addNode(workshopKey, processingPlantKey, NO_SIGNATURE);
+            for(WorkUnitProcessorSummary currentWUP: currentWorkshop.getWorkUnitProcessors().values()){
+                String wupKey = toNodeKey(ITOpsTopologyNodeTypeEnum.TOPOLOGY_NODE_WORK_UNIT_PROCESSOR, currentWUP.getParticipantName());
+                shape.addNode(wupKey, workshopKey, NO_SIGNATURE);
+                for(EndpointSummary currentEndpoint: currentWUP.getEndpoints().values()){
+                    String endpointKey = toNodeKey(ITOpsTopologyNodeTypeEnum.TOPOLOGY_NODE_ENDPOINT, currentEndpoint.getParticipantName());
+                    String endpointSignature = NO_SIGNATURE;
+                    if(currentEndpoint.getEndpointType() != null){
+                        endpointSignature = currentEndpoint.getEndpointType().name();
+                    }
+                    shape.addNode(endpointKey, wupKey, endpointSignature);
+                }
+            }
+        }
+        return(shape);
+    }
+
+    //
+    // Getters and Setters
+    //
+
+    public String getProcessingPlantName() {
+        return processingPlantName;
+    }
+
+    public Set<String> getNodeKeys(){
+        return(Collections.unmodifiableSet(parentNodeKeys.keySet()));
+    }
+
+    public boolean containsNode(String nodeKey){
+        return(parentNodeKeys.containsKey(nodeKey));
+    }
+
+    public String getParentNodeKey(String nodeKey){
+        return(parentNodeKeys.get(nodeKey));
+    }
+
+    public String getNodeSignature(String nodeKey){
+        return(nodeSignatures.get(nodeKey));
+    }
+
+    public int getSize(){
+        return(parentNodeKeys.size());
+    }
+
+    //
+    // Business Methods
+    //
+
+    public static String toNodeKey(ITOpsTopologyNodeTypeEnum nodeType, String participantName){
+        return(nodeType.getDisplayName() + ":" + participantName);
+    }
+
+    protected void addNode(String nodeKey, String parentNodeKey, String signature){
+        // The first parent reported wins, as it does when the spaces are created
+        if(!parentNodeKeys.containsKey(nodeKey)){
+            parentNodeKeys.put(nodeKey, parentNodeKey);
+            nodeSignatures.put(nodeKey, signature);
+        }
+    }
+
+    //
+    // To String
+    //
+
+    @Override
+    public String toString() {
+        return "ProcessingPlantTopologyShape{" +
+                "processingPlantName='" + processingPlantName + '\'' +
+                ", nodeCount=" + parentNodeKeys.size() +
+                '}';
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.valuesets;
+
+import java.time.Instant;
+
+public enum CompactMetricValueTypeEnum {
+    METRIC_VALUE_TYPE_NONE((byte)0, false, false),
+    METRIC_VALUE_TYPE_LONG((byte)1, true, true),
+    METRIC_VALUE_TYPE_INTEGER((byte)2, true, true),
+    METRIC_VALUE_TYPE_BOOLEAN((byte)3, true, true),
+    METRIC_VALUE_TYPE_INSTANT((byte)4, true, true),
+    METRIC_VALUE_TYPE_DOUBLE((byte)5, true, false),
+    METRIC_VALUE_TYPE_FLOAT((byte)6, true, false),
+    METRIC_VALUE_TYPE_STRING((byte)7, false, false),
+    METRIC_VALUE_TYPE_OBJECT((byte)8, false, false);
+
+    private static final CompactMetricValueTypeEnum[] TYPE_TAG_LOOKUP = CompactMetricValueTypeEnum.values();
+
+    private byte typeTag;
+    private boolean numeric;
+    private boolean integral;
+
+    private CompactMetricValueTypeEnum(byte typeTag, boolean numeric, boolean integral){
+        this.typeTag = typeTag;
+        this.numeric = numeric;
+        this.integral = integral;
+    }
+
+    public byte getTypeTag(){
+        return(this.typeTag);
+    }
+
+    public boolean isNumeric(){
+        return(this.numeric);
+    }
+
+    public boolean isIntegral(){
+        return(this.integral);
+    }
+
+    public static final CompactMetricValueTypeEnum fromTypeTag(byte typeTag){
+        if(typeTag < 0 || typeTag >= TYPE_TAG_LOOKUP.length){
+            return(METRIC_VALUE_TYPE_NONE);
+        }
+        return(TYPE_TAG_LOOKUP[typeTag]);
+    }
+
+    public static final CompactMetricValueTypeEnum fromObjectType(Class<?> objectType){
+        if(objectType == null){
+            return(METRIC_VALUE_TYPE_NONE);
+        }
+        if(objectType == Long.class){
+            return(METRIC_VALUE_TYPE_LONG);
+        }
+        if(objectType == Integer.class){
+            return(METRIC_VALUE_TYPE_INTEGER);
+        }
+        if(objectType == Boolean.class){
+            return(METRIC_VALUE_TYPE_BOOLEAN);
+        }
+        if(objectType == Instant.class){
+            return(METRIC_VALUE_TYPE_INSTANT);
+        }
+        if(objectType == Double.class){
+            return(METRIC_VALUE_TYPE_DOUBLE);
+        }
+        if(objectType == Float.class){
+            return(METRIC_VALUE_TYPE_FLOAT);
+        }
+        if(objectType == String.class){
+            return(METRIC_VALUE_TYPE_STRING);
+        }
+        return(METRIC_VALUE_TYPE_OBJECT);
+    }
+}
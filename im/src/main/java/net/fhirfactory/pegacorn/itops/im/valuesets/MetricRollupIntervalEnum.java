@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.valuesets;
+
+import org.apache.commons.lang3.StringUtils;
+
+public enum MetricRollupIntervalEnum {
+    METRIC_ROLLUP_INTERVAL_1_MINUTE("1m", 60000L, 60),
+    METRIC_ROLLUP_INTERVAL_5_MINUTE("5m", 300000L, 72),
+    METRIC_ROLLUP_INTERVAL_1_HOUR("1h", 3600000L, 48);
+
+    private String displayName;
+    private long bucketWidthMillis;
+    private int bucketCount;
+
+    private MetricRollupIntervalEnum(String displayName, long bucketWidthMillis, int bucketCount){
+        this.displayName = displayName;
+        this.bucketWidthMillis = bucketWidthMillis;
+        this.bucketCount = bucketCount;
+    }
+
+    public String getDisplayName(){
+        return(this.displayName);
+    }
+
+    public long getBucketWidthMillis(){
+        return(this.bucketWidthMillis);
+    }
+
+    public int getBucketCount(){
+        return(this.bucketCount);
+    }
+
+    public static final MetricRollupIntervalEnum fromDisplayName(String displayName){
+        if(StringUtils.isEmpty(displayName)){
+            return(null);
+        }
+        for(MetricRollupIntervalEnum currentInterval: MetricRollupIntervalEnum.values()){
+            if(currentInterval.getDisplayName().equalsIgnoreCase(displayName)){
+                return(currentInterval);
+            }
+        }
+        return(null);
+    }
+}
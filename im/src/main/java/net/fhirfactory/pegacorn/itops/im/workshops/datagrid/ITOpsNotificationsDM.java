@@ -23,29 +23,40 @@ package net.fhirfactory.pegacorn.itops.im.workshops.datagrid;
 
 import net.fhirfactory.pegacorn.core.interfaces.oam.notifications.PetasosITOpsNotificationBrokerInterface;
 import net.fhirfactory.pegacorn.core.model.petasos.oam.notifications.PetasosComponentITOpsNotification;
+import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.notifications.ITOpsNotificationPriorityQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.enterprise.context.ApplicationScoped;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
 
 @ApplicationScoped
 public class ITOpsNotificationsDM {
+    private static final Logger LOG = LoggerFactory.getLogger(ITOpsNotificationsDM.class);
 
-    Queue<PetasosComponentITOpsNotification> notificationQueue;
+    private static final int FAILURE_NOTIFICATION_CAPACITY = 5000;
+    private static final int NORMAL_NOTIFICATION_CAPACITY = 2000;
+    private static final int SUCCESS_NOTIFICATION_CAPACITY = 1000;
+    private static final long DROP_WARNING_INTERVAL = 1000L;
+
+    private ITOpsNotificationPriorityQueue notificationQueue;
 
     //
     // Constructor(s)
     //
 
     public ITOpsNotificationsDM(){
-        this.notificationQueue = new ConcurrentLinkedQueue<>();
+        this.notificationQueue = new ITOpsNotificationPriorityQueue("ITOpsNotificationsDM", FAILURE_NOTIFICATION_CAPACITY, NORMAL_NOTIFICATION_CAPACITY, SUCCESS_NOTIFICATION_CAPACITY);
     }
 
     //
     // Getters and Setters
     //
 
-    public Queue<PetasosComponentITOpsNotification> getNotificationQueue() {
+    protected Logger getLogger(){
+        return(LOG);
+    }
+
+    public ITOpsNotificationPriorityQueue getNotificationQueue() {
         return notificationQueue;
     }
 
@@ -57,19 +68,44 @@ public class ITOpsNotificationsDM {
         if(notification == null){
             return;
         }
-        getNotificationQueue().add(notification);
+        if(getNotificationQueue().offer(notification).isLossy()){
+            warnIfDropping(ITOpsNotificationPriorityQueue.getPriorityClass(notification));
+        }
     }
 
-    public PetasosComponentITOpsNotification getNextNotification(){
-        if(getNotificationQueue().isEmpty()){
-            return(null);
+    /**
+     * Puts back a notification that could not be forwarded yet (it is not sampled a second time).
+     */
+    public void requeueNotification(PetasosComponentITOpsNotification notification){
+        if(notification == null){
+            return;
+        }
+        if(getNotificationQueue().requeue(notification).isLossy()){
+            warnIfDropping(ITOpsNotificationPriorityQueue.getPriorityClass(notification));
         }
+    }
+
+    public PetasosComponentITOpsNotification getNextNotification(){
         PetasosComponentITOpsNotification nextNotification = getNotificationQueue().poll();
         return(nextNotification);
     }
 
+    /**
+     * Blocks the forwarder until there are notifications to forward, see ITOpsNotificationPriorityQueue.awaitReady().
+     */
+    public boolean awaitNotifications(long maximumWaitMillis, long lingerMillis, int batchSize) throws InterruptedException {
+        return(getNotificationQueue().awaitReady(maximumWaitMillis, lingerMillis, batchSize));
+    }
+
     public boolean hasMoreNotifications(){
         boolean hasMore = (getNotificationQueue().isEmpty() != true);
         return(hasMore);
     }
+
+    private void warnIfDropping(int priorityClass){
+        long droppedCount = getNotificationQueue().getDroppedCount(priorityClass);
+        if(droppedCount > 0 && droppedCount % DROP_WARNING_INTERVAL == 1){
+            getLogger().warn(".warnIfDropping(): Notification queue saturated, dropping, priorityClass->{}, queue->{}", priorityClass, getNotificationQueue());
+        }
+    }
 }
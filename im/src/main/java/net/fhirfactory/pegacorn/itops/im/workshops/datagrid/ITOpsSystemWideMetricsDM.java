@@ -21,64 +21,108 @@
  */
 package net.fhirfactory.pegacorn.itops.im.workshops.datagrid;
 
+import net.fhirfactory.pegacorn.core.model.petasos.oam.metrics.reporting.PetasosComponentMetric;
 import net.fhirfactory.pegacorn.core.model.petasos.oam.metrics.reporting.PetasosComponentMetricSet;
+import net.fhirfactory.pegacorn.itops.im.datatypes.MetricSetCaptureOutcome;
+import net.fhirfactory.pegacorn.itops.im.datatypes.MetricSetDeltaCaptureOutcome;
+import net.fhirfactory.pegacorn.itops.im.datatypes.PetasosComponentMetricSetDelta;
+import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.metrics.MetricSetChangeLog;
+import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.metrics.MetricSetChangeSubscription;
+import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.symbols.DenseIdTable;
+import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.symbols.ITOpsSymbolTable;
 import org.apache.commons.lang3.SerializationUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
 import java.time.Instant;
 import java.util.ArrayList;
-import java.util.Enumeration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 @ApplicationScoped
 public class ITOpsSystemWideMetricsDM {
     private static final Logger LOG = LoggerFactory.getLogger(ITOpsSystemWideMetricsDM.class);
-    private ConcurrentHashMap<String, PetasosComponentMetricSet> currentStateMetricSetMap;
-    private ConcurrentHashMap<String, String> endpointRouteToSourceMap;
-    private ConcurrentHashMap<String, Instant> sourceUpdateInstantMap;
-    private Instant lastUpdate;
+
+    private static final int CHANGE_LOG_CAPACITY = 65536;
+    private static final int SUBSCRIPTION_BACKLOG_BATCH_MULTIPLIER = 10;
+
+    // All component keyed tables are indexed by the component's ITOpsSymbolTable id
+    private DenseIdTable<PetasosComponentMetricSet> currentStateMetricSetTable;
+    private DenseIdTable<String> endpointRouteToSourceTable;
+    private DenseIdTable<Instant> sourceUpdateInstantTable;
+    private DenseIdTable<AtomicLong> metricSetVersionTable;
+    // The delta replication version, only moved on by baselines and accepted deltas (see mergeComponentMetricSetDelta())
+    private DenseIdTable<AtomicLong> deltaVersionTable;
+    private MetricSetChangeLog changeLog;
+    private ConcurrentHashMap<String, MetricSetChangeSubscription> changeSubscriptions;
+    // Writers only take the signal lock when a consumer is actually waiting in awaitChanges()
+    private ReentrantLock changeSignalLock;
+    private Condition changeSignal;
+    private AtomicInteger changeWaiterCount;
+
+    @Inject
+    private ITOpsSystemWideMetricsHistoryDM metricsHistoryDM;
+
+    @Inject
+    private ITOpsSymbolTable symbolTable;
 
     public ITOpsSystemWideMetricsDM(){
-        this.currentStateMetricSetMap = new ConcurrentHashMap<>();
-        this.endpointRouteToSourceMap = new ConcurrentHashMap<>();
-        this.sourceUpdateInstantMap = new ConcurrentHashMap<>();
-        this.lastUpdate = Instant.now();
+        this.currentStateMetricSetTable = new DenseIdTable<>();
+        this.endpointRouteToSourceTable = new DenseIdTable<>();
+        this.sourceUpdateInstantTable = new DenseIdTable<>();
+        this.metricSetVersionTable = new DenseIdTable<>();
+        this.deltaVersionTable = new DenseIdTable<>();
+        this.changeLog = new MetricSetChangeLog(CHANGE_LOG_CAPACITY);
+        this.changeSubscriptions = new ConcurrentHashMap<>();
+        this.changeSignalLock = new ReentrantLock();
+        this.changeSignal = changeSignalLock.newCondition();
+        this.changeWaiterCount = new AtomicInteger(0);
     }
 
     //
     // Getters (and Setters)
     //
 
-    public ConcurrentHashMap<String, PetasosComponentMetricSet> getCurrentStateMetricSetMap() {
-        return currentStateMetricSetMap;
+    protected DenseIdTable<PetasosComponentMetricSet> getCurrentStateMetricSetTable() {
+        return currentStateMetricSetTable;
     }
 
-    public void setCurrentStateMetricSetMap(ConcurrentHashMap<String, PetasosComponentMetricSet> currentStateMetricSetMap) {
-        this.currentStateMetricSetMap = currentStateMetricSetMap;
+    public String getRoutingEndpointId(String metricSourceComponentId){
+        return(endpointRouteToSourceTable.get(getSymbolTable().lookupComponentId(metricSourceComponentId)));
     }
 
-    public ConcurrentHashMap<String, String> getEndpointRouteToSourceMap() {
-        return endpointRouteToSourceMap;
+    public Instant getSourceUpdateInstant(String metricSourceComponentId){
+        return(sourceUpdateInstantTable.get(getSymbolTable().lookupComponentId(metricSourceComponentId)));
     }
 
-    public void setEndpointRouteToSourceMap(ConcurrentHashMap<String, String> endpointRouteToSourceMap) {
-        this.endpointRouteToSourceMap = endpointRouteToSourceMap;
+    protected Logger getLogger(){
+        return(LOG);
     }
 
-    public ConcurrentHashMap<String, Instant> getSourceUpdateInstantMap() {
-        return sourceUpdateInstantMap;
+    protected ITOpsSystemWideMetricsHistoryDM getMetricsHistoryDM(){
+        return(metricsHistoryDM);
     }
 
-    public void setSourceUpdateInstantMap(ConcurrentHashMap<String, Instant> sourceUpdateInstantMap) {
-        this.sourceUpdateInstantMap = sourceUpdateInstantMap;
+    protected ITOpsSymbolTable getSymbolTable(){
+        return(symbolTable);
     }
 
-    protected Logger getLogger(){
-        return(LOG);
+    protected MetricSetChangeLog getChangeLog(){
+        return(changeLog);
     }
 
     //
@@ -86,64 +130,471 @@ public class ITOpsSystemWideMetricsDM {
     //
 
     public void addComponentMetricSet(String routingEndpointId, PetasosComponentMetricSet metricsSet){
-        getLogger().debug(".addComponentMetricSet(): Entry, componentID->{}, metricSet->{}", routingEndpointId, metricsSet);
-        if(StringUtils.isEmpty(routingEndpointId) || metricsSet == null){
-            getLogger().debug(".addComponentMetricSet(): Exit, either componentID or metricSet is empty");
-            return;
-        }
-        if(getCurrentStateMetricSetMap().containsKey(metricsSet.getMetricSourceComponentId())){
-             getCurrentStateMetricSetMap().remove(metricsSet.getMetricSourceComponentId());
-        }
-        getCurrentStateMetricSetMap().put(metricsSet.getMetricSourceComponentId().getId(), metricsSet);
-        if(!this.endpointRouteToSourceMap.containsKey(metricsSet.getMetricSourceComponentId())){
-            this.endpointRouteToSourceMap.remove(metricsSet.getMetricSourceComponentId());
+        mergeComponentMetricSet(routingEndpointId, metricsSet);
+    }
+
+    //
+    // Merge-on-Write
+    //
+    // Published PetasosComponentMetricSet instances are never modified: every update builds a new copy and swaps it
+    // into the map atomically, so readers (e.g. the Matrix forwarders) only ever see complete snapshots. Individual
+    // metrics are merged last-writer-wins on their timestamp.
+    //
+
+    public PetasosComponentMetricSet mergeComponentMetricSet(String routingEndpointId, PetasosComponentMetricSet metricsSet){
+        return(mergeComponentMetricSet(routingEndpointId, metricsSet, new long[1]));
+    }
+
+    protected PetasosComponentMetricSet mergeComponentMetricSet(String routingEndpointId, PetasosComponentMetricSet metricsSet, long[] publishedVersion){
+        getLogger().debug(".mergeComponentMetricSet(): Entry, routingEndpointId->{}, metricSet->{}", routingEndpointId, metricsSet);
+        if(StringUtils.isEmpty(routingEndpointId) || metricsSet == null || metricsSet.getMetricSourceComponentId() == null){
+            getLogger().debug(".mergeComponentMetricSet(): Exit, either routingEndpointId or metricSet is empty");
+            return(null);
         }
-        this.endpointRouteToSourceMap.put(metricsSet.getMetricSourceComponentId().getId(), routingEndpointId);
-        if(!this.sourceUpdateInstantMap.containsKey(metricsSet.getMetricSourceComponentId())){
-            this.sourceUpdateInstantMap.remove(metricsSet.getMetricSourceComponentId());
+        int componentSymbolId = getSymbolTable().internComponentId(metricsSet.getMetricSourceComponentId().getId());
+        if(componentSymbolId == ITOpsSymbolTable.UNKNOWN_SYMBOL_ID){
+            getLogger().debug(".mergeComponentMetricSet(): Exit, metricSet has no source component id");
+            return(null);
         }
-        this.sourceUpdateInstantMap.put(metricsSet.getMetricSourceComponentId().getId(), Instant.now());
-        getLogger().debug(".addComponentMetricsSet():Exit");
+        List<PetasosComponentMetric> mergedMetrics = new ArrayList<>();
+        PetasosComponentMetricSet mergedSet = getCurrentStateMetricSetTable().compute(componentSymbolId, (key, currentSet) -> {
+            // The incoming set carries the freshest set-level attributes, so it becomes the base of the new snapshot
+            PetasosComponentMetricSet newSet = SerializationUtils.clone(metricsSet);
+            if(newSet.getMetrics() != null){
+                for(PetasosComponentMetric incomingMetric: newSet.getMetrics().values()){
+                    if(incomingMetric == null){
+                        continue;
+                    }
+                    PetasosComponentMetric cachedMetric = currentSet != null ? currentSet.getMetric(incomingMetric.getMetricName()) : null;
+                    if(cachedMetric == null || !isNewer(cachedMetric, incomingMetric)){
+                        mergedMetrics.add(incomingMetric);
+                    }
+                }
+            }
+            if(currentSet != null && currentSet.getMetrics() != null){
+                for(PetasosComponentMetric currentMetric: currentSet.getMetrics().values()){
+                    PetasosComponentMetric incomingMetric = newSet.getMetric(currentMetric.getMetricName());
+                    if(incomingMetric == null || isNewer(currentMetric, incomingMetric)){
+                        newSet.addMetric(currentMetric);
+                    }
+                }
+            }
+            publishedVersion[0] = nextVersion(key);
+            return(newSet);
+        });
+        publishUpdate(routingEndpointId, componentSymbolId, mergedMetrics);
+        getLogger().debug(".mergeComponentMetricSet(): Exit");
+        return(mergedSet);
     }
 
-    /*
-    public PetasosComponentMetricSet getComponentMetricSetForDisplay(String metricSourceComponentId){
-        getLogger().debug(".getComponentMetricSetForPublishing(): Entry, componentID->{}", metricSourceComponentId);
-        if(getCurrentStateMetricSetMap().containsKey(metricSourceComponentId)){
-            return(new PetasosComponentMetricSet());
+    public PetasosComponentMetricSet mergeComponentMetric(String routingEndpointId, PetasosComponentMetric metric){
+        getLogger().debug(".mergeComponentMetric(): Entry, routingEndpointId->{}, metric->{}", routingEndpointId, metric);
+        int componentSymbolId = resolveMetricComponentSymbolId(routingEndpointId, metric);
+        if(componentSymbolId == ITOpsSymbolTable.UNKNOWN_SYMBOL_ID){
+            getLogger().debug(".mergeComponentMetric(): Exit, either routingEndpointId, metric or its source component id is empty");
+            return(null);
         }
-        PetasosComponentMetricSet currentMetricsSet = getCurrentStateMetricSetMap().get(metricSourceComponentId);
-        PetasosComponentMetricSet publishedMetricsSet = SerializationUtils.clone(currentMetricsSet);
-        getLogger().debug(".getComponentMetricSetForPublishing(): Exit, publishedMetricSet->{}", publishedMetricsSet);
-        return(publishedMetricsSet);
+        PetasosComponentMetricSet mergedSet = mergeComponentMetricGroup(routingEndpointId, componentSymbolId, Collections.singletonList(metric));
+        getLogger().debug(".mergeComponentMetric(): Exit");
+        return(mergedSet);
     }
 
+    /**
+     * Merges a batch of metrics, grouped by their source component so that each component's set is copied, versioned
+     * and published once per batch rather than once per metric.
+     *
+     * @return the merged set of the last component in the batch
      */
+    public PetasosComponentMetricSet mergeComponentMetrics(String routingEndpointId, Collection<PetasosComponentMetric> metrics){
+        getLogger().debug(".mergeComponentMetrics(): Entry, routingEndpointId->{}", routingEndpointId);
+        PetasosComponentMetricSet mergedSet = null;
+        if(metrics == null){
+            getLogger().debug(".mergeComponentMetrics(): Exit, metrics is null");
+            return(null);
+        }
+        // LinkedHashMap<componentSymbolId, metrics>, in the order the components first appear in the batch
+        Map<Integer, List<PetasosComponentMetric>> metricsByComponent = new LinkedHashMap<>();
+        for(PetasosComponentMetric currentMetric: metrics){
+            int componentSymbolId = resolveMetricComponentSymbolId(routingEndpointId, currentMetric);
+            if(componentSymbolId == ITOpsSymbolTable.UNKNOWN_SYMBOL_ID){
+                getLogger().debug(".mergeComponentMetrics(): Ignoring metric, either routingEndpointId, metric or its source component id is empty");
+                continue;
+            }
+            metricsByComponent.computeIfAbsent(componentSymbolId, key -> new ArrayList<>()).add(currentMetric);
+        }
+        for(Map.Entry<Integer, List<PetasosComponentMetric>> currentEntry: metricsByComponent.entrySet()){
+            mergedSet = mergeComponentMetricGroup(routingEndpointId, currentEntry.getKey(), currentEntry.getValue());
+        }
+        getLogger().debug(".mergeComponentMetrics(): Exit, component count->{}", metricsByComponent.size());
+        return(mergedSet);
+    }
 
     public PetasosComponentMetricSet getComponentMetricsSet(String metricSourceComponentId){
         getLogger().debug(".getComponentMetricsSet(): Entry, metricSourceComponentId->{}", metricSourceComponentId);
         if(StringUtils.isEmpty(metricSourceComponentId)){
             return(null);
         }
-        PetasosComponentMetricSet currentState = getCurrentStateMetricSetMap().get(metricSourceComponentId);
+        PetasosComponentMetricSet currentState = getCurrentStateMetricSetTable().get(getSymbolTable().lookupComponentId(metricSourceComponentId));
         getLogger().debug(".getComponentMetricsSet(): Exit, currentState->{}", currentState);
         return(currentState);
     }
 
-    public List<PetasosComponentMetricSet> getUpdatedMetricSets(){
-        List<PetasosComponentMetricSet> currentStateMetricsSets = new ArrayList<>();
-        if(currentStateMetricSetMap.isEmpty()){
-            return(currentStateMetricsSets);
+    public List<PetasosComponentMetricSet> getAllComponentMetricSets(){
+        return(getCurrentStateMetricSetTable().getValues());
+    }
+
+    public List<MetricSetCaptureOutcome> mergeComponentMetricSets(String routingEndpointId, List<PetasosComponentMetricSet> metricSets){
+        getLogger().debug(".mergeComponentMetricSets(): Entry, routingEndpointId->{}", routingEndpointId);
+        List<MetricSetCaptureOutcome> outcomes = new ArrayList<>();
+        if(metricSets == null){
+            getLogger().debug(".mergeComponentMetricSets(): Exit, metricSets is null");
+            return(outcomes);
+        }
+        long[] publishedVersion = new long[1];
+        for(PetasosComponentMetricSet currentMetricSet: metricSets){
+            if(currentMetricSet == null || currentMetricSet.getMetricSourceComponentId() == null || StringUtils.isEmpty(currentMetricSet.getMetricSourceComponentId().getId())){
+                outcomes.add(new MetricSetCaptureOutcome(null, false, 0L, "Metric set has no source component id"));
+                continue;
+            }
+            String sourceComponentId = currentMetricSet.getMetricSourceComponentId().getId();
+            try {
+                publishedVersion[0] = 0L;
+                PetasosComponentMetricSet mergedSet = mergeComponentMetricSet(routingEndpointId, currentMetricSet, publishedVersion);
+                if (mergedSet != null) {
+                    outcomes.add(new MetricSetCaptureOutcome(sourceComponentId, true, publishedVersion[0], "Merged"));
+                } else {
+                    outcomes.add(new MetricSetCaptureOutcome(sourceComponentId, false, getComponentMetricSetVersion(sourceComponentId), "Rejected"));
+                }
+            } catch(Exception ex){
+                getLogger().warn(".mergeComponentMetricSets(): Could not merge metric set, componentId->{}, message->{}", sourceComponentId, ex.getMessage());
+                outcomes.add(new MetricSetCaptureOutcome(sourceComponentId, false, getComponentMetricSetVersion(sourceComponentId), "Failed: " + ex.getMessage()));
+            }
+        }
+        getLogger().debug(".mergeComponentMetricSets(): Exit, outcome count->{}", outcomes.size());
+        return(outcomes);
+    }
+
+    //
+    // Delta Replication
+    //
+    // A reporting plant sends only the metrics that changed since the version it last had acknowledged. If the
+    // cached set has moved on (or was never seen) the delta is refused and the plant is asked for a full set. The
+    // delta version is kept apart from the set version: single metrics merged in between (which the plant already
+    // knows about, having reported them) move the set version on but must not invalidate the plant's delta chain.
+    //
+
+    public MetricSetDeltaCaptureOutcome mergeComponentMetricSetDelta(String routingEndpointId, PetasosComponentMetricSetDelta delta){
+        getLogger().debug(".mergeComponentMetricSetDelta(): Entry, routingEndpointId->{}, delta->{}", routingEndpointId, delta);
+        MetricSetDeltaCaptureOutcome outcome = new MetricSetDeltaCaptureOutcome();
+        if(StringUtils.isEmpty(routingEndpointId) || delta == null || delta.getMetricSourceComponentId() == null || StringUtils.isEmpty(delta.getMetricSourceComponentId().getId())){
+            getLogger().debug(".mergeComponentMetricSetDelta(): Exit, either routingEndpointId or delta is empty");
+            return(outcome);
+        }
+        int componentSymbolId = getSymbolTable().internComponentId(delta.getMetricSourceComponentId().getId());
+        if(componentSymbolId == ITOpsSymbolTable.UNKNOWN_SYMBOL_ID){
+            getLogger().debug(".mergeComponentMetricSetDelta(): Exit, delta source component could not be registered");
+            return(outcome);
         }
-        Enumeration<String> updateInstanceKeys = sourceUpdateInstantMap.keys();
-        while(updateInstanceKeys.hasMoreElements()){
-            String currentUpdateKey = updateInstanceKeys.nextElement();
-            Instant lastUpdateForSourceId = sourceUpdateInstantMap.get(currentUpdateKey);
-            if(lastUpdateForSourceId.isAfter(lastUpdate)){
-                currentStateMetricsSets.add(currentStateMetricSetMap.get(currentUpdateKey));
+        String sourceComponentId = getSymbolTable().getComponentId(componentSymbolId);
+        outcome.setMetricSourceComponentId(sourceComponentId);
+        long[] deltaVersion = new long[1];
+        boolean[] deltaApplied = new boolean[1];
+        List<PetasosComponentMetric> mergedMetrics = new ArrayList<>();
+        getCurrentStateMetricSetTable().compute(componentSymbolId, (key, currentSet) -> {
+            if(currentSet == null || getComponentDeltaVersion(key) != delta.getBaseVersion()){
+                return(currentSet);
             }
+            PetasosComponentMetricSet newSet = SerializationUtils.clone(currentSet);
+            if(delta.getChangedMetrics() != null) {
+                for (PetasosComponentMetric changedMetric : delta.getChangedMetrics()) {
+                    if (changedMetric == null || StringUtils.isEmpty(changedMetric.getMetricName())) {
+                        continue;
+                    }
+                    PetasosComponentMetric currentMetric = newSet.getMetric(changedMetric.getMetricName());
+                    if (currentMetric == null || !isNewer(currentMetric, changedMetric)) {
+                        newSet.addMetric(changedMetric);
+                        mergedMetrics.add(changedMetric);
+                    }
+                }
+            }
+            if(delta.getReportingInstant() != null){
+                newSet.setReportingInstant(delta.getReportingInstant());
+            } else {
+                newSet.setReportingInstant(Instant.now());
+            }
+            nextVersion(key);
+            deltaVersion[0] = nextDeltaVersion(key);
+            deltaApplied[0] = true;
+            return(newSet);
+        });
+        if(deltaApplied[0]){
+            publishUpdate(routingEndpointId, componentSymbolId, mergedMetrics);
+            outcome.setAccepted(true);
+            outcome.setCurrentVersion(deltaVersion[0]);
+        } else {
+            outcome.setAccepted(false);
+            outcome.setResynchronisationRequired(true);
+            outcome.setCurrentVersion(getComponentDeltaVersion(componentSymbolId));
+        }
+        outcome.setCaptureInstant(Instant.now());
+        getLogger().debug(".mergeComponentMetricSetDelta(): Exit, outcome->{}", outcome);
+        return(outcome);
+    }
+
+    /**
+     * Replaces the component's set with a full set from the reporting plant (rather than merging into it, so metrics
+     * the plant no longer reports are dropped) and starts a new delta chain from it.
+     */
+    public MetricSetDeltaCaptureOutcome mergeComponentMetricSetBaseline(String routingEndpointId, PetasosComponentMetricSet metricsSet){
+        getLogger().debug(".mergeComponentMetricSetBaseline(): Entry, routingEndpointId->{}, metricSet->{}", routingEndpointId, metricsSet);
+        MetricSetDeltaCaptureOutcome outcome = new MetricSetDeltaCaptureOutcome();
+        if(StringUtils.isEmpty(routingEndpointId) || metricsSet == null || metricsSet.getMetricSourceComponentId() == null || StringUtils.isEmpty(metricsSet.getMetricSourceComponentId().getId())){
+            getLogger().debug(".mergeComponentMetricSetBaseline(): Exit, either routingEndpointId or metricSet is empty");
+            return(outcome);
+        }
+        int componentSymbolId = getSymbolTable().internComponentId(metricsSet.getMetricSourceComponentId().getId());
+        if(componentSymbolId == ITOpsSymbolTable.UNKNOWN_SYMBOL_ID){
+            getLogger().debug(".mergeComponentMetricSetBaseline(): Exit, metricSet source component could not be registered");
+            return(outcome);
+        }
+        long[] deltaVersion = new long[1];
+        List<PetasosComponentMetric> mergedMetrics = new ArrayList<>();
+        getCurrentStateMetricSetTable().compute(componentSymbolId, (key, currentSet) -> {
+            PetasosComponentMetricSet newSet = SerializationUtils.clone(metricsSet);
+            if(newSet.getMetrics() != null){
+                for(PetasosComponentMetric baselineMetric: newSet.getMetrics().values()){
+                    if(baselineMetric != null){
+                        mergedMetrics.add(baselineMetric);
+                    }
+                }
+            }
+            nextVersion(key);
+            deltaVersion[0] = nextDeltaVersion(key);
+            return(newSet);
+        });
+        publishUpdate(routingEndpointId, componentSymbolId, mergedMetrics);
+        outcome.setMetricSourceComponentId(getSymbolTable().getComponentId(componentSymbolId));
+        outcome.setAccepted(true);
+        outcome.setCurrentVersion(deltaVersion[0]);
+        outcome.setCaptureInstant(Instant.now());
+        getLogger().debug(".mergeComponentMetricSetBaseline(): Exit, outcome->{}", outcome);
+        return(outcome);
+    }
+
+    public long getComponentMetricSetVersion(String metricSourceComponentId){
+        if(StringUtils.isEmpty(metricSourceComponentId)){
+            return(0L);
+        }
+        return(getComponentMetricSetVersion(getSymbolTable().lookupComponentId(metricSourceComponentId)));
+    }
+
+    protected long getComponentMetricSetVersion(int componentSymbolId){
+        AtomicLong version = metricSetVersionTable.get(componentSymbolId);
+        if(version == null){
+            return(0L);
+        }
+        return(version.get());
+    }
+
+    protected long getComponentDeltaVersion(int componentSymbolId){
+        AtomicLong version = deltaVersionTable.get(componentSymbolId);
+        if(version == null){
+            return(0L);
+        }
+        return(version.get());
+    }
+
+    //
+    // Merge Helpers
+    //
+
+    protected boolean isNewer(PetasosComponentMetric candidate, PetasosComponentMetric reference){
+        if(candidate.getMetricTimestamp() == null || reference.getMetricTimestamp() == null){
+            return(false);
+        }
+        return(candidate.getMetricTimestamp().isAfter(reference.getMetricTimestamp()));
+    }
+
+    protected int resolveMetricComponentSymbolId(String routingEndpointId, PetasosComponentMetric metric){
+        if(StringUtils.isEmpty(routingEndpointId) || metric == null || metric.getMetricSource() == null || StringUtils.isEmpty(metric.getMetricName())){
+            return(ITOpsSymbolTable.UNKNOWN_SYMBOL_ID);
+        }
+        return(getSymbolTable().internComponentId(metric.getMetricSource().getId()));
+    }
+
+    /**
+     * Applies metrics (all from the same source component) to that component's set, last-writer-wins per metric. The
+     * published set is copied at most once, and only if at least one metric is newer than the cached value.
+     */
+    protected PetasosComponentMetricSet mergeComponentMetricGroup(String routingEndpointId, int componentSymbolId, List<PetasosComponentMetric> metrics){
+        List<PetasosComponentMetric> mergedMetrics = new ArrayList<>();
+        PetasosComponentMetricSet mergedSet = getCurrentStateMetricSetTable().compute(componentSymbolId, (key, currentSet) -> {
+            PetasosComponentMetricSet newSet = null;
+            for(PetasosComponentMetric currentMetric: metrics){
+                PetasosComponentMetricSet latestSet = newSet != null ? newSet : currentSet;
+                if(latestSet != null){
+                    PetasosComponentMetric cachedMetric = latestSet.getMetric(currentMetric.getMetricName());
+                    if(cachedMetric != null && isNewer(cachedMetric, currentMetric)){
+                        continue;
+                    }
+                }
+                if(newSet == null){
+                    if(currentSet == null){
+                        // First contact with this component, start a new set for it
+                        newSet = new PetasosComponentMetricSet();
+                        newSet.setMetricSourceComponentId(currentMetric.getMetricSource());
+                    } else {
+                        newSet = SerializationUtils.clone(currentSet);
+                    }
+                }
+                newSet.addMetric(currentMetric);
+                mergedMetrics.add(currentMetric);
+                if(currentMetric.getMetricTimestamp() != null){
+                    newSet.setReportingInstant(currentMetric.getMetricTimestamp());
+                } else {
+                    newSet.setReportingInstant(Instant.now());
+                }
+            }
+            if(newSet == null){
+                return(currentSet);
+            }
+            nextVersion(key);
+            return(newSet);
+        });
+        if(!mergedMetrics.isEmpty()){
+            publishUpdate(routingEndpointId, componentSymbolId, mergedMetrics);
+        } else {
+            getLogger().debug(".mergeComponentMetricGroup(): Metric(s) older than the cached value(s), ignored");
+        }
+        return(mergedSet);
+    }
+
+    protected long nextVersion(int componentSymbolId){
+        AtomicLong version = metricSetVersionTable.computeIfAbsent(componentSymbolId, key -> new AtomicLong(0L));
+        return(version.incrementAndGet());
+    }
+
+    protected long nextDeltaVersion(int componentSymbolId){
+        AtomicLong version = deltaVersionTable.computeIfAbsent(componentSymbolId, key -> new AtomicLong(0L));
+        return(version.incrementAndGet());
+    }
+
+    /**
+     * Announces a new published set for the component. Only the metrics that actually merged (won last-writer-wins)
+     * are passed to the history, each as a sample at its own timestamp, so unchanged metrics carried over from the
+     * previous set are not recorded again.
+     */
+    protected void publishUpdate(String routingEndpointId, int componentSymbolId, List<PetasosComponentMetric> mergedMetrics){
+        this.endpointRouteToSourceTable.put(componentSymbolId, getSymbolTable().canonicaliseComponentId(routingEndpointId));
+        this.sourceUpdateInstantTable.put(componentSymbolId, Instant.now());
+        getChangeLog().append(componentSymbolId);
+        signalChange();
+        getMetricsHistoryDM().recordMetrics(componentSymbolId, mergedMetrics);
+    }
+
+    //
+    // Change Subscriptions
+    //
+
+    public MetricSetChangeSubscription registerChangeSubscription(String consumerName, int maxBatchSize){
+        getLogger().debug(".registerChangeSubscription(): Entry, consumerName->{}, maxBatchSize->{}", consumerName, maxBatchSize);
+        if(StringUtils.isEmpty(consumerName)){
+            getLogger().debug(".registerChangeSubscription(): Exit, consumerName is empty");
+            return(null);
+        }
+        MetricSetChangeSubscription subscription = changeSubscriptions.computeIfAbsent(consumerName,
+                key -> new MetricSetChangeSubscription(key, maxBatchSize, maxBatchSize * SUBSCRIPTION_BACKLOG_BATCH_MULTIPLIER, getChangeLog().getHeadSequence()));
+        getLogger().debug(".registerChangeSubscription(): Exit, subscription->{}", subscription);
+        return(subscription);
+    }
+
+    public void unregisterChangeSubscription(String consumerName){
+        if(StringUtils.isEmpty(consumerName)){
+            return;
+        }
+        changeSubscriptions.remove(consumerName);
+    }
+
+    public MetricSetChangeSubscription getChangeSubscription(String consumerName){
+        if(StringUtils.isEmpty(consumerName)){
+            return(null);
+        }
+        return(changeSubscriptions.get(consumerName));
+    }
+
+    public Set<String> getChangeSubscriptionNames(){
+        Set<String> subscriptionNames = new HashSet<>(changeSubscriptions.keySet());
+        return(subscriptionNames);
+    }
+
+    public List<PetasosComponentMetricSet> getNextChangeBatch(MetricSetChangeSubscription subscription){
+        List<PetasosComponentMetricSet> updatedMetricSets = new ArrayList<>();
+        if(subscription == null){
+            return(updatedMetricSets);
+        }
+        List<Integer> changedComponentIds = subscription.nextBatch(getChangeLog(), getCurrentStateMetricSetTable());
+        for(Integer currentComponentId: changedComponentIds){
+            PetasosComponentMetricSet currentMetricSet = getCurrentStateMetricSetTable().get(currentComponentId);
+            if(currentMetricSet != null){
+                updatedMetricSets.add(currentMetricSet);
+            }
+        }
+        getLogger().debug(".getNextChangeBatch(): consumerName->{}, batchSize->{}", subscription.getConsumerName(), updatedMetricSets.size());
+        return(updatedMetricSets);
+    }
+
+    public boolean hasPendingChanges(MetricSetChangeSubscription subscription){
+        if(subscription == null){
+            return(false);
+        }
+        return(subscription.hasPendingChanges(getChangeLog()));
+    }
+
+    /**
+     * Blocks until the subscription has changes to consume, or maximumWaitMillis has passed.
+     *
+     * @return true if changes are pending
+     */
+    public boolean awaitChanges(MetricSetChangeSubscription subscription, long maximumWaitMillis) throws InterruptedException {
+        if(subscription == null){
+            return(false);
+        }
+        if(hasPendingChanges(subscription)){
+            return(true);
+        }
+        changeSignalLock.lockInterruptibly();
+        changeWaiterCount.incrementAndGet();
+        try {
+            long remainingNanos = TimeUnit.MILLISECONDS.toNanos(maximumWaitMillis);
+            while(!hasPendingChanges(subscription)){
+                if(remainingNanos <= 0L){
+                    return(false);
+                }
+                remainingNanos = changeSignal.awaitNanos(remainingNanos);
+            }
+            return(true);
+        } finally {
+            changeWaiterCount.decrementAndGet();
+            changeSignalLock.unlock();
+        }
+    }
+
+    protected void signalChange(){
+        if(changeWaiterCount.get() == 0){
+            return;
+        }
+        changeSignalLock.lock();
+        try {
+            changeSignal.signalAll();
+        } finally {
+            changeSignalLock.unlock();
+        }
+    }
+
+    public long getChangeSubscriptionLag(MetricSetChangeSubscription subscription){
+        if(subscription == null){
+            return(0L);
         }
-        lastUpdate = Instant.now();
-        return(currentStateMetricsSets);
+        return(subscription.getLag(getChangeLog()));
     }
 }
@@ -0,0 +1,327 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.workshops.datagrid;
+
+import net.fhirfactory.pegacorn.core.model.petasos.oam.metrics.reporting.PetasosComponentMetric;
+import net.fhirfactory.pegacorn.itops.im.datatypes.MetricHistorySample;
+import net.fhirfactory.pegacorn.itops.im.datatypes.MetricRollupSample;
+import net.fhirfactory.pegacorn.itops.im.valuesets.CompactMetricValueTypeEnum;
+import net.fhirfactory.pegacorn.itops.im.valuesets.MetricRollupIntervalEnum;
+import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.metrics.CompactMetricValueCodec;
+import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.metrics.MetricSampleRingBuffer;
+import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.symbols.DenseIdTable;
+import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.symbols.ITOpsSymbolTable;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+
+@ApplicationScoped
+public class ITOpsSystemWideMetricsHistoryDM {
+    private static final Logger LOG = LoggerFactory.getLogger(ITOpsSystemWideMetricsHistoryDM.class);
+
+    private static final int RAW_SAMPLE_CAPACITY = 120;
+    private static final int MAXIMUM_SERIES_COUNT = 16384;
+    // Eviction frees series down to this, so the next scan is only needed after this many more new series
+    private static final int SERIES_EVICTION_LOW_WATER_MARK = MAXIMUM_SERIES_COUNT - MAXIMUM_SERIES_COUNT / 8;
+    private static final int MAXIMUM_METRICS_PER_COMPONENT = 64;
+    private static final int COMPONENT_HISTORY_PAGE_SHIFT = 5;
+
+    // DenseIdTable<componentSymbolId, DenseIdTable<metricNameId, MetricSampleRingBuffer>>
+    private DenseIdTable<DenseIdTable<MetricSampleRingBuffer>> componentHistoryTable;
+    private AtomicInteger seriesCount;
+    private AtomicLong rejectedSampleCount;
+    private Object evictionLock;
+    private List<IntConsumer> componentRetirementObservers;
+
+    @Inject
+    private ITOpsSymbolTable symbolTable;
+
+    //
+    // Constructor(s)
+    //
+
+    public ITOpsSystemWideMetricsHistoryDM(){
+        this.componentHistoryTable = new DenseIdTable<>();
+        this.seriesCount = new AtomicInteger(0);
+        this.rejectedSampleCount = new AtomicLong(0);
+        this.evictionLock = new Object();
+        this.componentRetirementObservers = new CopyOnWriteArrayList<>();
+    }
+
+    //
+    // Getters (and Setters)
+    //
+
+    protected Logger getLogger(){
+        return(LOG);
+    }
+
+    protected ITOpsSymbolTable getSymbolTable(){
+        return(symbolTable);
+    }
+
+    public int getSeriesCount(){
+        return(seriesCount.get());
+    }
+
+    public long getRejectedSampleCount(){
+        return(rejectedSampleCount.get());
+    }
+
+    /**
+     * Registers a callback, given the component's symbol id, for each component retired via removeComponentHistory(),
+     * so that per-component state held elsewhere can be retired with it. A history evicted to make room for newer
+     * series is not a retirement, the component is still live, so observers are not told about it.
+     */
+    public void addComponentRetirementObserver(IntConsumer observer){
+        if(observer != null){
+            componentRetirementObservers.add(observer);
+        }
+    }
+
+    //
+    // Ingest
+    //
+
+    /**
+     * Records the numeric metrics that have just been merged into a component's published set, each as a sample at
+     * its own timestamp (metrics without one are stamped with the time they arrived).
+     */
+    public void recordMetrics(int componentSymbolId, Collection<PetasosComponentMetric> metrics){
+        if(metrics == null || metrics.isEmpty() || componentSymbolId == ITOpsSymbolTable.UNKNOWN_SYMBOL_ID){
+            return;
+        }
+        long arrivalInstant = System.currentTimeMillis();
+        DenseIdTable<MetricSampleRingBuffer> componentHistory = componentHistoryTable.computeIfAbsent(componentSymbolId,
+                key -> new DenseIdTable<>(COMPONENT_HISTORY_PAGE_SHIFT));
+        for(PetasosComponentMetric currentMetric: metrics){
+            if(currentMetric == null){
+                continue;
+            }
+            long sampleInstant = currentMetric.getMetricTimestamp() != null ? currentMetric.getMetricTimestamp().toEpochMilli() : arrivalInstant;
+            recordMetric(componentSymbolId, componentHistory, currentMetric, sampleInstant);
+        }
+    }
+
+    protected void recordMetric(int componentSymbolId, DenseIdTable<MetricSampleRingBuffer> componentHistory, PetasosComponentMetric metric, long sampleInstant){
+        if(metric == null){
+            return;
+        }
+        CompactMetricValueTypeEnum valueType = CompactMetricValueCodec.resolveValueType(metric.getMetricValue());
+        if(!valueType.isNumeric() || valueType == CompactMetricValueTypeEnum.METRIC_VALUE_TYPE_INSTANT){
+            // Only numeric metrics have a history, and min/avg/max rollups of timestamps mean nothing
+            return;
+        }
+        int metricNameId = getSymbolTable().internMetricName(metric.getMetricName());
+        if(metricNameId == ITOpsSymbolTable.UNKNOWN_SYMBOL_ID){
+            return;
+        }
+        MetricSampleRingBuffer ringBuffer = componentHistory.get(metricNameId);
+        if(ringBuffer == null){
+            ringBuffer = newSeries(componentSymbolId, componentHistory, metricNameId, valueType.isIntegral());
+            if(ringBuffer == null){
+                rejectedSampleCount.incrementAndGet();
+                return;
+            }
+        }
+        long valueSlot = CompactMetricValueCodec.encodeValueSlot(valueType, metric.getMetricValue());
+        if(valueType.isIntegral()){
+            ringBuffer.addSample(sampleInstant, valueSlot);
+        } else {
+            ringBuffer.addSample(sampleInstant, CompactMetricValueCodec.decodeAsDouble(valueType, valueSlot));
+        }
+    }
+
+    //
+    // Queries
+    //
+
+    public Set<String> getComponentIds(){
+        Set<String> componentIds = new HashSet<>();
+        componentHistoryTable.forEach((componentSymbolId, componentHistory) -> componentIds.add(getSymbolTable().getComponentId(componentSymbolId)));
+        return(componentIds);
+    }
+
+    public Set<String> getMetricNames(String componentId){
+        Set<String> metricNames = new HashSet<>();
+        DenseIdTable<MetricSampleRingBuffer> componentHistory = componentHistoryTable.get(getSymbolTable().lookupComponentId(componentId));
+        if(componentHistory != null){
+            componentHistory.forEach((metricNameId, ringBuffer) -> metricNames.add(getSymbolTable().getMetricName(metricNameId)));
+        }
+        return(metricNames);
+    }
+
+    public List<MetricHistorySample> getMetricHistory(String componentId, String metricName, Instant fromInstant, Instant toInstant){
+        getLogger().debug(".getMetricHistory(): Entry, componentId->{}, metricName->{}, fromInstant->{}, toInstant->{}", componentId, metricName, fromInstant, toInstant);
+        MetricSampleRingBuffer ringBuffer = getRingBuffer(componentId, metricName);
+        if(ringBuffer == null){
+            getLogger().debug(".getMetricHistory(): Exit, no history for metric");
+            return(new ArrayList<>());
+        }
+        List<MetricHistorySample> samples = ringBuffer.getSamples(toEpochMilli(fromInstant, Long.MIN_VALUE), toEpochMilli(toInstant, Long.MAX_VALUE));
+        getLogger().debug(".getMetricHistory(): Exit, sample count->{}", samples.size());
+        return(samples);
+    }
+
+    public List<MetricRollupSample> getMetricRollups(String componentId, String metricName, MetricRollupIntervalEnum rollupInterval, Instant fromInstant, Instant toInstant){
+        getLogger().debug(".getMetricRollups(): Entry, componentId->{}, metricName->{}, rollupInterval->{}", componentId, metricName, rollupInterval);
+        MetricSampleRingBuffer ringBuffer = getRingBuffer(componentId, metricName);
+        if(ringBuffer == null || rollupInterval == null){
+            getLogger().debug(".getMetricRollups(): Exit, no history for metric");
+            return(new ArrayList<>());
+        }
+        List<MetricRollupSample> rollups = ringBuffer.getRollups(rollupInterval, toEpochMilli(fromInstant, Long.MIN_VALUE), toEpochMilli(toInstant, Long.MAX_VALUE));
+        getLogger().debug(".getMetricRollups(): Exit, rollup count->{}", rollups.size());
+        return(rollups);
+    }
+
+    public void removeComponentHistory(String componentId){
+        if(StringUtils.isEmpty(componentId)){
+            return;
+        }
+        removeComponentHistory(getSymbolTable().lookupComponentId(componentId));
+    }
+
+    protected void removeComponentHistory(int componentSymbolId){
+        if(componentSymbolId == ITOpsSymbolTable.UNKNOWN_SYMBOL_ID){
+            return;
+        }
+        if(detachComponentHistory(componentSymbolId)){
+            for(IntConsumer currentObserver: componentRetirementObservers){
+                currentObserver.accept(componentSymbolId);
+            }
+        }
+    }
+
+    //
+    // Helpers
+    //
+
+    protected MetricSampleRingBuffer getRingBuffer(String componentId, String metricName){
+        if(StringUtils.isEmpty(componentId) || StringUtils.isEmpty(metricName)){
+            return(null);
+        }
+        int metricNameId = getSymbolTable().lookupMetricName(metricName);
+        int componentSymbolId = getSymbolTable().lookupComponentId(componentId);
+        if(metricNameId == ITOpsSymbolTable.UNKNOWN_SYMBOL_ID || componentSymbolId == ITOpsSymbolTable.UNKNOWN_SYMBOL_ID){
+            return(null);
+        }
+        DenseIdTable<MetricSampleRingBuffer> componentHistory = componentHistoryTable.get(componentSymbolId);
+        if(componentHistory == null){
+            return(null);
+        }
+        return(componentHistory.get(metricNameId));
+    }
+
+    private boolean detachComponentHistory(int componentSymbolId){
+        if(componentHistoryTable.get(componentSymbolId) == null){
+            return(false);
+        }
+        boolean[] removed = new boolean[]{false};
+        // Removed under the component's lock, so newSeries() cannot add to this history after it has been counted out
+        componentHistoryTable.compute(componentSymbolId, (key, currentHistory) -> {
+            if(currentHistory != null){
+                seriesCount.addAndGet(-currentHistory.size());
+                removed[0] = true;
+            }
+            return(null);
+        });
+        return(removed[0]);
+    }
+
+    protected MetricSampleRingBuffer newSeries(int componentSymbolId, DenseIdTable<MetricSampleRingBuffer> componentHistory, int metricNameId, boolean integral){
+        if(componentHistory.size() >= MAXIMUM_METRICS_PER_COMPONENT){
+            return(null);
+        }
+        if(seriesCount.get() >= MAXIMUM_SERIES_COUNT){
+            evictStalestComponents();
+            if(seriesCount.get() >= MAXIMUM_SERIES_COUNT){
+                return(null);
+            }
+        }
+        MetricSampleRingBuffer[] ringBuffer = new MetricSampleRingBuffer[1];
+        componentHistoryTable.compute(componentSymbolId, (key, currentHistory) -> {
+            // If the history was evicted since it was looked up, leave it detached (and uncounted) and drop the sample
+            if(currentHistory == componentHistory){
+                ringBuffer[0] = componentHistory.computeIfAbsent(metricNameId, metricKey -> {
+                    seriesCount.incrementAndGet();
+                    return(new MetricSampleRingBuffer(RAW_SAMPLE_CAPACITY, integral));
+                });
+            }
+            return(currentHistory);
+        });
+        return(ringBuffer[0]);
+    }
+
+    /**
+     * Evicts the histories with the oldest last samples until the series count is back down to the low-water mark,
+     * so that a full table costs one scan per batch of new series rather than one per new series.
+     */
+    protected void evictStalestComponents(){
+        synchronized (evictionLock){
+            if(seriesCount.get() < MAXIMUM_SERIES_COUNT){
+                return;
+            }
+            List<long[]> candidates = new ArrayList<>();
+            componentHistoryTable.forEach((componentSymbolId, componentHistory) -> {
+                long[] lastSampleInstant = new long[]{0L};
+                componentHistory.forEach((metricNameId, ringBuffer) -> lastSampleInstant[0] = Math.max(lastSampleInstant[0], ringBuffer.getLastSampleInstant()));
+                // An empty history holds no series, so evicting it would free nothing
+                if(componentHistory.isEmpty() || lastSampleInstant[0] == 0L){
+                    return;
+                }
+                candidates.add(new long[]{lastSampleInstant[0], componentSymbolId});
+            });
+            candidates.sort((first, second) -> Long.compare(first[0], second[0]));
+            int evictedCount = 0;
+            for(long[] currentCandidate: candidates){
+                if(seriesCount.get() <= SERIES_EVICTION_LOW_WATER_MARK){
+                    break;
+                }
+                if(detachComponentHistory((int)currentCandidate[1])){
+                    evictedCount += 1;
+                }
+            }
+            getLogger().warn(".evictStalestComponents(): History capacity reached, evictedComponents->{}, seriesCount->{}", evictedCount, seriesCount.get());
+        }
+    }
+
+    private long toEpochMilli(Instant instant, long defaultValue){
+        if(instant == null){
+            return(defaultValue);
+        }
+        return(instant.toEpochMilli());
+    }
+}
@@ -23,62 +23,79 @@ package net.fhirfactory.pegacorn.itops.im.workshops.datagrid;
 
 import net.fhirfactory.pegacorn.core.model.petasos.oam.subscriptions.reporting.PetasosProcessingPlantSubscriptionSummary;
 import net.fhirfactory.pegacorn.core.model.petasos.oam.subscriptions.reporting.PetasosWorkUnitProcessorSubscriptionSummary;
+import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.symbols.DenseIdTable;
+import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.symbols.ITOpsSymbolTable;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
 
 @ApplicationScoped
 public class ITOpsSystemWideSubscriptionMapDM {
     private static final Logger LOG = LoggerFactory.getLogger(ITOpsSystemWideSubscriptionMapDM.class);
 
-    // ConcurrentHashMap<componentID, ProcessingPlantSubscriptionSummary>
-    private ConcurrentHashMap<String, PetasosProcessingPlantSubscriptionSummary> processingPlantSubscriptionSummarySet;
-    // ConcurrentHashMap<componentID, WorkUnitProcessorSubscriptionSummary>
-    private ConcurrentHashMap<String, PetasosWorkUnitProcessorSubscriptionSummary> workUnitProcessorSubscriptionSummarySet;
+    // DenseIdTable<componentID (symbol id), ProcessingPlantSubscriptionSummary>
+    private DenseIdTable<PetasosProcessingPlantSubscriptionSummary> processingPlantSubscriptionSummarySet;
+    // DenseIdTable<componentID (symbol id), WorkUnitProcessorSubscriptionSummary>
+    private DenseIdTable<PetasosWorkUnitProcessorSubscriptionSummary> workUnitProcessorSubscriptionSummarySet;
     private Object publisherSubscriptionMapLock;
     private boolean updated;
 
+    @Inject
+    private ITOpsSymbolTable symbolTable;
+
     public ITOpsSystemWideSubscriptionMapDM(){
-        this.processingPlantSubscriptionSummarySet = new ConcurrentHashMap<>();
-        this.workUnitProcessorSubscriptionSummarySet = new ConcurrentHashMap<>();
+        this.processingPlantSubscriptionSummarySet = new DenseIdTable<>();
+        this.workUnitProcessorSubscriptionSummarySet = new DenseIdTable<>();
         this.publisherSubscriptionMapLock = new Object();
     }
 
+    protected ITOpsSymbolTable getSymbolTable(){
+        return(symbolTable);
+    }
+
     //
     // Publisher Subscription Traceability
     //
 
     public void addProcessingPlantSubscriptionSummary(PetasosProcessingPlantSubscriptionSummary summary){
         LOG.debug(".addProcessingPlantSubscriptionSummary(): Entry, summary->{}", summary);
+        int componentSymbolId = getSymbolTable().internComponentId(summary.getComponentID().getId());
+        if(componentSymbolId == ITOpsSymbolTable.UNKNOWN_SYMBOL_ID){
+            LOG.debug(".addProcessingPlantSubscriptionSummary(): Exit, summary component could not be registered");
+            return;
+        }
         synchronized (publisherSubscriptionMapLock) {
-			if (processingPlantSubscriptionSummarySet.containsKey(summary.getComponentID().getId())) {
+			if (processingPlantSubscriptionSummarySet.containsId(componentSymbolId)) {
 				LOG.debug(".addProcessingPlantSubscriptionSummary(): Summary is NOT unique, summary->{}", summary);
-				processingPlantSubscriptionSummarySet.remove(summary.getComponentID().getId());
 			} else {
             	 LOG.debug(".addProcessingPlantSubscriptionSummary(): Summary is unique, summary->{}", summary);
             	updated = true;
             }
-            processingPlantSubscriptionSummarySet.put(summary.getComponentID().getId(), summary);
+            processingPlantSubscriptionSummarySet.put(componentSymbolId, summary);
         }
         LOG.debug(".addProcessingPlantSubscriptionSummary(): Exit");
     }
 
     public void addWorkUnitProcessorSubscriptionSummary(PetasosWorkUnitProcessorSubscriptionSummary summary){
         LOG.debug(".addWorkUnitProcessorSubscriptionSummary(): Entry, summary->{}", summary);
+        int componentSymbolId = getSymbolTable().internComponentId(summary.getComponentID().getId());
+        if(componentSymbolId == ITOpsSymbolTable.UNKNOWN_SYMBOL_ID){
+            LOG.debug(".addWorkUnitProcessorSubscriptionSummary(): Exit, summary component could not be registered");
+            return;
+        }
         synchronized (publisherSubscriptionMapLock) {
-            if (workUnitProcessorSubscriptionSummarySet.containsKey(summary.getComponentID().getId())) {
+            if (workUnitProcessorSubscriptionSummarySet.containsId(componentSymbolId)) {
            	 	LOG.debug(".addWorkUnitProcessorSubscriptionSummary(): Summary is NOT unique, summary->{}", summary);
-                workUnitProcessorSubscriptionSummarySet.remove(summary.getComponentID().getId());
             } else {
            	 	LOG.debug(".addWorkUnitProcessorSubscriptionSummary(): Summary is unique, summary->{}", summary);
             	updated = true;
             }
-            workUnitProcessorSubscriptionSummarySet.put(summary.getComponentID().getId(), summary);
+            workUnitProcessorSubscriptionSummarySet.put(componentSymbolId, summary);
         }
         LOG.debug(".addWorkUnitProcessorSubscriptionSummary(): Exit" );
     }
@@ -90,9 +107,10 @@ public class ITOpsSystemWideSubscriptionMapDM {
             return(null);
         }
         PetasosProcessingPlantSubscriptionSummary summary = null;
+        int componentSymbolId = getSymbolTable().lookupComponentId(componentID);
         synchronized (publisherSubscriptionMapLock) {
-            if (processingPlantSubscriptionSummarySet.containsKey(componentID)) {
-                summary = processingPlantSubscriptionSummarySet.get(componentID);
+            if (processingPlantSubscriptionSummarySet.containsId(componentSymbolId)) {
+                summary = processingPlantSubscriptionSummarySet.get(componentSymbolId);
             } else {
                 LOG.debug(".getProcessingPlantPubSubReport(): Cannot find processing plant with given componentID");
             }
@@ -106,9 +124,10 @@ public class ITOpsSystemWideSubscriptionMapDM {
             return(null);
         }
         PetasosWorkUnitProcessorSubscriptionSummary summary = null;
+        int componentSymbolId = getSymbolTable().lookupComponentId(componentID);
         synchronized (publisherSubscriptionMapLock) {
-            if (workUnitProcessorSubscriptionSummarySet.containsKey(componentID)) {
-                summary = workUnitProcessorSubscriptionSummarySet.get(componentID);
+            if (workUnitProcessorSubscriptionSummarySet.containsId(componentSymbolId)) {
+                summary = workUnitProcessorSubscriptionSummarySet.get(componentSymbolId);
             }
         }
         LOG.debug(".getWorkUnitProcessorPubSubReport(): Exit, summary->{}", summary);
@@ -118,7 +137,7 @@ public class ITOpsSystemWideSubscriptionMapDM {
     public List<PetasosProcessingPlantSubscriptionSummary> getProcessingPlantSubscriptionSummaries(){
         List<PetasosProcessingPlantSubscriptionSummary> subscriptionReportList = new ArrayList<>();
         synchronized (publisherSubscriptionMapLock) {
-            subscriptionReportList.addAll(processingPlantSubscriptionSummarySet.values());
+            subscriptionReportList.addAll(processingPlantSubscriptionSummarySet.getValues());
         }
         return(subscriptionReportList);
     }
@@ -126,7 +145,7 @@ public class ITOpsSystemWideSubscriptionMapDM {
     public List<PetasosWorkUnitProcessorSubscriptionSummary> getWorkUnitProcessorSubscriptionSummaries(){
         List<PetasosWorkUnitProcessorSubscriptionSummary> subscriptionReportList = new ArrayList<>();
         synchronized(publisherSubscriptionMapLock){
-            subscriptionReportList.addAll(workUnitProcessorSubscriptionSummarySet.values());
+            subscriptionReportList.addAll(workUnitProcessorSubscriptionSummarySet.getValues());
         }
         return(subscriptionReportList);
     }
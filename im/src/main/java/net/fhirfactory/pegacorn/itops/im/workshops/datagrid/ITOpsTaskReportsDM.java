@@ -22,29 +22,40 @@
 package net.fhirfactory.pegacorn.itops.im.workshops.datagrid;
 
 import net.fhirfactory.pegacorn.core.model.petasos.oam.notifications.PetasosComponentITOpsNotification;
+import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.notifications.ITOpsNotificationPriorityQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.enterprise.context.ApplicationScoped;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
 
 @ApplicationScoped
 public class ITOpsTaskReportsDM {
+    private static final Logger LOG = LoggerFactory.getLogger(ITOpsTaskReportsDM.class);
 
-    Queue<PetasosComponentITOpsNotification> taskReportQueue;
+    private static final int FAILURE_TASKREPORT_CAPACITY = 2000;
+    private static final int NORMAL_TASKREPORT_CAPACITY = 2000;
+    private static final int SUCCESS_TASKREPORT_CAPACITY = 2000;
+    private static final long DROP_WARNING_INTERVAL = 1000L;
+
+    private ITOpsNotificationPriorityQueue taskReportQueue;
 
     //
     // Constructor(s)
     //
 
     public ITOpsTaskReportsDM(){
-        this.taskReportQueue = new ConcurrentLinkedQueue<>();
+        this.taskReportQueue = new ITOpsNotificationPriorityQueue("ITOpsTaskReportsDM", FAILURE_TASKREPORT_CAPACITY, NORMAL_TASKREPORT_CAPACITY, SUCCESS_TASKREPORT_CAPACITY);
     }
 
     //
     // Getters and Setters
     //
 
-    public Queue<PetasosComponentITOpsNotification> getTaskReportQueue() {
+    protected Logger getLogger(){
+        return(LOG);
+    }
+
+    public ITOpsNotificationPriorityQueue getTaskReportQueue() {
         return taskReportQueue;
     }
 
@@ -56,19 +67,44 @@ public class ITOpsTaskReportsDM {
         if(notification == null){
             return;
         }
-        getTaskReportQueue().add(notification);
+        if(getTaskReportQueue().offer(notification).isLossy()){
+            warnIfDropping(ITOpsNotificationPriorityQueue.getPriorityClass(notification));
+        }
     }
 
-    public PetasosComponentITOpsNotification getNextTaskReport(){
-        if(getTaskReportQueue().isEmpty()){
-            return(null);
+    /**
+     * Puts back a task report that could not be forwarded yet (it is not sampled a second time).
+     */
+    public void requeueTaskReport(PetasosComponentITOpsNotification notification){
+        if(notification == null){
+            return;
+        }
+        if(getTaskReportQueue().requeue(notification).isLossy()){
+            warnIfDropping(ITOpsNotificationPriorityQueue.getPriorityClass(notification));
         }
+    }
+
+    public PetasosComponentITOpsNotification getNextTaskReport(){
         PetasosComponentITOpsNotification nextTaskReport = getTaskReportQueue().poll();
         return(nextTaskReport);
     }
 
+    /**
+     * Blocks the forwarder until there are task reports to forward, see ITOpsNotificationPriorityQueue.awaitReady().
+     */
+    public boolean awaitTaskReports(long maximumWaitMillis, long lingerMillis, int batchSize) throws InterruptedException {
+        return(getTaskReportQueue().awaitReady(maximumWaitMillis, lingerMillis, batchSize));
+    }
+
     public boolean hasMoreTaskReports(){
         boolean hasMore = (getTaskReportQueue().isEmpty() != true);
         return(hasMore);
     }
+
+    private void warnIfDropping(int priorityClass){
+        long droppedCount = getTaskReportQueue().getDroppedCount(priorityClass);
+        if(droppedCount > 0 && droppedCount % DROP_WARNING_INTERVAL == 1){
+            getLogger().warn(".warnIfDropping(): TaskReport queue saturated, dropping, priorityClass->{}, queue->{}", priorityClass, getTaskReportQueue());
+        }
+    }
 }
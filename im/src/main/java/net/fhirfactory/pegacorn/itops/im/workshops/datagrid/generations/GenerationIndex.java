@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.workshops.datagrid.generations;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A secondary index of keys by the generation (a monotonically increasing epoch) at which they were first added to
+ * their owning cache. A consumer that remembers the last generation it has seen can ask for everything added since,
+ * at a cost proportional to the number of additions rather than to the size of the cache. Writers must serialise
+ * stamp() and remove() under the owning cache's write lock (so generations enter the index in order); readers
+ * need no lock.
+ */
+public class GenerationIndex<K> {
+    public static final long NO_GENERATION = 0L;
+
+    private final AtomicLong generationCounter;
+    // ConcurrentSkipListMap<generation, key>
+    private final ConcurrentSkipListMap<Long, K> addedIndex;
+
+    //
+    // Constructor(s)
+    //
+
+    public GenerationIndex(){
+        this.generationCounter = new AtomicLong(NO_GENERATION);
+        this.addedIndex = new ConcurrentSkipListMap<>();
+    }
+
+    //
+    // Getters
+    //
+
+    public long getCurrentGeneration(){
+        return(generationCounter.get());
+    }
+
+    public int size(){
+        return(addedIndex.size());
+    }
+
+    //
+    // Business Methods
+    //
+
+    /**
+     * The generation the next stamp() will return (the caller holds the owning cache's write lock), so that a cache
+     * can build its entry with the generation before publishing the entry and only then stamp it.
+     */
+    public long peekNextGeneration(){
+        return(generationCounter.get() + 1);
+    }
+
+    /**
+     * Records the addition of a key (the caller holds the owning cache's write lock).
+     *
+     * @return the generation the key was added at
+     */
+    public long stamp(K key){
+        long generation = generationCounter.incrementAndGet();
+        addedIndex.put(generation, key);
+        return(generation);
+    }
+
+    /**
+     * Drops the entry made by stamp() (the caller holds the owning cache's write lock).
+     */
+    public void remove(long generation){
+        if(generation == NO_GENERATION){
+            return;
+        }
+        addedIndex.remove(generation);
+    }
+
+    /**
+     * Collects the keys added after the given generation (and still present), oldest first.
+     *
+     * @return the generation of the last key collected, or afterGeneration if nothing has been added since
+     */
+    public long collectAddedAfter(long afterGeneration, Collection<K> keys){
+        long lastGeneration = afterGeneration;
+        for(Map.Entry<Long, K> currentEntry: addedIndex.tailMap(afterGeneration, false).entrySet()){
+            keys.add(currentEntry.getValue());
+            lastGeneration = currentEntry.getKey();
+        }
+        return(lastGeneration);
+    }
+
+    //
+    // To String
+    //
+
+    @Override
+    public String toString() {
+        return "GenerationIndex{" +
+                "currentGeneration=" + generationCounter.get() +
+                ", size=" + addedIndex.size() +
+                '}';
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.workshops.datagrid.metrics;
+
+import net.fhirfactory.pegacorn.core.constants.petasos.PetasosPropertyConstants;
+import net.fhirfactory.pegacorn.core.model.petasos.oam.metrics.reporting.datatypes.PetasosComponentMetricValue;
+import net.fhirfactory.pegacorn.itops.im.valuesets.CompactMetricValueTypeEnum;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Encodes a PetasosComponentMetricValue as a type tag plus a single long slot. Integral values (and Instants, as epoch
+ * millis) are held as-is, floating point values are held as their raw IEEE-754 bits. Only String and other object
+ * values need a reference.
+ *
+ * This is used for the history ring buffers' value slots and for rendering only. It is not a store for metric sets:
+ * ITOpsSystemWideMetricsDM keeps each PetasosComponentMetricSet in full, because that is the type it merges,
+ * snapshots and forwards, and it cannot be rebuilt from the encoded form.
+ */
+public final class CompactMetricValueCodec {
+
+    public static final long EMPTY_VALUE_SLOT = 0L;
+
+    private static final DateTimeFormatter INSTANT_VALUE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd hh:mm:ss").withZone(ZoneId.of(PetasosPropertyConstants.DEFAULT_TIMEZONE));
+    private static final String EMPTY_VALUE_TEXT = "-";
+
+    private CompactMetricValueCodec(){
+    }
+
+    //
+    // Encode
+    //
+
+    public static CompactMetricValueTypeEnum resolveValueType(PetasosComponentMetricValue metricValue){
+        if(metricValue == null){
+            return(CompactMetricValueTypeEnum.METRIC_VALUE_TYPE_NONE);
+        }
+        return(CompactMetricValueTypeEnum.fromObjectType(metricValue.getObjectType()));
+    }
+
+    public static long encodeValueSlot(CompactMetricValueTypeEnum valueType, PetasosComponentMetricValue metricValue){
+        if(metricValue == null){
+            return(EMPTY_VALUE_SLOT);
+        }
+        switch(valueType){
+            case METRIC_VALUE_TYPE_LONG:
+                return(metricValue.getLongValue() != null ? metricValue.getLongValue().longValue() : EMPTY_VALUE_SLOT);
+            case METRIC_VALUE_TYPE_INTEGER:
+                return(metricValue.getIntegerValue() != null ? metricValue.getIntegerValue().longValue() : EMPTY_VALUE_SLOT);
+            case METRIC_VALUE_TYPE_BOOLEAN:
+                return(Boolean.TRUE.equals(metricValue.getBooleanValue()) ? 1L : 0L);
+            case METRIC_VALUE_TYPE_INSTANT:
+                return(metricValue.getInstantValue() != null ? metricValue.getInstantValue().toEpochMilli() : EMPTY_VALUE_SLOT);
+            case METRIC_VALUE_TYPE_DOUBLE:
+                return(metricValue.getDoubleValue() != null ? Double.doubleToRawLongBits(metricValue.getDoubleValue().doubleValue()) : EMPTY_VALUE_SLOT);
+            case METRIC_VALUE_TYPE_FLOAT:
+                return(metricValue.getFloatValue() != null ? Double.doubleToRawLongBits(metricValue.getFloatValue().doubleValue()) : EMPTY_VALUE_SLOT);
+            default:
+                return(EMPTY_VALUE_SLOT);
+        }
+    }
+
+    public static Object encodeReferenceValue(CompactMetricValueTypeEnum valueType, PetasosComponentMetricValue metricValue){
+        if(metricValue == null){
+            return(null);
+        }
+        switch(valueType){
+            case METRIC_VALUE_TYPE_STRING:
+                return(metricValue.getStringValue());
+            case METRIC_VALUE_TYPE_OBJECT:
+                return(metricValue.getObject());
+            default:
+                return(null);
+        }
+    }
+
+    //
+    // Decode
+    //
+
+    public static double decodeAsDouble(CompactMetricValueTypeEnum valueType, long valueSlot){
+        if(valueType.isIntegral()){
+            return((double)valueSlot);
+        }
+        if(valueType.isNumeric()){
+            return(Double.longBitsToDouble(valueSlot));
+        }
+        return(0.0d);
+    }
+
+    public static double decodeAsDouble(PetasosComponentMetricValue metricValue){
+        CompactMetricValueTypeEnum valueType = resolveValueType(metricValue);
+        return(decodeAsDouble(valueType, encodeValueSlot(valueType, metricValue)));
+    }
+
+    public static String formatValue(CompactMetricValueTypeEnum valueType, long valueSlot, Object referenceValue){
+        switch(valueType){
+            case METRIC_VALUE_TYPE_LONG:
+            case METRIC_VALUE_TYPE_INTEGER:
+                return(Long.toString(valueSlot));
+            case METRIC_VALUE_TYPE_BOOLEAN:
+                return(valueSlot != 0L ? "true" : "false");
+            case METRIC_VALUE_TYPE_INSTANT:
+                return(INSTANT_VALUE_FORMATTER.format(Instant.ofEpochMilli(valueSlot)));
+            case METRIC_VALUE_TYPE_DOUBLE:
+                return(Double.toString(Double.longBitsToDouble(valueSlot)));
+            case METRIC_VALUE_TYPE_FLOAT:
+                return(Float.toString((float)Double.longBitsToDouble(valueSlot)));
+            case METRIC_VALUE_TYPE_STRING:
+            case METRIC_VALUE_TYPE_OBJECT:
+                if(referenceValue == null){
+                    return(EMPTY_VALUE_TEXT);
+                }
+                return(referenceValue.toString());
+            default:
+                return(EMPTY_VALUE_TEXT);
+        }
+    }
+
+    public static String formatValue(PetasosComponentMetricValue metricValue){
+        if(metricValue == null){
+            return(EMPTY_VALUE_TEXT);
+        }
+        CompactMetricValueTypeEnum valueType = resolveValueType(metricValue);
+        return(formatValue(valueType, encodeValueSlot(valueType, metricValue), encodeReferenceValue(valueType, metricValue)));
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.workshops.datagrid.metrics;
+
+import net.fhirfactory.pegacorn.itops.im.datatypes.MetricRollupSample;
+import net.fhirfactory.pegacorn.itops.im.valuesets.MetricRollupIntervalEnum;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * A fixed-size ring of min/max/sum/count buckets for one rollup interval. Instances are not thread-safe, access is
+ * guarded by the owning MetricSampleRingBuffer.
+ */
+public class MetricRollupRingBuffer {
+    private final MetricRollupIntervalEnum rollupInterval;
+    private final long[] bucketStartInstants;
+    private final int[] sampleCounts;
+    private final double[] minimumValues;
+    private final double[] maximumValues;
+    private final double[] sumOfValues;
+    private int head;
+    private int size;
+
+    //
+    // Constructor(s)
+    //
+
+    public MetricRollupRingBuffer(MetricRollupIntervalEnum rollupInterval){
+        this.rollupInterval = rollupInterval;
+        int capacity = rollupInterval.getBucketCount();
+        this.bucketStartInstants = new long[capacity];
+        this.sampleCounts = new int[capacity];
+        this.minimumValues = new double[capacity];
+        this.maximumValues = new double[capacity];
+        this.sumOfValues = new double[capacity];
+        this.head = 0;
+        this.size = 0;
+    }
+
+    //
+    // Getters (and Setters)
+    //
+
+    public MetricRollupIntervalEnum getRollupInterval() {
+        return rollupInterval;
+    }
+
+    public int getSize(){
+        return(size);
+    }
+
+    //
+    // Business Methods
+    //
+
+    public void addSample(long sampleInstant, double value){
+        long bucketWidth = rollupInterval.getBucketWidthMillis();
+        long bucketStart = sampleInstant - Math.floorMod(sampleInstant, bucketWidth);
+        if(size == 0){
+            head = 0;
+            size = 1;
+            resetBucket(head, bucketStart);
+        } else if(bucketStart > bucketStartInstants[head]){
+            head = (head + 1) % bucketStartInstants.length;
+            if(size < bucketStartInstants.length){
+                size += 1;
+            }
+            resetBucket(head, bucketStart);
+        } else if(bucketStart < bucketStartInstants[head]){
+            int lateBucket = findBucket(bucketStart);
+            if(lateBucket >= 0){
+                accumulate(lateBucket, value);
+            }
+            return;
+        }
+        accumulate(head, value);
+    }
+
+    public void collectBuckets(long fromInstant, long toInstant, List<MetricRollupSample> rollupSamples){
+        int capacity = bucketStartInstants.length;
+        for(int counter = size - 1; counter >= 0; counter -= 1){
+            int index = Math.floorMod(head - counter, capacity);
+            long bucketStart = bucketStartInstants[index];
+            if(bucketStart + rollupInterval.getBucketWidthMillis() <= fromInstant || bucketStart > toInstant){
+                continue;
+            }
+            MetricRollupSample rollupSample = new MetricRollupSample();
+            rollupSample.setRollupInterval(rollupInterval);
+            rollupSample.setBucketStartInstant(Instant.ofEpochMilli(bucketStart));
+            rollupSample.setSampleCount(sampleCounts[index]);
+            rollupSample.setMinimumValue(minimumValues[index]);
+            rollupSample.setMaximumValue(maximumValues[index]);
+            rollupSample.setSumOfValues(sumOfValues[index]);
+            rollupSamples.add(rollupSample);
+        }
+    }
+
+    //
+    // Helpers
+    //
+
+    private void resetBucket(int index, long bucketStart){
+        bucketStartInstants[index] = bucketStart;
+        sampleCounts[index] = 0;
+        minimumValues[index] = Double.MAX_VALUE;
+        maximumValues[index] = -Double.MAX_VALUE;
+        sumOfValues[index] = 0.0d;
+    }
+
+    private void accumulate(int index, double value){
+        sampleCounts[index] += 1;
+        sumOfValues[index] += value;
+        if(value < minimumValues[index]){
+            minimumValues[index] = value;
+        }
+        if(value > maximumValues[index]){
+            maximumValues[index] = value;
+        }
+    }
+
+    private int findBucket(long bucketStart){
+        int capacity = bucketStartInstants.length;
+        for(int counter = 0; counter < size; counter += 1){
+            int index = Math.floorMod(head - counter, capacity);
+            if(bucketStartInstants[index] == bucketStart){
+                return(index);
+            }
+            if(bucketStartInstants[index] < bucketStart){
+                break;
+            }
+        }
+        return(-1);
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.workshops.datagrid.metrics;
+
+import net.fhirfactory.pegacorn.itops.im.datatypes.MetricHistorySample;
+import net.fhirfactory.pegacorn.itops.im.datatypes.MetricRollupSample;
+import net.fhirfactory.pegacorn.itops.im.valuesets.MetricRollupIntervalEnum;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The sample history for a single metric of a single component. All storage is allocated up-front, so recording a
+ * sample only writes into primitive arrays (raw samples plus the 1m/5m/1h rollup buckets).
+ */
+public class MetricSampleRingBuffer {
+    private final boolean integral;
+    private final long[] sampleInstants;
+    private final long[] longSamples;
+    private final double[] doubleSamples;
+    private final MetricRollupRingBuffer[] rollups;
+    private int head;
+    private int size;
+    private volatile long lastSampleInstant;
+
+    //
+    // Constructor(s)
+    //
+
+    public MetricSampleRingBuffer(int capacity, boolean integral){
+        this.integral = integral;
+        this.sampleInstants = new long[capacity];
+        if(integral){
+            this.longSamples = new long[capacity];
+            this.doubleSamples = null;
+        } else {
+            this.longSamples = null;
+            this.doubleSamples = new double[capacity];
+        }
+        MetricRollupIntervalEnum[] rollupIntervals = MetricRollupIntervalEnum.values();
+        this.rollups = new MetricRollupRingBuffer[rollupIntervals.length];
+        for(MetricRollupIntervalEnum currentInterval: rollupIntervals){
+            this.rollups[currentInterval.ordinal()] = new MetricRollupRingBuffer(currentInterval);
+        }
+        this.head = 0;
+        this.size = 0;
+        this.lastSampleInstant = 0L;
+    }
+
+    //
+    // Getters (and Setters)
+    //
+
+    public boolean isIntegral() {
+        return integral;
+    }
+
+    public long getLastSampleInstant() {
+        return lastSampleInstant;
+    }
+
+    public synchronized int getSize(){
+        return(size);
+    }
+
+    //
+    // Business Methods
+    //
+
+    public synchronized void addSample(long sampleInstant, long value){
+        boolean redelivered = isRedelivery(sampleInstant);
+        int index = resolveSlot(sampleInstant);
+        if(integral){
+            longSamples[index] = value;
+        } else {
+            doubleSamples[index] = (double)value;
+        }
+        if(!redelivered) {
+            addToRollups(sampleInstant, (double) value);
+        }
+    }
+
+    public synchronized void addSample(long sampleInstant, double value){
+        boolean redelivered = isRedelivery(sampleInstant);
+        int index = resolveSlot(sampleInstant);
+        if(integral){
+            longSamples[index] = (long)value;
+        } else {
+            doubleSamples[index] = value;
+        }
+        if(!redelivered) {
+            addToRollups(sampleInstant, value);
+        }
+    }
+
+    public synchronized List<MetricHistorySample> getSamples(long fromInstant, long toInstant){
+        List<MetricHistorySample> samples = new ArrayList<>();
+        int capacity = sampleInstants.length;
+        for(int counter = size - 1; counter >= 0; counter -= 1){
+            int index = Math.floorMod(head - counter, capacity);
+            long currentInstant = sampleInstants[index];
+            if(currentInstant < fromInstant || currentInstant > toInstant){
+                continue;
+            }
+            if(integral){
+                samples.add(new MetricHistorySample(Instant.ofEpochMilli(currentInstant), longSamples[index]));
+            } else {
+                samples.add(new MetricHistorySample(Instant.ofEpochMilli(currentInstant), doubleSamples[index]));
+            }
+        }
+        return(samples);
+    }
+
+    public synchronized List<MetricRollupSample> getRollups(MetricRollupIntervalEnum rollupInterval, long fromInstant, long toInstant){
+        List<MetricRollupSample> rollupSamples = new ArrayList<>();
+        if(rollupInterval != null){
+            rollups[rollupInterval.ordinal()].collectBuckets(fromInstant, toInstant, rollupSamples);
+        }
+        return(rollupSamples);
+    }
+
+    //
+    // Helpers
+    //
+
+    private boolean isRedelivery(long sampleInstant){
+        return(size > 0 && sampleInstants[head] == sampleInstant);
+    }
+
+    private int resolveSlot(long sampleInstant){
+        // A re-delivered report (same instant) overwrites the newest sample rather than consuming a new slot
+        if(isRedelivery(sampleInstant)){
+            return(head);
+        }
+        if(size > 0){
+            head = (head + 1) % sampleInstants.length;
+        }
+        if(size < sampleInstants.length){
+            size += 1;
+        }
+        sampleInstants[head] = sampleInstant;
+        if(sampleInstant > lastSampleInstant){
+            lastSampleInstant = sampleInstant;
+        }
+        return(head);
+    }
+
+    private void addToRollups(long sampleInstant, double value){
+        for(int counter = 0; counter < rollups.length; counter += 1){
+            rollups[counter].addSample(sampleInstant, value);
+        }
+    }
+}
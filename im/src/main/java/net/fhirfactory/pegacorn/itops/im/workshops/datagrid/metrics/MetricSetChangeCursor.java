@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.workshops.datagrid.metrics;
+
+import java.time.Instant;
+
+/**
+ * A consumer's position within the MetricSetChangeLog. A cursor belongs to exactly one consumer and is not shared.
+ */
+public class MetricSetChangeCursor {
+    private String consumerName;
+    private long position;
+    private boolean resynchronisationRequired;
+    private Instant lastDrainInstant;
+
+    //
+    // Constructor(s)
+    //
+
+    public MetricSetChangeCursor(String consumerName, long position){
+        this.consumerName = consumerName;
+        this.position = position;
+        this.resynchronisationRequired = true;
+        this.lastDrainInstant = null;
+    }
+
+    //
+    // Getters and Setters
+    //
+
+    public String getConsumerName() {
+        return consumerName;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    public void setPosition(long position) {
+        this.position = position;
+    }
+
+    public boolean isResynchronisationRequired() {
+        return resynchronisationRequired;
+    }
+
+    public void setResynchronisationRequired(boolean resynchronisationRequired) {
+        this.resynchronisationRequired = resynchronisationRequired;
+    }
+
+    public Instant getLastDrainInstant() {
+        return lastDrainInstant;
+    }
+
+    public void setLastDrainInstant(Instant lastDrainInstant) {
+        this.lastDrainInstant = lastDrainInstant;
+    }
+
+    //
+    // To String
+    //
+
+    @Override
+    public String toString() {
+        return "MetricSetChangeCursor{" +
+                "consumerName='" + consumerName + '\'' +
+                ", position=" + position +
+                ", resynchronisationRequired=" + resynchronisationRequired +
+                ", lastDrainInstant=" + lastDrainInstant +
+                '}';
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.workshops.datagrid.metrics;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded, lock-free, sequence-numbered log of component (symbol) ids whose metric set has changed. Writers claim a
+ * sequence number and publish the component id into the slot (sequence & mask). Each consumer keeps its own position in the
+ * log (see MetricSetChangeCursor) so draining it never affects any other consumer. If a consumer falls more than
+ * the log capacity behind, drain() reports an overrun and the consumer must resynchronise from the full data set.
+ */
+public class MetricSetChangeLog {
+    public static final long OVERRUN = -1L;
+    private static final long SLOT_BEING_WRITTEN = -1L;
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicLong sequencer;
+    private final AtomicLongArray slotSequences;
+    private final AtomicIntegerArray slotComponentIds;
+
+    //
+    // Constructor(s)
+    //
+
+    public MetricSetChangeLog(int requestedCapacity){
+        int actualCapacity = Integer.highestOneBit(Math.max(requestedCapacity, 2) - 1) << 1;
+        this.capacity = actualCapacity;
+        this.mask = actualCapacity - 1;
+        this.sequencer = new AtomicLong(0);
+        this.slotSequences = new AtomicLongArray(actualCapacity);
+        this.slotComponentIds = new AtomicIntegerArray(actualCapacity);
+    }
+
+    //
+    // Getters (and Setters)
+    //
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getHeadSequence(){
+        return(sequencer.get());
+    }
+
+    //
+    // Business Methods
+    //
+
+    public long append(int componentId){
+        long sequence = sequencer.incrementAndGet();
+        int index = (int)(sequence & mask);
+        slotSequences.set(index, SLOT_BEING_WRITTEN);
+        slotComponentIds.set(index, componentId);
+        slotSequences.set(index, sequence);
+        return(sequence);
+    }
+
+    /**
+     * Copies the component ids published after fromSequence into changedComponentIds, stopping after maxEntries log
+     * entries or at the first slot that is still being written.
+     *
+     * @param fromSequence the last sequence number the consumer has already seen
+     * @param changedComponentIds the collection the changed component ids are added to
+     * @param maxEntries the maximum number of log entries to consume
+     * @return the new position of the consumer, or OVERRUN if entries were lost
+     */
+    public long drain(long fromSequence, Collection<Integer> changedComponentIds, int maxEntries){
+        long limit = sequencer.get();
+        if(limit - fromSequence > capacity){
+            return(OVERRUN);
+        }
+        long position = fromSequence;
+        int consumed = 0;
+        while(position < limit && consumed < maxEntries){
+            long nextSequence = position + 1;
+            int index = (int)(nextSequence & mask);
+            long publishedSequence = slotSequences.get(index);
+            if(publishedSequence != nextSequence){
+                if(sequencer.get() - nextSequence >= capacity){
+                    return(OVERRUN);
+                }
+                // The writer that claimed nextSequence has not published yet, pick it up on the next drain
+                break;
+            }
+            int componentId = slotComponentIds.get(index);
+            if(slotSequences.get(index) != nextSequence){
+                return(OVERRUN);
+            }
+            changedComponentIds.add(componentId);
+            position = nextSequence;
+            consumed += 1;
+        }
+        return(position);
+    }
+}
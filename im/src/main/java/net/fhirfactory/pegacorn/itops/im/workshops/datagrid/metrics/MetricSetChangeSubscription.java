@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.workshops.datagrid.metrics;
+
+import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.symbols.DenseIdTable;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * A named consumer of the metrics change feed. Each subscription owns a cursor into the shared MetricSetChangeLog and
+ * a de-duplicated backlog of changed component ids, which it hands out in batches of at most maxBatchSize. The backlog
+ * only pulls from the change log while it is below maxBacklogSize, so a slow consumer simply leaves entries in the
+ * log; if it falls so far behind that the log wraps, it is resynchronised from the full current state instead of
+ * holding an unbounded queue. The resynchronisation copy is subject to the same backlog limit, and resumes from
+ * resynchronisationNextId on later polls until every known component has been handed out.
+ */
+public class MetricSetChangeSubscription {
+    private final String consumerName;
+    private final int maxBatchSize;
+    private final int maxBacklogSize;
+    private final MetricSetChangeCursor cursor;
+    private final LinkedHashSet<Integer> backlog;
+    private long deliveredCount;
+    private long resynchronisationCount;
+    private int resynchronisationNextId;
+    private Instant lastPollInstant;
+
+    //
+    // Constructor(s)
+    //
+
+    public MetricSetChangeSubscription(String consumerName, int maxBatchSize, int maxBacklogSize, long startPosition){
+        this.consumerName = consumerName;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxBacklogSize = Math.max(this.maxBatchSize, maxBacklogSize);
+        this.cursor = new MetricSetChangeCursor(consumerName, startPosition);
+        this.backlog = new LinkedHashSet<>();
+        this.deliveredCount = 0L;
+        this.resynchronisationCount = 0L;
+        this.resynchronisationNextId = DenseIdTable.NO_MORE_IDS;
+        this.lastPollInstant = null;
+    }
+
+    //
+    // Getters (and Setters)
+    //
+
+    public String getConsumerName() {
+        return consumerName;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public int getMaxBacklogSize() {
+        return maxBacklogSize;
+    }
+
+    public synchronized long getDeliveredCount() {
+        return deliveredCount;
+    }
+
+    public synchronized long getResynchronisationCount() {
+        return resynchronisationCount;
+    }
+
+    public synchronized Instant getLastPollInstant() {
+        return lastPollInstant;
+    }
+
+    public synchronized int getBacklogSize(){
+        return(backlog.size());
+    }
+
+    //
+    // Business Methods
+    //
+
+    public synchronized List<Integer> nextBatch(MetricSetChangeLog changeLog, DenseIdTable<?> knownComponents){
+        if(backlog.size() < maxBacklogSize){
+            refill(changeLog, knownComponents);
+        }
+        List<Integer> batch = new ArrayList<>(Math.min(maxBatchSize, backlog.size()));
+        Iterator<Integer> backlogIterator = backlog.iterator();
+        while(backlogIterator.hasNext() && batch.size() < maxBatchSize){
+            batch.add(backlogIterator.next());
+            backlogIterator.remove();
+        }
+        deliveredCount += batch.size();
+        lastPollInstant = Instant.now();
+        cursor.setLastDrainInstant(lastPollInstant);
+        return(batch);
+    }
+
+    public synchronized boolean hasPendingChanges(MetricSetChangeLog changeLog){
+        boolean pending = !backlog.isEmpty() || cursor.isResynchronisationRequired() || changeLog.getHeadSequence() > cursor.getPosition();
+        return(pending);
+    }
+
+    public synchronized long getLag(MetricSetChangeLog changeLog){
+        long lag = backlog.size() + Math.max(0L, changeLog.getHeadSequence() - cursor.getPosition());
+        return(lag);
+    }
+
+    public synchronized void requestResynchronisation(){
+        cursor.setResynchronisationRequired(true);
+        resynchronisationNextId = DenseIdTable.NO_MORE_IDS;
+    }
+
+    //
+    // Helpers
+    //
+
+    private void refill(MetricSetChangeLog changeLog, DenseIdTable<?> knownComponents){
+        if(!cursor.isResynchronisationRequired()){
+            long newPosition = changeLog.drain(cursor.getPosition(), backlog, maxBacklogSize - backlog.size());
+            if(newPosition == MetricSetChangeLog.OVERRUN){
+                cursor.setResynchronisationRequired(true);
+            } else {
+                cursor.setPosition(newPosition);
+            }
+        }
+        if(cursor.isResynchronisationRequired()){
+            if(resynchronisationNextId == DenseIdTable.NO_MORE_IDS){
+                // Take the position first so anything changed during the copy is seen again on the next refill
+                cursor.setPosition(changeLog.getHeadSequence());
+                resynchronisationNextId = 0;
+            }
+            resynchronisationNextId = knownComponents.collectIds(resynchronisationNextId, maxBacklogSize - backlog.size(), backlog);
+            if(resynchronisationNextId == DenseIdTable.NO_MORE_IDS){
+                cursor.setResynchronisationRequired(false);
+                resynchronisationCount += 1;
+            }
+        }
+    }
+
+    //
+    // To String
+    //
+
+    @Override
+    public synchronized String toString() {
+        return "MetricSetChangeSubscription{" +
+                "consumerName='" + consumerName + '\'' +
+                ", maxBatchSize=" + maxBatchSize +
+                ", maxBacklogSize=" + maxBacklogSize +
+                ", cursor=" + cursor +
+                ", backlogSize=" + backlog.size() +
+                ", deliveredCount=" + deliveredCount +
+                ", resynchronisationCount=" + resynchronisationCount +
+                ", resynchronisationNextId=" + resynchronisationNextId +
+                ", lastPollInstant=" + lastPollInstant +
+                '}';
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.workshops.datagrid.notifications;
+
+import net.fhirfactory.pegacorn.core.model.petasos.oam.notifications.PetasosComponentITOpsNotification;
+import net.fhirfactory.pegacorn.core.model.petasos.oam.notifications.valuesets.PetasosComponentITOpsNotificationTypeEnum;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded queue of notifications with three priority classes: failure notifications, then normal ones, then
+ * success ones. poll() always takes from the highest non-empty class.
+ *
+ * Each class has its own capacity, so a storm in one class can never push out another. Once the normal or success
+ * class passes its sampling threshold only one in every SAMPLE_INTERVAL new notifications is admitted, and when a
+ * class is full new notifications are dropped; the failure class is never sampled, and when full drops its oldest
+ * entry so that the latest failures are always kept. Per-class depth, drop and sample counters are exposed so
+ * saturation can be alerted on before anything is lost.
+ *
+ * A consumer blocks in awaitReady() until there is something to forward, so it is woken by the enqueue rather than
+ * polling on a schedule.
+ */
+public class ITOpsNotificationPriorityQueue {
+    public static final int FAILURE_CLASS = 0;
+    public static final int NORMAL_CLASS = 1;
+    public static final int SUCCESS_CLASS = 2;
+    private static final int CLASS_COUNT = 3;
+    private static final int SAMPLE_INTERVAL = 4;
+
+    /**
+     * The result of offer() or requeue(). QUEUED_DISPLACING_OLDEST means the notification was queued, but only by
+     * dropping the oldest failure notification, so the caller still has a loss to report.
+     */
+    public enum EnqueueOutcome {
+        QUEUED,
+        QUEUED_DISPLACING_OLDEST,
+        SAMPLED_OUT,
+        DROPPED;
+
+        public boolean isLossy(){
+            return(this != QUEUED);
+        }
+    }
+
+    private final String queueName;
+    private final ReentrantLock queueLock;
+    private final Condition notificationAvailable;
+    private final ArrayDeque<PetasosComponentITOpsNotification>[] classQueues;
+    private final int[] classCapacities;
+    private final int[] sampleThresholds;
+    private final long[] offeredCounts;
+    private final long[] droppedCounts;
+    private final long[] sampledOutCounts;
+    private final int[] sampleCounters;
+
+    //
+    // Constructor(s)
+    //
+
+    @SuppressWarnings("unchecked")
+    public ITOpsNotificationPriorityQueue(String queueName, int failureCapacity, int normalCapacity, int successCapacity){
+        this.queueName = queueName;
+        this.queueLock = new ReentrantLock();
+        this.notificationAvailable = queueLock.newCondition();
+        this.classCapacities = new int[]{Math.max(1, failureCapacity), Math.max(1, normalCapacity), Math.max(1, successCapacity)};
+        // Normal notifications are sampled once three quarters full, success notifications once half full
+        this.sampleThresholds = new int[]{Integer.MAX_VALUE, (classCapacities[NORMAL_CLASS] * 3) / 4, classCapacities[SUCCESS_CLASS] / 2};
+        this.classQueues = new ArrayDeque[CLASS_COUNT];
+        for(int classIndex = 0; classIndex < CLASS_COUNT; classIndex += 1){
+            this.classQueues[classIndex] = new ArrayDeque<>();
+        }
+        this.offeredCounts = new long[CLASS_COUNT];
+        this.droppedCounts = new long[CLASS_COUNT];
+        this.sampledOutCounts = new long[CLASS_COUNT];
+        this.sampleCounters = new int[CLASS_COUNT];
+    }
+
+    //
+    // Getters (and Setters)
+    //
+
+    public String getQueueName() {
+        return queueName;
+    }
+
+    protected ReentrantLock getQueueLock() {
+        return queueLock;
+    }
+
+    public int getCapacity(int priorityClass){
+        return(classCapacities[priorityClass]);
+    }
+
+    public int getDepth(int priorityClass){
+        queueLock.lock();
+        try {
+            return(classQueues[priorityClass].size());
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    public int getDepth(){
+        queueLock.lock();
+        try {
+            return(getDepthLocked());
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    public long getOfferedCount(int priorityClass){
+        queueLock.lock();
+        try {
+            return(offeredCounts[priorityClass]);
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    public long getDroppedCount(int priorityClass){
+        queueLock.lock();
+        try {
+            return(droppedCounts[priorityClass]);
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    public long getSampledOutCount(int priorityClass){
+        queueLock.lock();
+        try {
+            return(sampledOutCounts[priorityClass]);
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    public double getFillRatio(int priorityClass){
+        return((double)getDepth(priorityClass) / (double)classCapacities[priorityClass]);
+    }
+
+    public boolean isEmpty(){
+        return(getDepth() == 0);
+    }
+
+    //
+    // Business Methods
+    //
+
+    public static int getPriorityClass(PetasosComponentITOpsNotification notification){
+        PetasosComponentITOpsNotificationTypeEnum notificationType = notification.getNotificationType();
+        if(notificationType == null){
+            return(NORMAL_CLASS);
+        }
+        switch(notificationType){
+            case FAILURE_NOTIFICATION_TYPE:
+                return(FAILURE_CLASS);
+            case SUCCESS_NOTIFICATION_TYPE:
+                return(SUCCESS_CLASS);
+            default:
+                return(NORMAL_CLASS);
+        }
+    }
+
+    /**
+     * @return whether the notification was queued, and whether anything was sampled out or dropped to get there
+     */
+    public EnqueueOutcome offer(PetasosComponentITOpsNotification notification){
+        return(enqueue(notification, true));
+    }
+
+    /**
+     * Puts back a notification that was polled but could not be delivered yet; it is not subject to sampling (it was
+     * already admitted once) but is still bounded by the class capacity.
+     */
+    public EnqueueOutcome requeue(PetasosComponentITOpsNotification notification){
+        return(enqueue(notification, false));
+    }
+
+    /**
+     * Blocks until there is something to forward. A failure notification ends the wait at once; otherwise, once the
+     * first notification arrives, the wait lingers for up to lingerMillis (or until batchSize notifications are
+     * queued) so that bursts are forwarded together.
+     *
+     * @return true if notifications are waiting, false if maximumWaitMillis passed with the queue empty
+     */
+    public boolean awaitReady(long maximumWaitMillis, long lingerMillis, int batchSize) throws InterruptedException {
+        queueLock.lockInterruptibly();
+        try {
+            long remainingNanos = TimeUnit.MILLISECONDS.toNanos(maximumWaitMillis);
+            while(getDepthLocked() == 0){
+                if(remainingNanos <= 0L){
+                    return(false);
+                }
+                remainingNanos = notificationAvailable.awaitNanos(remainingNanos);
+            }
+            long lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+            while(classQueues[FAILURE_CLASS].isEmpty() && getDepthLocked() < batchSize && lingerNanos > 0L){
+                lingerNanos = notificationAvailable.awaitNanos(lingerNanos);
+            }
+            return(true);
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    public PetasosComponentITOpsNotification poll(){
+        queueLock.lock();
+        try {
+            for(ArrayDeque<PetasosComponentITOpsNotification> currentQueue: classQueues){
+                PetasosComponentITOpsNotification nextNotification = currentQueue.poll();
+                if(nextNotification != null){
+                    return(nextNotification);
+                }
+            }
+            return(null);
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    //
+    // Helpers
+    //
+
+    private int getDepthLocked(){
+        int depth = 0;
+        for(ArrayDeque<PetasosComponentITOpsNotification> currentQueue: classQueues){
+            depth += currentQueue.size();
+        }
+        return(depth);
+    }
+
+    private EnqueueOutcome enqueue(PetasosComponentITOpsNotification notification, boolean applySampling){
+        if(notification == null){
+            return(EnqueueOutcome.DROPPED);
+        }
+        int priorityClass = getPriorityClass(notification);
+        queueLock.lock();
+        try {
+            ArrayDeque<PetasosComponentITOpsNotification> classQueue = classQueues[priorityClass];
+            if(applySampling){
+                offeredCounts[priorityClass] += 1;
+                if(classQueue.size() >= sampleThresholds[priorityClass]){
+                    sampleCounters[priorityClass] += 1;
+                    if(sampleCounters[priorityClass] % SAMPLE_INTERVAL != 0){
+                        sampledOutCounts[priorityClass] += 1;
+                        return(EnqueueOutcome.SAMPLED_OUT);
+                    }
+                }
+            }
+            EnqueueOutcome outcome = EnqueueOutcome.QUEUED;
+            if(classQueue.size() >= classCapacities[priorityClass]){
+                droppedCounts[priorityClass] += 1;
+                if(priorityClass != FAILURE_CLASS){
+                    return(EnqueueOutcome.DROPPED);
+                }
+                classQueue.poll();
+                outcome = EnqueueOutcome.QUEUED_DISPLACING_OLDEST;
+            }
+            classQueue.add(notification);
+            notificationAvailable.signalAll();
+            return(outcome);
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    //
+    // To String
+    //
+
+    @Override
+    public String toString() {
+        queueLock.lock();
+        try {
+            return "ITOpsNotificationPriorityQueue{" +
+                    "queueName='" + queueName + '\'' +
+                    ", failureDepth=" + classQueues[FAILURE_CLASS].size() +
+                    ", normalDepth=" + classQueues[NORMAL_CLASS].size() +
+                    ", successDepth=" + classQueues[SUCCESS_CLASS].size() +
+                    ", failureDropped=" + droppedCounts[FAILURE_CLASS] +
+                    ", normalDropped=" + droppedCounts[NORMAL_CLASS] +
+                    ", successDropped=" + droppedCounts[SUCCESS_CLASS] +
+                    ", normalSampledOut=" + sampledOutCounts[NORMAL_CLASS] +
+                    ", successSampledOut=" + sampledOutCounts[SUCCESS_CLASS] +
+                    '}';
+        } finally {
+            queueLock.unlock();
+        }
+    }
+}
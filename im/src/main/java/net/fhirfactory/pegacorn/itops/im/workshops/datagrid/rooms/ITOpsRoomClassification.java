@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.workshops.datagrid.rooms;
+
+import net.fhirfactory.pegacorn.itops.im.valuesets.OAMRoomTypeEnum;
+
+/**
+ * What a room's pseudo alias says it is: the OAMRoomTypeEnum whose alias prefix it starts with, and the (flattened,
+ * see ParticipantRoomIdentityFactory) name of the participant the room belongs to. Rooms that aren't ITOps rooms
+ * are UNCLASSIFIED.
+ */
+public final class ITOpsRoomClassification {
+    public static final ITOpsRoomClassification UNCLASSIFIED = new ITOpsRoomClassification(null, null);
+
+    private final OAMRoomTypeEnum roomType;
+    private final String flattenedParticipantName;
+
+    //
+    // Constructor(s)
+    //
+
+    public ITOpsRoomClassification(OAMRoomTypeEnum roomType, String flattenedParticipantName){
+        this.roomType = roomType;
+        this.flattenedParticipantName = flattenedParticipantName;
+    }
+
+    //
+    // Getters
+    //
+
+    public OAMRoomTypeEnum getRoomType() {
+        return roomType;
+    }
+
+    public String getFlattenedParticipantName() {
+        return flattenedParticipantName;
+    }
+
+    public boolean isITOpsRoom(){
+        return(roomType != null);
+    }
+
+    //
+    // To String
+    //
+
+    @Override
+    public String toString() {
+        return "ITOpsRoomClassification{" +
+                "roomType=" + roomType +
+                ", flattenedParticipantName='" + flattenedParticipantName + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.workshops.datagrid.rooms;
+
+import net.fhirfactory.pegacorn.itops.im.valuesets.OAMRoomTypeEnum;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Classifies room aliases against the OAMRoomTypeEnum alias prefixes in a single pass. The prefixes are compiled
+ * once into a trie, and an alias is walked until it leaves the trie; the last prefix passed on the way is the
+ * longest match (so "subsystem-tasks-..." is a OAM_ROOM_TYPE_SUBSYSTEM_TASKS room, not a OAM_ROOM_TYPE_SUBSYSTEM one)
+ * and the remainder of the alias is the participant.
+ */
+public final class ITOpsRoomClassifier {
+    // The alias prefixes are lower case letters, digits and hyphens
+    private static final int ALPHABET_SIZE = 37;
+    private static final TrieNode PREFIX_TRIE = compile();
+
+    //
+    // Constructor(s)
+    //
+
+    private ITOpsRoomClassifier(){
+    }
+
+    //
+    // Business Methods
+    //
+
+    /**
+     * @param pseudoAlias the pseudo alias (the localpart of the canonical alias, e.g. "subsystem-tasks-aether-mitaf")
+     */
+    public static ITOpsRoomClassification classifyPseudoAlias(String pseudoAlias){
+        if(StringUtils.isEmpty(pseudoAlias)){
+            return(ITOpsRoomClassification.UNCLASSIFIED);
+        }
+        return(classify(pseudoAlias, 0, pseudoAlias.length()));
+    }
+
+    /**
+     * @param canonicalAlias the canonical alias (e.g. "#subsystem-tasks-aether-mitaf:server")
+     */
+    public static ITOpsRoomClassification classifyCanonicalAlias(String canonicalAlias){
+        if(StringUtils.isEmpty(canonicalAlias)){
+            return(ITOpsRoomClassification.UNCLASSIFIED);
+        }
+        int start = 0;
+        if(canonicalAlias.charAt(0) == '#'){
+            start = 1;
+        }
+        int end = canonicalAlias.indexOf(':', start);
+        if(end < 0){
+            end = canonicalAlias.length();
+        }
+        return(classify(canonicalAlias, start, end));
+    }
+
+    //
+    // Helpers
+    //
+
+    private static ITOpsRoomClassification classify(String alias, int start, int end){
+        TrieNode node = PREFIX_TRIE;
+        OAMRoomTypeEnum matchedRoomType = null;
+        int matchedEnd = start;
+        for(int position = start; position < end && node != null; position += 1){
+            int symbol = toSymbol(alias.charAt(position));
+            if(symbol < 0){
+                break;
+            }
+            node = node.children[symbol];
+            if(node != null && node.roomType != null){
+                matchedRoomType = node.roomType;
+                matchedEnd = position + 1;
+            }
+        }
+        if(matchedRoomType == null){
+            return(ITOpsRoomClassification.UNCLASSIFIED);
+        }
+        return(new ITOpsRoomClassification(matchedRoomType, alias.substring(matchedEnd, end)));
+    }
+
+    private static TrieNode compile(){
+        TrieNode root = new TrieNode();
+        for(OAMRoomTypeEnum currentRoomType: OAMRoomTypeEnum.values()){
+            TrieNode node = root;
+            String aliasPrefix = currentRoomType.getAliasPrefix();
+            for(int position = 0; position < aliasPrefix.length(); position += 1){
+                int symbol = toSymbol(aliasPrefix.charAt(position));
+                if(symbol < 0){
+                    throw new IllegalStateException("Unsupported character in alias prefix " + aliasPrefix);
+                }
+                if(node.children[symbol] == null){
+                    node.children[symbol] = new TrieNode();
+                }
+                node = node.children[symbol];
+            }
+            node.roomType = currentRoomType;
+        }
+        return(root);
+    }
+
+    private static int toSymbol(char character){
+        if(character >= 'a' && character <= 'z'){
+            return(character - 'a');
+        }
+        if(character >= '0' && character <= '9'){
+            return(26 + (character - '0'));
+        }
+        if(character == '-'){
+            return(36);
+        }
+        return(-1);
+    }
+
+    //
+    // Trie Node
+    //
+
+    private static class TrieNode {
+        private final TrieNode[] children = new TrieNode[ALPHABET_SIZE];
+        private OAMRoomTypeEnum roomType;
+    }
+}
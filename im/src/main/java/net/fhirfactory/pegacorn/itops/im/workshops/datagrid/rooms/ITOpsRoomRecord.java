@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.workshops.datagrid.rooms;
+
+import net.fhirfactory.pegacorn.communicate.matrix.model.core.MatrixRoom;
+
+import java.util.Set;
+
+/**
+ * An immutable entry in the ITOpsRoomRegistry. It carries every key the room is indexed by (roomId, canonical alias
+ * and pseudo alias) plus the roomId of its parent space and, for a space, the roomIds it contained when the record
+ * was made, so a lookup by any one key leads straight to the others. The addedGeneration is the registry generation
+ * at which the roomId was first registered, and is carried unchanged across replacements of the record, as is the
+ * classification of the pseudo alias (while the alias stays the same), so rooms are classified once. Changes are
+ * made by building a new record (see withParentSpaceId()) and swapping it in.
+ */
+public final class ITOpsRoomRecord {
+    private final String roomId;
+    private final String canonicalAlias;
+    private final String pseudoAlias;
+    private final String parentSpaceId;
+    private final Set<String> childRoomIds;
+    private final MatrixRoom room;
+    private final long addedGeneration;
+    private final ITOpsRoomClassification classification;
+
+    //
+    // Constructor(s)
+    //
+
+    public ITOpsRoomRecord(String roomId, String canonicalAlias, String pseudoAlias, String parentSpaceId, Set<String> childRoomIds, MatrixRoom room, long addedGeneration, ITOpsRoomClassification classification){
+        this.roomId = roomId;
+        this.canonicalAlias = canonicalAlias;
+        this.pseudoAlias = pseudoAlias;
+        this.parentSpaceId = parentSpaceId;
+        this.childRoomIds = childRoomIds;
+        this.room = room;
+        this.addedGeneration = addedGeneration;
+        if(classification == null){
+            this.classification = ITOpsRoomClassifier.classifyPseudoAlias(pseudoAlias);
+        } else {
+            this.classification = classification;
+        }
+    }
+
+    //
+    // Getters
+    //
+
+    public String getRoomId() {
+        return roomId;
+    }
+
+    public String getCanonicalAlias() {
+        return canonicalAlias;
+    }
+
+    public String getPseudoAlias() {
+        return pseudoAlias;
+    }
+
+    public String getParentSpaceId() {
+        return parentSpaceId;
+    }
+
+    public boolean hasParentSpaceId(){
+        return(parentSpaceId != null);
+    }
+
+    public Set<String> getChildRoomIds() {
+        return childRoomIds;
+    }
+
+    public MatrixRoom getRoom() {
+        return room;
+    }
+
+    public long getAddedGeneration() {
+        return addedGeneration;
+    }
+
+    public ITOpsRoomClassification getClassification() {
+        return classification;
+    }
+
+    //
+    // Business Methods
+    //
+
+    public ITOpsRoomRecord withParentSpaceId(String newParentSpaceId){
+        if(newParentSpaceId == null ? parentSpaceId == null : newParentSpaceId.equals(parentSpaceId)){
+            return(this);
+        }
+        return(new ITOpsRoomRecord(roomId, canonicalAlias, pseudoAlias, newParentSpaceId, childRoomIds, room, addedGeneration, classification));
+    }
+
+    //
+    // To String
+    //
+
+    @Override
+    public String toString() {
+        return "ITOpsRoomRecord{" +
+                "roomId='" + roomId + '\'' +
+                ", canonicalAlias='" + canonicalAlias + '\'' +
+                ", pseudoAlias='" + pseudoAlias + '\'' +
+                ", parentSpaceId='" + parentSpaceId + '\'' +
+                ", childRoomIds=" + childRoomIds +
+                ", addedGeneration=" + addedGeneration +
+                ", classification=" + classification +
+                '}';
+    }
+}
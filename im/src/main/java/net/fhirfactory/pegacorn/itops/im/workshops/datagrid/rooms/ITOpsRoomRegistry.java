@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.workshops.datagrid.rooms;
+
+import net.fhirfactory.pegacorn.communicate.matrix.model.core.MatrixRoom;
+import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.generations.GenerationIndex;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The known Matrix rooms, held as immutable ITOpsRoomRecords indexed by roomId, canonical alias and pseudo alias.
+ * Writers serialise on a single lock and keep all of the indexes (and the parent/child space links) consistent with
+ * each other; readers never lock, they just get the current record from whichever index matches their key. As every
+ * record carries all of its keys, removing a room is a constant number of index operations, not a scan. The first
+ * registration of each roomId is also stamped into a GenerationIndex, so "which rooms were added since generation N"
+ * is answered from the additions alone.
+ */
+public class ITOpsRoomRegistry {
+    // ConcurrentHashMap<roomId, ITOpsRoomRecord>
+    private final ConcurrentHashMap<String, ITOpsRoomRecord> roomIdIndex;
+    // ConcurrentHashMap<canonicalAlias, ITOpsRoomRecord>
+    private final ConcurrentHashMap<String, ITOpsRoomRecord> canonicalAliasIndex;
+    // ConcurrentHashMap<pseudoAlias, ITOpsRoomRecord> (the Alias which is in the canonical alias Id)
+    private final ConcurrentHashMap<String, ITOpsRoomRecord> pseudoAliasIndex;
+    // ConcurrentHashMap<childRoomId, parentSpaceId>, from the contained room ids of the spaces registered so far
+    private final ConcurrentHashMap<String, String> parentSpaceIndex;
+    // GenerationIndex<roomId>, by the generation each room was first registered at
+    private final GenerationIndex<String> addedGenerationIndex;
+    private final ReentrantLock writeLock;
+
+    //
+    // Constructor(s)
+    //
+
+    public ITOpsRoomRegistry(){
+        this.roomIdIndex = new ConcurrentHashMap<>();
+        this.canonicalAliasIndex = new ConcurrentHashMap<>();
+        this.pseudoAliasIndex = new ConcurrentHashMap<>();
+        this.parentSpaceIndex = new ConcurrentHashMap<>();
+        this.addedGenerationIndex = new GenerationIndex<>();
+        this.writeLock = new ReentrantLock();
+    }
+
+    //
+    // Reads (lock-free)
+    //
+
+    public ITOpsRoomRecord getByRoomId(String roomId){
+        if(StringUtils.isEmpty(roomId)){
+            return(null);
+        }
+        return(roomIdIndex.get(roomId));
+    }
+
+    public ITOpsRoomRecord getByCanonicalAlias(String canonicalAlias){
+        if(StringUtils.isEmpty(canonicalAlias)){
+            return(null);
+        }
+        return(canonicalAliasIndex.get(canonicalAlias));
+    }
+
+    public ITOpsRoomRecord getByPseudoAlias(String pseudoAlias){
+        if(StringUtils.isEmpty(pseudoAlias)){
+            return(null);
+        }
+        return(pseudoAliasIndex.get(pseudoAlias));
+    }
+
+    public Collection<ITOpsRoomRecord> getRecords(){
+        return(Collections.unmodifiableCollection(roomIdIndex.values()));
+    }
+
+    public int size(){
+        return(roomIdIndex.size());
+    }
+
+    public boolean isEmpty(){
+        return(roomIdIndex.isEmpty());
+    }
+
+    public long getCurrentGeneration(){
+        return(addedGenerationIndex.getCurrentGeneration());
+    }
+
+    /**
+     * Collects the records of the rooms first registered after the given generation (and not since removed).
+     *
+     * @return the generation to pass in next time, so each addition is collected exactly once
+     */
+    public long collectRecordsAddedAfter(long afterGeneration, Collection<ITOpsRoomRecord> records){
+        List<String> addedRoomIds = new ArrayList<>();
+        long lastGeneration = addedGenerationIndex.collectAddedAfter(afterGeneration, addedRoomIds);
+        for(String addedRoomId: addedRoomIds){
+            ITOpsRoomRecord record = roomIdIndex.get(addedRoomId);
+            if(record != null){
+                records.add(record);
+            }
+        }
+        return(lastGeneration);
+    }
+
+    //
+    // Writes
+    //
+
+    /**
+     * Registers (or replaces) the record for a room.
+     *
+     * @param room the room as most recently seen in Matrix
+     * @param pseudoAlias the pseudo alias derived from the room's canonical alias, may be null
+     * @return true if the pseudo alias index changed (an alias was added, re-pointed or dropped)
+     */
+    public boolean put(MatrixRoom room, String pseudoAlias){
+        if(room == null || StringUtils.isEmpty(room.getRoomID())){
+            return(false);
+        }
+        String roomId = room.getRoomID();
+        String canonicalAlias = StringUtils.trimToNull(room.getCanonicalAlias());
+        String indexedPseudoAlias = null;
+        if(canonicalAlias != null){
+            indexedPseudoAlias = StringUtils.trimToNull(pseudoAlias);
+        }
+        Set<String> childRoomIds = snapshotChildRoomIds(room);
+        boolean pseudoAliasIndexChanged = false;
+        writeLock.lock();
+        try {
+            ITOpsRoomRecord previous = roomIdIndex.get(roomId);
+            long addedGeneration;
+            ITOpsRoomClassification classification = null;
+            if(previous == null){
+                addedGeneration = addedGenerationIndex.peekNextGeneration();
+            } else {
+                addedGeneration = previous.getAddedGeneration();
+                if(StringUtils.equals(previous.getPseudoAlias(), indexedPseudoAlias)){
+                    classification = previous.getClassification();
+                }
+            }
+            ITOpsRoomRecord record = new ITOpsRoomRecord(roomId, canonicalAlias, indexedPseudoAlias, parentSpaceIndex.get(roomId), childRoomIds, room, addedGeneration, classification);
+            roomIdIndex.put(roomId, record);
+            if(previous == null){
+                // Stamped only once the record is visible, so a reader that sees the generation can also see the room
+                addedGenerationIndex.stamp(roomId);
+            } else {
+                if(previous.getCanonicalAlias() != null && !previous.getCanonicalAlias().equals(canonicalAlias)){
+                    unindex(canonicalAliasIndex, previous.getCanonicalAlias(), roomId);
+                }
+                if(previous.getPseudoAlias() != null && !previous.getPseudoAlias().equals(indexedPseudoAlias)){
+                    pseudoAliasIndexChanged |= unindex(pseudoAliasIndex, previous.getPseudoAlias(), roomId);
+                }
+                for(String previousChildRoomId: previous.getChildRoomIds()){
+                    if(!childRoomIds.contains(previousChildRoomId)){
+                        unlinkChild(previousChildRoomId, roomId);
+                    }
+                }
+            }
+            if(canonicalAlias != null){
+                canonicalAliasIndex.put(canonicalAlias, record);
+            }
+            if(indexedPseudoAlias != null){
+                ITOpsRoomRecord displaced = pseudoAliasIndex.put(indexedPseudoAlias, record);
+                if(displaced == null || !displaced.getRoomId().equals(roomId)){
+                    pseudoAliasIndexChanged = true;
+                }
+            }
+            for(String childRoomId: childRoomIds){
+                linkChild(childRoomId, roomId);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        return(pseudoAliasIndexChanged);
+    }
+
+    /**
+     * Removes a room from every index, and detaches any rooms it was the parent space of.
+     *
+     * @return the removed record, or null if the room was not known
+     */
+    public ITOpsRoomRecord remove(String roomId){
+        if(StringUtils.isEmpty(roomId)){
+            return(null);
+        }
+        writeLock.lock();
+        try {
+            ITOpsRoomRecord removed = roomIdIndex.remove(roomId);
+            if(removed == null){
+                return(null);
+            }
+            addedGenerationIndex.remove(removed.getAddedGeneration());
+            unindex(canonicalAliasIndex, removed.getCanonicalAlias(), roomId);
+            unindex(pseudoAliasIndex, removed.getPseudoAlias(), roomId);
+            for(String childRoomId: removed.getChildRoomIds()){
+                unlinkChild(childRoomId, roomId);
+            }
+            return(removed);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    //
+    // Helpers (called with the write lock held)
+    //
+
+    private boolean unindex(Map<String, ITOpsRoomRecord> index, String key, String roomId){
+        if(key == null){
+            return(false);
+        }
+        ITOpsRoomRecord indexed = index.get(key);
+        if(indexed != null && indexed.getRoomId().equals(roomId)){
+            index.remove(key);
+            return(true);
+        }
+        return(false);
+    }
+
+    private void linkChild(String childRoomId, String parentSpaceId){
+        parentSpaceIndex.put(childRoomId, parentSpaceId);
+        ITOpsRoomRecord child = roomIdIndex.get(childRoomId);
+        if(child != null){
+            replace(child, child.withParentSpaceId(parentSpaceId));
+        }
+    }
+
+    private void unlinkChild(String childRoomId, String parentSpaceId){
+        if(!parentSpaceIndex.remove(childRoomId, parentSpaceId)){
+            // The child has since been claimed by another space
+            return;
+        }
+        ITOpsRoomRecord child = roomIdIndex.get(childRoomId);
+        if(child != null){
+            replace(child, child.withParentSpaceId(null));
+        }
+    }
+
+    private void replace(ITOpsRoomRecord current, ITOpsRoomRecord replacement){
+        if(current == replacement){
+            return;
+        }
+        roomIdIndex.put(replacement.getRoomId(), replacement);
+        if(current.getCanonicalAlias() != null && canonicalAliasIndex.get(current.getCanonicalAlias()) == current){
+            canonicalAliasIndex.put(current.getCanonicalAlias(), replacement);
+        }
+        if(current.getPseudoAlias() != null && pseudoAliasIndex.get(current.getPseudoAlias()) == current){
+            pseudoAliasIndex.put(current.getPseudoAlias(), replacement);
+        }
+    }
+
+    private Set<String> snapshotChildRoomIds(MatrixRoom room){
+        if(room.getContainedRoomIds() == null || room.getContainedRoomIds().isEmpty()){
+            return(Collections.emptySet());
+        }
+        Set<String> childRoomIds = new HashSet<>();
+        for(String childRoomId: room.getContainedRoomIds()){
+            if(StringUtils.isNotEmpty(childRoomId) && !childRoomId.equals(room.getRoomID())){
+                childRoomIds.add(childRoomId);
+            }
+        }
+        return(Collections.unmodifiableSet(childRoomIds));
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.workshops.datagrid.snapshot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal of length-prefixed, CRC-checked records written between snapshots. A record torn by a
+ * crash is detected on replay and the journal is truncated just before it, so later appends remain replayable.
+ */
+public class DataGridChangeJournal {
+    private static final int RECORD_HEADER_SIZE = 12;
+    private static final int MAXIMUM_RECORD_SIZE = 16 * 1024 * 1024;
+
+    private final Path journalPath;
+    private DataOutputStream outputStream;
+    private long recordCount;
+
+    //
+    // Constructor(s)
+    //
+
+    public DataGridChangeJournal(Path journalPath){
+        this.journalPath = journalPath;
+        this.outputStream = null;
+        this.recordCount = 0L;
+    }
+
+    //
+    // Getters (and Setters)
+    //
+
+    public Path getJournalPath() {
+        return journalPath;
+    }
+
+    public synchronized long getRecordCount() {
+        return recordCount;
+    }
+
+    //
+    // Business Methods
+    //
+
+    public synchronized void append(byte[] record) throws IOException {
+        if(record.length > MAXIMUM_RECORD_SIZE){
+            throw(new IOException("Journal record too large, length->" + record.length));
+        }
+        if(outputStream == null){
+            outputStream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(journalPath, StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(record);
+        outputStream.writeInt(record.length);
+        outputStream.writeLong(checksum.getValue());
+        outputStream.write(record);
+        recordCount += 1;
+    }
+
+    public synchronized void flush() throws IOException {
+        if(outputStream != null){
+            outputStream.flush();
+        }
+    }
+
+    public synchronized void reset() throws IOException {
+        close();
+        Files.deleteIfExists(journalPath);
+        recordCount = 0L;
+    }
+
+    public synchronized void close() throws IOException {
+        if(outputStream != null){
+            outputStream.close();
+            outputStream = null;
+        }
+    }
+
+    public synchronized long replay(Consumer<byte[]> recordConsumer) throws IOException {
+        long replayedCount = 0L;
+        if(!Files.isRegularFile(journalPath)){
+            return(replayedCount);
+        }
+        close();
+        long fileSize = Files.size(journalPath);
+        long lastGoodOffset = 0L;
+        try(InputStream fileStream = Files.newInputStream(journalPath);
+            DataInputStream inputStream = new DataInputStream(new BufferedInputStream(fileStream))){
+            while(true){
+                int recordLength;
+                long expectedChecksum;
+                byte[] record;
+                try {
+                    recordLength = inputStream.readInt();
+                    expectedChecksum = inputStream.readLong();
+                    long remainingBytes = fileSize - lastGoodOffset - RECORD_HEADER_SIZE;
+                    if(recordLength < 0 || recordLength > MAXIMUM_RECORD_SIZE || recordLength > remainingBytes){
+                        break;
+                    }
+                    record = new byte[recordLength];
+                    inputStream.readFully(record);
+                } catch(EOFException eofException){
+                    break;
+                }
+                CRC32 checksum = new CRC32();
+                checksum.update(record);
+                if(checksum.getValue() != expectedChecksum){
+                    break;
+                }
+                recordConsumer.accept(record);
+                replayedCount += 1;
+                lastGoodOffset += RECORD_HEADER_SIZE + recordLength;
+            }
+        }
+        if(lastGoodOffset < fileSize){
+            // Drop the torn/corrupt tail, otherwise anything appended after it could never be replayed
+            try(FileChannel journalChannel = FileChannel.open(journalPath, StandardOpenOption.WRITE)){
+                journalChannel.truncate(lastGoodOffset);
+            }
+        }
+        recordCount = replayedCount;
+        return(replayedCount);
+    }
+}
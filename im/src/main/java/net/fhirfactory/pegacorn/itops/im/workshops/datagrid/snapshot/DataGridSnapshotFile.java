@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.workshops.datagrid.snapshot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Reads and writes a data grid snapshot: a gzip stream holding a small header and a list of named, independently
+ * serialised sections. Writes go to a temporary file which is then moved over the previous snapshot, so a crash
+ * mid-write always leaves the last complete snapshot in place.
+ */
+public class DataGridSnapshotFile {
+    private static final int SNAPSHOT_MAGIC = 0x49544F53;
+    private static final int SNAPSHOT_FORMAT_VERSION = 1;
+    private static final int MAXIMUM_SECTION_SIZE = 256 * 1024 * 1024;
+    private static final int SECTION_READ_CHUNK_SIZE = 64 * 1024;
+
+    private final Path snapshotPath;
+    private Instant snapshotInstant;
+
+    //
+    // Constructor(s)
+    //
+
+    public DataGridSnapshotFile(Path snapshotPath){
+        this.snapshotPath = snapshotPath;
+        this.snapshotInstant = null;
+    }
+
+    //
+    // Getters (and Setters)
+    //
+
+    public Path getSnapshotPath() {
+        return snapshotPath;
+    }
+
+    public Instant getSnapshotInstant() {
+        return snapshotInstant;
+    }
+
+    public boolean exists(){
+        return(Files.isRegularFile(snapshotPath));
+    }
+
+    //
+    // Business Methods
+    //
+
+    public long write(Map<String, byte[]> sections) throws IOException {
+        Path temporaryPath = snapshotPath.resolveSibling(snapshotPath.getFileName().toString() + ".tmp");
+        Instant writeInstant = Instant.now();
+        try(OutputStream fileStream = Files.newOutputStream(temporaryPath);
+            DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(fileStream)))){
+            outputStream.writeInt(SNAPSHOT_MAGIC);
+            outputStream.writeInt(SNAPSHOT_FORMAT_VERSION);
+            outputStream.writeLong(writeInstant.toEpochMilli());
+            outputStream.writeInt(sections.size());
+            for(Map.Entry<String, byte[]> currentSection: sections.entrySet()){
+                outputStream.writeUTF(currentSection.getKey());
+                outputStream.writeInt(currentSection.getValue().length);
+                outputStream.write(currentSection.getValue());
+            }
+        }
+        Files.move(temporaryPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        this.snapshotInstant = writeInstant;
+        return(Files.size(snapshotPath));
+    }
+
+    public Map<String, byte[]> read() throws IOException {
+        Map<String, byte[]> sections = new LinkedHashMap<>();
+        if(!exists()){
+            return(sections);
+        }
+        try(InputStream fileStream = Files.newInputStream(snapshotPath);
+            DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new GZIPInputStream(fileStream)))){
+            if(inputStream.readInt() != SNAPSHOT_MAGIC){
+                throw(new IOException("Not an ITOps data grid snapshot, path->" + snapshotPath));
+            }
+            int formatVersion = inputStream.readInt();
+            if(formatVersion != SNAPSHOT_FORMAT_VERSION){
+                throw(new IOException("Unsupported snapshot format version->" + formatVersion));
+            }
+            this.snapshotInstant = Instant.ofEpochMilli(inputStream.readLong());
+            int sectionCount = inputStream.readInt();
+            for(int counter = 0; counter < sectionCount; counter += 1){
+                String sectionName = inputStream.readUTF();
+                int sectionLength = inputStream.readInt();
+                if(sectionLength < 0 || sectionLength > MAXIMUM_SECTION_SIZE){
+                    throw(new IOException("Corrupt snapshot section length, section->" + sectionName + ", length->" + sectionLength));
+                }
+                sections.put(sectionName, readSection(inputStream, sectionLength));
+            }
+        }
+        return(sections);
+    }
+
+    //
+    // Helpers
+    //
+
+    /**
+     * The decompressed size of what's left isn't known up front, so the section is read in chunks and the buffer only
+     * grows as content actually arrives: a corrupt length fails with an EOFException rather than a huge allocation.
+     */
+    private byte[] readSection(DataInputStream inputStream, int sectionLength) throws IOException {
+        ByteArrayOutputStream sectionContent = new ByteArrayOutputStream(Math.min(sectionLength, SECTION_READ_CHUNK_SIZE));
+        byte[] chunk = new byte[Math.min(sectionLength, SECTION_READ_CHUNK_SIZE)];
+        int remaining = sectionLength;
+        while(remaining > 0){
+            int readLength = Math.min(remaining, chunk.length);
+            inputStream.readFully(chunk, 0, readLength);
+            sectionContent.write(chunk, 0, readLength);
+            remaining -= readLength;
+        }
+        return(sectionContent.toByteArray());
+    }
+}
@@ -0,0 +1,393 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.workshops.datagrid.snapshot;
+
+import net.fhirfactory.pegacorn.communicate.matrix.model.core.MatrixRoom;
+import net.fhirfactory.pegacorn.communicate.matrix.model.core.MatrixUser;
+import net.fhirfactory.pegacorn.core.model.petasos.oam.metrics.reporting.PetasosComponentMetricSet;
+import net.fhirfactory.pegacorn.core.model.petasos.oam.subscriptions.reporting.PetasosProcessingPlantSubscriptionSummary;
+import net.fhirfactory.pegacorn.core.model.petasos.oam.subscriptions.reporting.PetasosWorkUnitProcessorSubscriptionSummary;
+import net.fhirfactory.pegacorn.core.model.ui.resources.summaries.ProcessingPlantSummary;
+import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.ITOpsSystemWideMetricsDM;
+import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.ITOpsSystemWideSubscriptionMapDM;
+import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.metrics.MetricSetChangeSubscription;
+import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.topologymaps.ITOpsKnownRoomAndSpaceMapDM;
+import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.topologymaps.ITOpsKnownUserMapDM;
+import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.topologymaps.ITOpsSystemWideReportedTopologyMapDM;
+import org.apache.camel.LoggingLevel;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.commons.lang3.SerializationUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Persists the ITOps data grid (metrics, reported topology, subscription summaries and the Matrix room/user caches) to
+ * a local volume, and reloads it at startup so the IM can serve its last known state immediately rather than after
+ * the first full collection cycle.
+ *
+ * Snapshots are taken from the DMs' published (copy-on-write) state, so capturing one only copies references and
+ * never holds an ingest lock while serialising. Between snapshots, changed metric sets are appended to a journal fed
+ * by a metrics change subscription.
+ */
+@ApplicationScoped
+public class ITOpsDataGridSnapshotService extends RouteBuilder {
+    private static final Logger LOG = LoggerFactory.getLogger(ITOpsDataGridSnapshotService.class);
+
+    private static final String SNAPSHOT_DIRECTORY_ENVIRONMENT_VARIABLE = "ITOPS_IM_SNAPSHOT_DIRECTORY";
+    private static final String SNAPSHOT_FILE_NAME = "itops-datagrid.snapshot";
+    private static final String JOURNAL_FILE_NAME = "itops-datagrid.journal";
+    private static final String SNAPSHOT_TIMER_NAME = "ITOpsDataGridSnapshotTimer";
+    private static final String JOURNAL_SUBSCRIPTION_NAME = "ITOpsDataGridSnapshotJournal";
+
+    private static final Long SNAPSHOT_INITIAL_WAIT = 30000L;
+    private static final Long SNAPSHOT_PERIOD = 120000L;
+    private static final Long JOURNAL_FLUSH_PERIOD = 5000L;
+    private static final int JOURNAL_BATCH_SIZE = 200;
+
+    private static final String SECTION_METRIC_SETS = "metrics.sets";
+    private static final String SECTION_METRIC_ROUTES = "metrics.routes";
+    private static final String SECTION_PROCESSING_PLANTS = "topology.processingPlants";
+    private static final String SECTION_PROCESSING_PLANT_SUBSCRIPTIONS = "subscriptions.processingPlants";
+    private static final String SECTION_WORK_UNIT_PROCESSOR_SUBSCRIPTIONS = "subscriptions.workUnitProcessors";
+    private static final String SECTION_ROOMS = "matrix.rooms";
+    private static final String SECTION_USERS = "matrix.users";
+    private static final String SECTION_DASHBOARDS = "matrix.dashboards";
+
+    private static final String RESTORED_ROUTING_ENDPOINT_ID = "Snapshot";
+
+    private boolean initialised;
+    private boolean enabled;
+    private DataGridSnapshotFile snapshotFile;
+    private DataGridChangeJournal changeJournal;
+    private MetricSetChangeSubscription journalSubscription;
+    private Timer snapshotTimer;
+    private Instant lastSnapshotInstant;
+
+    @Inject
+    private ITOpsSystemWideMetricsDM metricsDM;
+
+    @Inject
+    private ITOpsSystemWideReportedTopologyMapDM topologyMapDM;
+
+    @Inject
+    private ITOpsSystemWideSubscriptionMapDM subscriptionMapDM;
+
+    @Inject
+    private ITOpsKnownRoomAndSpaceMapDM roomAndSpaceMapDM;
+
+    @Inject
+    private ITOpsKnownUserMapDM userMapDM;
+
+    //
+    // Constructor(s)
+    //
+
+    public ITOpsDataGridSnapshotService(){
+        super();
+        this.initialised = false;
+        this.enabled = false;
+        this.lastSnapshotInstant = null;
+    }
+
+    //
+    // Post Construct
+    //
+
+    @PostConstruct
+    public void initialise(){
+        getLogger().debug(".initialise(): Entry");
+        if(initialised){
+            getLogger().debug(".initialise(): Exit, already initialised, nothing to do");
+            return;
+        }
+        getLogger().info(".initialise(): Initialisation Start...");
+        Path snapshotDirectory = resolveSnapshotDirectory();
+        try {
+            Files.createDirectories(snapshotDirectory);
+            this.snapshotFile = new DataGridSnapshotFile(snapshotDirectory.resolve(SNAPSHOT_FILE_NAME));
+            this.changeJournal = new DataGridChangeJournal(snapshotDirectory.resolve(JOURNAL_FILE_NAME));
+            this.enabled = true;
+        } catch(IOException ioException){
+            getLogger().warn(".initialise(): Cannot use snapshot directory {}, snapshots disabled, message->{}", snapshotDirectory, ExceptionUtils.getMessage(ioException));
+        }
+        if(enabled){
+            getLogger().info(".initialise(): [Restore Data Grid] Start");
+            restore();
+            getLogger().info(".initialise(): [Restore Data Grid] Finish");
+            // Registered after the restore, so the restored state is not journaled a second time
+            this.journalSubscription = metricsDM.registerChangeSubscription(JOURNAL_SUBSCRIPTION_NAME, JOURNAL_BATCH_SIZE);
+            scheduleSnapshotTasks();
+        }
+        this.initialised = true;
+        getLogger().info(".initialise(): Initialisation Finish...");
+    }
+
+    @Override
+    public void configure() throws Exception {
+        String serviceName = getClass().getSimpleName();
+
+        from("timer://"+serviceName+"?delay=1000&repeatCount=1")
+                .routeId("ITOpsDataGridSnapshot::"+serviceName)
+                .log(LoggingLevel.DEBUG, "Starting....");
+    }
+
+    //
+    // Getters (and Setters)
+    //
+
+    protected Logger getLogger(){
+        return(LOG);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Instant getLastSnapshotInstant() {
+        return lastSnapshotInstant;
+    }
+
+    //
+    // Scheduler
+    //
+
+    protected void scheduleSnapshotTasks(){
+        getLogger().debug(".scheduleSnapshotTasks(): Entry");
+        // Both tasks share the timer thread, so a snapshot never interleaves with a journal append
+        this.snapshotTimer = new Timer(SNAPSHOT_TIMER_NAME, true);
+        TimerTask journalTask = new TimerTask() {
+            public void run() {
+                appendChangesToJournal();
+            }
+        };
+        TimerTask snapshotTask = new TimerTask() {
+            public void run() {
+                writeSnapshot();
+            }
+        };
+        snapshotTimer.schedule(journalTask, JOURNAL_FLUSH_PERIOD, JOURNAL_FLUSH_PERIOD);
+        snapshotTimer.schedule(snapshotTask, SNAPSHOT_INITIAL_WAIT, SNAPSHOT_PERIOD);
+        getLogger().debug(".scheduleSnapshotTasks(): Exit");
+    }
+
+    //
+    // Journal
+    //
+
+    protected void appendChangesToJournal(){
+        getLogger().debug(".appendChangesToJournal(): Entry");
+        long appendedCount = 0;
+        try {
+            while(metricsDM.hasPendingChanges(journalSubscription)){
+                List<PetasosComponentMetricSet> changedMetricSets = metricsDM.getNextChangeBatch(journalSubscription);
+                if(changedMetricSets.isEmpty()){
+                    break;
+                }
+                for(PetasosComponentMetricSet currentMetricSet: changedMetricSets){
+                    String sourceComponentId = currentMetricSet.getMetricSourceComponentId().getId();
+                    MetricSetJournalRecord journalRecord = new MetricSetJournalRecord(metricsDM.getRoutingEndpointId(sourceComponentId), currentMetricSet);
+                    changeJournal.append(SerializationUtils.serialize(journalRecord));
+                    appendedCount += 1;
+                }
+            }
+            changeJournal.flush();
+        } catch(Exception ex){
+            getLogger().warn(".appendChangesToJournal(): Could not append to journal, message->{}", ExceptionUtils.getMessage(ex));
+        }
+        getLogger().debug(".appendChangesToJournal(): Exit, appendedCount->{}", appendedCount);
+    }
+
+    //
+    // Snapshot
+    //
+
+    protected void writeSnapshot(){
+        getLogger().debug(".writeSnapshot(): Entry");
+        // Anything journaled up to here is covered by the snapshot, anything later stays in the change subscription
+        appendChangesToJournal();
+        Map<String, byte[]> sections = new LinkedHashMap<>();
+        List<PetasosComponentMetricSet> metricSets = metricsDM.getAllComponentMetricSets();
+        HashMap<String, String> metricRoutes = new HashMap<>();
+        for(PetasosComponentMetricSet currentMetricSet: metricSets){
+            String sourceComponentId = currentMetricSet.getMetricSourceComponentId().getId();
+            String routingEndpointId = metricsDM.getRoutingEndpointId(sourceComponentId);
+            if(routingEndpointId != null){
+                metricRoutes.put(sourceComponentId, routingEndpointId);
+            }
+        }
+        addSection(sections, SECTION_METRIC_SETS, new ArrayList<>(metricSets));
+        addSection(sections, SECTION_METRIC_ROUTES, metricRoutes);
+        addSection(sections, SECTION_PROCESSING_PLANTS, new ArrayList<>(topologyMapDM.getProcessingPlants()));
+        addSection(sections, SECTION_PROCESSING_PLANT_SUBSCRIPTIONS, new ArrayList<>(subscriptionMapDM.getProcessingPlantSubscriptionSummaries()));
+        addSection(sections, SECTION_WORK_UNIT_PROCESSOR_SUBSCRIPTIONS, new ArrayList<>(subscriptionMapDM.getWorkUnitProcessorSubscriptionSummaries()));
+        addSection(sections, SECTION_ROOMS, new ArrayList<>(roomAndSpaceMapDM.getFullRoomSet()));
+        addSection(sections, SECTION_USERS, new ArrayList<>(userMapDM.getKnownUsers()));
+        addSection(sections, SECTION_DASHBOARDS, new HashMap<>(roomAndSpaceMapDM.getDashboardEventIds()));
+        try {
+            long snapshotSize = snapshotFile.write(sections);
+            changeJournal.reset();
+            this.lastSnapshotInstant = snapshotFile.getSnapshotInstant();
+            getLogger().info(".writeSnapshot(): Snapshot written, metricSets->{}, sizeInBytes->{}", metricSets.size(), snapshotSize);
+        } catch(IOException ioException){
+            getLogger().warn(".writeSnapshot(): Could not write snapshot, message->{}", ExceptionUtils.getMessage(ioException));
+        }
+        getLogger().debug(".writeSnapshot(): Exit");
+    }
+
+    private void addSection(Map<String, byte[]> sections, String sectionName, Serializable sectionContent){
+        try {
+            sections.put(sectionName, SerializationUtils.serialize(sectionContent));
+        } catch(Exception ex){
+            // One unserialisable section must not cost us the rest of the snapshot
+            getLogger().warn(".addSection(): Could not serialise section {}, message->{}", sectionName, ExceptionUtils.getMessage(ex));
+        }
+    }
+
+    //
+    // Restore
+    //
+
+    protected void restore(){
+        getLogger().debug(".restore(): Entry");
+        Instant restoreStart = Instant.now();
+        Map<String, byte[]> sections;
+        try {
+            sections = snapshotFile.read();
+        } catch(Exception ex){
+            getLogger().warn(".restore(): Could not read snapshot, starting empty, message->{}", ExceptionUtils.getMessage(ex));
+            sections = new HashMap<>();
+        }
+        Map<String, String> metricRoutes = readSection(sections, SECTION_METRIC_ROUTES);
+        List<PetasosComponentMetricSet> metricSets = readSection(sections, SECTION_METRIC_SETS);
+        if(metricSets != null){
+            for(PetasosComponentMetricSet currentMetricSet: metricSets){
+                String routingEndpointId = null;
+                if(metricRoutes != null && currentMetricSet.getMetricSourceComponentId() != null){
+                    routingEndpointId = metricRoutes.get(currentMetricSet.getMetricSourceComponentId().getId());
+                }
+                restoreMetricSet(routingEndpointId, currentMetricSet);
+            }
+        }
+        List<ProcessingPlantSummary> processingPlants = readSection(sections, SECTION_PROCESSING_PLANTS);
+        if(processingPlants != null){
+            for(ProcessingPlantSummary currentProcessingPlant: processingPlants){
+                topologyMapDM.addProcessingPlant(currentProcessingPlant);
+            }
+        }
+        List<PetasosProcessingPlantSubscriptionSummary> processingPlantSubscriptions = readSection(sections, SECTION_PROCESSING_PLANT_SUBSCRIPTIONS);
+        if(processingPlantSubscriptions != null){
+            for(PetasosProcessingPlantSubscriptionSummary currentSummary: processingPlantSubscriptions){
+                subscriptionMapDM.addProcessingPlantSubscriptionSummary(currentSummary);
+            }
+        }
+        List<PetasosWorkUnitProcessorSubscriptionSummary> workUnitProcessorSubscriptions = readSection(sections, SECTION_WORK_UNIT_PROCESSOR_SUBSCRIPTIONS);
+        if(workUnitProcessorSubscriptions != null){
+            for(PetasosWorkUnitProcessorSubscriptionSummary currentSummary: workUnitProcessorSubscriptions){
+                subscriptionMapDM.addWorkUnitProcessorSubscriptionSummary(currentSummary);
+            }
+        }
+        List<MatrixRoom> rooms = readSection(sections, SECTION_ROOMS);
+        if(rooms != null){
+            for(MatrixRoom currentRoom: rooms){
+                roomAndSpaceMapDM.addRoom(currentRoom);
+            }
+            if(!rooms.isEmpty()){
+                roomAndSpaceMapDM.markRoomMapReady("snapshot");
+            }
+        }
+        List<MatrixUser> users = readSection(sections, SECTION_USERS);
+        if(users != null){
+            for(MatrixUser currentUser: users){
+                userMapDM.addMatrixUser(currentUser);
+            }
+        }
+        Map<String, String> dashboardEventIds = readSection(sections, SECTION_DASHBOARDS);
+        if(dashboardEventIds != null){
+            for(Map.Entry<String, String> currentDashboard: dashboardEventIds.entrySet()){
+                roomAndSpaceMapDM.setDashboardEventId(currentDashboard.getKey(), currentDashboard.getValue());
+            }
+        }
+        long replayedCount = 0L;
+        try {
+            replayedCount = changeJournal.replay(record -> {
+                MetricSetJournalRecord journalRecord = SerializationUtils.deserialize(record);
+                restoreMetricSet(journalRecord.getRoutingEndpointId(), journalRecord.getMetricSet());
+            });
+        } catch(Exception ex){
+            getLogger().warn(".restore(): Could not replay journal, message->{}", ExceptionUtils.getMessage(ex));
+        }
+        getLogger().info(".restore(): Restored snapshot from {}, sections->{}, replayedJournalRecords->{}, duration->{}ms",
+                snapshotFile.getSnapshotInstant(), sections.keySet(), replayedCount, Instant.now().toEpochMilli() - restoreStart.toEpochMilli());
+        getLogger().debug(".restore(): Exit");
+    }
+
+    private void restoreMetricSet(String routingEndpointId, PetasosComponentMetricSet metricSet){
+        if(metricSet == null){
+            return;
+        }
+        if(StringUtils.isEmpty(routingEndpointId)){
+            routingEndpointId = RESTORED_ROUTING_ENDPOINT_ID;
+        }
+        metricsDM.mergeComponentMetricSet(routingEndpointId, metricSet);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T readSection(Map<String, byte[]> sections, String sectionName){
+        byte[] sectionContent = sections.get(sectionName);
+        if(sectionContent == null){
+            return(null);
+        }
+        try {
+            return((T) SerializationUtils.deserialize(sectionContent));
+        } catch(Exception ex){
+            getLogger().warn(".readSection(): Could not restore section {}, message->{}", sectionName, ExceptionUtils.getMessage(ex));
+            return(null);
+        }
+    }
+
+    private Path resolveSnapshotDirectory(){
+        String configuredDirectory = System.getenv(SNAPSHOT_DIRECTORY_ENVIRONMENT_VARIABLE);
+        if(StringUtils.isNotEmpty(configuredDirectory)){
+            return(Paths.get(configuredDirectory));
+        }
+        return(Paths.get(System.getProperty("java.io.tmpdir"), "itops-im-snapshot"));
+    }
+}
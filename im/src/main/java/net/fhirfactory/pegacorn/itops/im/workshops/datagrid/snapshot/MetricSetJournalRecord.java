@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.workshops.datagrid.snapshot;
+
+import net.fhirfactory.pegacorn.core.model.petasos.oam.metrics.reporting.PetasosComponentMetricSet;
+
+import java.io.Serializable;
+
+public class MetricSetJournalRecord implements Serializable {
+    private String routingEndpointId;
+    private PetasosComponentMetricSet metricSet;
+
+    //
+    // Constructor(s)
+    //
+
+    public MetricSetJournalRecord(){
+        this.routingEndpointId = null;
+        this.metricSet = null;
+    }
+
+    public MetricSetJournalRecord(String routingEndpointId, PetasosComponentMetricSet metricSet){
+        this.routingEndpointId = routingEndpointId;
+        this.metricSet = metricSet;
+    }
+
+    //
+    // Getters and Setters
+    //
+
+    public String getRoutingEndpointId() {
+        return routingEndpointId;
+    }
+
+    public void setRoutingEndpointId(String routingEndpointId) {
+        this.routingEndpointId = routingEndpointId;
+    }
+
+    public PetasosComponentMetricSet getMetricSet() {
+        return metricSet;
+    }
+
+    public void setMetricSet(PetasosComponentMetricSet metricSet) {
+        this.metricSet = metricSet;
+    }
+
+    //
+    // To String
+    //
+
+    @Override
+    public String toString() {
+        return "MetricSetJournalRecord{" +
+                "routingEndpointId='" + routingEndpointId + '\'' +
+                ", metricSet=" + metricSet +
+                '}';
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.workshops.datagrid.symbols;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A map keyed by dense int ids (as handed out by ITOpsSymbolTable), held as pages of AtomicReferenceArray so there is
+ * no boxing of keys and no hashing. Reads are lock-free; writes to an id are serialised on one of a fixed set of lock
+ * stripes, so compute() callbacks run exactly once, like ConcurrentHashMap.compute().
+ *
+ * @param <V> the value type
+ */
+public class DenseIdTable<V> {
+    private static final int LOCK_STRIPE_COUNT = 64;
+    public static final int NO_MORE_IDS = -1;
+
+    private final int pageShift;
+    private final int pageSize;
+    private final int pageMask;
+    private volatile AtomicReferenceArray<V>[] pages;
+    private final AtomicInteger size;
+    private final Object[] lockStripes;
+    private final Object growthLock;
+
+    @FunctionalInterface
+    public interface Remapping<V> {
+        V apply(int id, V currentValue);
+    }
+
+    @FunctionalInterface
+    public interface Mapping<V> {
+        V apply(int id);
+    }
+
+    @FunctionalInterface
+    public interface EntryVisitor<V> {
+        void visit(int id, V value);
+    }
+
+    //
+    // Constructor(s)
+    //
+
+    public DenseIdTable(){
+        this(10);
+    }
+
+    @SuppressWarnings("unchecked")
+    public DenseIdTable(int pageShift){
+        this.pageShift = pageShift;
+        this.pageSize = 1 << pageShift;
+        this.pageMask = pageSize - 1;
+        this.pages = new AtomicReferenceArray[4];
+        this.size = new AtomicInteger(0);
+        this.lockStripes = new Object[LOCK_STRIPE_COUNT];
+        for(int counter = 0; counter < LOCK_STRIPE_COUNT; counter += 1){
+            this.lockStripes[counter] = new Object();
+        }
+        this.growthLock = new Object();
+    }
+
+    //
+    // Business Methods
+    //
+
+    public V get(int id){
+        AtomicReferenceArray<V> page = getPage(id);
+        if(page == null){
+            return(null);
+        }
+        return(page.get(id & pageMask));
+    }
+
+    public boolean containsId(int id){
+        return(get(id) != null);
+    }
+
+    public int size(){
+        return(size.get());
+    }
+
+    public boolean isEmpty(){
+        return(size.get() == 0);
+    }
+
+    public V put(int id, V value){
+        return(compute(id, (key, currentValue) -> value));
+    }
+
+    public V remove(int id){
+        if(getPage(id) == null){
+            return(null);
+        }
+        synchronized (lockFor(id)){
+            AtomicReferenceArray<V> page = getPage(id);
+            V previousValue = page.getAndSet(id & pageMask, null);
+            if(previousValue != null){
+                size.decrementAndGet();
+            }
+            return(previousValue);
+        }
+    }
+
+    public V computeIfAbsent(int id, Mapping<V> mapping){
+        V currentValue = get(id);
+        if(currentValue != null){
+            return(currentValue);
+        }
+        return(compute(id, (key, existingValue) -> existingValue != null ? existingValue : mapping.apply(key)));
+    }
+
+    /**
+     * Atomically replaces the value held for id with remapping.apply(id, currentValue); returning null removes it.
+     *
+     * @return the new value
+     */
+    public V compute(int id, Remapping<V> remapping){
+        if(id < 0){
+            throw(new IllegalArgumentException("DenseIdTable ids must not be negative, id->" + id));
+        }
+        AtomicReferenceArray<V> page = getOrCreatePage(id);
+        synchronized (lockFor(id)){
+            int index = id & pageMask;
+            V currentValue = page.get(index);
+            V newValue = remapping.apply(id, currentValue);
+            page.set(index, newValue);
+            if(currentValue == null && newValue != null){
+                size.incrementAndGet();
+            } else if(currentValue != null && newValue == null){
+                size.decrementAndGet();
+            }
+            return(newValue);
+        }
+    }
+
+    public void forEach(EntryVisitor<V> visitor){
+        AtomicReferenceArray<V>[] currentPages = pages;
+        for(int pageIndex = 0; pageIndex < currentPages.length; pageIndex += 1){
+            AtomicReferenceArray<V> page = currentPages[pageIndex];
+            if(page == null){
+                continue;
+            }
+            for(int index = 0; index < pageSize; index += 1){
+                V value = page.get(index);
+                if(value != null){
+                    visitor.visit((pageIndex << pageShift) | index, value);
+                }
+            }
+        }
+    }
+
+    public void collectIds(Collection<Integer> ids){
+        forEach((id, value) -> ids.add(id));
+    }
+
+    /**
+     * Adds at most limit ids, in ascending order starting at fromId, to the supplied collection, so a large copy can be
+     * spread over several calls.
+     *
+     * @return the id to resume from on the next call, or NO_MORE_IDS once the end of the table has been reached
+     */
+    public int collectIds(int fromId, int limit, Collection<Integer> ids){
+        if(fromId < 0){
+            return(NO_MORE_IDS);
+        }
+        int added = 0;
+        AtomicReferenceArray<V>[] currentPages = pages;
+        for(int pageIndex = fromId >>> pageShift; pageIndex < currentPages.length; pageIndex += 1){
+            AtomicReferenceArray<V> page = currentPages[pageIndex];
+            if(page == null){
+                continue;
+            }
+            int firstIndex = (pageIndex == (fromId >>> pageShift)) ? (fromId & pageMask) : 0;
+            for(int index = firstIndex; index < pageSize; index += 1){
+                if(page.get(index) == null){
+                    continue;
+                }
+                if(added >= limit){
+                    return((pageIndex << pageShift) | index);
+                }
+                if(ids.add((pageIndex << pageShift) | index)){
+                    added += 1;
+                }
+            }
+        }
+        return(NO_MORE_IDS);
+    }
+
+    public List<V> getValues(){
+        List<V> values = new ArrayList<>(size());
+        forEach((id, value) -> values.add(value));
+        return(values);
+    }
+
+    //
+    // Helpers
+    //
+
+    private Object lockFor(int id){
+        return(lockStripes[id & (LOCK_STRIPE_COUNT - 1)]);
+    }
+
+    private AtomicReferenceArray<V> getPage(int id){
+        if(id < 0){
+            return(null);
+        }
+        int pageIndex = id >>> pageShift;
+        AtomicReferenceArray<V>[] currentPages = pages;
+        if(pageIndex >= currentPages.length){
+            return(null);
+        }
+        return(currentPages[pageIndex]);
+    }
+
+    @SuppressWarnings("unchecked")
+    private AtomicReferenceArray<V> getOrCreatePage(int id){
+        AtomicReferenceArray<V> page = getPage(id);
+        if(page != null){
+            return(page);
+        }
+        synchronized (growthLock){
+            int pageIndex = id >>> pageShift;
+            AtomicReferenceArray<V>[] currentPages = pages;
+            if(pageIndex >= currentPages.length){
+                int newLength = currentPages.length;
+                while(newLength <= pageIndex){
+                    newLength = newLength * 2;
+                }
+                AtomicReferenceArray<V>[] grownPages = new AtomicReferenceArray[newLength];
+                System.arraycopy(currentPages, 0, grownPages, 0, currentPages.length);
+                currentPages = grownPages;
+            }
+            if(currentPages[pageIndex] == null){
+                currentPages[pageIndex] = new AtomicReferenceArray<>(pageSize);
+            }
+            // Publish through the volatile field so lock-free readers see the new page
+            pages = currentPages;
+            return(currentPages[pageIndex]);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.workshops.datagrid.symbols;
+
+import net.fhirfactory.pegacorn.itops.im.valuesets.ITOpsSymbolNamespaceEnum;
+
+import javax.enterprise.context.ApplicationScoped;
+import java.util.EnumMap;
+
+/**
+ * The shared dictionary for the ITOps data grid. Ids, names and other Strings that arrive (freshly deserialised) in
+ * every report are interned here once, and the DMs key their tables on the resulting dense int ids. Each namespace is
+ * capped at MAXIMUM_SIZE symbols; past that, new symbols get UNKNOWN_SYMBOL_ID and are not tracked by the DMs, and
+ * canonicalise() hands back the caller's own String.
+ */
+@ApplicationScoped
+public class ITOpsSymbolTable {
+    public static final int UNKNOWN_SYMBOL_ID = -1;
+
+    private static final int SIZE_WARNING_THRESHOLD = 50000;
+    private static final int MAXIMUM_SIZE = 1 << 20;
+
+    private final EnumMap<ITOpsSymbolNamespaceEnum, SymbolDictionary> dictionaries;
+
+    //
+    // Constructor(s)
+    //
+
+    public ITOpsSymbolTable(){
+        this.dictionaries = new EnumMap<>(ITOpsSymbolNamespaceEnum.class);
+        for(ITOpsSymbolNamespaceEnum currentNamespace: ITOpsSymbolNamespaceEnum.values()){
+            this.dictionaries.put(currentNamespace, new SymbolDictionary(currentNamespace.getDisplayName(), SIZE_WARNING_THRESHOLD, MAXIMUM_SIZE));
+        }
+    }
+
+    //
+    // Business Methods
+    //
+
+    public int intern(ITOpsSymbolNamespaceEnum namespace, String symbol){
+        return(dictionaries.get(namespace).intern(symbol));
+    }
+
+    public int lookup(ITOpsSymbolNamespaceEnum namespace, String symbol){
+        return(dictionaries.get(namespace).lookup(symbol));
+    }
+
+    public String getSymbol(ITOpsSymbolNamespaceEnum namespace, int symbolId){
+        return(dictionaries.get(namespace).getSymbol(symbolId));
+    }
+
+    public String canonicalise(ITOpsSymbolNamespaceEnum namespace, String symbol){
+        int symbolId = intern(namespace, symbol);
+        if(symbolId == UNKNOWN_SYMBOL_ID){
+            return(symbol);
+        }
+        return(getSymbol(namespace, symbolId));
+    }
+
+    public int getSize(ITOpsSymbolNamespaceEnum namespace){
+        return(dictionaries.get(namespace).getSize());
+    }
+
+    public int getTotalSize(){
+        int totalSize = 0;
+        for(SymbolDictionary currentDictionary: dictionaries.values()){
+            totalSize += currentDictionary.getSize();
+        }
+        return(totalSize);
+    }
+
+    public int getSizeWarningThreshold(){
+        return(SIZE_WARNING_THRESHOLD);
+    }
+
+    public int getMaximumSize(){
+        return(MAXIMUM_SIZE);
+    }
+
+    public long getTotalRejectedCount(){
+        long totalRejectedCount = 0;
+        for(SymbolDictionary currentDictionary: dictionaries.values()){
+            totalRejectedCount += currentDictionary.getRejectedCount();
+        }
+        return(totalRejectedCount);
+    }
+
+    //
+    // Metric Names
+    //
+
+    public int internMetricName(String metricName){
+        return(intern(ITOpsSymbolNamespaceEnum.SYMBOL_NAMESPACE_METRIC_NAME, metricName));
+    }
+
+    public int lookupMetricName(String metricName){
+        return(lookup(ITOpsSymbolNamespaceEnum.SYMBOL_NAMESPACE_METRIC_NAME, metricName));
+    }
+
+    public String getMetricName(int metricNameId){
+        return(getSymbol(ITOpsSymbolNamespaceEnum.SYMBOL_NAMESPACE_METRIC_NAME, metricNameId));
+    }
+
+    //
+    // Component Ids
+    //
+
+    public int internComponentId(String componentId){
+        return(intern(ITOpsSymbolNamespaceEnum.SYMBOL_NAMESPACE_COMPONENT_ID, componentId));
+    }
+
+    public int lookupComponentId(String componentId){
+        return(lookup(ITOpsSymbolNamespaceEnum.SYMBOL_NAMESPACE_COMPONENT_ID, componentId));
+    }
+
+    public String getComponentId(int componentSymbolId){
+        return(getSymbol(ITOpsSymbolNamespaceEnum.SYMBOL_NAMESPACE_COMPONENT_ID, componentSymbolId));
+    }
+
+    public String canonicaliseComponentId(String componentId){
+        return(canonicalise(ITOpsSymbolNamespaceEnum.SYMBOL_NAMESPACE_COMPONENT_ID, componentId));
+    }
+
+    //
+    // Participant Names
+    //
+
+    public String canonicaliseParticipantName(String participantName){
+        return(canonicalise(ITOpsSymbolNamespaceEnum.SYMBOL_NAMESPACE_PARTICIPANT_NAME, participantName));
+    }
+
+    //
+    // Matrix User Ids
+    //
+
+    public int internMatrixUserId(String userId){
+        return(intern(ITOpsSymbolNamespaceEnum.SYMBOL_NAMESPACE_MATRIX_USER_ID, userId));
+    }
+
+    public int lookupMatrixUserId(String userId){
+        return(lookup(ITOpsSymbolNamespaceEnum.SYMBOL_NAMESPACE_MATRIX_USER_ID, userId));
+    }
+
+    public String getMatrixUserId(int userSymbolId){
+        return(getSymbol(ITOpsSymbolNamespaceEnum.SYMBOL_NAMESPACE_MATRIX_USER_ID, userSymbolId));
+    }
+
+    //
+    // To String
+    //
+
+    @Override
+    public String toString() {
+        return "ITOpsSymbolTable{" +
+                "dictionaries=" + dictionaries.values() +
+                ", totalSize=" + getTotalSize() +
+                '}';
+    }
+}
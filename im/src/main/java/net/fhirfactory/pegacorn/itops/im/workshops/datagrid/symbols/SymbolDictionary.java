@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.workshops.datagrid.symbols;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Maps the Strings of one namespace to dense int ids (0, 1, 2, ...) and back. The String kept for an id is the first
+ * instance interned, so callers that swap their own copy for getSymbol(intern(x)) share a single instance. Ids are
+ * never reused (they key DenseIdTables across the data grid, so a reused id would alias a stale entry), which means
+ * the dictionary only grows; a warning is logged each time its size passes the warning threshold, which then doubles.
+ * Growth is bounded by maximumSize: once it is reached, intern() returns UNKNOWN_SYMBOL_ID for any new symbol (which
+ * every caller already treats as "not tracked") and the refusal is counted, while symbols already held keep working.
+ */
+public class SymbolDictionary {
+    private static final Logger LOG = LoggerFactory.getLogger(SymbolDictionary.class);
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final String namespaceName;
+    private final ConcurrentHashMap<String, Integer> symbolIdMap;
+    private volatile String[] symbols;
+    private int symbolCount;
+    private final int sizeWarningThreshold;
+    private int nextSizeWarning;
+    private final int maximumSize;
+    private final AtomicLong rejectedCount;
+    private final Object dictionaryLock;
+
+    //
+    // Constructor(s)
+    //
+
+    public SymbolDictionary(String namespaceName, int sizeWarningThreshold, int maximumSize){
+        this.namespaceName = namespaceName;
+        this.symbolIdMap = new ConcurrentHashMap<>();
+        this.symbols = new String[INITIAL_CAPACITY];
+        this.symbolCount = 0;
+        this.sizeWarningThreshold = Math.max(1, sizeWarningThreshold);
+        this.nextSizeWarning = this.sizeWarningThreshold;
+        this.maximumSize = Math.max(this.sizeWarningThreshold, maximumSize);
+        this.rejectedCount = new AtomicLong(0);
+        this.dictionaryLock = new Object();
+    }
+
+    //
+    // Getters (and Setters)
+    //
+
+    public String getNamespaceName() {
+        return namespaceName;
+    }
+
+    public int getSize(){
+        return(symbolIdMap.size());
+    }
+
+    public int getSizeWarningThreshold() {
+        return sizeWarningThreshold;
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    public long getRejectedCount() {
+        return(rejectedCount.get());
+    }
+
+    //
+    // Business Methods
+    //
+
+    public int intern(String symbol){
+        if(StringUtils.isEmpty(symbol)){
+            return(ITOpsSymbolTable.UNKNOWN_SYMBOL_ID);
+        }
+        Integer symbolId = symbolIdMap.get(symbol);
+        if(symbolId != null){
+            return(symbolId);
+        }
+        synchronized (dictionaryLock){
+            symbolId = symbolIdMap.get(symbol);
+            if(symbolId != null){
+                return(symbolId);
+            }
+            if(symbolCount >= maximumSize){
+                long currentRejectedCount = rejectedCount.incrementAndGet();
+                if(currentRejectedCount % 1000 == 1){
+                    LOG.error(".intern(): Symbol dictionary is full, new symbols are not tracked, namespace->{}, maximumSize->{}, rejectedCount->{}", namespaceName, maximumSize, currentRejectedCount);
+                }
+                return(ITOpsSymbolTable.UNKNOWN_SYMBOL_ID);
+            }
+            int newId = symbolCount;
+            String[] currentSymbols = symbols;
+            if(newId >= currentSymbols.length){
+                currentSymbols = Arrays.copyOf(currentSymbols, currentSymbols.length * 2);
+            }
+            currentSymbols[newId] = symbol;
+            symbols = currentSymbols;
+            symbolCount = newId + 1;
+            symbolIdMap.put(symbol, newId);
+            if(symbolCount >= nextSizeWarning){
+                LOG.warn(".intern(): Symbol dictionary is large and never shrinks, namespace->{}, size->{}", namespaceName, symbolCount);
+                nextSizeWarning = (nextSizeWarning > Integer.MAX_VALUE / 2) ? Integer.MAX_VALUE : nextSizeWarning * 2;
+            }
+            return(newId);
+        }
+    }
+
+    public int lookup(String symbol){
+        if(StringUtils.isEmpty(symbol)){
+            return(ITOpsSymbolTable.UNKNOWN_SYMBOL_ID);
+        }
+        Integer symbolId = symbolIdMap.get(symbol);
+        if(symbolId == null){
+            return(ITOpsSymbolTable.UNKNOWN_SYMBOL_ID);
+        }
+        return(symbolId);
+    }
+
+    public String getSymbol(int symbolId){
+        String[] currentSymbols = symbols;
+        if(symbolId < 0 || symbolId >= currentSymbols.length){
+            return(null);
+        }
+        return(currentSymbols[symbolId]);
+    }
+
+    //
+    // To String
+    //
+
+    @Override
+    public String toString() {
+        return "SymbolDictionary{" +
+                "namespaceName='" + namespaceName + '\'' +
+                ", size=" + getSize() +
+                ", sizeWarningThreshold=" + sizeWarningThreshold +
+                ", maximumSize=" + maximumSize +
+                ", rejectedCount=" + rejectedCount.get() +
+                '}';
+    }
+}
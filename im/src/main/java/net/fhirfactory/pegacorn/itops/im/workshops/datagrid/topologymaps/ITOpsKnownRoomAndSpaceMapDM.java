@@ -23,6 +23,11 @@ package net.fhirfactory.pegacorn.itops.im.workshops.datagrid.topologymaps;
 
 import net.fhirfactory.pegacorn.communicate.matrix.model.core.MatrixRoom;
 import net.fhirfactory.pegacorn.communicate.synapse.model.SynapseRoom;
+import net.fhirfactory.pegacorn.itops.im.valuesets.OAMRoomTypeEnum;
+import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.generations.GenerationIndex;
+import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.rooms.ITOpsRoomClassification;
+import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.rooms.ITOpsRoomRecord;
+import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.rooms.ITOpsRoomRegistry;
 import net.fhirfactory.pegacorn.itops.im.workshops.transform.matrixbridge.common.ParticipantRoomIdentityFactory;
 import org.apache.commons.lang3.SerializationUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -33,26 +38,30 @@ import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 @ApplicationScoped
 public class ITOpsKnownRoomAndSpaceMapDM {
     private static final Logger LOG = LoggerFactory.getLogger(ITOpsKnownRoomAndSpaceMapDM.class);
 
-    // ConcurrentHashMap<roomId, MatrixRoom>
-    private ConcurrentHashMap<String, MatrixRoom> knownRooms;
-    private Object knownRoomsLock;
+    // The known rooms, indexed by roomId, canonical alias and pseudo alias
+    private ITOpsRoomRegistry roomRegistry;
 
-    // ConcurrentHashMap<pseudoAlias, roomId> (not the Canonical Alias Id, the Alias which is in the Id)
-    private ConcurrentHashMap<String, String> pseudoAliasRoomMap;
-    private Object knownPseudoAliasRoomMapLock;
+    // The registry generation up to which getRecentlyAddedRooms() has already reported
+    private long recentlyAddedRoomsCursor;
+    private Object recentlyAddedRoomsCursorLock;
 
-    // ConcurrentHashMap<roomAlias, roomId> (not the Canonical Alias Id, the Alias which is in the Id)
-    private ConcurrentHashMap<String, String> canonicalAliasRoomMap;
-    private Object knownCanonicalAliasRoomMapLock;
+    // ConcurrentHashMap<participantName, AtomicReferenceArray<roomId> indexed by OAMRoomTypeEnum.ordinal()>, a memo of
+    // resolved room ids, replaced wholesale whenever the pseudo alias mappings change
+    private volatile ConcurrentHashMap<String, AtomicReferenceArray<String>> participantRoomIdMemo;
 
-    // ConcurrentHashMap<roomId, SynapseRoom>
-    private ConcurrentHashMap<String, MatrixRoom> lastUsedRoomSet;
-    private Object knownLastScannedRoomSet;
+    // ConcurrentHashMap<roomId, eventId> (the metrics dashboard message that is edited in place)
+    private ConcurrentHashMap<String, String> dashboardEventIdMap;
+
+    // Released once the map has been populated, from a restored snapshot or a synchronisation with Synapse
+    private CountDownLatch roomMapReadyLatch;
 
     @Inject
     private ParticipantRoomIdentityFactory roomIdentityFactory;
@@ -62,56 +71,26 @@ public class ITOpsKnownRoomAndSpaceMapDM {
     //
 
     public ITOpsKnownRoomAndSpaceMapDM(){
-        this.knownRooms = new ConcurrentHashMap<>();
-        this.pseudoAliasRoomMap = new ConcurrentHashMap<>();
-        this.canonicalAliasRoomMap = new ConcurrentHashMap<>();
-        this.lastUsedRoomSet = new ConcurrentHashMap<>();
-        this.knownRoomsLock = new Object();
-        this.knownPseudoAliasRoomMapLock = new Object();
-        this.knownCanonicalAliasRoomMapLock = new Object();
-        this.knownLastScannedRoomSet= new Object();
+        this.roomRegistry = new ITOpsRoomRegistry();
+        this.recentlyAddedRoomsCursor = GenerationIndex.NO_GENERATION;
+        this.recentlyAddedRoomsCursorLock = new Object();
+        this.dashboardEventIdMap = new ConcurrentHashMap<>();
+        this.participantRoomIdMemo = new ConcurrentHashMap<>();
+        this.roomMapReadyLatch = new CountDownLatch(1);
     }
 
     //
     // Getters (and Setters)
     //
 
-    public ConcurrentHashMap<String, MatrixRoom> getLastUsedRoomSet() {
-        return lastUsedRoomSet;
-    }
-
-    protected ConcurrentHashMap<String, MatrixRoom> getKnownRooms() {
-        return knownRooms;
-    }
-
-    public ConcurrentHashMap<String, String> getPseudoAliasRoomMap() {
-        return pseudoAliasRoomMap;
-    }
-
-    public ConcurrentHashMap<String, String> getCanonicalAliasRoomMap() {
-        return canonicalAliasRoomMap;
+    protected ITOpsRoomRegistry getRoomRegistry() {
+        return roomRegistry;
     }
 
     protected Logger getLogger(){
         return(LOG);
     }
 
-    protected Object getKnownRoomsLock() {
-        return knownRoomsLock;
-    }
-
-    protected Object getKnownPseudoAliasRoomMapLock() {
-        return knownPseudoAliasRoomMapLock;
-    }
-
-    protected Object getKnownCanonicalAliasRoomMapLock() {
-        return knownCanonicalAliasRoomMapLock;
-    }
-
-    protected Object getKnownLastScannedRoomSet() {
-        return knownLastScannedRoomSet;
-    }
-
     protected ParticipantRoomIdentityFactory getRoomIdentityFactory() {
         return roomIdentityFactory;
     }
@@ -128,43 +107,10 @@ public class ITOpsKnownRoomAndSpaceMapDM {
             return;
         }
 
-        boolean storeAsSpace = false;
-        boolean storeAsRoom = false;
-
-        String alias = room.getCanonicalAlias();
-        String roomId = room.getRoomID();
-
-        if(StringUtils.isNotEmpty(roomId)) {
-            synchronized (getKnownRoomsLock()) {
-                getLogger().debug("addRoomFromMatrix(): Adding synapseRoom to roomId/knownRooms map");
-                if (getKnownRooms().containsKey(roomId)) {
-                    getKnownRooms().remove(roomId);
-                }
-                getKnownRooms().put(roomId, room);
-            }
-        }
-
-        getLogger().debug("addRoomFromMatrix(): Adding synapseRoom to canonicalAlias/knownRooms Map");
-        if(StringUtils.isNotEmpty(alias) && StringUtils.isNotEmpty(roomId)) {
-            synchronized (getCanonicalAliasRoomMap()) {
-                if (getCanonicalAliasRoomMap().containsKey(alias)) {
-                    getCanonicalAliasRoomMap().remove(alias);
-                }
-                getCanonicalAliasRoomMap().put(alias, roomId);
-            }
-        }
-
-        getLogger().debug("addRoomFromMatrix(): Adding synapseRoom to pseudoAlias/knownRooms Map");
-        if(StringUtils.isNotEmpty(alias) && StringUtils.isNotEmpty(roomId)) {
-            String pseudoAliasFromAliasId = getPseudoAliasFromAliasId(alias);
-            if(StringUtils.isNotEmpty(pseudoAliasFromAliasId)) {
-                synchronized (getKnownPseudoAliasRoomMapLock()) {
-                    if (getPseudoAliasRoomMap().containsKey(pseudoAliasFromAliasId)) {
-                        getPseudoAliasRoomMap().remove(pseudoAliasFromAliasId);
-                    }
-                    getPseudoAliasRoomMap().put(pseudoAliasFromAliasId, roomId);
-                }
-            }
+        String pseudoAlias = getPseudoAliasFromAliasId(room.getCanonicalAlias());
+        boolean pseudoAliasMappingChanged = getRoomRegistry().put(room, pseudoAlias);
+        if(pseudoAliasMappingChanged){
+            invalidateParticipantRoomIdMemo();
         }
 
         getLogger().debug("addRoomFromMatrix(): Exit");
@@ -172,144 +118,112 @@ public class ITOpsKnownRoomAndSpaceMapDM {
 
     public MatrixRoom getRoomFromRoomId(String roomId){
         getLogger().debug(".getRoomFromRoomId(): Entry, roomId->{}", roomId);
-        MatrixRoom room = null;
-        if(StringUtils.isNotEmpty(roomId)) {
-            synchronized (getKnownRoomsLock()) {
-                if (getKnownRooms().containsKey(roomId)) {
-                    room = getKnownRooms().get(roomId);
-                }
-            }
-        }
+        MatrixRoom room = getRoom(getRoomRegistry().getByRoomId(roomId));
         getLogger().debug(".getRoomFromRoomId(): Exit, room->{}", room);
         return(room);
     }
 
+    public ITOpsRoomRecord getRoomRecord(String roomId){
+        return(getRoomRegistry().getByRoomId(roomId));
+    }
+
+    /**
+     * @return the (cached) classification of a known room, or null if the room is not known
+     */
+    public ITOpsRoomClassification getRoomClassification(String roomId){
+        ITOpsRoomRecord record = getRoomRegistry().getByRoomId(roomId);
+        if(record == null){
+            return(null);
+        }
+        return(record.getClassification());
+    }
+
     public void deleteRoom(String roomId){
         getLogger().debug(".deleteRoom(): Entry, roomId->{}",roomId);
-        boolean roomIsDeleted = false;
-        boolean roomITOpsAliasIsDeleted = false;
-        boolean roomCanonicalAliasIsDeleted = false;
-        if (StringUtils.isNotEmpty(roomId)) {
-            synchronized (getKnownRoomsLock()){
-                if(getKnownRooms().containsKey(roomId)){
-                    getKnownRooms().remove(roomId);
-                    roomIsDeleted = true;
-                }
-            }
-            synchronized (getKnownCanonicalAliasRoomMapLock()){
-                Collection<String> values = getCanonicalAliasRoomMap().values();
-                if(values.contains(roomId)){
-                    Enumeration<String> keys = getCanonicalAliasRoomMap().keys();
-                    while(keys.hasMoreElements()){
-                        String currentCanonicalAlias = keys.nextElement();
-                        String currentRoomId = getCanonicalAliasRoomMap().get(currentCanonicalAlias);
-                        if(currentRoomId.contentEquals(roomId)){
-                            getCanonicalAliasRoomMap().remove(currentCanonicalAlias);
-                            roomCanonicalAliasIsDeleted = true;
-                            break;
-                        }
-                    }
-                }
-            }
-            synchronized (getKnownPseudoAliasRoomMapLock()){
-                Collection<String> values = getPseudoAliasRoomMap().values();
-                if(values.contains(roomId)){
-                    Enumeration<String> keys = getPseudoAliasRoomMap().keys();
-                    while(keys.hasMoreElements()){
-                        String currentPseudoAlias = keys.nextElement();
-                        String currentRoomId = getPseudoAliasRoomMap().get(currentPseudoAlias);
-                        if(currentRoomId.contentEquals(roomId)){
-                            getPseudoAliasRoomMap().remove(currentPseudoAlias);
-                            roomITOpsAliasIsDeleted = true;
-                            break;
-                        }
-                    }
-                }
-            }
+        if (StringUtils.isEmpty(roomId)) {
+            getLogger().debug(".deleteRoom(): Exit, roomId is empty");
+            return;
+        }
+        dashboardEventIdMap.remove(roomId);
+        ITOpsRoomRecord removedRecord = getRoomRegistry().remove(roomId);
+        if(removedRecord != null && removedRecord.getPseudoAlias() != null){
+            invalidateParticipantRoomIdMemo();
         }
-        getLogger().debug(".deleteRoom(): Exit, roomIsDeleted->{}, roomITOpsAliasIsDeleted->{}, roomCanonicalAliasIsDeleted->{}", roomIsDeleted, roomITOpsAliasIsDeleted, roomCanonicalAliasIsDeleted);
+        getLogger().debug(".deleteRoom(): Exit, removedRecord->{}", removedRecord);
     }
 
     public MatrixRoom getRoomFromCanonicalAlias(String canonicalAlias){
         getLogger().debug(".getRoomFromCanonicalAlias(): Entry, canonicalAlias->{}", canonicalAlias);
-        MatrixRoom room = null;
-        String roomId = null;
-        if(StringUtils.isNotEmpty(canonicalAlias)) {
-            synchronized (getKnownCanonicalAliasRoomMapLock()) {
-                if (getCanonicalAliasRoomMap().containsKey(canonicalAlias)) {
-                    roomId = getCanonicalAliasRoomMap().get(canonicalAlias);
-                }
-            }
-        }
-        if(StringUtils.isNotEmpty(roomId)) {
-            synchronized (getKnownRoomsLock()) {
-                if (getKnownRooms().containsKey(roomId)) {
-                    room = getKnownRooms().get(roomId);
-                }
-            }
-        }
+        MatrixRoom room = getRoom(getRoomRegistry().getByCanonicalAlias(canonicalAlias));
         getLogger().debug(".getRoomFromCanonicalAlias(): Exit, room->{}", room);
         return(room);
     }
 
     public MatrixRoom getRoomFromPseudoAlias(String pseudoAlias){
         getLogger().debug(".getRoomFromPseudoAlias(): Entry, pseudoAlias->{}", pseudoAlias);
-        MatrixRoom room = null;
-        String roomId = null;
-        if(StringUtils.isNotEmpty(pseudoAlias)) {
-            synchronized (getKnownPseudoAliasRoomMapLock()) {
-                if (getPseudoAliasRoomMap().containsKey(pseudoAlias)) {
-                    roomId = getPseudoAliasRoomMap().get(pseudoAlias);
-                }
-            }
-        }
-        if(StringUtils.isNotEmpty(roomId)) {
-            synchronized (getKnownRoomsLock()) {
-                if (getKnownRooms().containsKey(roomId)) {
-                    room = getKnownRooms().get(roomId);
-                }
-            }
-        }
+        MatrixRoom room = getRoom(getRoomRegistry().getByPseudoAlias(pseudoAlias));
         getLogger().debug(".getRoomFromPseudoAlias(): Exit, room->{}", room);
         return(room);
     }
 
     public String getRoomIdFromPseudoAlias(String alias){
         getLogger().debug(".getRoomIdFromPseudoAlias(): Entry, alias->{}", alias);
+        String roomId = getRoomId(getRoomRegistry().getByPseudoAlias(alias));
+        getLogger().debug(".getRoomIdFromPseudoAlias(): Exit, roomId->{}", roomId);
+        return(roomId);
+    }
 
-        if(StringUtils.isEmpty(alias)){
-            getLogger().debug(".getRoomIdFromPseudoAlias(): Exit, alias is empty");
+    /**
+     * Resolves the room a participant's reports of the given type go into. Once resolved, the room id is remembered
+     * per (participantName, roomType), so the steady state needs no pseudo alias building and no locking; the memo
+     * is dropped whenever a pseudo alias is added, re-pointed or removed. Unresolved lookups are not remembered, as
+     * the room may be created at any time.
+     *
+     * @return the roomId, or null if no room with the participant's pseudo alias is known
+     */
+    public String getRoomIdForParticipant(String participantName, OAMRoomTypeEnum roomType){
+        if(StringUtils.isEmpty(participantName) || roomType == null){
             return(null);
         }
-
-        String roomId = null;
-        synchronized (getKnownPseudoAliasRoomMapLock()) {
-            if (getPseudoAliasRoomMap().containsKey(alias)) {
-                roomId = getPseudoAliasRoomMap().get(alias);
+        // Resolve against the memo as it is now, so a concurrent invalidation discards anything stored below
+        ConcurrentHashMap<String, AtomicReferenceArray<String>> currentMemo = participantRoomIdMemo;
+        AtomicReferenceArray<String> participantRoomIds = currentMemo.get(participantName);
+        if(participantRoomIds != null){
+            String memoisedRoomId = participantRoomIds.get(roomType.ordinal());
+            if(memoisedRoomId != null){
+                return(memoisedRoomId);
             }
         }
-
-        getLogger().debug(".getRoomIdFromAlias(): Exit, roomId->{}", roomId);
+        String roomId = getRoomIdFromPseudoAlias(getRoomIdentityFactory().buildOAMRoomPseudoAlias(participantName, roomType));
+        if(roomId != null){
+            currentMemo.computeIfAbsent(participantName, key -> new AtomicReferenceArray<>(OAMRoomTypeEnum.values().length)).set(roomType.ordinal(), roomId);
+        }
         return(roomId);
     }
 
+    protected void invalidateParticipantRoomIdMemo(){
+        participantRoomIdMemo = new ConcurrentHashMap<>();
+    }
+
     public String getRoomIdFromCanonicalAlias(String canonicalAlias) {
         getLogger().debug(".getRoomIdFromCanonicalAlias(): Entry, canonicalAlias->{}", canonicalAlias);
+        String roomId = getRoomId(getRoomRegistry().getByCanonicalAlias(canonicalAlias));
+        getLogger().debug(".getRoomIdFromCanonicalAlias(): Exit, roomId->{}", roomId);
+        return(roomId);
+    }
 
-        if(StringUtils.isEmpty(canonicalAlias)){
-            getLogger().debug(".getRoomIdFromCanonicalAlias(): Exit, alias is empty");
+    private MatrixRoom getRoom(ITOpsRoomRecord record){
+        if(record == null){
             return(null);
         }
+        return(record.getRoom());
+    }
 
-        String roomId = null;
-        synchronized (getKnownPseudoAliasRoomMapLock()) {
-            if (getPseudoAliasRoomMap().containsKey(canonicalAlias)) {
-                roomId = getPseudoAliasRoomMap().get(canonicalAlias);
-            }
+    private String getRoomId(ITOpsRoomRecord record){
+        if(record == null){
+            return(null);
         }
-
-        getLogger().debug(".getRoomIdFromCanonicalAlias(): Exit, roomId->{}", roomId);
-        return(roomId);
+        return(record.getRoomId());
     }
 
     private String getPseudoAliasFromAliasId(String aliasId){
@@ -328,14 +242,62 @@ public class ITOpsKnownRoomAndSpaceMapDM {
         return(alias);
     }
 
+    public String getDashboardEventId(String roomId){
+        if(StringUtils.isEmpty(roomId)){
+            return(null);
+        }
+        return(dashboardEventIdMap.get(roomId));
+    }
+
+    public void setDashboardEventId(String roomId, String eventId){
+        getLogger().debug(".setDashboardEventId(): Entry, roomId->{}, eventId->{}", roomId, eventId);
+        if(StringUtils.isEmpty(roomId)){
+            return;
+        }
+        if(StringUtils.isEmpty(eventId)){
+            dashboardEventIdMap.remove(roomId);
+        } else {
+            dashboardEventIdMap.put(roomId, eventId);
+        }
+    }
+
+    public Map<String, String> getDashboardEventIds(){
+        return(new HashMap<>(dashboardEventIdMap));
+    }
+
+    /**
+     * Signals that the map now holds the rooms known at startup (restored from a snapshot or listed by Synapse), even
+     * if there are none. Only the first call has any effect.
+     */
+    public void markRoomMapReady(String source){
+        if(roomMapReadyLatch.getCount() > 0){
+            getLogger().info(".markRoomMapReady(): Room map ready, source->{}, knownRoomCount->{}", source, getKnownRoomCount());
+            roomMapReadyLatch.countDown();
+        }
+    }
+
+    public boolean isRoomMapReady(){
+        return(roomMapReadyLatch.getCount() == 0);
+    }
+
+    /**
+     * Blocks until markRoomMapReady() has been called, or for at most maximumWaitMillis.
+     *
+     * @return true if the room map is ready
+     */
+    public boolean awaitRoomMapReady(long maximumWaitMillis) throws InterruptedException {
+        return(roomMapReadyLatch.await(maximumWaitMillis, TimeUnit.MILLISECONDS));
+    }
+
+    public int getKnownRoomCount(){
+        return(getRoomRegistry().size());
+    }
+
     public Set<MatrixRoom> getFullRoomSet(){
         getLogger().debug(".getFullRoomSet(): Entry");
         Set<MatrixRoom> roomSet = new HashSet<>();
-        if(getKnownRooms().isEmpty()){
-            return(roomSet);
-        }
-        synchronized (getKnownRoomsLock()){
-            roomSet.addAll(getKnownRooms().values());
+        for(ITOpsRoomRecord currentRecord: getRoomRegistry().getRecords()){
+            roomSet.add(currentRecord.getRoom());
         }
         if(getLogger().isDebugEnabled()){
             getLogger().debug(".getFullRoomSet(): Exit, roomSet.size->{}", roomSet.size());
@@ -344,35 +306,20 @@ public class ITOpsKnownRoomAndSpaceMapDM {
         return(roomSet);
     }
 
+    /**
+     * Returns the rooms registered since the previous call (all known rooms on the first call). Each room is stamped
+     * with the registry generation at which it was first added, so this only walks the additions made since the
+     * last call, not the whole room set.
+     */
     public Set<MatrixRoom> getRecentlyAddedRooms() {
         getLogger().debug(".getRecentlyAddedRooms(): Entry");
         Set<MatrixRoom> addedRoomSet = new HashSet<>();
-        if (getKnownRooms().isEmpty()) {
-            return (addedRoomSet);
+        List<ITOpsRoomRecord> addedRecords = new ArrayList<>();
+        synchronized (recentlyAddedRoomsCursorLock) {
+            recentlyAddedRoomsCursor = getRoomRegistry().collectRecordsAddedAfter(recentlyAddedRoomsCursor, addedRecords);
         }
-        synchronized (getKnownRoomsLock()) {
-            Collection<MatrixRoom> currentKnownRoomSet = getKnownRooms().values();
-            if (getLastUsedRoomSet().isEmpty()) {
-                addedRoomSet.addAll(currentKnownRoomSet);
-            } else {
-                Collection<MatrixRoom> previousKnownRoomSet = getLastUsedRoomSet().values();
-                for (MatrixRoom currentKnownRoom : currentKnownRoomSet) {
-                    boolean currentKnownRoomWasThere = false;
-                    for (MatrixRoom previousKnownRoom : previousKnownRoomSet) {
-                        if (currentKnownRoom.getRoomID().contentEquals(previousKnownRoom.getRoomID())) {
-                            currentKnownRoomWasThere = true;
-                            break;
-                        }
-                    }
-                    if (!currentKnownRoomWasThere) {
-                        addedRoomSet.add(currentKnownRoom);
-                    }
-                }
-                getLastUsedRoomSet().clear();
-            }
-            for (MatrixRoom currentKnownRoom : currentKnownRoomSet) {
-                getLastUsedRoomSet().put(currentKnownRoom.getRoomID(), currentKnownRoom);
-            }
+        for (ITOpsRoomRecord addedRecord : addedRecords) {
+            addedRoomSet.add(addedRecord.getRoom());
         }
         getLogger().debug(".getRecentlyAddedRooms(): Exit, addedRoomSet->{}", addedRoomSet);
         return(addedRoomSet);
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.workshops.datagrid.topologymaps;
+
+import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.symbols.ITOpsSymbolTable;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The local view of which users are members of which ITOps rooms. Each room's membership is a BitSet over the user
+ * ids interned in the ITOpsSymbolTable, so "who still needs to join" is a single andNot() of the desired set against
+ * the room's bitset. A room's bitset is only ever read or changed inside a compute on its map entry, which keeps each
+ * room's membership consistent without a global lock.
+ */
+@ApplicationScoped
+public class ITOpsKnownRoomMembershipMapDM {
+    private static final Logger LOG = LoggerFactory.getLogger(ITOpsKnownRoomMembershipMapDM.class);
+
+    // ConcurrentHashMap<roomId, BitSet of member user symbol ids>
+    private ConcurrentHashMap<String, BitSet> roomMembershipMap;
+
+    @Inject
+    private ITOpsSymbolTable symbolTable;
+
+    //
+    // Constructor(s)
+    //
+
+    public ITOpsKnownRoomMembershipMapDM(){
+        this.roomMembershipMap = new ConcurrentHashMap<>();
+    }
+
+    //
+    // Getters (and Setters)
+    //
+
+    protected Logger getLogger(){
+        return(LOG);
+    }
+
+    protected ITOpsSymbolTable getSymbolTable(){
+        return(symbolTable);
+    }
+
+    public int getKnownRoomCount(){
+        return(roomMembershipMap.size());
+    }
+
+    //
+    // Business Methods
+    //
+
+    public int internUserId(String userId){
+        return(getSymbolTable().internMatrixUserId(userId));
+    }
+
+    public String getUserId(int userSymbolId){
+        return(getSymbolTable().getMatrixUserId(userSymbolId));
+    }
+
+    public boolean hasRoomMembership(String roomId){
+        if(StringUtils.isEmpty(roomId)){
+            return(false);
+        }
+        return(roomMembershipMap.containsKey(roomId));
+    }
+
+    /**
+     * Replaces the known membership of a room with the member list just read from Synapse.
+     */
+    public void setRoomMembers(String roomId, Collection<String> memberUserIds){
+        if(StringUtils.isEmpty(roomId)){
+            return;
+        }
+        BitSet members = new BitSet();
+        if(memberUserIds != null){
+            for(String currentMemberUserId: memberUserIds){
+                int userSymbolId = internUserId(currentMemberUserId);
+                if(userSymbolId != ITOpsSymbolTable.UNKNOWN_SYMBOL_ID){
+                    members.set(userSymbolId);
+                }
+            }
+        }
+        roomMembershipMap.put(roomId, members);
+    }
+
+    /**
+     * Records a successful join. Rooms whose membership has not been read yet are left unknown.
+     */
+    public void addRoomMember(String roomId, int userSymbolId){
+        if(StringUtils.isEmpty(roomId) || userSymbolId == ITOpsSymbolTable.UNKNOWN_SYMBOL_ID){
+            return;
+        }
+        roomMembershipMap.computeIfPresent(roomId, (key, members) -> {
+            members.set(userSymbolId);
+            return(members);
+        });
+    }
+
+    /**
+     * @return the users in desiredMembers that are not (known to be) members of the room, or null if the room's
+     * membership is not known
+     */
+    public BitSet getMissingMembers(String roomId, BitSet desiredMembers){
+        if(StringUtils.isEmpty(roomId) || desiredMembers == null){
+            return(null);
+        }
+        BitSet missingMembers = (BitSet)desiredMembers.clone();
+        BitSet members = roomMembershipMap.computeIfPresent(roomId, (key, currentMembers) -> {
+            missingMembers.andNot(currentMembers);
+            return(currentMembers);
+        });
+        if(members == null){
+            return(null);
+        }
+        return(missingMembers);
+    }
+
+    public void removeRoom(String roomId){
+        if(StringUtils.isEmpty(roomId)){
+            return;
+        }
+        roomMembershipMap.remove(roomId);
+    }
+
+    /**
+     * Drops the membership of every room not in the given set (e.g. rooms since deleted from Matrix).
+     */
+    public void retainRooms(Set<String> roomIds){
+        if(roomIds == null){
+            return;
+        }
+        int sizeBefore = roomMembershipMap.size();
+        roomMembershipMap.keySet().retainAll(roomIds);
+        getLogger().debug(".retainRooms(): Dropped {} room(s) no longer known", sizeBefore - roomMembershipMap.size());
+    }
+}
@@ -22,13 +22,15 @@
 package net.fhirfactory.pegacorn.itops.im.workshops.datagrid.topologymaps;
 
 import net.fhirfactory.pegacorn.communicate.matrix.model.core.MatrixUser;
+import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.generations.GenerationIndex;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.enterprise.context.ApplicationScoped;
-import java.util.Collection;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -39,18 +41,26 @@ public class ITOpsKnownUserMapDM {
     private ConcurrentHashMap<String, MatrixUser> knownUserSet;
     private Object knownUserSetLock;
 
-    private ConcurrentHashMap<String, MatrixUser> previousKnownUserSet;
-    private Object previousKnownUserSetLock;
+    // ConcurrentHashMap<userName, generation the user was first added at>
+    private ConcurrentHashMap<String, Long> userAddedGenerationMap;
+    // GenerationIndex<userName>
+    private GenerationIndex<String> userAddedGenerationIndex;
+
+    // The generation up to which getRecentAddedUsers() has already reported
+    private long recentAddedUsersCursor;
+    private Object recentAddedUsersCursorLock;
 
     //
     // Constructor(s)
     //
 
     public ITOpsKnownUserMapDM(){
-        this.previousKnownUserSet = new ConcurrentHashMap<>();
         this.knownUserSet = new ConcurrentHashMap<>();
         this.knownUserSetLock = new Object();
-        this.previousKnownUserSetLock = new Object();
+        this.userAddedGenerationMap = new ConcurrentHashMap<>();
+        this.userAddedGenerationIndex = new GenerationIndex<>();
+        this.recentAddedUsersCursor = GenerationIndex.NO_GENERATION;
+        this.recentAddedUsersCursorLock = new Object();
     }
 
     //
@@ -61,10 +71,6 @@ public class ITOpsKnownUserMapDM {
         return knownUserSet;
     }
 
-    public ConcurrentHashMap<String, MatrixUser> getPreviousKnownUserSet() {
-        return previousKnownUserSet;
-    }
-
     protected Logger getLogger(){
         return(LOG);
     }
@@ -81,10 +87,11 @@ public class ITOpsKnownUserMapDM {
             return;
         }
         synchronized (knownUserSetLock){
-            if(knownUserSet.containsKey(user.getName())){
-                knownUserSet.remove(user.getName());
+            MatrixUser previousUser = knownUserSet.put(user.getName(), user);
+            if(previousUser == null){
+                long addedGeneration = userAddedGenerationIndex.stamp(user.getName());
+                userAddedGenerationMap.put(user.getName(), addedGeneration);
             }
-            knownUserSet.put(user.getName(), user);
         }
     }
 
@@ -93,8 +100,10 @@ public class ITOpsKnownUserMapDM {
             return;
         }
         synchronized (knownUserSetLock){
-            if(knownUserSet.containsKey(userName)){
-                knownUserSet.remove(userName);
+            knownUserSet.remove(userName);
+            Long addedGeneration = userAddedGenerationMap.remove(userName);
+            if(addedGeneration != null){
+                userAddedGenerationIndex.remove(addedGeneration);
             }
         }
     }
@@ -110,35 +119,21 @@ public class ITOpsKnownUserMapDM {
         return(knownUsers);
     }
 
+    /**
+     * Returns the users added since the previous call (all known users on the first call), by walking the additions
+     * recorded in the generation index since then rather than comparing the whole user set against a copy of itself.
+     */
     public Set<MatrixUser> getRecentAddedUsers(){
         Set<MatrixUser> addedUsers = new HashSet<>();
-        if(knownUserSet.isEmpty()){
-            return(addedUsers);
+        List<String> addedUserNames = new ArrayList<>();
+        synchronized (recentAddedUsersCursorLock){
+            recentAddedUsersCursor = userAddedGenerationIndex.collectAddedAfter(recentAddedUsersCursor, addedUserNames);
         }
-        synchronized (knownUserSetLock) {
-            Collection<MatrixUser> knownUsers = knownUserSet.values();
-            if(previousKnownUserSet.isEmpty()){
-                addedUsers.addAll(knownUsers);
-            } else {
-                Collection<MatrixUser> previouslyKnownUsers = previousKnownUserSet.values();
-                for (MatrixUser currentKnownUser : knownUsers) {
-                    boolean currentKnownUserWasThere = false;
-                    for(MatrixUser previousKnownUser: previouslyKnownUsers) {
-                        if (currentKnownUser.getName().contentEquals(previousKnownUser.getName())) {
-                            currentKnownUserWasThere = true;
-                            break;
-                        }
-                    }
-                    if(!currentKnownUserWasThere){
-                        addedUsers.add(currentKnownUser);
-                    }
-                }
-                previousKnownUserSet.clear();
-            }
-            for (MatrixUser currentKnownUser : knownUsers) {
-                previousKnownUserSet.put(currentKnownUser.getName(), currentKnownUser);
+        for(String addedUserName: addedUserNames){
+            MatrixUser addedUser = knownUserSet.get(addedUserName);
+            if(addedUser != null){
+                addedUsers.add(addedUser);
             }
-
         }
         return(addedUsers);
     }
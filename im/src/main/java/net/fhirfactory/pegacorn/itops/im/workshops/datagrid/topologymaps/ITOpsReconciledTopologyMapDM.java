@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.workshops.datagrid.topologymaps;
+
+import net.fhirfactory.pegacorn.itops.im.datatypes.ProcessingPlantTopologyShape;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The shape of each ProcessingPlant as it was when its spaces/rooms were last brought into line with it, which is
+ * what the reported topology is diffed against to work out what (if anything) needs doing in Matrix.
+ */
+@ApplicationScoped
+public class ITOpsReconciledTopologyMapDM {
+    private static final Logger LOG = LoggerFactory.getLogger(ITOpsReconciledTopologyMapDM.class);
+
+    // ConcurrentHashMap<processingPlantName, ProcessingPlantTopologyShape>
+    private ConcurrentHashMap<String, ProcessingPlantTopologyShape> reconciledShapeMap;
+
+    //
+    // Constructor(s)
+    //
+
+    public ITOpsReconciledTopologyMapDM(){
+        this.reconciledShapeMap = new ConcurrentHashMap<>();
+    }
+
+    //
+    // Getters (and Setters)
+    //
+
+    protected Logger getLogger(){
+        return(LOG);
+    }
+
+    public int getReconciledProcessingPlantCount(){
+        return(reconciledShapeMap.size());
+    }
+
+    //
+    // Business Methods
+    //
+
+    public ProcessingPlantTopologyShape getReconciledShape(String processingPlantName){
+        if(StringUtils.isEmpty(processingPlantName)){
+            return(null);
+        }
+        return(reconciledShapeMap.get(processingPlantName));
+    }
+
+    public void setReconciledShape(ProcessingPlantTopologyShape shape){
+        if(shape == null || StringUtils.isEmpty(shape.getProcessingPlantName())){
+            return;
+        }
+        reconciledShapeMap.put(shape.getProcessingPlantName(), shape);
+    }
+
+    public void removeReconciledShape(String processingPlantName){
+        if(StringUtils.isEmpty(processingPlantName)){
+            return;
+        }
+        reconciledShapeMap.remove(processingPlantName);
+    }
+
+    /**
+     * Forgets the shapes of the plants that are no longer reported.
+     */
+    public void retainProcessingPlants(Set<String> processingPlantNames){
+        if(processingPlantNames == null){
+            return;
+        }
+        int sizeBefore = reconciledShapeMap.size();
+        reconciledShapeMap.keySet().retainAll(processingPlantNames);
+        getLogger().debug(".retainProcessingPlants(): Dropped {} processing plant(s) no longer reported", sizeBefore - reconciledShapeMap.size());
+    }
+}
@@ -28,7 +28,6 @@ import net.fhirfactory.pegacorn.core.interfaces.oam.metrics.PetasosMetricsHandle
 import net.fhirfactory.pegacorn.core.model.capabilities.base.CapabilityUtilisationRequest;
 import net.fhirfactory.pegacorn.core.model.capabilities.base.CapabilityUtilisationResponse;
 import net.fhirfactory.pegacorn.core.model.capabilities.valuesets.WorkUnitProcessorCapabilityEnum;
-import net.fhirfactory.pegacorn.core.model.componentid.ComponentIdType;
 import net.fhirfactory.pegacorn.core.model.dataparcel.DataParcelManifest;
 import net.fhirfactory.pegacorn.core.model.dataparcel.DataParcelTypeDescriptor;
 import net.fhirfactory.pegacorn.core.model.dataparcel.valuesets.DataParcelDirectionEnum;
@@ -41,8 +40,13 @@ import net.fhirfactory.pegacorn.core.model.petasos.task.PetasosActionableTask;
 import net.fhirfactory.pegacorn.core.model.petasos.task.datatypes.work.datatypes.TaskWorkItemType;
 import net.fhirfactory.pegacorn.core.model.petasos.uow.UoWPayload;
 import net.fhirfactory.pegacorn.core.model.topology.endpoints.edge.jgroups.JGroupsIntegrationPointSummary;
+import net.fhirfactory.pegacorn.itops.im.datatypes.MetricSetCaptureOutcome;
+import net.fhirfactory.pegacorn.itops.im.datatypes.MetricSetDeltaCaptureOutcome;
+import net.fhirfactory.pegacorn.itops.im.datatypes.PetasosComponentMetricSetDelta;
 import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.ITOpsSystemWideMetricsDM;
+import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.metrics.MetricSetChangeSubscription;
 import net.fhirfactory.pegacorn.itops.im.workshops.internalipc.petasos.common.ITOpsReceiverBase;
+import net.fhirfactory.pegacorn.itops.im.workshops.oam.ITOpsIMIngestMetricsAgent;
 import net.fhirfactory.pegacorn.petasos.core.tasks.factories.PetasosActionableTaskFactory;
 import net.fhirfactory.pegacorn.petasos.endpoints.services.common.ProcessingPlantJGroupsIntegrationPointSet;
 import org.apache.camel.ExchangePattern;
@@ -55,6 +59,7 @@ import org.slf4j.LoggerFactory;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 
 @ApplicationScoped
@@ -67,12 +72,20 @@ public class ITOpsMetricsReportReceiver extends ITOpsReceiverBase implements Pet
     @Inject
     private PetasosActionableTaskFactory actionableTaskFactory;
 
+    @Inject
+    private ITOpsIMIngestMetricsAgent ingestMetricsAgent;
+
     @Produce
     ProducerTemplate template;
 
     @Inject
     private ProcessingPlantJGroupsIntegrationPointSet integrationPointSet;
 
+    private static final long ESTIMATED_SERIALISED_METRIC_SIZE = 512L;
+    private static final int METRICS_CHANGE_BATCH_SIZE = 100;
+    private static final int MAXIMUM_METRICS_CHANGE_BATCHES_PER_CYCLE = 20;
+
+    private MetricSetChangeSubscription metricsChangeSubscription;
 
     @Override
     protected void registerCapabilities(){
@@ -113,16 +126,19 @@ public class ITOpsMetricsReportReceiver extends ITOpsReceiverBase implements Pet
 
     @Override
     public Instant replicateMetricToServerHandler(PetasosComponentMetric metric, JGroupsIntegrationPointSummary integrationPoint) {
-        PetasosComponentMetricSet componentMetricsSet = metricsDM.getComponentMetricsSet(metric.getMetricSource().getId());
-        componentMetricsSet.addMetric(metric);
+        getLogger().debug(".replicateMetricToServerHandler(): Entry, metric->{}, integrationPoint->{}", metric, integrationPoint);
+        if(metric != null && integrationPoint != null){
+            metricsDM.mergeComponentMetric(integrationPoint.getComponentId().getId(), metric);
+        }
+        getLogger().debug(".replicateMetricToServerHandler(): Exit");
         return(Instant.now());
     }
 
     @Override
     public Instant replicateMetricSetToServerHandler(PetasosComponentMetricSet metricSet, JGroupsIntegrationPointSummary integrationPoint) {
         getLogger().debug(".replicateMetricSetToServerHandler(): Entry, metricSet->{}, integrationPoint->{}", metricSet, integrationPoint);
-        if(metricSet != null){
-            metricsDM.addComponentMetricSet(integrationPoint.getComponentId().getId(), metricSet);
+        if(metricSet != null && integrationPoint != null){
+            metricsDM.mergeComponentMetricSet(integrationPoint.getComponentId().getId(), metricSet);
         }
         getLogger().debug(".replicateMetricSetToServerHandler(): Exit");
         return(Instant.now());
@@ -130,32 +146,82 @@ public class ITOpsMetricsReportReceiver extends ITOpsReceiverBase implements Pet
 
     @Override
     public Instant replicateMetricToServer(String collectorSubsystemName, PetasosComponentMetric metric) {
-        getLogger().debug(".replicateMetricSetToServerHandler(): Entry, collectorSubsystemName->{}, metric->{}", collectorSubsystemName, metric);
+        getLogger().debug(".replicateMetricToServer(): Entry, collectorSubsystemName->{}, metric->{}", collectorSubsystemName, metric);
         if(metric == null){
             return(Instant.now());
         }
-        ComponentIdType MyComponentId = getProcessingPlant().getMeAsASoftwareComponent().getComponentID();
-        PetasosComponentMetricSet componentMetricsSet = metricsDM.getComponentMetricsSet(metric.getMetricSource().getId());
-        componentMetricsSet.addMetric(metric);
-        getLogger().debug(".replicateMetricSetToServerHandler(): Exit");
+        metricsDM.mergeComponentMetric(collectorSubsystemName, metric);
+        getLogger().debug(".replicateMetricToServer(): Exit");
         return (Instant.now());
     }
 
     @Override
     public Instant replicateMetricSetToServer(String collectorServiceName, PetasosComponentMetricSet metricSet) {
-        getLogger().debug(".replicateMetricSetToServerHandler(): Entry, collectorSubsystemName->{}, metric->{}", collectorServiceName, metricSet);
+        getLogger().debug(".replicateMetricSetToServer(): Entry, collectorServiceName->{}, metricSet->{}", collectorServiceName, metricSet);
         if(metricSet == null){
             return(Instant.now());
         }
-        ComponentIdType MyComponentId = getProcessingPlant().getMeAsASoftwareComponent().getComponentID();
-        PetasosComponentMetricSet componentMetricsSet = metricsDM.getComponentMetricsSet(metricSet.getMetricSourceComponentId().getId());
-        for(PetasosComponentMetric currentMetric: metricSet.getMetrics().values()) {
-            componentMetricsSet.addMetric(currentMetric);
-        }
-        getLogger().debug(".replicateMetricSetToServerHandler(): Exit");
+        metricsDM.mergeComponentMetricSet(collectorServiceName, metricSet);
+        getLogger().debug(".replicateMetricSetToServer(): Exit");
         return (Instant.now());
     }
 
+    //
+    // Batch Replication
+    //
+
+    public List<MetricSetCaptureOutcome> replicateMetricSetBatchToServerHandler(List<PetasosComponentMetricSet> metricSets, JGroupsIntegrationPointSummary integrationPoint){
+        getLogger().debug(".replicateMetricSetBatchToServerHandler(): Entry, integrationPoint->{}", integrationPoint);
+        if(metricSets == null || integrationPoint == null){
+            getLogger().debug(".replicateMetricSetBatchToServerHandler(): Exit, either metricSets or integrationPoint is null");
+            return(new ArrayList<>());
+        }
+        List<MetricSetCaptureOutcome> outcomes = metricsDM.mergeComponentMetricSets(integrationPoint.getComponentId().getId(), metricSets);
+        getLogger().debug(".replicateMetricSetBatchToServerHandler(): Exit, outcome count->{}", outcomes.size());
+        return(outcomes);
+    }
+
+    //
+    // Delta Replication
+    //
+
+    public MetricSetDeltaCaptureOutcome replicateMetricSetDeltaToServerHandler(PetasosComponentMetricSetDelta metricSetDelta, JGroupsIntegrationPointSummary integrationPoint){
+        getLogger().debug(".replicateMetricSetDeltaToServerHandler(): Entry, metricSetDelta->{}, integrationPoint->{}", metricSetDelta, integrationPoint);
+        if(metricSetDelta == null || integrationPoint == null){
+            getLogger().debug(".replicateMetricSetDeltaToServerHandler(): Exit, either metricSetDelta or integrationPoint is null");
+            return(new MetricSetDeltaCaptureOutcome());
+        }
+        MetricSetDeltaCaptureOutcome outcome = metricsDM.mergeComponentMetricSetDelta(integrationPoint.getComponentId().getId(), metricSetDelta);
+        if(outcome.isAccepted()){
+            ingestMetricsAgent.incrementMetricSetDeltaCaptureCount();
+            PetasosComponentMetricSet currentMetricSet = metricsDM.getComponentMetricsSet(outcome.getMetricSourceComponentId());
+            if(currentMetricSet != null && currentMetricSet.getMetrics() != null){
+                int changedMetricCount = 0;
+                if(metricSetDelta.getChangedMetrics() != null){
+                    changedMetricCount = metricSetDelta.getChangedMetrics().size();
+                }
+                long omittedMetricCount = currentMetricSet.getMetrics().size() - changedMetricCount;
+                ingestMetricsAgent.addEstimatedBytesSaved(omittedMetricCount * ESTIMATED_SERIALISED_METRIC_SIZE);
+            }
+        } else if(outcome.isResynchronisationRequired()){
+            ingestMetricsAgent.incrementMetricSetDeltaResynchronisationCount();
+        }
+        getLogger().debug(".replicateMetricSetDeltaToServerHandler(): Exit, outcome->{}", outcome);
+        return(outcome);
+    }
+
+    public MetricSetDeltaCaptureOutcome replicateMetricSetBaselineToServerHandler(PetasosComponentMetricSet metricSet, JGroupsIntegrationPointSummary integrationPoint){
+        getLogger().debug(".replicateMetricSetBaselineToServerHandler(): Entry, metricSet->{}, integrationPoint->{}", metricSet, integrationPoint);
+        if(metricSet == null || integrationPoint == null){
+            getLogger().debug(".replicateMetricSetBaselineToServerHandler(): Exit, either metricSet or integrationPoint is null");
+            return(new MetricSetDeltaCaptureOutcome());
+        }
+        MetricSetDeltaCaptureOutcome outcome = metricsDM.mergeComponentMetricSetBaseline(integrationPoint.getComponentId().getId(), metricSet);
+        ingestMetricsAgent.incrementMetricSetBaselineCaptureCount();
+        getLogger().debug(".replicateMetricSetBaselineToServerHandler(): Exit, outcome->{}", outcome);
+        return(outcome);
+    }
+
     //
     // Update Notification Service
     //
@@ -163,41 +229,52 @@ public class ITOpsMetricsReportReceiver extends ITOpsReceiverBase implements Pet
     @Override
     protected void cacheMonitorProcess() {
         getLogger().debug(".cacheMonitorProcess(): Entry");
-        List<PetasosComponentMetricSet> updatedMetricSets = metricsDM.getUpdatedMetricSets();
-        for(PetasosComponentMetricSet currentMetricSet: updatedMetricSets){
-            TaskWorkItemType taskWorkItem = new TaskWorkItemType();
-            String workItemPayload = null;
-            try {
-                workItemPayload= getJsonMapper().writeValueAsString(currentMetricSet);
-            } catch (JsonProcessingException e) {
-                getLogger().warn("cacheMonitorProcess(): Could not convert metric to JSON, error->{}", ExceptionUtils.getStackTrace(e));
-            }
-            if(workItemPayload != null){
-                UoWPayload ingresPayload = new UoWPayload();
-                ingresPayload.setPayload(workItemPayload);
-
-                DataParcelManifest manifest = new DataParcelManifest();
-                DataParcelTypeDescriptor descriptor = new DataParcelTypeDescriptor();
-                descriptor.setDataParcelDefiner("FHIRFactory");
-                descriptor.setDataParcelCategory("OAM");
-                descriptor.setDataParcelSubCategory("Reporting");
-                descriptor.setDataParcelResource("PetasosComponentMetricSet");
-                manifest.setContentDescriptor(descriptor);
-                manifest.setValidationStatus(DataParcelValidationStatusEnum.DATA_PARCEL_CONTENT_VALIDATED_FALSE);
-                manifest.setNormalisationStatus(DataParcelNormalisationStatusEnum.DATA_PARCEL_CONTENT_NORMALISATION_TRUE);
-                manifest.setDataParcelFlowDirection(DataParcelDirectionEnum.INFORMATION_FLOW_INBOUND_DATA_PARCEL);
-                manifest.setEnforcementPointApprovalStatus(PolicyEnforcementPointApprovalStatusEnum.POLICY_ENFORCEMENT_POINT_APPROVAL_NEGATIVE);
-                ingresPayload.setPayloadManifest(manifest);
-
-                taskWorkItem.setIngresContent(ingresPayload);
-
-                PetasosActionableTask actionableTask = actionableTaskFactory.newMessageBasedActionableTask(taskWorkItem);
-
-                template.sendBody(PetasosPropertyConstants.TASK_DISTRIBUTION_QUEUE, ExchangePattern.InOnly, actionableTask);
+        if(metricsChangeSubscription == null){
+            metricsChangeSubscription = metricsDM.registerChangeSubscription(cacheMonitorProcessTimerName(), METRICS_CHANGE_BATCH_SIZE);
+        }
+        int batchCount = 0;
+        while(batchCount < MAXIMUM_METRICS_CHANGE_BATCHES_PER_CYCLE && metricsDM.hasPendingChanges(metricsChangeSubscription)) {
+            List<PetasosComponentMetricSet> updatedMetricSets = metricsDM.getNextChangeBatch(metricsChangeSubscription);
+            batchCount += 1;
+            for (PetasosComponentMetricSet currentMetricSet : updatedMetricSets) {
+                distributeMetricSet(currentMetricSet);
             }
         }
         touchLastUpdateInstant();
-        getLogger().debug(".cacheMonitorProcess(): Exit");
+        getLogger().debug(".cacheMonitorProcess(): Exit, batchCount->{}", batchCount);
+    }
+
+    protected void distributeMetricSet(PetasosComponentMetricSet currentMetricSet){
+        TaskWorkItemType taskWorkItem = new TaskWorkItemType();
+        String workItemPayload = null;
+        try {
+            workItemPayload= getJsonMapper().writeValueAsString(currentMetricSet);
+        } catch (JsonProcessingException e) {
+            getLogger().warn("distributeMetricSet(): Could not convert metric to JSON, error->{}", ExceptionUtils.getStackTrace(e));
+        }
+        if(workItemPayload != null){
+            UoWPayload ingresPayload = new UoWPayload();
+            ingresPayload.setPayload(workItemPayload);
+
+            DataParcelManifest manifest = new DataParcelManifest();
+            DataParcelTypeDescriptor descriptor = new DataParcelTypeDescriptor();
+            descriptor.setDataParcelDefiner("FHIRFactory");
+            descriptor.setDataParcelCategory("OAM");
+            descriptor.setDataParcelSubCategory("Reporting");
+            descriptor.setDataParcelResource("PetasosComponentMetricSet");
+            manifest.setContentDescriptor(descriptor);
+            manifest.setValidationStatus(DataParcelValidationStatusEnum.DATA_PARCEL_CONTENT_VALIDATED_FALSE);
+            manifest.setNormalisationStatus(DataParcelNormalisationStatusEnum.DATA_PARCEL_CONTENT_NORMALISATION_TRUE);
+            manifest.setDataParcelFlowDirection(DataParcelDirectionEnum.INFORMATION_FLOW_INBOUND_DATA_PARCEL);
+            manifest.setEnforcementPointApprovalStatus(PolicyEnforcementPointApprovalStatusEnum.POLICY_ENFORCEMENT_POINT_APPROVAL_NEGATIVE);
+            ingresPayload.setPayloadManifest(manifest);
+
+            taskWorkItem.setIngresContent(ingresPayload);
+
+            PetasosActionableTask actionableTask = actionableTaskFactory.newMessageBasedActionableTask(taskWorkItem);
+
+            template.sendBody(PetasosPropertyConstants.TASK_DISTRIBUTION_QUEUE, ExchangePattern.InOnly, actionableTask);
+        }
     }
 
     @Override
@@ -32,6 +32,11 @@ import net.fhirfactory.pegacorn.core.model.petasos.oam.notifications.PetasosComp
 import net.fhirfactory.pegacorn.core.model.petasos.oam.subscriptions.reporting.PetasosSubscriptionSummaryReport;
 import net.fhirfactory.pegacorn.core.model.petasos.oam.topology.reporting.PetasosMonitoredTopologyGraph;
 import net.fhirfactory.pegacorn.core.model.topology.endpoints.edge.jgroups.JGroupsIntegrationPointSummary;
+import net.fhirfactory.pegacorn.itops.im.datatypes.MetricSetCaptureOutcome;
+import net.fhirfactory.pegacorn.itops.im.datatypes.MetricSetDeltaCaptureOutcome;
+import net.fhirfactory.pegacorn.itops.im.datatypes.PetasosComponentMetricSetDelta;
+import net.fhirfactory.pegacorn.itops.im.workshops.internalipc.petasos.ITOpsMetricsReportReceiver;
+import net.fhirfactory.pegacorn.itops.im.workshops.internalipc.petasos.ingest.ITOpsIngestQueue;
 import net.fhirfactory.pegacorn.petasos.endpoints.services.metrics.PetasosOAMMetricsEndpointBase;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,6 +44,7 @@ import org.slf4j.LoggerFactory;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 import java.time.Instant;
+import java.util.List;
 
 @ApplicationScoped
 public class PetasosOAMMetricsCollectorEndpoint extends PetasosOAMMetricsEndpointBase {
@@ -47,6 +53,12 @@ public class PetasosOAMMetricsCollectorEndpoint extends PetasosOAMMetricsEndpoin
     @Inject
     private PetasosMetricsHandlerInterface metricsHandler;
 
+    @Inject
+    private ITOpsMetricsReportReceiver metricsReportReceiver;
+
+    @Inject
+    private ITOpsIngestQueue ingestQueue;
+
     @Inject
     private PetasosTopologyReportingHandlerInterface topologyHandler;
 
@@ -85,6 +97,10 @@ public class PetasosOAMMetricsCollectorEndpoint extends PetasosOAMMetricsEndpoin
         return (LOG);
     }
 
+    protected ITOpsIngestQueue getIngestQueue(){
+        return(ingestQueue);
+    }
+
     //
     // Metrics Services
     //
@@ -92,7 +108,9 @@ public class PetasosOAMMetricsCollectorEndpoint extends PetasosOAMMetricsEndpoin
     public Instant captureMetric(String serviceProviderName, PetasosComponentMetric metric) {
         getLogger().debug(".captureMetric(): Entry, serviceProviderName->{}, metric->{}", serviceProviderName, metric);
 
-        Instant captureInstant = metricsHandler.replicateMetricToServerHandler(metric, createSummary(getJGroupsIntegrationPoint()));
+        JGroupsIntegrationPointSummary integrationPoint = createSummary(getJGroupsIntegrationPoint());
+        getIngestQueue().submit(resolveMetricSourceId(metric), "Metric", () -> metricsHandler.replicateMetricToServerHandler(metric, integrationPoint));
+        Instant captureInstant = Instant.now();
 
         getMetricsAgent().incrementRemoteProcedureCallHandledCount();
 
@@ -103,7 +121,9 @@ public class PetasosOAMMetricsCollectorEndpoint extends PetasosOAMMetricsEndpoin
     public Instant captureMetrics(String serviceProviderName, PetasosComponentMetricSet metricSet) {
         getLogger().debug(".captureMetrics(): Entry, serviceProviderName->{}, metricSet->{}", serviceProviderName, metricSet);
 
-        Instant captureInstant = metricsHandler.replicateMetricSetToServerHandler( metricSet, createSummary(getJGroupsIntegrationPoint()));
+        JGroupsIntegrationPointSummary integrationPoint = createSummary(getJGroupsIntegrationPoint());
+        getIngestQueue().submit(resolveMetricSetSourceId(metricSet), "MetricSet", () -> metricsHandler.replicateMetricSetToServerHandler(metricSet, integrationPoint));
+        Instant captureInstant = Instant.now();
 
         getMetricsAgent().incrementRemoteProcedureCallHandledCount();
 
@@ -114,7 +134,8 @@ public class PetasosOAMMetricsCollectorEndpoint extends PetasosOAMMetricsEndpoin
 
     public Instant captureMetric(PetasosComponentMetric metric, JGroupsIntegrationPointSummary integrationPoint) {
 
-        Instant captureInstance = metricsHandler.replicateMetricToServerHandler(metric, integrationPoint);
+        getIngestQueue().submit(resolveMetricSourceId(metric), "Metric", () -> metricsHandler.replicateMetricToServerHandler(metric, integrationPoint));
+        Instant captureInstance = Instant.now();
 
         getMetricsAgent().incrementRemoteProcedureCallHandledCount();
 
@@ -123,13 +144,55 @@ public class PetasosOAMMetricsCollectorEndpoint extends PetasosOAMMetricsEndpoin
 
     public Instant captureMetrics(PetasosComponentMetricSet metricSet, JGroupsIntegrationPointSummary integrationPoint) {
 
-        Instant captureInstance = metricsHandler.replicateMetricSetToServerHandler(metricSet, integrationPoint);
+        getIngestQueue().submit(resolveMetricSetSourceId(metricSet), "MetricSet", () -> metricsHandler.replicateMetricSetToServerHandler(metricSet, integrationPoint));
+        Instant captureInstance = Instant.now();
 
         getMetricsAgent().incrementRemoteProcedureCallHandledCount();
 
         return (captureInstance);
     }
 
+    //
+    // Batch Metrics Services
+    //
+
+    public List<MetricSetCaptureOutcome> captureMetricsBatch(List<PetasosComponentMetricSet> metricSets, JGroupsIntegrationPointSummary integrationPoint) {
+        getLogger().debug(".captureMetricsBatch(): Entry, integrationPoint->{}", integrationPoint);
+
+        List<MetricSetCaptureOutcome> outcomes = metricsReportReceiver.replicateMetricSetBatchToServerHandler(metricSets, integrationPoint);
+
+        getMetricsAgent().incrementRemoteProcedureCallHandledCount();
+
+        getLogger().debug(".captureMetricsBatch(): Exit, outcome count->{}", outcomes.size());
+        return(outcomes);
+    }
+
+    //
+    // Delta Metrics Services
+    //
+
+    public MetricSetDeltaCaptureOutcome captureMetricsDelta(PetasosComponentMetricSetDelta metricSetDelta, JGroupsIntegrationPointSummary integrationPoint) {
+        getLogger().debug(".captureMetricsDelta(): Entry, metricSetDelta->{}, integrationPoint->{}", metricSetDelta, integrationPoint);
+
+        MetricSetDeltaCaptureOutcome outcome = metricsReportReceiver.replicateMetricSetDeltaToServerHandler(metricSetDelta, integrationPoint);
+
+        getMetricsAgent().incrementRemoteProcedureCallHandledCount();
+
+        getLogger().debug(".captureMetricsDelta(): Exit, outcome->{}", outcome);
+        return(outcome);
+    }
+
+    public MetricSetDeltaCaptureOutcome captureMetricsBaseline(PetasosComponentMetricSet metricSet, JGroupsIntegrationPointSummary integrationPoint) {
+        getLogger().debug(".captureMetricsBaseline(): Entry, metricSet->{}, integrationPoint->{}", metricSet, integrationPoint);
+
+        MetricSetDeltaCaptureOutcome outcome = metricsReportReceiver.replicateMetricSetBaselineToServerHandler(metricSet, integrationPoint);
+
+        getMetricsAgent().incrementRemoteProcedureCallHandledCount();
+
+        getLogger().debug(".captureMetricsBaseline(): Exit, outcome->{}", outcome);
+        return(outcome);
+    }
+
     //
     // Capture Subscription Reports
     //
@@ -137,7 +200,9 @@ public class PetasosOAMMetricsCollectorEndpoint extends PetasosOAMMetricsEndpoin
     public Instant shareSubscriptionSummaryReport(String targetName, PetasosSubscriptionSummaryReport summaryReport) {
         getLogger().debug(".shareSubscriptionSummaryReport(): Entry, summaryReport->{}", summaryReport);
 
-        Instant instant = subscriptionHandler.replicateSubscriptionSummaryReportHandler(summaryReport, createSummary(getJGroupsIntegrationPoint()));
+        JGroupsIntegrationPointSummary integrationPoint = createSummary(getJGroupsIntegrationPoint());
+        getIngestQueue().submit(resolveIntegrationPointId(integrationPoint), "SubscriptionSummaryReport", () -> subscriptionHandler.replicateSubscriptionSummaryReportHandler(summaryReport, integrationPoint));
+        Instant instant = Instant.now();
 
         getMetricsAgent().incrementRemoteProcedureCallHandledCount();
 
@@ -147,7 +212,8 @@ public class PetasosOAMMetricsCollectorEndpoint extends PetasosOAMMetricsEndpoin
     public Instant shareSubscriptionSummaryReport(PetasosSubscriptionSummaryReport summaryReport, JGroupsIntegrationPointSummary integrationPoint) {
         getLogger().debug(".shareSubscriptionSummaryReport(): Entry, summaryReport->{}", summaryReport);
 
-        Instant instant = subscriptionHandler.replicateSubscriptionSummaryReportHandler(summaryReport, integrationPoint);
+        getIngestQueue().submit(resolveIntegrationPointId(integrationPoint), "SubscriptionSummaryReport", () -> subscriptionHandler.replicateSubscriptionSummaryReportHandler(summaryReport, integrationPoint));
+        Instant instant = Instant.now();
 
         getMetricsAgent().incrementRemoteProcedureCallHandledCount();
 
@@ -157,7 +223,8 @@ public class PetasosOAMMetricsCollectorEndpoint extends PetasosOAMMetricsEndpoin
     public Instant replicateSubscriptionSummaryReportHandler(PetasosSubscriptionSummaryReport summaryReport, JGroupsIntegrationPointSummary integrationPoint){
         getLogger().debug(".shareSubscriptionSummaryReport(): Entry, summaryReport->{}", summaryReport);
 
-        Instant instant = subscriptionHandler.replicateSubscriptionSummaryReportHandler(summaryReport, integrationPoint);
+        getIngestQueue().submit(resolveIntegrationPointId(integrationPoint), "SubscriptionSummaryReport", () -> subscriptionHandler.replicateSubscriptionSummaryReportHandler(summaryReport, integrationPoint));
+        Instant instant = Instant.now();
 
         getMetricsAgent().incrementRemoteProcedureCallHandledCount();
 
@@ -173,7 +240,8 @@ public class PetasosOAMMetricsCollectorEndpoint extends PetasosOAMMetricsEndpoin
 
         Instant outcomeInstant = null;
         if((topologyGraph != null) && (integrationPoint != null)) {
-            outcomeInstant = topologyHandler.mergeTopologyGraph(integrationPoint, topologyGraph);
+            getIngestQueue().submit(resolveIntegrationPointId(integrationPoint), "TopologyGraph", () -> topologyHandler.mergeTopologyGraph(integrationPoint, topologyGraph));
+            outcomeInstant = Instant.now();
             getMetricsAgent().incrementRemoteProcedureCallHandledCount();
         }
 
@@ -189,7 +257,7 @@ public class PetasosOAMMetricsCollectorEndpoint extends PetasosOAMMetricsEndpoin
         getLogger().debug(".topologyGraphHandler(): Entry, topologyGraph->{}, integrationPoint->{}", notification, integrationPoint);
 
         if((notification != null) && (integrationPoint != null)) {
-            notificationHandler.processNotification(notification);
+            getIngestQueue().submit(resolveIntegrationPointId(integrationPoint), "Notification", () -> notificationHandler.processNotification(notification));
             getMetricsAgent().incrementRemoteProcedureCallHandledCount();
         }
 
@@ -205,10 +273,35 @@ public class PetasosOAMMetricsCollectorEndpoint extends PetasosOAMMetricsEndpoin
         getLogger().debug(".processTaskReport(): Entry, taskReportNotification->{}", taskReportNotification);
 
         if((taskReportNotification != null) && (integrationPoint != null)) {
-            taskReportHandler.processTaskReport(taskReportNotification);
+            getIngestQueue().submit(resolveIntegrationPointId(integrationPoint), "TaskReport", () -> taskReportHandler.processTaskReport(taskReportNotification));
             getMetricsAgent().incrementRemoteProcedureCallHandledCount();
         }
 
         getLogger().debug(".processTaskReport(): Exit");
     }
+
+    //
+    // Helpers
+    //
+
+    private String resolveMetricSourceId(PetasosComponentMetric metric){
+        if(metric == null || metric.getMetricSource() == null){
+            return(null);
+        }
+        return(metric.getMetricSource().getId());
+    }
+
+    private String resolveMetricSetSourceId(PetasosComponentMetricSet metricSet){
+        if(metricSet == null || metricSet.getMetricSourceComponentId() == null){
+            return(null);
+        }
+        return(metricSet.getMetricSourceComponentId().getId());
+    }
+
+    private String resolveIntegrationPointId(JGroupsIntegrationPointSummary integrationPoint){
+        if(integrationPoint == null || integrationPoint.getComponentId() == null){
+            return(null);
+        }
+        return(integrationPoint.getComponentId().getId());
+    }
 }
@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.workshops.internalipc.petasos.ingest;
+
+import net.fhirfactory.pegacorn.itops.im.workshops.oam.ITOpsIMIngestMetricsAgent;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decouples the JGroups RPC threads from the data grid. Each report is placed onto one of a small number of bounded
+ * queues (striped by source component id, so reports from one source are applied in order) and a dedicated applier
+ * thread per stripe applies it to the DMs. If a stripe is full the calling thread waits (for a bounded time) for
+ * room on it, which slows the sender down; a report that still can't be queued is rejected and counted. A report is
+ * never applied on the calling thread, as it would then overtake the reports already queued for its source.
+ */
+@ApplicationScoped
+public class ITOpsIngestQueue {
+    private static final Logger LOG = LoggerFactory.getLogger(ITOpsIngestQueue.class);
+
+    private static final int INGEST_STRIPE_COUNT = 4;
+    private static final int INGEST_STRIPE_CAPACITY = 10000;
+    private static final long INGEST_POLL_TIMEOUT_MILLIS = 1000L;
+    private static final long INGEST_OFFER_TIMEOUT_MILLIS = 500L;
+    private static final long INGEST_SHUTDOWN_TIMEOUT_MILLIS = 5000L;
+
+    private boolean initialised;
+    private volatile boolean shuttingDown;
+    private ArrayBlockingQueue<IngestTask>[] ingestStripes;
+    private Thread[] applierThreads;
+
+    @Inject
+    private ITOpsIMIngestMetricsAgent ingestMetricsAgent;
+
+    //
+    // Constructor(s)
+    //
+
+    @SuppressWarnings("unchecked")
+    public ITOpsIngestQueue(){
+        this.initialised = false;
+        this.shuttingDown = false;
+        this.ingestStripes = new ArrayBlockingQueue[INGEST_STRIPE_COUNT];
+        for(int counter = 0; counter < INGEST_STRIPE_COUNT; counter += 1){
+            this.ingestStripes[counter] = new ArrayBlockingQueue<>(INGEST_STRIPE_CAPACITY);
+        }
+        this.applierThreads = new Thread[INGEST_STRIPE_COUNT];
+    }
+
+    //
+    // Post Construct
+    //
+
+    @PostConstruct
+    public void initialise(){
+        getLogger().debug(".initialise(): Entry");
+        if(initialised){
+            getLogger().debug(".initialise(): Exit, already initialised, nothing to do");
+            return;
+        }
+        getLogger().info(".initialise(): Initialisation Start...");
+        for(int counter = 0; counter < INGEST_STRIPE_COUNT; counter += 1){
+            ArrayBlockingQueue<IngestTask> stripe = ingestStripes[counter];
+            Thread applierThread = new Thread(() -> applyLoop(stripe), "ITOpsIngestApplier-" + counter);
+            applierThread.setDaemon(true);
+            applierThreads[counter] = applierThread;
+            applierThread.start();
+        }
+        this.initialised = true;
+        getLogger().info(".initialise(): Initialisation Finish...");
+    }
+
+    //
+    // Pre Destroy
+    //
+
+    @PreDestroy
+    public void shutdown(){
+        getLogger().info(".shutdown(): Entry, queueDepth->{}", getQueueDepth());
+        this.shuttingDown = true;
+        for(Thread currentApplierThread: applierThreads){
+            if(currentApplierThread != null){
+                currentApplierThread.interrupt();
+            }
+        }
+        for(Thread currentApplierThread: applierThreads){
+            if(currentApplierThread != null){
+                try {
+                    currentApplierThread.join(INGEST_SHUTDOWN_TIMEOUT_MILLIS);
+                } catch (InterruptedException iex){
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        getLogger().info(".shutdown(): Exit, unapplied reports->{}", getQueueDepth());
+    }
+
+    //
+    // Getters (and Setters)
+    //
+
+    protected Logger getLogger(){
+        return(LOG);
+    }
+
+    protected ITOpsIMIngestMetricsAgent getIngestMetricsAgent(){
+        return(ingestMetricsAgent);
+    }
+
+    public int getQueueDepth(){
+        int depth = 0;
+        for(ArrayBlockingQueue<IngestTask> currentStripe: ingestStripes){
+            depth += currentStripe.size();
+        }
+        return(depth);
+    }
+
+    //
+    // Business Methods
+    //
+
+    public void submit(String sourceComponentId, String reportType, Runnable ingestAction){
+        if(ingestAction == null){
+            return;
+        }
+        int stripeIndex = 0;
+        if(sourceComponentId != null){
+            stripeIndex = Math.floorMod(sourceComponentId.hashCode(), INGEST_STRIPE_COUNT);
+        }
+        if(shuttingDown){
+            getIngestMetricsAgent().incrementIngestRejectedCount();
+            getLogger().debug(".submit(): Shutting down, rejecting report, reportType->{}", reportType);
+            return;
+        }
+        // Queued even before the appliers are started, they drain the stripe (in order) once they are
+        IngestTask ingestTask = new IngestTask(reportType, ingestAction, System.nanoTime());
+        ArrayBlockingQueue<IngestTask> stripe = ingestStripes[stripeIndex];
+        boolean enqueued = stripe.offer(ingestTask);
+        if(!enqueued){
+            getIngestMetricsAgent().incrementIngestOverflowCount();
+            try {
+                enqueued = stripe.offer(ingestTask, INGEST_OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException iex){
+                Thread.currentThread().interrupt();
+            }
+        }
+        if(enqueued){
+            getIngestMetricsAgent().incrementIngestEnqueuedCount();
+            getIngestMetricsAgent().setIngestQueueDepth(getQueueDepth());
+        } else {
+            getIngestMetricsAgent().incrementIngestRejectedCount();
+            getLogger().debug(".submit(): Ingest stripe {} full, rejecting report, reportType->{}, sourceComponentId->{}", stripeIndex, reportType, sourceComponentId);
+        }
+    }
+
+    //
+    // Appliers
+    //
+
+    private void applyLoop(ArrayBlockingQueue<IngestTask> stripe){
+        while(!shuttingDown && !Thread.currentThread().isInterrupted()){
+            try {
+                IngestTask ingestTask = stripe.poll(INGEST_POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if(ingestTask != null){
+                    apply(ingestTask);
+                    getIngestMetricsAgent().setIngestQueueDepth(getQueueDepth());
+                }
+            } catch (InterruptedException iex){
+                Thread.currentThread().interrupt();
+            } catch (Exception ex){
+                getLogger().warn(".applyLoop(): Unexpected error in ingest applier, message->{}, stackTrace->{}", ExceptionUtils.getMessage(ex), ExceptionUtils.getStackTrace(ex));
+            }
+        }
+        getLogger().info(".applyLoop(): Ingest applier {} stopped", Thread.currentThread().getName());
+    }
+
+    private void apply(IngestTask ingestTask){
+        long applyStart = System.nanoTime();
+        try {
+            ingestTask.getIngestAction().run();
+            getIngestMetricsAgent().recordIngestApplied(applyStart - ingestTask.getEnqueueNanos(), System.nanoTime() - applyStart);
+        } catch (Exception ex){
+            getIngestMetricsAgent().incrementIngestFailureCount();
+            getLogger().warn(".apply(): Failed to apply {} report, message->{}, stackTrace->{}", ingestTask.getReportType(), ExceptionUtils.getMessage(ex), ExceptionUtils.getStackTrace(ex));
+        }
+    }
+
+    //
+    // Ingest Task
+    //
+
+    private static class IngestTask {
+        private final String reportType;
+        private final Runnable ingestAction;
+        private final long enqueueNanos;
+
+        IngestTask(String reportType, Runnable ingestAction, long enqueueNanos){
+            this.reportType = reportType;
+            this.ingestAction = ingestAction;
+            this.enqueueNanos = enqueueNanos;
+        }
+
+        String getReportType() {
+            return reportType;
+        }
+
+        Runnable getIngestAction() {
+            return ingestAction;
+        }
+
+        long getEnqueueNanos() {
+            return enqueueNanos;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.workshops.issi.common;
+
+import net.fhirfactory.pegacorn.core.model.petasos.oam.notifications.PetasosComponentITOpsNotification;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * The drain loop shared by the notification and task report forwarders: sleeps until the DM signals there is
+ * something to forward, forwards it, and repeats. Anything that couldn't be forwarded yet (typically because its room
+ * doesn't exist yet) is held back and only re-offered to the DM's (bounded) queue after the retry period, so it can't
+ * spin the loop. At most maximumDeferred notifications are held back, and none for longer than maximumDeferralAge:
+ * anything beyond either limit is handed to the dead-letterer (and counted) rather than being dropped.
+ */
+public class DeferringNotificationForwarder {
+
+    @FunctionalInterface
+    public interface NotificationAwaiter {
+        boolean await(long maximumWaitMillis, long lingerMillis, int batchSize) throws InterruptedException;
+    }
+
+    private final String forwarderName;
+    private final Logger logger;
+    private final NotificationAwaiter awaiter;
+    private final Supplier<PetasosComponentITOpsNotification> nextNotificationSupplier;
+    private final Consumer<PetasosComponentITOpsNotification> requeuer;
+    private final Consumer<PetasosComponentITOpsNotification> deadLetterer;
+    private final long retryPeriod;
+    private final long idlePeriod;
+    private final long lingerPeriod;
+    private final int batchSize;
+    private final int maximumDeferred;
+    private final long maximumDeferralAge;
+
+    private final ArrayDeque<PetasosComponentITOpsNotification> deferred;
+    private final IdentityHashMap<PetasosComponentITOpsNotification, Long> firstDeferredAt;
+    private final AtomicLong deadLetteredCount;
+    private volatile boolean forwarding;
+
+    //
+    // Constructor(s)
+    //
+
+    public DeferringNotificationForwarder(String forwarderName, Logger logger, NotificationAwaiter awaiter,
+                                          Supplier<PetasosComponentITOpsNotification> nextNotificationSupplier,
+                                          Consumer<PetasosComponentITOpsNotification> requeuer,
+                                          Consumer<PetasosComponentITOpsNotification> deadLetterer,
+                                          long retryPeriod, long idlePeriod, long lingerPeriod, int batchSize,
+                                          int maximumDeferred, long maximumDeferralAge){
+        this.forwarderName = forwarderName;
+        this.logger = logger;
+        this.awaiter = awaiter;
+        this.nextNotificationSupplier = nextNotificationSupplier;
+        this.requeuer = requeuer;
+        this.deadLetterer = deadLetterer;
+        this.retryPeriod = retryPeriod;
+        this.idlePeriod = idlePeriod;
+        this.lingerPeriod = lingerPeriod;
+        this.batchSize = batchSize;
+        this.maximumDeferred = maximumDeferred;
+        this.maximumDeferralAge = maximumDeferralAge;
+        this.deferred = new ArrayDeque<>();
+        this.firstDeferredAt = new IdentityHashMap<>();
+        this.deadLetteredCount = new AtomicLong(0);
+        this.forwarding = false;
+    }
+
+    //
+    // Getters (and Setters)
+    //
+
+    protected Logger getLogger(){
+        return(logger);
+    }
+
+    public boolean isForwarding() {
+        return(forwarding);
+    }
+
+    public long getDeadLetteredCount() {
+        return(deadLetteredCount.get());
+    }
+
+    //
+    // Business Methods
+    //
+
+    /**
+     * Runs the drain loop on the calling thread until it is interrupted.
+     *
+     * @param forwarder forwards a single notification, returning false if it should be retried later
+     */
+    public void run(Predicate<PetasosComponentITOpsNotification> forwarder){
+        getLogger().info(".run(): Started, forwarder->{}", forwarderName);
+        long retryDeferredAt = 0L;
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                long waitPeriod = idlePeriod;
+                if (!deferred.isEmpty()) {
+                    waitPeriod = Math.max(1L, retryDeferredAt - System.currentTimeMillis());
+                }
+                awaiter.await(waitPeriod, lingerPeriod, batchSize);
+                if (!deferred.isEmpty() && System.currentTimeMillis() >= retryDeferredAt) {
+                    forgetAbandonedDeferrals(System.currentTimeMillis());
+                    PetasosComponentITOpsNotification deferredNotification;
+                    while ((deferredNotification = deferred.poll()) != null) {
+                        requeuer.accept(deferredNotification);
+                    }
+                }
+                boolean nothingDeferred = deferred.isEmpty();
+                forwardPass(forwarder);
+                if (nothingDeferred && !deferred.isEmpty()) {
+                    retryDeferredAt = System.currentTimeMillis() + retryPeriod;
+                }
+            } catch (InterruptedException iex) {
+                Thread.currentThread().interrupt();
+            } catch (Exception ex) {
+                getLogger().warn(".run(): Forwarding pass failed, forwarder->{}, message->{}, stackTrace->{}", forwarderName, ExceptionUtils.getMessage(ex), ExceptionUtils.getStackTrace(ex));
+            }
+        }
+        getLogger().info(".run(): Stopped, forwarder->{}", forwarderName);
+    }
+
+    //
+    // Helpers
+    //
+
+    private void forwardPass(Predicate<PetasosComponentITOpsNotification> forwarder){
+        getLogger().debug(".forwardPass(): Entry, forwarder->{}", forwarderName);
+        forwarding = true;
+        try {
+            PetasosComponentITOpsNotification nextNotification;
+            while ((nextNotification = nextNotificationSupplier.get()) != null) {
+                if (forwarder.test(nextNotification)) {
+                    firstDeferredAt.remove(nextNotification);
+                } else {
+                    defer(nextNotification);
+                }
+            }
+        } finally {
+            forwarding = false;
+        }
+        getLogger().debug(".forwardPass(): Exit, forwarder->{}, deferred->{}", forwarderName, deferred.size());
+    }
+
+    private void defer(PetasosComponentITOpsNotification notification){
+        long now = System.currentTimeMillis();
+        Long deferredSince = firstDeferredAt.get(notification);
+        if (deferredSince != null && now - deferredSince > maximumDeferralAge) {
+            deadLetter(notification, "expired");
+            return;
+        }
+        if (deferred.size() >= maximumDeferred) {
+            deadLetter(notification, "overflowed");
+            return;
+        }
+        if (deferredSince == null) {
+            firstDeferredAt.put(notification, now);
+        }
+        deferred.add(notification);
+    }
+
+    private void deadLetter(PetasosComponentITOpsNotification notification, String reason){
+        firstDeferredAt.remove(notification);
+        long deadLetterCount = deadLetteredCount.incrementAndGet();
+        if (deadLetterCount % 1000 == 1) {
+            getLogger().warn(".deadLetter(): Notification {} while awaiting a room, dead-lettering, forwarder->{}, maximumDeferred->{}, maximumDeferralAge->{}, deadLetteredCount->{}", reason, forwarderName, maximumDeferred, maximumDeferralAge, deadLetterCount);
+        }
+        try {
+            deadLetterer.accept(notification);
+        } catch (Exception ex) {
+            getLogger().warn(".deadLetter(): Could not dead-letter notification, forwarder->{}, message->{}", forwarderName, ExceptionUtils.getMessage(ex));
+        }
+    }
+
+    /**
+     * A requeued notification the DM's queue had to shed never comes back, so its deferral time would otherwise be
+     * kept forever. Anything still live is dead-lettered once it is maximumDeferralAge old, so entries well past that
+     * can only belong to notifications that were shed.
+     */
+    private void forgetAbandonedDeferrals(long now){
+        firstDeferredAt.values().removeIf(deferredSince -> now - deferredSince > 2 * maximumDeferralAge);
+    }
+
+    //
+    // To String
+    //
+
+    @Override
+    public String toString() {
+        return "DeferringNotificationForwarder{" +
+                "forwarderName='" + forwarderName + '\'' +
+                ", deferred=" + deferred.size() +
+                ", maximumDeferred=" + maximumDeferred +
+                ", maximumDeferralAge=" + maximumDeferralAge +
+                ", deadLetteredCount=" + deadLetteredCount.get() +
+                ", forwarding=" + forwarding +
+                '}';
+    }
+}
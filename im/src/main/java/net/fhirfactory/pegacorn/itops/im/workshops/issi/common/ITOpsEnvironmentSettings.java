@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.workshops.issi.common;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the numeric tuning settings (rates, worker counts) the ITOps workshops take from environment variables. An
+ * unset or unparseable value falls back to the default, with a warning for the latter.
+ */
+public final class ITOpsEnvironmentSettings {
+    private static final Logger LOG = LoggerFactory.getLogger(ITOpsEnvironmentSettings.class);
+
+    private ITOpsEnvironmentSettings(){
+    }
+
+    public static double getEnvironmentDouble(String variableName, double defaultValue){
+        String configuredValue = System.getenv(variableName);
+        if(StringUtils.isEmpty(configuredValue)){
+            return(defaultValue);
+        }
+        try {
+            return(Double.parseDouble(configuredValue.trim()));
+        } catch(NumberFormatException nfe){
+            LOG.warn(".getEnvironmentDouble(): Ignoring invalid value for {}, value->{}", variableName, configuredValue);
+            return(defaultValue);
+        }
+    }
+}
@@ -24,19 +24,26 @@ package net.fhirfactory.pegacorn.itops.im.workshops.issi.common;
 import net.fhirfactory.pegacorn.communicate.matrix.credentials.MatrixAccessToken;
 import net.fhirfactory.pegacorn.communicate.matrix.methods.MatrixInstantMessageMethods;
 import net.fhirfactory.pegacorn.communicate.matrix.model.core.MatrixRoom;
+import net.fhirfactory.pegacorn.communicate.matrix.model.r110.api.common.MAPIResponse;
+import net.fhirfactory.pegacorn.communicate.matrix.model.r110.events.room.message.MRoomTextMessageEvent;
 import net.fhirfactory.pegacorn.communicate.synapse.credentials.SynapseAdminAccessToken;
 import net.fhirfactory.pegacorn.communicate.synapse.methods.SynapseRoomMethods;
 import net.fhirfactory.pegacorn.communicate.synapse.model.SynapseRoom;
+import net.fhirfactory.pegacorn.itops.im.valuesets.OAMRoomTypeEnum;
 import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.ITOpsSystemWideMetricsDM;
 import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.topologymaps.ITOpsKnownRoomAndSpaceMapDM;
+import net.fhirfactory.pegacorn.itops.im.workshops.issi.common.egress.ITOpsMatrixEgressPipeline;
+import net.fhirfactory.pegacorn.itops.im.workshops.issi.common.egress.MatrixEgressDeferredException;
 import net.fhirfactory.pegacorn.itops.im.workshops.transform.matrixbridge.common.ParticipantRoomIdentityFactory;
 import net.fhirfactory.pegacorn.itops.im.workshops.transform.matrixbridge.metrics.ParticipantMetricsReportEventFactory;
 import org.apache.camel.LoggingLevel;
 import org.apache.camel.builder.RouteBuilder;
+import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.slf4j.Logger;
 
 import javax.inject.Inject;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 abstract public class OAMRoomMessageInjectorBase extends RouteBuilder {
 
@@ -64,6 +71,9 @@ abstract public class OAMRoomMessageInjectorBase extends RouteBuilder {
     @Inject
     private SynapseRoomMethods synapseRoomAPI;
 
+    @Inject
+    private ITOpsMatrixEgressPipeline egressPipeline;
+
     //
     // Abstract Methods
     //
@@ -106,6 +116,10 @@ abstract public class OAMRoomMessageInjectorBase extends RouteBuilder {
         return synapseRoomAPI;
     }
 
+    protected ITOpsMatrixEgressPipeline getEgressPipeline() {
+        return egressPipeline;
+    }
+
     //
     // Business Methods
     //
@@ -134,6 +148,68 @@ abstract public class OAMRoomMessageInjectorBase extends RouteBuilder {
         return(roomID);
     }
 
+    /**
+     * Resolves the room for a participant's reports of the given type, using the room cache's memo and only building
+     * the pseudo alias (and, failing that, asking Synapse) when the room isn't known yet.
+     */
+    public String getRoomIdForParticipant(String participantName, OAMRoomTypeEnum roomType){
+        String roomId = getMatrixBridgeCache().getRoomIdForParticipant(participantName, roomType);
+        if(roomId == null){
+            roomId = getRoomIdFromPseudoAlias(getRoomIdentityFactory().buildOAMRoomPseudoAlias(participantName, roomType));
+        }
+        return(roomId);
+    }
+
+    /**
+     * Queues a message for posting into a room via the shared egress pipeline (rather than posting it on the calling
+     * thread). Delivery failures are logged here, callers only need the returned future if they want to react to them.
+     *
+     * @param roomId the room to post into
+     * @param messageEvent the message to post
+     * @return a future completed once the message has been posted (or has failed)
+     */
+    protected CompletableFuture<MAPIResponse> submitTextMessage(String roomId, MRoomTextMessageEvent messageEvent){
+        getLogger().debug(".submitTextMessage(): Entry, roomId->{}", roomId);
+        CompletableFuture<MAPIResponse> outcome = getEgressPipeline().submit(roomId, messageEvent);
+        outcome.whenComplete((mapiResponse, failure) -> {
+            if(failure instanceof MatrixEgressDeferredException){
+                // Spooled (or dead-lettered) by the egress pipeline, which now owns the retry
+                getLogger().debug(".submitTextMessage(): Message deferred, roomId->{}, message->{}", roomId, ExceptionUtils.getMessage(failure));
+            } else if(failure != null){
+                getLogger().warn(".submitTextMessage(): Failed to send InstantMessage, roomId->{}, message->{}", roomId, ExceptionUtils.getMessage(failure));
+            } else {
+                getLogger().trace(".submitTextMessage(): Message Forwarded, roomId->{}, mapiResponse->{}", roomId, mapiResponse);
+            }
+        });
+        getLogger().debug(".submitTextMessage(): Exit");
+        return(outcome);
+    }
+
+    /**
+     * Holds a forwarder back until the room cache signals it has been populated (restored from a snapshot or
+     * synchronised with Synapse), so it doesn't go looking for every room in Synapse directly, but never for longer
+     * than maximumWaitMillis. Rooms that are still unresolved after that are left to the forwarder's deferral.
+     *
+     * @return true if the room cache is populated
+     */
+    protected boolean waitForKnownRooms(long maximumWaitMillis) throws InterruptedException {
+        if(getMatrixBridgeCache().awaitRoomMapReady(maximumWaitMillis)){
+            return(true);
+        }
+        getLogger().warn(".waitForKnownRooms(): Room cache still not ready after {}ms, starting anyway", maximumWaitMillis);
+        return(false);
+    }
+
+    /**
+     * Starts a forwarder's drain loop on its own (daemon) thread.
+     */
+    protected Thread startForwarderThread(String threadName, Runnable forwarderLoop){
+        Thread forwarderThread = new Thread(forwarderLoop, threadName);
+        forwarderThread.setDaemon(true);
+        forwarderThread.start();
+        return(forwarderThread);
+    }
+
     //
     // Mechanism to ensure Startup
     //
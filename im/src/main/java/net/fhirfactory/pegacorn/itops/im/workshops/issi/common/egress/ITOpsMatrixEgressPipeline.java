@@ -0,0 +1,937 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.workshops.issi.common.egress;
+
+import net.fhirfactory.pegacorn.communicate.matrix.credentials.MatrixAccessToken;
+import net.fhirfactory.pegacorn.communicate.matrix.methods.MatrixInstantMessageMethods;
+import net.fhirfactory.pegacorn.communicate.matrix.model.r110.api.common.MAPIResponse;
+import net.fhirfactory.pegacorn.communicate.matrix.model.r110.events.room.message.MRoomTextMessageEvent;
+import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.snapshot.DataGridChangeJournal;
+import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.topologymaps.ITOpsKnownRoomAndSpaceMapDM;
+import net.fhirfactory.pegacorn.itops.im.workshops.issi.common.ITOpsEnvironmentSettings;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The single path by which the ITOps forwarders post messages into Matrix rooms.
+ *
+ * Messages are queued on a per-room lane, so messages for one room are delivered in submission order, while different
+ * rooms are drained in parallel by a small bounded pool of egress workers (a lane is only ever held by one worker at a
+ * time, and yields the worker after a few messages so a busy room cannot starve the others). Every post takes a permit
+ * from a shared token bucket sized to the homeserver's rate limit, and a 429 / M_LIMIT_EXCEEDED response pauses the
+ * bucket for the advertised retry_after_ms before the same message is retried.
+ *
+ * When a post fails (the homeserver is unreachable, answers 5xx, or keeps rate limiting) the room is put into an
+ * exponential backoff, and the failed message together with everything behind it in the lane is moved to a bounded,
+ * memory-mapped MatrixEgressSpool on disk; while a room is backing off, or still has spooled messages, new messages
+ * for it go straight to the spool, so an outage costs disk rather than heap. A retry timer feeds spooled messages
+ * back into the lanes of rooms whose backoff has expired; a spooled state message (a metrics report) that has since
+ * been superseded by a newer one for the same room is dropped rather than replayed. A caller that needs the outcome of
+ * a message that ends up spooled names a MatrixEgressCompletionHandler when submitting it, which is told once the
+ * message is finally posted or given up on. A message that has failed MAXIMUM_DELIVERY_ATTEMPTS times, or that the
+ * homeserver refused outright (a 4xx other than 429, see MatrixEgressResponseStatus), is moved to the dead-letter
+ * store, from where it can be listed, replayed or purged.
+ *
+ * The spool lives in ITOPS_IM_MATRIX_EGRESS_SPOOL_DIRECTORY (which should be on a persistent volume) and is forced to
+ * disk every SPOOL_REPLAY_PERIOD_MILLIS, which bounds what a host crash can lose.
+ *
+ * Messages for a healthy room are delivered in submission order; a message that is retried after a failure may be
+ * delivered after messages that were submitted later.
+ */
+@ApplicationScoped
+public class ITOpsMatrixEgressPipeline {
+    private static final Logger LOG = LoggerFactory.getLogger(ITOpsMatrixEgressPipeline.class);
+
+    private static final String EGRESS_RATE_ENVIRONMENT_VARIABLE = "ITOPS_IM_MATRIX_EGRESS_RATE_PER_SECOND";
+    private static final String EGRESS_BURST_ENVIRONMENT_VARIABLE = "ITOPS_IM_MATRIX_EGRESS_BURST";
+    private static final String EGRESS_WORKERS_ENVIRONMENT_VARIABLE = "ITOPS_IM_MATRIX_EGRESS_WORKERS";
+    private static final String EGRESS_SPOOL_DIRECTORY_ENVIRONMENT_VARIABLE = "ITOPS_IM_MATRIX_EGRESS_SPOOL_DIRECTORY";
+    private static final String DEAD_LETTER_FILE_NAME = "egress-dead-letters.journal";
+    private static final String DEFAULT_SPOOL_DIRECTORY = "/var/lib/pegacorn/itops-im/egress";
+
+    private static final double DEFAULT_EGRESS_RATE_PER_SECOND = 10.0d;
+    private static final int DEFAULT_EGRESS_BURST = 20;
+    private static final int DEFAULT_EGRESS_WORKER_COUNT = 4;
+    private static final int MAXIMUM_LANE_DEPTH = 1000;
+    private static final int MAXIMUM_MESSAGES_PER_LANE_TURN = 16;
+    private static final int MAXIMUM_RATE_LIMITED_RETRIES = 5;
+    private static final long DEFAULT_RETRY_AFTER_MILLIS = 2000L;
+    private static final int SPOOL_SEGMENT_SIZE = 4 * 1024 * 1024;
+    private static final int MAXIMUM_SPOOL_SEGMENT_COUNT = 32;
+    private static final int MAXIMUM_DELIVERY_ATTEMPTS = 8;
+    private static final long INITIAL_BACKOFF_MILLIS = 2000L;
+    private static final long MAXIMUM_BACKOFF_MILLIS = 300000L;
+    private static final long SPOOL_REPLAY_PERIOD_MILLIS = 2000L;
+    private static final long MAXIMUM_DEAD_LETTER_COUNT = 10000L;
+
+    private boolean initialised;
+    private ConcurrentHashMap<String, RoomEgressLane> roomLanes;
+    private MatrixEgressRateLimiter rateLimiter;
+    private ExecutorService egressExecutor;
+    private AtomicLong submittedCount;
+    private AtomicLong sentCount;
+    private AtomicLong failedCount;
+    private AtomicLong rejectedCount;
+    private AtomicLong rateLimitedCount;
+    private AtomicLong spooledCount;
+    private AtomicLong replayedCount;
+    private AtomicLong deadLetterCount;
+    private AtomicLong supersededCount;
+    private AtomicLong nextSpoolSequence;
+    private ConcurrentHashMap<String, MatrixEgressCompletionHandler> completionHandlers;
+    private MatrixEgressSpool spool;
+    private DataGridChangeJournal deadLetterStore;
+    private Object deadLetterLock;
+    private Timer spoolReplayTimer;
+
+    @Inject
+    private MatrixInstantMessageMethods matrixInstantMessageAPI;
+
+    @Inject
+    private MatrixAccessToken matrixAccessToken;
+
+    @Inject
+    private ITOpsKnownRoomAndSpaceMapDM knownRoomMap;
+
+    //
+    // Constructor(s)
+    //
+
+    public ITOpsMatrixEgressPipeline(){
+        this.initialised = false;
+        this.roomLanes = new ConcurrentHashMap<>();
+        this.submittedCount = new AtomicLong(0);
+        this.sentCount = new AtomicLong(0);
+        this.failedCount = new AtomicLong(0);
+        this.rejectedCount = new AtomicLong(0);
+        this.rateLimitedCount = new AtomicLong(0);
+        this.spooledCount = new AtomicLong(0);
+        this.replayedCount = new AtomicLong(0);
+        this.deadLetterCount = new AtomicLong(0);
+        this.supersededCount = new AtomicLong(0);
+        this.nextSpoolSequence = new AtomicLong(MatrixEgressRecord.NO_SPOOL_SEQUENCE + 1);
+        this.completionHandlers = new ConcurrentHashMap<>();
+        this.deadLetterLock = new Object();
+    }
+
+    //
+    // Post Construct
+    //
+
+    @PostConstruct
+    public void initialise(){
+        getLogger().debug(".initialise(): Entry");
+        if(initialised){
+            getLogger().debug(".initialise(): Exit, already initialised, nothing to do");
+            return;
+        }
+        getLogger().info(".initialise(): Initialisation Start...");
+        double permitsPerSecond = ITOpsEnvironmentSettings.getEnvironmentDouble(EGRESS_RATE_ENVIRONMENT_VARIABLE, DEFAULT_EGRESS_RATE_PER_SECOND);
+        int burstSize = (int)ITOpsEnvironmentSettings.getEnvironmentDouble(EGRESS_BURST_ENVIRONMENT_VARIABLE, DEFAULT_EGRESS_BURST);
+        int workerCount = Math.max(1, (int)ITOpsEnvironmentSettings.getEnvironmentDouble(EGRESS_WORKERS_ENVIRONMENT_VARIABLE, DEFAULT_EGRESS_WORKER_COUNT));
+        this.rateLimiter = new MatrixEgressRateLimiter(permitsPerSecond, burstSize);
+        AtomicInteger workerCounter = new AtomicInteger(0);
+        // The work queue only ever holds one drain task per non-empty lane, so it is bounded by the number of rooms
+        this.egressExecutor = new ThreadPoolExecutor(workerCount, workerCount, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread egressThread = new Thread(runnable, "ITOpsMatrixEgress-" + workerCounter.incrementAndGet());
+            egressThread.setDaemon(true);
+            return(egressThread);
+        });
+        openSpool(resolveSpoolDirectory());
+        this.initialised = true;
+        getLogger().info(".initialise(): Initialisation Finish, workerCount->{}, rateLimiter->{}, spooledMessages->{}, deadLetters->{}",
+                workerCount, rateLimiter, getSpooledMessageCount(), getDeadLetterCount());
+    }
+
+    //
+    // Getters (and Setters)
+    //
+
+    protected Logger getLogger(){
+        return(LOG);
+    }
+
+    protected MatrixInstantMessageMethods getMatrixInstantMessageAPI() {
+        return matrixInstantMessageAPI;
+    }
+
+    protected MatrixAccessToken getMatrixAccessToken() {
+        return matrixAccessToken;
+    }
+
+    public MatrixEgressRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public long getSubmittedCount(){
+        return(submittedCount.get());
+    }
+
+    public long getSentCount(){
+        return(sentCount.get());
+    }
+
+    public long getFailedCount(){
+        return(failedCount.get());
+    }
+
+    public long getRejectedCount(){
+        return(rejectedCount.get());
+    }
+
+    public long getRateLimitedCount(){
+        return(rateLimitedCount.get());
+    }
+
+    public long getSpooledCount(){
+        return(spooledCount.get());
+    }
+
+    public long getReplayedCount(){
+        return(replayedCount.get());
+    }
+
+    public long getDeadLetterCount(){
+        return(deadLetterCount.get());
+    }
+
+    public long getSupersededCount(){
+        return(supersededCount.get());
+    }
+
+    public long getSpooledMessageCount(){
+        if(spool == null){
+            return(0L);
+        }
+        return(spool.getPendingRecordCount());
+    }
+
+    public int getRoomLaneCount(){
+        return(roomLanes.size());
+    }
+
+    public int getQueueDepth(){
+        int depth = 0;
+        for(RoomEgressLane currentLane: roomLanes.values()){
+            depth += currentLane.getDepth();
+        }
+        return(depth);
+    }
+
+    //
+    // Business Methods
+    //
+
+    /**
+     * Queues a text message for delivery into a room.
+     *
+     * @param roomId the room to post into
+     * @param messageEvent the message to post
+     * @return a future completed with the homeserver's response once the message is posted, exceptionally with a
+     * MatrixEgressDeferredException if it has been moved to the spool for a later retry, or exceptionally with any
+     * other exception if it could not be accepted at all
+     */
+    public CompletableFuture<MAPIResponse> submit(String roomId, MRoomTextMessageEvent messageEvent){
+        return(submit(roomId, messageEvent, false, null));
+    }
+
+    /**
+     * Queues a state message (e.g. a metrics report or a dashboard edit) for delivery into a room. It is posted like any
+     * other message, but if it ends up spooled and a newer state message for the room is spooled after it, it is dropped.
+     */
+    public CompletableFuture<MAPIResponse> submitStateMessage(String roomId, MRoomTextMessageEvent messageEvent){
+        return(submit(roomId, messageEvent, true, null));
+    }
+
+    /**
+     * Queues a message whose outcome matters even if it is spooled: once a spooled message is posted (or given up on)
+     * the named MatrixEgressCompletionHandler is told, as the returned future has by then been completed with a
+     * MatrixEgressDeferredException.
+     */
+    public CompletableFuture<MAPIResponse> submit(String roomId, MRoomTextMessageEvent messageEvent, String completionHandlerName){
+        return(submit(roomId, messageEvent, false, completionHandlerName));
+    }
+
+    public void registerCompletionHandler(String completionHandlerName, MatrixEgressCompletionHandler completionHandler){
+        if(StringUtils.isEmpty(completionHandlerName) || completionHandler == null){
+            return;
+        }
+        completionHandlers.put(completionHandlerName, completionHandler);
+    }
+
+    protected CompletableFuture<MAPIResponse> submit(String roomId, MRoomTextMessageEvent messageEvent, boolean stateMessage, String completionHandlerName){
+        CompletableFuture<MAPIResponse> outcome = new CompletableFuture<>();
+        if(StringUtils.isEmpty(roomId) || messageEvent == null){
+            outcome.completeExceptionally(new IllegalArgumentException("roomId and messageEvent must both be provided"));
+            return(outcome);
+        }
+        if(!initialised){
+            outcome.completeExceptionally(new RejectedExecutionException("Matrix egress pipeline has not been initialised"));
+            return(outcome);
+        }
+        submittedCount.incrementAndGet();
+        RoomEgressLane roomLane = roomLanes.computeIfAbsent(roomId, RoomEgressLane::new);
+        MatrixEgressRecord egressRecord = new MatrixEgressRecord(roomId, messageEvent);
+        egressRecord.setStateMessage(stateMessage);
+        egressRecord.setCompletionHandlerName(completionHandlerName);
+        EgressMessage egressMessage = new EgressMessage(egressRecord, outcome);
+        boolean queued = false;
+        synchronized (roomLane){
+            if(!roomLane.isDeferring(System.currentTimeMillis())){
+                queued = roomLane.offer(egressMessage);
+            }
+            if(!queued){
+                // Backing off, behind spooled messages, or the lane is full
+                deferToSpool(roomLane, egressMessage, null);
+            }
+        }
+        if(queued){
+            scheduleLane(roomLane);
+        }
+        return(outcome);
+    }
+
+    //
+    // Lane Scheduling
+    //
+
+    private void scheduleLane(RoomEgressLane roomLane){
+        if(!roomLane.getScheduled().compareAndSet(false, true)){
+            // Already held by (or queued for) a worker, which will pick up the new message
+            return;
+        }
+        try {
+            egressExecutor.execute(() -> drainLane(roomLane));
+        } catch(RejectedExecutionException rex){
+            roomLane.getScheduled().set(false);
+            getLogger().warn(".scheduleLane(): Egress executor rejected lane, roomId->{}", roomLane.getRoomId());
+        }
+    }
+
+    private void drainLane(RoomEgressLane roomLane){
+        int deliveredThisTurn = 0;
+        try {
+            while(deliveredThisTurn < MAXIMUM_MESSAGES_PER_LANE_TURN){
+                EgressMessage nextMessage = roomLane.peek();
+                if(nextMessage == null){
+                    break;
+                }
+                Throwable failure = deliver(roomLane.getRoomId(), nextMessage);
+                roomLane.poll();
+                if(failure != null){
+                    deferAfterFailure(roomLane, nextMessage, failure);
+                    break;
+                }
+                synchronized (roomLane){
+                    roomLane.recordSuccess();
+                }
+                deliveredThisTurn += 1;
+            }
+        } catch(Exception ex){
+            getLogger().warn(".drainLane(): Unexpected error draining lane, roomId->{}, message->{}, stackTrace->{}", roomLane.getRoomId(), ExceptionUtils.getMessage(ex), ExceptionUtils.getStackTrace(ex));
+        } finally {
+            roomLane.getScheduled().set(false);
+            // Re-check after releasing the lane, a submit may have seen it as still scheduled
+            if(roomLane.getDepth() > 0){
+                scheduleLane(roomLane);
+            }
+        }
+    }
+
+    //
+    // Delivery
+    //
+
+    /**
+     * @return null if the message was posted, otherwise the reason it could not be
+     */
+    private Throwable deliver(String roomId, EgressMessage egressMessage){
+        int rateLimitedAttempts = 0;
+        while(true){
+            try {
+                rateLimiter.acquire();
+                MAPIResponse response = getMatrixInstantMessageAPI().postTextMessage(roomId, getMatrixAccessToken().getUserId(), egressMessage.getEgressRecord().getMessageEvent());
+                MatrixEgressResponseStatus responseStatus = MatrixEgressResponseInspector.inspect(response);
+                if(responseStatus.isRateLimited()){
+                    if(rateLimitedAttempts < MAXIMUM_RATE_LIMITED_RETRIES){
+                        rateLimitedAttempts += 1;
+                        backOff(roomId, MatrixEgressResponseInspector.getRetryAfterMillis(responseStatus, DEFAULT_RETRY_AFTER_MILLIS));
+                        continue;
+                    }
+                    return(new IllegalStateException("Rate limited by homeserver, gave up after " + rateLimitedAttempts + " retries"));
+                }
+                if(responseStatus.isServerUnavailable()){
+                    return(new IllegalStateException("Homeserver could not handle the request, status->" + responseStatus));
+                }
+                if(responseStatus.isPermanentFailure()){
+                    return(new MatrixEgressRejectedException("Homeserver refused the message, status->" + responseStatus));
+                }
+                sentCount.incrementAndGet();
+                getLogger().trace(".deliver(): Message posted, roomId->{}, response->{}", roomId, response);
+                egressMessage.complete(response);
+                return(null);
+            } catch(InterruptedException iex){
+                Thread.currentThread().interrupt();
+                return(iex);
+            } catch(Exception ex){
+                MatrixEgressResponseStatus failureStatus = MatrixEgressResponseInspector.inspect(ex);
+                if(failureStatus.isRateLimited() && rateLimitedAttempts < MAXIMUM_RATE_LIMITED_RETRIES){
+                    rateLimitedAttempts += 1;
+                    backOff(roomId, MatrixEgressResponseInspector.getRetryAfterMillis(failureStatus, DEFAULT_RETRY_AFTER_MILLIS));
+                    continue;
+                }
+                if(failureStatus.isPermanentFailure()){
+                    return(new MatrixEgressRejectedException("Homeserver refused the message, status->" + failureStatus, ex));
+                }
+                return(ex);
+            }
+        }
+    }
+
+    private void backOff(String roomId, long retryAfterMillis){
+        rateLimitedCount.incrementAndGet();
+        getLogger().warn(".backOff(): Rate limited by homeserver, pausing egress, roomId->{}, retryAfterMillis->{}", roomId, retryAfterMillis);
+        rateLimiter.pauseFor(retryAfterMillis);
+    }
+
+    //
+    // Spool and Dead Letters
+    //
+
+    /**
+     * Puts the room into backoff after a failed post and moves the failed message, and everything queued behind it,
+     * to the spool (or to the dead-letter store once the message has used up its delivery attempts).
+     */
+    private void deferAfterFailure(RoomEgressLane roomLane, EgressMessage failedMessage, Throwable failure){
+        failedCount.incrementAndGet();
+        String failureMessage = ExceptionUtils.getMessage(failure);
+        failedMessage.getEgressRecord().recordFailure(failureMessage);
+        long backoffMillis;
+        int movedCount = 0;
+        synchronized (roomLane){
+            backoffMillis = roomLane.recordFailure(System.currentTimeMillis());
+            if(failure instanceof MatrixEgressRejectedException){
+                // Retrying a refused message cannot succeed
+                deadLetter(failedMessage.getEgressRecord(), failure);
+                failedMessage.completeExceptionally(new MatrixEgressDeferredException("Message refused by homeserver, moved to dead-letter store", failure));
+            } else if(failedMessage.getEgressRecord().getDeliveryAttempts() >= MAXIMUM_DELIVERY_ATTEMPTS){
+                deadLetter(failedMessage.getEgressRecord(), failure);
+                failedMessage.completeExceptionally(new MatrixEgressDeferredException("Delivery failed " + MAXIMUM_DELIVERY_ATTEMPTS + " times, message moved to dead-letter store", failure));
+            } else {
+                deferToSpool(roomLane, failedMessage, failure);
+            }
+            EgressMessage queuedMessage = roomLane.peek();
+            while(queuedMessage != null){
+                roomLane.poll();
+                deferToSpool(roomLane, queuedMessage, null);
+                movedCount += 1;
+                queuedMessage = roomLane.peek();
+            }
+        }
+        getLogger().warn(".deferAfterFailure(): Could not post message, room backing off, roomId->{}, attempts->{}, backoffMillis->{}, movedToSpool->{}, message->{}",
+                roomLane.getRoomId(), failedMessage.getEgressRecord().getDeliveryAttempts(), backoffMillis, movedCount, failureMessage);
+    }
+
+    /**
+     * Must be called holding the room lane's monitor, so that a room's spooled messages stay in order.
+     */
+    private void deferToSpool(RoomEgressLane roomLane, EgressMessage egressMessage, Throwable failure){
+        if(appendToSpool(roomLane, egressMessage.getEgressRecord())){
+            egressMessage.completeExceptionally(new MatrixEgressDeferredException("Message for room " + roomLane.getRoomId() + " moved to egress spool", failure));
+            return;
+        }
+        rejectedCount.incrementAndGet();
+        getLogger().warn(".deferToSpool(): Egress spool full (or unavailable), message rejected, roomId->{}", roomLane.getRoomId());
+        egressMessage.completeExceptionally(new RejectedExecutionException("Egress spool is full, message for room " + roomLane.getRoomId() + " rejected"));
+    }
+
+    private boolean appendToSpool(RoomEgressLane roomLane, MatrixEgressRecord egressRecord){
+        if(spool == null){
+            return(false);
+        }
+        if(egressRecord.getSpoolSequence() == MatrixEgressRecord.NO_SPOOL_SEQUENCE){
+            // Put-back records keep their original sequence, so they never look newer than what followed them
+            egressRecord.setSpoolSequence(nextSpoolSequence.getAndIncrement());
+        }
+        try {
+            if(!spool.append(egressRecord.encode())){
+                return(false);
+            }
+        } catch(IOException ex){
+            getLogger().warn(".appendToSpool(): Could not write to egress spool, message->{}", ExceptionUtils.getMessage(ex));
+            return(false);
+        }
+        if(egressRecord.isStateMessage()){
+            roomLane.recordSpooledStateMessage(egressRecord.getSpoolSequence());
+        }
+        roomLane.getSpooledCount().incrementAndGet();
+        spooledCount.incrementAndGet();
+        return(true);
+    }
+
+    /**
+     * Feeds spooled messages back into the lanes of rooms that are no longer backing off. Messages for rooms that
+     * still are go back to the (new) end of the spool.
+     */
+    protected void replaySpool(){
+        if(spool == null){
+            return;
+        }
+        spool.force();
+        if(spool.isEmpty() || !isAnySpooledRoomDue(System.currentTimeMillis())){
+            return;
+        }
+        getLogger().debug(".replaySpool(): Entry, spooledMessages->{}", spool.getPendingRecordCount());
+        Set<String> blockedRooms = new HashSet<>();
+        long now = System.currentTimeMillis();
+        for(RoomEgressLane currentLane: roomLanes.values()){
+            if(currentLane.isInBackoff(now)){
+                blockedRooms.add(currentLane.getRoomId());
+            }
+        }
+        Set<RoomEgressLane> lanesToSchedule = new HashSet<>();
+        for(MatrixEgressSpool.SpoolSegment currentSegment: spool.seal()){
+            try {
+                spool.consume(currentSegment, record -> replaySpooledRecord(record, blockedRooms, lanesToSchedule));
+            } catch(IOException ex){
+                getLogger().warn(".replaySpool(): Could not read egress spool segment, message->{}", ExceptionUtils.getMessage(ex));
+            }
+        }
+        for(RoomEgressLane currentLane: lanesToSchedule){
+            scheduleLane(currentLane);
+        }
+        getLogger().debug(".replaySpool(): Exit, spooledMessages->{}, roomsResumed->{}", spool.getPendingRecordCount(), lanesToSchedule.size());
+    }
+
+    private void replaySpooledRecord(byte[] record, Set<String> blockedRooms, Set<RoomEgressLane> lanesToSchedule){
+        MatrixEgressRecord egressRecord;
+        try {
+            egressRecord = MatrixEgressRecord.decode(record);
+        } catch(Exception ex){
+            getLogger().warn(".replaySpooledRecord(): Discarding unreadable spool record, message->{}", ExceptionUtils.getMessage(ex));
+            return;
+        }
+        if(StringUtils.isEmpty(egressRecord.getRoomId())){
+            return;
+        }
+        RoomEgressLane roomLane = roomLanes.computeIfAbsent(egressRecord.getRoomId(), RoomEgressLane::new);
+        synchronized (roomLane){
+            roomLane.getSpooledCount().decrementAndGet();
+            if(egressRecord.isStateMessage() && egressRecord.getSpoolSequence() < roomLane.getLatestSpooledStateSequence()){
+                supersededCount.incrementAndGet();
+                getLogger().trace(".replaySpooledRecord(): Dropping superseded state message, roomId->{}", roomLane.getRoomId());
+                return;
+            }
+            if(!blockedRooms.contains(roomLane.getRoomId()) && !roomLane.isInBackoff(System.currentTimeMillis()) && roomLane.offer(new EgressMessage(egressRecord, newReplayOutcome(egressRecord)))){
+                replayedCount.incrementAndGet();
+                lanesToSchedule.add(roomLane);
+                return;
+            }
+            if(!appendToSpool(roomLane, egressRecord)){
+                // Rather than lose it, park it with the dead letters
+                deadLetter(egressRecord, new RejectedExecutionException("Egress spool is full"));
+            }
+        }
+    }
+
+    /**
+     * @return a future that passes the outcome of a replayed message to its completion handler, or null if it has none
+     */
+    private CompletableFuture<MAPIResponse> newReplayOutcome(MatrixEgressRecord egressRecord){
+        MatrixEgressCompletionHandler completionHandler = getCompletionHandler(egressRecord);
+        if(completionHandler == null){
+            return(null);
+        }
+        CompletableFuture<MAPIResponse> replayOutcome = new CompletableFuture<>();
+        replayOutcome.whenComplete((response, failure) -> {
+            if(failure instanceof MatrixEgressDeferredException){
+                // Spooled again (the handler is told if it is dead-lettered), so still pending
+                return;
+            }
+            notifyCompletionHandler(egressRecord, response, failure);
+        });
+        return(replayOutcome);
+    }
+
+    private MatrixEgressCompletionHandler getCompletionHandler(MatrixEgressRecord egressRecord){
+        if(StringUtils.isEmpty(egressRecord.getCompletionHandlerName())){
+            return(null);
+        }
+        MatrixEgressCompletionHandler completionHandler = completionHandlers.get(egressRecord.getCompletionHandlerName());
+        if(completionHandler == null){
+            getLogger().warn(".getCompletionHandler(): No completion handler registered, name->{}", egressRecord.getCompletionHandlerName());
+        }
+        return(completionHandler);
+    }
+
+    private void notifyCompletionHandler(MatrixEgressRecord egressRecord, MAPIResponse response, Throwable failure){
+        MatrixEgressCompletionHandler completionHandler = getCompletionHandler(egressRecord);
+        if(completionHandler == null){
+            return;
+        }
+        try {
+            completionHandler.onSpooledMessageCompleted(egressRecord, response, failure);
+        } catch(Exception ex){
+            getLogger().warn(".notifyCompletionHandler(): Completion handler failed, name->{}, message->{}", egressRecord.getCompletionHandlerName(), ExceptionUtils.getMessage(ex));
+        }
+    }
+
+    private boolean isAnySpooledRoomDue(long now){
+        for(RoomEgressLane currentLane: roomLanes.values()){
+            if(currentLane.getSpooledCount().get() > 0 && !currentLane.isInBackoff(now)){
+                return(true);
+            }
+        }
+        return(false);
+    }
+
+    private void deadLetter(MatrixEgressRecord egressRecord, Throwable failure){
+        synchronized (deadLetterLock){
+            if(deadLetterStore == null || deadLetterCount.get() >= MAXIMUM_DEAD_LETTER_COUNT){
+                getLogger().error(".deadLetter(): Dead-letter store full (or unavailable), message discarded, record->{}", egressRecord);
+            } else {
+                try {
+                    deadLetterStore.append(egressRecord.encode());
+                    deadLetterStore.flush();
+                    deadLetterCount.incrementAndGet();
+                } catch(IOException ex){
+                    getLogger().error(".deadLetter(): Could not write to dead-letter store, message discarded, record->{}, message->{}", egressRecord, ExceptionUtils.getMessage(ex));
+                }
+            }
+        }
+        notifyCompletionHandler(egressRecord, null, new MatrixEgressDeferredException("Message for room " + egressRecord.getRoomId() + " given up on", failure));
+    }
+
+    /**
+     * Dead-letters a message that was given up on before its room could be resolved (e.g. it waited too long for the
+     * room to be created), so it can be listed and replayed like any other dead letter. Its room is resolved from the
+     * pseudo alias when it is replayed.
+     */
+    public void deadLetterUnrouted(String roomPseudoAlias, MRoomTextMessageEvent messageEvent, String reason){
+        getLogger().debug(".deadLetterUnrouted(): Entry, roomPseudoAlias->{}, reason->{}", roomPseudoAlias, reason);
+        MatrixEgressRecord egressRecord = new MatrixEgressRecord(null, messageEvent);
+        egressRecord.setRoomPseudoAlias(roomPseudoAlias);
+        egressRecord.recordFailure(reason);
+        deadLetter(egressRecord, new MatrixEgressRejectedException(reason));
+    }
+
+    public List<MatrixEgressRecord> listDeadLetters(int maximumCount){
+        List<MatrixEgressRecord> deadLetters = new ArrayList<>();
+        if(deadLetterStore == null){
+            return(deadLetters);
+        }
+        synchronized (deadLetterLock){
+            try {
+                deadLetterStore.replay(record -> {
+                    if(deadLetters.size() < maximumCount){
+                        try {
+                            deadLetters.add(MatrixEgressRecord.decode(record));
+                        } catch(IOException ex){
+                            getLogger().warn(".listDeadLetters(): Skipping unreadable dead letter, message->{}", ExceptionUtils.getMessage(ex));
+                        }
+                    }
+                });
+            } catch(IOException ex){
+                getLogger().warn(".listDeadLetters(): Could not read dead-letter store, message->{}", ExceptionUtils.getMessage(ex));
+            }
+        }
+        return(deadLetters);
+    }
+
+    /**
+     * Moves every dead letter back onto the spool, with its delivery attempts reset, so it is retried as soon as its
+     * room is not backing off. A dead letter whose room still can't be resolved from its pseudo alias stays dead-lettered.
+     *
+     * @return the number of messages re-queued
+     */
+    public int replayDeadLetters(){
+        getLogger().info(".replayDeadLetters(): Entry, deadLetters->{}", getDeadLetterCount());
+        List<MatrixEgressRecord> deadLetters;
+        synchronized (deadLetterLock){
+            deadLetters = listDeadLetters(Integer.MAX_VALUE);
+            purgeDeadLetters();
+        }
+        int requeuedCount = 0;
+        for(MatrixEgressRecord deadLetter: deadLetters){
+            MatrixEgressRecord currentRecord = resolveDeadLetterRoom(deadLetter);
+            if(currentRecord == null){
+                deadLetter(deadLetter, new MatrixEgressRejectedException("No room for pseudo alias " + deadLetter.getRoomPseudoAlias()));
+                continue;
+            }
+            currentRecord.setDeliveryAttempts(0);
+            RoomEgressLane roomLane = roomLanes.computeIfAbsent(currentRecord.getRoomId(), RoomEgressLane::new);
+            synchronized (roomLane){
+                if(appendToSpool(roomLane, currentRecord)){
+                    requeuedCount += 1;
+                } else {
+                    deadLetter(currentRecord, new RejectedExecutionException("Egress spool is full"));
+                }
+            }
+        }
+        getLogger().info(".replayDeadLetters(): Exit, requeuedCount->{}", requeuedCount);
+        return(requeuedCount);
+    }
+
+    private MatrixEgressRecord resolveDeadLetterRoom(MatrixEgressRecord deadLetter){
+        if(StringUtils.isNotEmpty(deadLetter.getRoomId())){
+            return(deadLetter);
+        }
+        String roomId = null;
+        if(StringUtils.isNotEmpty(deadLetter.getRoomPseudoAlias())){
+            roomId = knownRoomMap.getRoomIdFromPseudoAlias(deadLetter.getRoomPseudoAlias());
+        }
+        if(roomId == null){
+            return(null);
+        }
+        deadLetter.getMessageEvent().setRoomIdentifier(roomId);
+        MatrixEgressRecord resolvedRecord = new MatrixEgressRecord(roomId, deadLetter.getMessageEvent());
+        resolvedRecord.setStateMessage(deadLetter.isStateMessage());
+        resolvedRecord.setCompletionHandlerName(deadLetter.getCompletionHandlerName());
+        return(resolvedRecord);
+    }
+
+    public void purgeDeadLetters(){
+        if(deadLetterStore == null){
+            return;
+        }
+        synchronized (deadLetterLock){
+            try {
+                deadLetterStore.reset();
+                deadLetterCount.set(0);
+            } catch(IOException ex){
+                getLogger().warn(".purgeDeadLetters(): Could not reset dead-letter store, message->{}", ExceptionUtils.getMessage(ex));
+            }
+        }
+    }
+
+    private void openSpool(Path spoolDirectory){
+        try {
+            MatrixEgressSpool recoveredSpool = new MatrixEgressSpool(spoolDirectory, SPOOL_SEGMENT_SIZE, MAXIMUM_SPOOL_SEGMENT_COUNT);
+            recoveredSpool.recover(record -> {
+                try {
+                    MatrixEgressRecord egressRecord = MatrixEgressRecord.decode(record);
+                    nextSpoolSequence.accumulateAndGet(egressRecord.getSpoolSequence() + 1, Math::max);
+                    if(StringUtils.isNotEmpty(egressRecord.getRoomId())){
+                        RoomEgressLane roomLane = roomLanes.computeIfAbsent(egressRecord.getRoomId(), RoomEgressLane::new);
+                        roomLane.getSpooledCount().incrementAndGet();
+                        if(egressRecord.isStateMessage()){
+                            roomLane.recordSpooledStateMessage(egressRecord.getSpoolSequence());
+                        }
+                    }
+                } catch(IOException ex){
+                    getLogger().warn(".openSpool(): Unreadable spool record will be discarded on replay, message->{}", ExceptionUtils.getMessage(ex));
+                }
+            });
+            this.spool = recoveredSpool;
+            DataGridChangeJournal recoveredDeadLetters = new DataGridChangeJournal(spoolDirectory.resolve(DEAD_LETTER_FILE_NAME));
+            deadLetterCount.set(recoveredDeadLetters.replay(record -> {}));
+            this.deadLetterStore = recoveredDeadLetters;
+        } catch(IOException ex){
+            getLogger().error(".openSpool(): Could not open egress spool, failed messages will be rejected, spoolDirectory->{}, message->{}", spoolDirectory, ExceptionUtils.getMessage(ex));
+            return;
+        }
+        this.spoolReplayTimer = new Timer("ITOpsMatrixEgressSpoolReplay", true);
+        this.spoolReplayTimer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                try {
+                    replaySpool();
+                } catch(Exception ex){
+                    getLogger().warn(".openSpool(): Spool replay failed, message->{}", ExceptionUtils.getMessage(ex));
+                }
+            }
+        }, SPOOL_REPLAY_PERIOD_MILLIS, SPOOL_REPLAY_PERIOD_MILLIS);
+    }
+
+    //
+    // Helpers
+    //
+
+    private Path resolveSpoolDirectory(){
+        String configuredDirectory = System.getenv(EGRESS_SPOOL_DIRECTORY_ENVIRONMENT_VARIABLE);
+        if(StringUtils.isNotEmpty(configuredDirectory)){
+            return(Paths.get(configuredDirectory));
+        }
+        Path defaultDirectory = Paths.get(DEFAULT_SPOOL_DIRECTORY);
+        try {
+            Files.createDirectories(defaultDirectory);
+            if(Files.isWritable(defaultDirectory)){
+                return(defaultDirectory);
+            }
+        } catch(IOException ex){
+            getLogger().debug(".resolveSpoolDirectory(): Cannot create default spool directory, message->{}", ExceptionUtils.getMessage(ex));
+        }
+        Path temporaryDirectory = Paths.get(System.getProperty("java.io.tmpdir"), "itops-im-egress");
+        getLogger().warn(".resolveSpoolDirectory(): {} not set and {} not writable, spooling to {}, which will not survive a container restart",
+                EGRESS_SPOOL_DIRECTORY_ENVIRONMENT_VARIABLE, DEFAULT_SPOOL_DIRECTORY, temporaryDirectory);
+        return(temporaryDirectory);
+    }
+
+    //
+    // Room Lane
+    //
+
+    private static class RoomEgressLane {
+        private final String roomId;
+        private final ConcurrentLinkedQueue<EgressMessage> messages;
+        private final AtomicInteger depth;
+        private final AtomicBoolean scheduled;
+        private final AtomicInteger spooledCount;
+        private int consecutiveFailures;
+        private long backoffUntilMillis;
+        private long latestSpooledStateSequence;
+
+        RoomEgressLane(String roomId){
+            this.roomId = roomId;
+            this.messages = new ConcurrentLinkedQueue<>();
+            this.depth = new AtomicInteger(0);
+            this.scheduled = new AtomicBoolean(false);
+            this.spooledCount = new AtomicInteger(0);
+            this.consecutiveFailures = 0;
+            this.backoffUntilMillis = 0L;
+            this.latestSpooledStateSequence = MatrixEgressRecord.NO_SPOOL_SEQUENCE;
+        }
+
+        String getRoomId() {
+            return roomId;
+        }
+
+        AtomicBoolean getScheduled() {
+            return scheduled;
+        }
+
+        int getDepth(){
+            return(depth.get());
+        }
+
+        AtomicInteger getSpooledCount() {
+            return spooledCount;
+        }
+
+        synchronized boolean isInBackoff(long now){
+            return(now < backoffUntilMillis);
+        }
+
+        synchronized boolean isDeferring(long now){
+            return(isInBackoff(now) || spooledCount.get() > 0);
+        }
+
+        synchronized long getLatestSpooledStateSequence(){
+            return(latestSpooledStateSequence);
+        }
+
+        synchronized void recordSpooledStateMessage(long spoolSequence){
+            latestSpooledStateSequence = Math.max(latestSpooledStateSequence, spoolSequence);
+        }
+
+        synchronized void recordSuccess(){
+            consecutiveFailures = 0;
+        }
+
+        /**
+         * @return the backoff now in force, doubling from INITIAL_BACKOFF_MILLIS up to MAXIMUM_BACKOFF_MILLIS
+         */
+        synchronized long recordFailure(long now){
+            consecutiveFailures += 1;
+            long backoffMillis = Math.min(MAXIMUM_BACKOFF_MILLIS, INITIAL_BACKOFF_MILLIS << Math.min(consecutiveFailures - 1, 20));
+            backoffUntilMillis = now + backoffMillis;
+            return(backoffMillis);
+        }
+
+        boolean offer(EgressMessage message){
+            if(depth.incrementAndGet() > MAXIMUM_LANE_DEPTH){
+                depth.decrementAndGet();
+                return(false);
+            }
+            messages.add(message);
+            return(true);
+        }
+
+        EgressMessage peek(){
+            return(messages.peek());
+        }
+
+        void poll(){
+            if(messages.poll() != null){
+                depth.decrementAndGet();
+            }
+        }
+    }
+
+    //
+    // Egress Message
+    //
+
+    private static class EgressMessage {
+        private final MatrixEgressRecord egressRecord;
+        private final CompletableFuture<MAPIResponse> outcome;
+
+        EgressMessage(MatrixEgressRecord egressRecord, CompletableFuture<MAPIResponse> outcome){
+            this.egressRecord = egressRecord;
+            this.outcome = outcome;
+        }
+
+        MatrixEgressRecord getEgressRecord() {
+            return egressRecord;
+        }
+
+        void complete(MAPIResponse response){
+            // Messages replayed from the spool have no caller waiting on them
+            if(outcome != null){
+                outcome.complete(response);
+            }
+        }
+
+        void completeExceptionally(Throwable failure){
+            if(outcome != null){
+                outcome.completeExceptionally(failure);
+            }
+        }
+    }
+}
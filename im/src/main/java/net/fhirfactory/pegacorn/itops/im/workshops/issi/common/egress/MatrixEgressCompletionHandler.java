@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.workshops.issi.common.egress;
+
+import net.fhirfactory.pegacorn.communicate.matrix.model.r110.api.common.MAPIResponse;
+
+/**
+ * Told the final outcome of a message that was moved to the egress spool: the caller's own future was completed with a
+ * MatrixEgressDeferredException at that point, and may even belong to a previous run of the IM. Registered with
+ * ITOpsMatrixEgressPipeline.registerCompletionHandler() under the name given when the message was submitted.
+ */
+public interface MatrixEgressCompletionHandler {
+
+    /**
+     * @param egressRecord the spooled message
+     * @param response the homeserver's response if the message was posted, otherwise null
+     * @param failure why the message was given up on (moved to the dead-letter store or discarded), otherwise null
+     */
+    void onSpooledMessageCompleted(MatrixEgressRecord egressRecord, MAPIResponse response, Throwable failure);
+}
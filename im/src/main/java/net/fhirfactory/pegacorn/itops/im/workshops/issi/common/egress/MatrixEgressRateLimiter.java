@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.workshops.issi.common.egress;
+
+/**
+ * A token bucket shared by all Matrix egress lanes. Tokens refill continuously at permitsPerSecond up to burstSize, and
+ * a rate-limit response from Synapse (429 / M_LIMIT_EXCEEDED) pauses the whole bucket until its retry_after has passed,
+ * since Synapse applies the limit to the (single) ITOps bot user rather than to a room.
+ */
+public class MatrixEgressRateLimiter {
+    private static final long NANOS_PER_SECOND = 1000000000L;
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    private final double permitsPerSecond;
+    private final double burstSize;
+    private double availablePermits;
+    private long lastRefillNanos;
+    private long pausedUntilNanos;
+
+    //
+    // Constructor(s)
+    //
+
+    public MatrixEgressRateLimiter(double permitsPerSecond, int burstSize){
+        this.permitsPerSecond = Math.max(0.1d, permitsPerSecond);
+        this.burstSize = Math.max(1, burstSize);
+        this.availablePermits = this.burstSize;
+        this.lastRefillNanos = System.nanoTime();
+        this.pausedUntilNanos = this.lastRefillNanos;
+    }
+
+    //
+    // Getters (and Setters)
+    //
+
+    public double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    public double getBurstSize() {
+        return burstSize;
+    }
+
+    public synchronized boolean isPaused(){
+        return(pausedUntilNanos - System.nanoTime() > 0);
+    }
+
+    //
+    // Business Methods
+    //
+
+    /**
+     * Blocks the calling (egress worker) thread until a permit is available.
+     */
+    public void acquire() throws InterruptedException {
+        while(true){
+            long waitNanos = tryAcquire();
+            if(waitNanos <= 0){
+                return;
+            }
+            Thread.sleep(Math.max(1L, waitNanos / NANOS_PER_MILLI));
+        }
+    }
+
+    /**
+     * @return 0 if a permit was taken, otherwise the number of nanoseconds to wait before trying again
+     */
+    public synchronized long tryAcquire(){
+        long now = System.nanoTime();
+        if(pausedUntilNanos - now > 0){
+            return(pausedUntilNanos - now);
+        }
+        refill(now);
+        if(availablePermits >= 1.0d){
+            availablePermits -= 1.0d;
+            return(0L);
+        }
+        long waitNanos = (long)((1.0d - availablePermits) * NANOS_PER_SECOND / permitsPerSecond);
+        return(Math.max(1L, waitNanos));
+    }
+
+    public synchronized void pauseFor(long retryAfterMillis){
+        long pauseUntil = System.nanoTime() + Math.max(0L, retryAfterMillis) * NANOS_PER_MILLI;
+        if(pauseUntil - pausedUntilNanos > 0){
+            pausedUntilNanos = pauseUntil;
+        }
+        // Don't let the backlog burst straight back into the limit when the pause ends
+        availablePermits = 0.0d;
+        lastRefillNanos = pausedUntilNanos;
+    }
+
+    //
+    // Helpers
+    //
+
+    private void refill(long now){
+        long elapsedNanos = now - lastRefillNanos;
+        if(elapsedNanos > 0){
+            availablePermits = Math.min(burstSize, availablePermits + (elapsedNanos * permitsPerSecond) / NANOS_PER_SECOND);
+            lastRefillNanos = now;
+        }
+    }
+
+    //
+    // To String
+    //
+
+    @Override
+    public synchronized String toString() {
+        return "MatrixEgressRateLimiter{" +
+                "permitsPerSecond=" + permitsPerSecond +
+                ", burstSize=" + burstSize +
+                ", availablePermits=" + availablePermits +
+                ", paused=" + (pausedUntilNanos - System.nanoTime() > 0) +
+                '}';
+    }
+}
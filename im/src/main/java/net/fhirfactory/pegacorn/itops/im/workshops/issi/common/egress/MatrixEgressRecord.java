@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.workshops.issi.common.egress;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import net.fhirfactory.pegacorn.communicate.matrix.model.r110.events.room.message.MRoomTextMessageEvent;
+import net.fhirfactory.pegacorn.communicate.matrix.model.r110.events.room.message.contenttypes.MTextContentType;
+
+import java.io.IOException;
+import java.time.Instant;
+
+/**
+ * A message waiting in the egress spool or the dead-letter store, along with its delivery history. Records are
+ * stored as JSON (the Matrix event is already a JSON model), and the concrete content class is recorded so that
+ * subclasses such as edit (m.replace) content come back with all their fields.
+ */
+public class MatrixEgressRecord {
+    public static final long NO_SPOOL_SEQUENCE = 0L;
+
+    private static final ObjectMapper JSON_MAPPER = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private String roomId;
+    private String roomPseudoAlias;
+    private MRoomTextMessageEvent messageEvent;
+    private int deliveryAttempts;
+    private Instant firstFailureInstant;
+    private String lastFailureMessage;
+    private long spoolSequence;
+    private boolean stateMessage;
+    private String completionHandlerName;
+
+    //
+    // Constructor(s)
+    //
+
+    public MatrixEgressRecord(String roomId, MRoomTextMessageEvent messageEvent){
+        this.roomId = roomId;
+        this.roomPseudoAlias = null;
+        this.messageEvent = messageEvent;
+        this.deliveryAttempts = 0;
+        this.firstFailureInstant = null;
+        this.lastFailureMessage = null;
+        this.spoolSequence = NO_SPOOL_SEQUENCE;
+        this.stateMessage = false;
+        this.completionHandlerName = null;
+    }
+
+    //
+    // Getters and Setters
+    //
+
+    public String getRoomId() {
+        return roomId;
+    }
+
+    /**
+     * For a message given up on before its room could be resolved (roomId is null), the pseudo alias to resolve the
+     * room by when the message is replayed.
+     */
+    public String getRoomPseudoAlias() {
+        return roomPseudoAlias;
+    }
+
+    public void setRoomPseudoAlias(String roomPseudoAlias) {
+        this.roomPseudoAlias = roomPseudoAlias;
+    }
+
+    public MRoomTextMessageEvent getMessageEvent() {
+        return messageEvent;
+    }
+
+    public int getDeliveryAttempts() {
+        return deliveryAttempts;
+    }
+
+    public void setDeliveryAttempts(int deliveryAttempts) {
+        this.deliveryAttempts = deliveryAttempts;
+    }
+
+    public Instant getFirstFailureInstant() {
+        return firstFailureInstant;
+    }
+
+    public void setFirstFailureInstant(Instant firstFailureInstant) {
+        this.firstFailureInstant = firstFailureInstant;
+    }
+
+    public String getLastFailureMessage() {
+        return lastFailureMessage;
+    }
+
+    public void setLastFailureMessage(String lastFailureMessage) {
+        this.lastFailureMessage = lastFailureMessage;
+    }
+
+    /**
+     * The order in which the record was first spooled, kept when it is put back on the spool, so a newer state message
+     * for the same room can be recognised as superseding it.
+     */
+    public long getSpoolSequence() {
+        return spoolSequence;
+    }
+
+    public void setSpoolSequence(long spoolSequence) {
+        this.spoolSequence = spoolSequence;
+    }
+
+    /**
+     * A state message (e.g. a metrics report) only matters until the next one for the same room has been queued.
+     */
+    public boolean isStateMessage() {
+        return stateMessage;
+    }
+
+    public void setStateMessage(boolean stateMessage) {
+        this.stateMessage = stateMessage;
+    }
+
+    /**
+     * The name of the MatrixEgressCompletionHandler to tell when the message is finally posted (or given up on) after
+     * having been spooled, or null if nobody needs to know.
+     */
+    public String getCompletionHandlerName() {
+        return completionHandlerName;
+    }
+
+    public void setCompletionHandlerName(String completionHandlerName) {
+        this.completionHandlerName = completionHandlerName;
+    }
+
+    //
+    // Business Methods
+    //
+
+    public void recordFailure(String failureMessage){
+        this.deliveryAttempts += 1;
+        if(this.firstFailureInstant == null){
+            this.firstFailureInstant = Instant.now();
+        }
+        this.lastFailureMessage = failureMessage;
+    }
+
+    public byte[] encode() throws IOException {
+        ObjectNode recordNode = JSON_MAPPER.createObjectNode();
+        recordNode.put("roomId", roomId);
+        if(roomPseudoAlias != null){
+            recordNode.put("roomPseudoAlias", roomPseudoAlias);
+        }
+        recordNode.put("deliveryAttempts", deliveryAttempts);
+        if(firstFailureInstant != null){
+            recordNode.put("firstFailureInstant", firstFailureInstant.toEpochMilli());
+        }
+        if(lastFailureMessage != null){
+            recordNode.put("lastFailureMessage", lastFailureMessage);
+        }
+        recordNode.put("spoolSequence", spoolSequence);
+        recordNode.put("stateMessage", stateMessage);
+        if(completionHandlerName != null){
+            recordNode.put("completionHandlerName", completionHandlerName);
+        }
+        if(messageEvent.getContent() != null){
+            recordNode.put("contentClass", messageEvent.getContent().getClass().getName());
+        }
+        recordNode.set("messageEvent", JSON_MAPPER.valueToTree(messageEvent));
+        return(JSON_MAPPER.writeValueAsBytes(recordNode));
+    }
+
+    public static MatrixEgressRecord decode(byte[] encodedRecord) throws IOException {
+        JsonNode recordNode = JSON_MAPPER.readTree(encodedRecord);
+        JsonNode eventNode = recordNode.path("messageEvent");
+        MRoomTextMessageEvent messageEvent = JSON_MAPPER.treeToValue(eventNode, MRoomTextMessageEvent.class);
+        if(recordNode.hasNonNull("contentClass") && eventNode.hasNonNull("content")){
+            String contentClassName = recordNode.get("contentClass").asText();
+            if(!MTextContentType.class.getName().equals(contentClassName)){
+                try {
+                    Class<? extends MTextContentType> contentClass = Class.forName(contentClassName).asSubclass(MTextContentType.class);
+                    messageEvent.setContent(JSON_MAPPER.treeToValue(eventNode.get("content"), contentClass));
+                } catch(ClassNotFoundException | ClassCastException ex){
+                    // Fall back to the plain text content, which still carries the body
+                }
+            }
+        }
+        MatrixEgressRecord egressRecord = new MatrixEgressRecord(recordNode.path("roomId").asText(null), messageEvent);
+        egressRecord.setRoomPseudoAlias(recordNode.path("roomPseudoAlias").asText(null));
+        egressRecord.setDeliveryAttempts(recordNode.path("deliveryAttempts").asInt(0));
+        if(recordNode.hasNonNull("firstFailureInstant")){
+            egressRecord.setFirstFailureInstant(Instant.ofEpochMilli(recordNode.get("firstFailureInstant").asLong()));
+        }
+        egressRecord.setLastFailureMessage(recordNode.path("lastFailureMessage").asText(null));
+        egressRecord.setSpoolSequence(recordNode.path("spoolSequence").asLong(NO_SPOOL_SEQUENCE));
+        egressRecord.setStateMessage(recordNode.path("stateMessage").asBoolean(false));
+        egressRecord.setCompletionHandlerName(recordNode.path("completionHandlerName").asText(null));
+        return(egressRecord);
+    }
+
+    //
+    // To String
+    //
+
+    @Override
+    public String toString() {
+        return "MatrixEgressRecord{" +
+                "roomId='" + roomId + '\'' +
+                ", roomPseudoAlias='" + roomPseudoAlias + '\'' +
+                ", deliveryAttempts=" + deliveryAttempts +
+                ", firstFailureInstant=" + firstFailureInstant +
+                ", lastFailureMessage='" + lastFailureMessage + '\'' +
+                ", spoolSequence=" + spoolSequence +
+                ", stateMessage=" + stateMessage +
+                ", completionHandlerName='" + completionHandlerName + '\'' +
+                ", messageEvent=" + messageEvent +
+                '}';
+    }
+}
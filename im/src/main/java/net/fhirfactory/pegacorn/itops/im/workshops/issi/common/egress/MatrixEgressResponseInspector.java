@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.workshops.issi.common.egress;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import net.fhirfactory.pegacorn.communicate.matrix.model.r110.api.common.MAPIResponse;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Reads the typed outcome of a Matrix client-server API call (HTTP status code, Matrix errcode, retry_after_ms, and the
+ * event_id of a posted event) from the MAPIResponse's own properties, the top level of the JSON body it carries, or the
+ * typed accessors of the exception the API wrapper threw. Nothing is inferred from toString() or message text, so
+ * payload text that happens to look like a status code or an errcode cannot misclassify a call.
+ */
+public class MatrixEgressResponseInspector {
+    private static final String[] STATUS_CODE_PROPERTIES = {"responseCode", "statusCode", "httpStatusCode", "httpStatus", "status"};
+    private static final String[] STATUS_CODE_ACCESSORS = {"getResponseCode", "getStatusCode", "getHttpStatusCode", "getHttpStatus", "getStatus"};
+    private static final String[] ERROR_CODE_FIELDS = {"errcode", "errorCode"};
+    private static final String[] ERROR_CODE_ACCESSORS = {"getErrcode", "getErrorCode"};
+    private static final String[] RETRY_AFTER_FIELDS = {"retry_after_ms", "retryAfterMs", "retryAfterMillis"};
+    private static final String[] RETRY_AFTER_ACCESSORS = {"getRetryAfterMs", "getRetryAfterMillis"};
+    private static final String RESPONSE_ACCESSOR = "getResponse";
+    private static final String EVENT_ID_FIELD = "event_id";
+    private static final String EVENT_ID_PROPERTY = "eventId";
+    private static final String EVENT_ID_SIGIL = "$";
+    private static final ObjectMapper JSON_MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+
+    //
+    // Business Methods
+    //
+
+    /**
+     * @return the typed status of the response; a null response is reported as missing (see
+     * MatrixEgressResponseStatus.isPermanentFailure())
+     */
+    public static MatrixEgressResponseStatus inspect(MAPIResponse response){
+        if(response == null){
+            return(new MatrixEgressResponseStatus(true, MatrixEgressResponseStatus.UNKNOWN_STATUS_CODE, null, MatrixEgressResponseStatus.NO_RETRY_AFTER));
+        }
+        JsonNode responseNode = asJsonTree(response);
+        if(responseNode == null){
+            return(new MatrixEgressResponseStatus(false, MatrixEgressResponseStatus.UNKNOWN_STATUS_CODE, null, MatrixEgressResponseStatus.NO_RETRY_AFTER));
+        }
+        int statusCode = MatrixEgressResponseStatus.UNKNOWN_STATUS_CODE;
+        for(String currentProperty: STATUS_CODE_PROPERTIES){
+            JsonNode statusNode = responseNode.get(currentProperty);
+            if(statusNode != null && statusNode.canConvertToInt() && isHttpStatusCode(statusNode.asInt())){
+                statusCode = statusNode.asInt();
+                break;
+            }
+        }
+        String errorCode = null;
+        long retryAfterMillis = MatrixEgressResponseStatus.NO_RETRY_AFTER;
+        for(JsonNode currentBody: getTopLevelBodies(responseNode)){
+            if(errorCode == null){
+                errorCode = getTextField(currentBody, ERROR_CODE_FIELDS);
+            }
+            if(retryAfterMillis == MatrixEgressResponseStatus.NO_RETRY_AFTER){
+                retryAfterMillis = getLongField(currentBody, RETRY_AFTER_FIELDS);
+            }
+        }
+        return(new MatrixEgressResponseStatus(false, statusCode, errorCode, retryAfterMillis));
+    }
+
+    /**
+     * @return the typed status carried by the exception (or one of its causes): a MAPIResponse it holds, or its own
+     * status code/errcode/retry-after accessors. An exception with none of these is a transport failure, with an
+     * unknown status.
+     */
+    public static MatrixEgressResponseStatus inspect(Throwable failure){
+        if(failure != null){
+            for(Throwable currentThrowable: ExceptionUtils.getThrowableList(failure)){
+                Object embeddedResponse = invokeAccessor(currentThrowable, RESPONSE_ACCESSOR);
+                if(embeddedResponse instanceof MAPIResponse){
+                    return(inspect((MAPIResponse)embeddedResponse));
+                }
+                int statusCode = asStatusCode(invokeAccessor(currentThrowable, STATUS_CODE_ACCESSORS));
+                if(statusCode == MatrixEgressResponseStatus.UNKNOWN_STATUS_CODE && embeddedResponse != null){
+                    // e.g. a JAX-RS WebApplicationException, whose Response has getStatus()
+                    statusCode = asStatusCode(invokeAccessor(embeddedResponse, STATUS_CODE_ACCESSORS));
+                }
+                Object errorCode = invokeAccessor(currentThrowable, ERROR_CODE_ACCESSORS);
+                Object retryAfter = invokeAccessor(currentThrowable, RETRY_AFTER_ACCESSORS);
+                if(statusCode != MatrixEgressResponseStatus.UNKNOWN_STATUS_CODE || errorCode instanceof String){
+                    return(new MatrixEgressResponseStatus(false, statusCode, errorCode instanceof String ? (String)errorCode : null,
+                            retryAfter instanceof Number ? ((Number)retryAfter).longValue() : MatrixEgressResponseStatus.NO_RETRY_AFTER));
+                }
+            }
+        }
+        return(new MatrixEgressResponseStatus(false, MatrixEgressResponseStatus.UNKNOWN_STATUS_CODE, null, MatrixEgressResponseStatus.NO_RETRY_AFTER));
+    }
+
+    public static boolean isRateLimited(MAPIResponse response){
+        return(response != null && inspect(response).isRateLimited());
+    }
+
+    public static boolean isRateLimited(Throwable failure){
+        return(failure != null && inspect(failure).isRateLimited());
+    }
+
+    public static long getRetryAfterMillis(MatrixEgressResponseStatus responseStatus, long defaultRetryAfterMillis){
+        if(responseStatus == null || responseStatus.getRetryAfterMillis() < 0L){
+            return(defaultRetryAfterMillis);
+        }
+        return(responseStatus.getRetryAfterMillis());
+    }
+
+    public static long getRetryAfterMillis(MAPIResponse response, long defaultRetryAfterMillis){
+        return(getRetryAfterMillis(inspect(response), defaultRetryAfterMillis));
+    }
+
+    public static long getRetryAfterMillis(Throwable failure, long defaultRetryAfterMillis){
+        return(getRetryAfterMillis(inspect(failure), defaultRetryAfterMillis));
+    }
+
+    /**
+     * Reads the event_id the homeserver assigned to a posted event from the response's bean properties: either a
+     * typed event id property, or the top level of the JSON body the response carries (as an object, or as the raw JSON
+     * text). Only top-level fields are looked at, so an event_id nested inside an echoed body is never picked up.
+     *
+     * @return the event_id, or null if the response doesn't carry one (callers then fall back to a new post)
+     */
+    public static String getEventId(MAPIResponse response){
+        if(response == null){
+            return(null);
+        }
+        JsonNode responseNode = asJsonTree(response);
+        if(responseNode == null){
+            return(null);
+        }
+        String eventId = null;
+        for(JsonNode currentBody: getTopLevelBodies(responseNode)){
+            eventId = getTopLevelEventId(currentBody);
+            if(eventId != null){
+                break;
+            }
+        }
+        return(eventId);
+    }
+
+    //
+    // Helpers
+    //
+
+    private static String getTopLevelEventId(JsonNode bodyNode){
+        if(bodyNode == null || !bodyNode.isObject()){
+            return(null);
+        }
+        for(String fieldName: new String[]{EVENT_ID_FIELD, EVENT_ID_PROPERTY}){
+            JsonNode eventIdNode = bodyNode.get(fieldName);
+            if(eventIdNode != null && eventIdNode.isTextual() && eventIdNode.asText().startsWith(EVENT_ID_SIGIL)){
+                return(eventIdNode.asText());
+            }
+        }
+        return(null);
+    }
+
+    private static JsonNode asJsonBody(JsonNode propertyNode){
+        if(propertyNode == null){
+            return(null);
+        }
+        if(propertyNode.isObject()){
+            return(propertyNode);
+        }
+        if(propertyNode.isTextual() && StringUtils.startsWith(StringUtils.trim(propertyNode.asText()), "{")){
+            try {
+                return(JSON_MAPPER.readTree(propertyNode.asText()));
+            } catch(Exception ex){
+                return(null);
+            }
+        }
+        return(null);
+    }
+
+    private static JsonNode asJsonTree(MAPIResponse response){
+        try {
+            JsonNode responseNode = JSON_MAPPER.valueToTree(response);
+            if(responseNode == null || !responseNode.isObject()){
+                return(null);
+            }
+            return(responseNode);
+        } catch(IllegalArgumentException ex){
+            return(null);
+        }
+    }
+
+    /**
+     * @return the response's own top level, followed by the top level of each JSON body it carries as a property
+     */
+    private static List<JsonNode> getTopLevelBodies(JsonNode responseNode){
+        List<JsonNode> bodies = new ArrayList<>();
+        bodies.add(responseNode);
+        Iterator<JsonNode> propertyIterator = responseNode.elements();
+        while(propertyIterator.hasNext()){
+            JsonNode bodyNode = asJsonBody(propertyIterator.next());
+            if(bodyNode != null && bodyNode.isObject()){
+                bodies.add(bodyNode);
+            }
+        }
+        return(bodies);
+    }
+
+    private static String getTextField(JsonNode bodyNode, String[] fieldNames){
+        for(String currentField: fieldNames){
+            JsonNode fieldNode = bodyNode.get(currentField);
+            if(fieldNode != null && fieldNode.isTextual() && StringUtils.isNotEmpty(fieldNode.asText())){
+                return(fieldNode.asText());
+            }
+        }
+        return(null);
+    }
+
+    private static long getLongField(JsonNode bodyNode, String[] fieldNames){
+        for(String currentField: fieldNames){
+            JsonNode fieldNode = bodyNode.get(currentField);
+            if(fieldNode != null && fieldNode.canConvertToLong() && fieldNode.asLong() >= 0L){
+                return(fieldNode.asLong());
+            }
+        }
+        return(MatrixEgressResponseStatus.NO_RETRY_AFTER);
+    }
+
+    private static boolean isHttpStatusCode(int statusCode){
+        return(statusCode >= 100 && statusCode <= 599);
+    }
+
+    private static int asStatusCode(Object statusValue){
+        if(statusValue instanceof Number && isHttpStatusCode(((Number)statusValue).intValue())){
+            return(((Number)statusValue).intValue());
+        }
+        return(MatrixEgressResponseStatus.UNKNOWN_STATUS_CODE);
+    }
+
+    private static Object invokeAccessor(Object target, String... accessorNames){
+        for(String currentAccessor: accessorNames){
+            try {
+                Method accessor = target.getClass().getMethod(currentAccessor);
+                Object value = accessor.invoke(target);
+                if(value != null){
+                    return(value);
+                }
+            } catch(ReflectiveOperationException | RuntimeException ex){
+                // Not exposed by this type
+            }
+        }
+        return(null);
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.workshops.issi.common.egress;
+
+/**
+ * The typed outcome of a Matrix client-server API call: the HTTP status code, the Matrix errcode and retry_after_ms,
+ * as read by MatrixEgressResponseInspector. Any of them may be missing (UNKNOWN_STATUS_CODE, null, NO_RETRY_AFTER).
+ */
+public class MatrixEgressResponseStatus {
+    public static final int UNKNOWN_STATUS_CODE = -1;
+    public static final long NO_RETRY_AFTER = -1L;
+
+    private static final String RATE_LIMIT_ERROR_CODE = "M_LIMIT_EXCEEDED";
+    private static final int RATE_LIMIT_STATUS_CODE = 429;
+
+    private final boolean responseMissing;
+    private final int statusCode;
+    private final String errorCode;
+    private final long retryAfterMillis;
+
+    //
+    // Constructor(s)
+    //
+
+    public MatrixEgressResponseStatus(boolean responseMissing, int statusCode, String errorCode, long retryAfterMillis){
+        this.responseMissing = responseMissing;
+        this.statusCode = statusCode;
+        this.errorCode = errorCode;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    //
+    // Getters
+    //
+
+    public boolean isResponseMissing() {
+        return responseMissing;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getErrorCode() {
+        return errorCode;
+    }
+
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+
+    //
+    // Business Methods
+    //
+
+    public boolean isRateLimited(){
+        return(statusCode == RATE_LIMIT_STATUS_CODE || RATE_LIMIT_ERROR_CODE.equals(errorCode));
+    }
+
+    /**
+     * @return true if the homeserver (or the proxy in front of it) could not handle the request, so it is worth
+     * retrying later
+     */
+    public boolean isServerUnavailable(){
+        return(statusCode >= 500 && statusCode <= 599);
+    }
+
+    /**
+     * @return true if retrying the same request cannot succeed: the homeserver refused it (a 4xx other than 429, or a
+     * Matrix errcode without a status), or the API returned no response at all, so it is not known what happened
+     */
+    public boolean isPermanentFailure(){
+        if(responseMissing){
+            return(true);
+        }
+        if(isRateLimited()){
+            return(false);
+        }
+        if(statusCode >= 400 && statusCode <= 499){
+            return(true);
+        }
+        return(statusCode == UNKNOWN_STATUS_CODE && errorCode != null);
+    }
+
+    public boolean isSuccessful(){
+        return(!isRateLimited() && !isServerUnavailable() && !isPermanentFailure());
+    }
+
+    //
+    // To String
+    //
+
+    @Override
+    public String toString() {
+        return "MatrixEgressResponseStatus{" +
+                "responseMissing=" + responseMissing +
+                ", statusCode=" + statusCode +
+                ", errorCode='" + errorCode + '\'' +
+                ", retryAfterMillis=" + retryAfterMillis +
+                '}';
+    }
+}
@@ -0,0 +1,350 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.workshops.issi.common.egress;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * A bounded, disk-backed FIFO of opaque records, made up of fixed-size memory-mapped segment files. Records are
+ * appended to the active segment; seal() closes the active segment to appends and returns every sealed segment so
+ * they can be consumed in order while new records (including ones being put back) go to a fresh active segment.
+ *
+ * Each segment starts with a header holding its write and read positions, which are updated in the mapped buffer as
+ * records are appended and consumed, so after a restart the unconsumed records of every segment are recovered. The
+ * mapped pages survive the process dying, but only reach the device when force() is called (and when a segment is
+ * sealed), so after a host crash anything written since the last force() can be lost. Records are framed as
+ * [length][crc32][bytes]; a torn record ends the segment.
+ */
+public class MatrixEgressSpool {
+    private static final int SEGMENT_MAGIC = 0x49544F45;
+    private static final int SEGMENT_HEADER_SIZE = 16;
+    private static final int WRITE_POSITION_OFFSET = 4;
+    private static final int READ_POSITION_OFFSET = 8;
+    private static final int RECORD_HEADER_SIZE = 12;
+    private static final String SEGMENT_FILE_PREFIX = "egress-";
+    private static final String SEGMENT_FILE_SUFFIX = ".spool";
+
+    private final Path spoolDirectory;
+    private final int segmentSize;
+    private final int maximumSegmentCount;
+    private final List<SpoolSegment> sealedSegments;
+    private SpoolSegment activeSegment;
+    private long nextSegmentSequence;
+    private long pendingRecordCount;
+
+    //
+    // Constructor(s)
+    //
+
+    public MatrixEgressSpool(Path spoolDirectory, int segmentSize, int maximumSegmentCount){
+        this.spoolDirectory = spoolDirectory;
+        this.segmentSize = Math.max(segmentSize, 64 * 1024);
+        this.maximumSegmentCount = Math.max(2, maximumSegmentCount);
+        this.sealedSegments = new ArrayList<>();
+        this.activeSegment = null;
+        this.nextSegmentSequence = 0L;
+        this.pendingRecordCount = 0L;
+    }
+
+    //
+    // Getters (and Setters)
+    //
+
+    public Path getSpoolDirectory() {
+        return spoolDirectory;
+    }
+
+    public synchronized long getPendingRecordCount() {
+        return pendingRecordCount;
+    }
+
+    public synchronized int getSegmentCount(){
+        return(sealedSegments.size() + (activeSegment != null ? 1 : 0));
+    }
+
+    public synchronized boolean isEmpty(){
+        return(pendingRecordCount == 0L);
+    }
+
+    //
+    // Business Methods
+    //
+
+    /**
+     * Opens any segments left by a previous run (all of them are treated as sealed) and counts their unconsumed
+     * records.
+     *
+     * @param recordVisitor is given each recovered record, so the caller can rebuild its own indexes
+     */
+    public synchronized void recover(Consumer<byte[]> recordVisitor) throws IOException {
+        Files.createDirectories(spoolDirectory);
+        List<Path> segmentPaths = new ArrayList<>();
+        try(DirectoryStream<Path> directoryStream = Files.newDirectoryStream(spoolDirectory, SEGMENT_FILE_PREFIX + "*" + SEGMENT_FILE_SUFFIX)){
+            for(Path currentPath: directoryStream){
+                segmentPaths.add(currentPath);
+            }
+        }
+        segmentPaths.sort((first, second) -> Long.compare(getSegmentSequence(first), getSegmentSequence(second)));
+        for(Path currentPath: segmentPaths){
+            long sequence = getSegmentSequence(currentPath);
+            nextSegmentSequence = Math.max(nextSegmentSequence, sequence + 1);
+            SpoolSegment recoveredSegment = SpoolSegment.open(currentPath, segmentSize, false);
+            if(recoveredSegment == null){
+                Files.deleteIfExists(currentPath);
+                continue;
+            }
+            long recordCount = recoveredSegment.visitUnread(recordVisitor);
+            if(recordCount == 0L){
+                recoveredSegment.delete();
+                continue;
+            }
+            pendingRecordCount += recordCount;
+            sealedSegments.add(recoveredSegment);
+        }
+    }
+
+    /**
+     * @return false if the record could not be stored because the spool is full (or the record is too large)
+     */
+    public synchronized boolean append(byte[] record) throws IOException {
+        if(record == null || record.length + RECORD_HEADER_SIZE > segmentSize - SEGMENT_HEADER_SIZE){
+            return(false);
+        }
+        if(activeSegment == null || !activeSegment.hasRoomFor(record.length)){
+            if(activeSegment != null){
+                sealedSegments.add(activeSegment);
+                activeSegment = null;
+            }
+            if(sealedSegments.size() + 1 > maximumSegmentCount){
+                return(false);
+            }
+            activeSegment = SpoolSegment.open(spoolDirectory.resolve(SEGMENT_FILE_PREFIX + nextSegmentSequence + SEGMENT_FILE_SUFFIX), segmentSize, true);
+            nextSegmentSequence += 1;
+        }
+        activeSegment.append(record);
+        pendingRecordCount += 1;
+        return(true);
+    }
+
+    /**
+     * Closes the active segment to further appends.
+     *
+     * @return the sealed segments, oldest first, for consumption with consume()
+     */
+    public synchronized List<SpoolSegment> seal(){
+        if(activeSegment != null){
+            if(activeSegment.getWritePosition() > SEGMENT_HEADER_SIZE){
+                activeSegment.force();
+                sealedSegments.add(activeSegment);
+                activeSegment = null;
+            }
+        }
+        return(new ArrayList<>(sealedSegments));
+    }
+
+    /**
+     * Writes any appended records, and consumed positions, still only in the mapped pages through to the device.
+     */
+    public synchronized void force(){
+        if(activeSegment != null){
+            activeSegment.force();
+        }
+        for(SpoolSegment currentSegment: sealedSegments){
+            currentSegment.force();
+        }
+    }
+
+    /**
+     * Hands each unconsumed record of a sealed segment to the consumer, marking it consumed once the consumer returns,
+     * and deletes the segment when it has been fully consumed.
+     */
+    public void consume(SpoolSegment segment, Consumer<byte[]> recordConsumer) throws IOException {
+        while(true){
+            byte[] record;
+            synchronized (this){
+                record = segment.readNext();
+            }
+            if(record == null){
+                break;
+            }
+            recordConsumer.accept(record);
+            synchronized (this){
+                segment.commitRead();
+                pendingRecordCount -= 1;
+            }
+        }
+        synchronized (this){
+            sealedSegments.remove(segment);
+            segment.delete();
+        }
+    }
+
+    //
+    // Helpers
+    //
+
+    private long getSegmentSequence(Path segmentPath){
+        String fileName = segmentPath.getFileName().toString();
+        try {
+            return(Long.parseLong(fileName.substring(SEGMENT_FILE_PREFIX.length(), fileName.length() - SEGMENT_FILE_SUFFIX.length())));
+        } catch(NumberFormatException nfe){
+            return(-1L);
+        }
+    }
+
+    //
+    // Spool Segment
+    //
+
+    public static class SpoolSegment {
+        private final Path segmentPath;
+        private final FileChannel fileChannel;
+        private final MappedByteBuffer mappedBuffer;
+        private int pendingReadPosition;
+        private boolean dirty;
+
+        private SpoolSegment(Path segmentPath, FileChannel fileChannel, MappedByteBuffer mappedBuffer){
+            this.segmentPath = segmentPath;
+            this.fileChannel = fileChannel;
+            this.mappedBuffer = mappedBuffer;
+            this.pendingReadPosition = -1;
+            this.dirty = false;
+        }
+
+        static SpoolSegment open(Path segmentPath, int segmentSize, boolean create) throws IOException {
+            FileChannel fileChannel;
+            if(create){
+                fileChannel = FileChannel.open(segmentPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            } else {
+                fileChannel = FileChannel.open(segmentPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            MappedByteBuffer mappedBuffer = fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, create ? segmentSize : fileChannel.size());
+            if(create){
+                mappedBuffer.putInt(0, SEGMENT_MAGIC);
+                mappedBuffer.putInt(WRITE_POSITION_OFFSET, SEGMENT_HEADER_SIZE);
+                mappedBuffer.putInt(READ_POSITION_OFFSET, SEGMENT_HEADER_SIZE);
+            } else if(mappedBuffer.capacity() < SEGMENT_HEADER_SIZE || mappedBuffer.getInt(0) != SEGMENT_MAGIC){
+                fileChannel.close();
+                return(null);
+            }
+            return(new SpoolSegment(segmentPath, fileChannel, mappedBuffer));
+        }
+
+        int getWritePosition(){
+            return(mappedBuffer.getInt(WRITE_POSITION_OFFSET));
+        }
+
+        int getReadPosition(){
+            return(mappedBuffer.getInt(READ_POSITION_OFFSET));
+        }
+
+        boolean hasRoomFor(int recordLength){
+            return(getWritePosition() + RECORD_HEADER_SIZE + recordLength <= mappedBuffer.capacity());
+        }
+
+        void append(byte[] record){
+            int writePosition = getWritePosition();
+            CRC32 checksum = new CRC32();
+            checksum.update(record);
+            mappedBuffer.putInt(writePosition, record.length);
+            mappedBuffer.putLong(writePosition + 4, checksum.getValue());
+            for(int index = 0; index < record.length; index += 1){
+                mappedBuffer.put(writePosition + RECORD_HEADER_SIZE + index, record[index]);
+            }
+            // Publish the new write position only once the record is complete
+            mappedBuffer.putInt(WRITE_POSITION_OFFSET, writePosition + RECORD_HEADER_SIZE + record.length);
+            dirty = true;
+        }
+
+        byte[] readNext(){
+            int readPosition = getReadPosition();
+            int writePosition = Math.min(getWritePosition(), mappedBuffer.capacity());
+            if(readPosition + RECORD_HEADER_SIZE > writePosition){
+                return(null);
+            }
+            int recordLength = mappedBuffer.getInt(readPosition);
+            long expectedChecksum = mappedBuffer.getLong(readPosition + 4);
+            if(recordLength < 0 || readPosition + RECORD_HEADER_SIZE + recordLength > writePosition){
+                return(null);
+            }
+            byte[] record = new byte[recordLength];
+            for(int index = 0; index < recordLength; index += 1){
+                record[index] = mappedBuffer.get(readPosition + RECORD_HEADER_SIZE + index);
+            }
+            CRC32 checksum = new CRC32();
+            checksum.update(record);
+            if(checksum.getValue() != expectedChecksum){
+                return(null);
+            }
+            pendingReadPosition = readPosition + RECORD_HEADER_SIZE + recordLength;
+            return(record);
+        }
+
+        void commitRead(){
+            if(pendingReadPosition > 0){
+                mappedBuffer.putInt(READ_POSITION_OFFSET, pendingReadPosition);
+                pendingReadPosition = -1;
+                dirty = true;
+            }
+        }
+
+        void force(){
+            if(dirty){
+                mappedBuffer.force();
+                dirty = false;
+            }
+        }
+
+        long visitUnread(Consumer<byte[]> recordVisitor){
+            int savedReadPosition = getReadPosition();
+            long recordCount = 0L;
+            byte[] record = readNext();
+            while(record != null){
+                if(recordVisitor != null){
+                    recordVisitor.accept(record);
+                }
+                recordCount += 1;
+                // Walk forward without persisting, the records are still unconsumed
+                mappedBuffer.putInt(READ_POSITION_OFFSET, pendingReadPosition);
+                record = readNext();
+            }
+            mappedBuffer.putInt(READ_POSITION_OFFSET, savedReadPosition);
+            pendingReadPosition = -1;
+            return(recordCount);
+        }
+
+        void delete() throws IOException {
+            fileChannel.close();
+            Files.deleteIfExists(segmentPath);
+        }
+    }
+}
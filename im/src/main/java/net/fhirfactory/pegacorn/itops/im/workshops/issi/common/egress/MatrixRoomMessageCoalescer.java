@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.workshops.issi.common.egress;
+
+import net.fhirfactory.pegacorn.communicate.matrix.model.r110.events.room.message.MRoomTextMessageEvent;
+import net.fhirfactory.pegacorn.communicate.matrix.model.r110.events.room.message.contenttypes.MTextContentType;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Holds state-style messages (metrics reports) for a short window before they go to the egress pipeline, keeping only
+ * the newest one per room. A report that is made up of several events is merged into a single event, and a report that
+ * is replaced by a newer one for the same room before the window closes is dropped, so each room receives at most one
+ * post per window regardless of how often its source reports.
+ */
+@ApplicationScoped
+public class MatrixRoomMessageCoalescer {
+    private static final Logger LOG = LoggerFactory.getLogger(MatrixRoomMessageCoalescer.class);
+
+    private static final String COALESCING_WINDOW_ENVIRONMENT_VARIABLE = "ITOPS_IM_METRICS_COALESCING_WINDOW_MILLIS";
+    private static final long DEFAULT_COALESCING_WINDOW_MILLIS = 10000L;
+    private static final long MINIMUM_COALESCING_WINDOW_MILLIS = 500L;
+    private static final String COALESCER_FLUSH_TIMER_NAME = "MatrixRoomMessageCoalescerTimer";
+
+    private boolean initialised;
+    private long coalescingWindowMillis;
+    private ConcurrentHashMap<String, MRoomTextMessageEvent> pendingRoomMessages;
+    private AtomicLong offeredCount;
+    private AtomicLong supersededCount;
+    private AtomicLong flushedCount;
+    private volatile BiConsumer<String, MRoomTextMessageEvent> roomMessagePublisher;
+
+    @Inject
+    private ITOpsMatrixEgressPipeline egressPipeline;
+
+    //
+    // Constructor(s)
+    //
+
+    public MatrixRoomMessageCoalescer(){
+        this.initialised = false;
+        this.coalescingWindowMillis = DEFAULT_COALESCING_WINDOW_MILLIS;
+        this.pendingRoomMessages = new ConcurrentHashMap<>();
+        this.offeredCount = new AtomicLong(0);
+        this.supersededCount = new AtomicLong(0);
+        this.flushedCount = new AtomicLong(0);
+        this.roomMessagePublisher = null;
+    }
+
+    //
+    // Post Construct
+    //
+
+    @PostConstruct
+    public void initialise(){
+        getLogger().debug(".initialise(): Entry");
+        if(initialised){
+            getLogger().debug(".initialise(): Exit, already initialised, nothing to do");
+            return;
+        }
+        getLogger().info(".initialise(): Initialisation Start...");
+        this.coalescingWindowMillis = resolveCoalescingWindow();
+        scheduleFlushDaemon();
+        this.initialised = true;
+        getLogger().info(".initialise(): Initialisation Finish, coalescingWindowMillis->{}", coalescingWindowMillis);
+    }
+
+    //
+    // Getters (and Setters)
+    //
+
+    protected Logger getLogger(){
+        return(LOG);
+    }
+
+    protected ITOpsMatrixEgressPipeline getEgressPipeline(){
+        return(egressPipeline);
+    }
+
+    public long getCoalescingWindowMillis() {
+        return coalescingWindowMillis;
+    }
+
+    public int getPendingRoomCount(){
+        return(pendingRoomMessages.size());
+    }
+
+    public long getOfferedCount(){
+        return(offeredCount.get());
+    }
+
+    public long getSupersededCount(){
+        return(supersededCount.get());
+    }
+
+    public long getFlushedCount(){
+        return(flushedCount.get());
+    }
+
+    /**
+     * Replaces the default hand-off (straight into the egress pipeline) for flushed messages, e.g. so they can be
+     * re-shaped into dashboard edits.
+     *
+     * @param roomMessagePublisher called with (roomId, message) for each flushed message, or null for the default
+     */
+    public void setRoomMessagePublisher(BiConsumer<String, MRoomTextMessageEvent> roomMessagePublisher) {
+        this.roomMessagePublisher = roomMessagePublisher;
+    }
+
+    //
+    // Business Methods
+    //
+
+    /**
+     * Replaces whatever is waiting for the room with the given report.
+     *
+     * @param roomId the room the report is for
+     * @param reportEvents the events that make up the report, merged into one event before posting
+     */
+    public void offer(String roomId, List<MRoomTextMessageEvent> reportEvents){
+        if(StringUtils.isEmpty(roomId) || reportEvents == null){
+            return;
+        }
+        MRoomTextMessageEvent mergedEvent = mergeEvents(reportEvents);
+        if(mergedEvent == null){
+            return;
+        }
+        offeredCount.incrementAndGet();
+        MRoomTextMessageEvent supersededEvent = pendingRoomMessages.put(roomId, mergedEvent);
+        if(supersededEvent != null){
+            supersededCount.incrementAndGet();
+            getLogger().trace(".offer(): Superseded pending report, roomId->{}", roomId);
+        }
+    }
+
+    public void flush(){
+        getLogger().debug(".flush(): Entry");
+        int flushed = 0;
+        for(String currentRoomId: new ArrayList<>(pendingRoomMessages.keySet())){
+            MRoomTextMessageEvent pendingEvent = pendingRoomMessages.remove(currentRoomId);
+            if(pendingEvent != null){
+                publish(currentRoomId, pendingEvent);
+                flushed += 1;
+            }
+        }
+        flushedCount.addAndGet(flushed);
+        getLogger().debug(".flush(): Exit, flushed->{}, supersededCount->{}", flushed, supersededCount.get());
+    }
+
+    protected void publish(String roomId, MRoomTextMessageEvent messageEvent){
+        BiConsumer<String, MRoomTextMessageEvent> publisher = roomMessagePublisher;
+        if(publisher != null){
+            publisher.accept(roomId, messageEvent);
+        } else {
+            getEgressPipeline().submitStateMessage(roomId, messageEvent);
+        }
+    }
+
+    //
+    // Scheduler
+    //
+
+    private void scheduleFlushDaemon(){
+        getLogger().debug(".scheduleFlushDaemon(): Entry");
+        TimerTask flushDaemonTask = new TimerTask() {
+            public void run() {
+                try {
+                    flush();
+                } catch(Exception ex){
+                    getLogger().warn(".flushDaemonTask(): Flush failed, message->{}", ExceptionUtils.getMessage(ex));
+                }
+            }
+        };
+        Timer timer = new Timer(COALESCER_FLUSH_TIMER_NAME, true);
+        timer.schedule(flushDaemonTask, coalescingWindowMillis, coalescingWindowMillis);
+        getLogger().debug(".scheduleFlushDaemon(): Exit");
+    }
+
+    //
+    // Helpers
+    //
+
+    protected MRoomTextMessageEvent mergeEvents(List<MRoomTextMessageEvent> reportEvents){
+        MRoomTextMessageEvent firstEvent = null;
+        StringBuilder bodyBuilder = new StringBuilder();
+        StringBuilder formattedBodyBuilder = new StringBuilder();
+        MTextContentType firstContent = null;
+        int eventCount = 0;
+        for(MRoomTextMessageEvent currentEvent: reportEvents){
+            if(currentEvent == null){
+                continue;
+            }
+            if(!(currentEvent.getContent() instanceof MTextContentType)){
+                // Can't merge content we don't understand, fall back to the newest event on its own
+                return(reportEvents.get(reportEvents.size() - 1));
+            }
+            MTextContentType currentContent = (MTextContentType) currentEvent.getContent();
+            if(firstEvent == null){
+                firstEvent = currentEvent;
+                firstContent = currentContent;
+            } else {
+                bodyBuilder.append("\n");
+            }
+            bodyBuilder.append(StringUtils.defaultString(currentContent.getBody()));
+            formattedBodyBuilder.append(StringUtils.defaultString(currentContent.getFormattedBody()));
+            eventCount += 1;
+        }
+        if(eventCount <= 1){
+            return(firstEvent);
+        }
+        MTextContentType mergedContent = new MTextContentType();
+        mergedContent.setBody(bodyBuilder.toString());
+        mergedContent.setFormattedBody(formattedBodyBuilder.toString());
+        mergedContent.setMessageType(firstContent.getMessageType());
+        mergedContent.setFormat(firstContent.getFormat());
+
+        MRoomTextMessageEvent mergedEvent = new MRoomTextMessageEvent();
+        mergedEvent.setRoomIdentifier(firstEvent.getRoomIdentifier());
+        mergedEvent.setEventIdentifier(firstEvent.getEventIdentifier());
+        mergedEvent.setSender(firstEvent.getSender());
+        mergedEvent.setEventType(firstEvent.getEventType());
+        mergedEvent.setContent(mergedContent);
+        return(mergedEvent);
+    }
+
+    private long resolveCoalescingWindow(){
+        String configuredWindow = System.getenv(COALESCING_WINDOW_ENVIRONMENT_VARIABLE);
+        if(StringUtils.isEmpty(configuredWindow)){
+            return(DEFAULT_COALESCING_WINDOW_MILLIS);
+        }
+        try {
+            return(Math.max(MINIMUM_COALESCING_WINDOW_MILLIS, Long.parseLong(configuredWindow.trim())));
+        } catch(NumberFormatException nfe){
+            getLogger().warn(".resolveCoalescingWindow(): Ignoring invalid value for {}, value->{}", COALESCING_WINDOW_ENVIRONMENT_VARIABLE, configuredWindow);
+            return(DEFAULT_COALESCING_WINDOW_MILLIS);
+        }
+    }
+}
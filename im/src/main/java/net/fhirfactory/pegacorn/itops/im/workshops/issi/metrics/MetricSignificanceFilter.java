@@ -0,0 +1,315 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.workshops.issi.metrics;
+
+import net.fhirfactory.pegacorn.core.model.petasos.oam.metrics.reporting.PetasosComponentMetric;
+import net.fhirfactory.pegacorn.core.model.petasos.oam.metrics.reporting.PetasosComponentMetricSet;
+import net.fhirfactory.pegacorn.core.model.petasos.oam.metrics.reporting.valuesets.PetasosComponentMetricTypeEnum;
+import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.ITOpsSystemWideMetricsHistoryDM;
+import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.metrics.CompactMetricValueCodec;
+import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.symbols.DenseIdTable;
+import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.symbols.ITOpsSymbolTable;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides whether a changed metric set is worth forwarding into Matrix. Each metric is judged against the
+ * MetricSignificanceRule for its PetasosComponentMetricTypeEnum, relative to the values last forwarded for the
+ * component; a set is forwarded if any metric changed significantly, if metrics were added or removed, or if nothing
+ * has been forwarded for the component within the keepalive period.
+ *
+ * The sets compared are the immutable ones published by ITOpsSystemWideMetricsDM, so the filter keeps references to
+ * them rather than copies. A component's state is dropped when ITOpsSystemWideMetricsHistoryDM retires it.
+ */
+@ApplicationScoped
+public class MetricSignificanceFilter {
+    private static final Logger LOG = LoggerFactory.getLogger(MetricSignificanceFilter.class);
+
+    private static final String KEEPALIVE_ENVIRONMENT_VARIABLE = "ITOPS_IM_METRICS_KEEPALIVE_MILLIS";
+    private static final long DEFAULT_KEEPALIVE_MILLIS = 300000L;
+
+    private boolean initialised;
+    private long keepaliveMillis;
+    private EnumMap<PetasosComponentMetricTypeEnum, MetricSignificanceRule> significanceRules;
+    private MetricSignificanceRule defaultRule;
+    private DenseIdTable<ComponentForwardingState> forwardingStateTable;
+    private AtomicLong forwardedCount;
+    private AtomicLong suppressedCount;
+
+    @Inject
+    private ITOpsSymbolTable symbolTable;
+
+    @Inject
+    private ITOpsSystemWideMetricsHistoryDM metricsHistoryDM;
+
+    //
+    // Constructor(s)
+    //
+
+    public MetricSignificanceFilter(){
+        this.initialised = false;
+        this.keepaliveMillis = DEFAULT_KEEPALIVE_MILLIS;
+        this.significanceRules = new EnumMap<>(PetasosComponentMetricTypeEnum.class);
+        this.defaultRule = MetricSignificanceRule.anyChange();
+        this.forwardingStateTable = new DenseIdTable<>();
+        this.forwardedCount = new AtomicLong(0);
+        this.suppressedCount = new AtomicLong(0);
+        loadDefaultRules();
+    }
+
+    //
+    // Post Construct
+    //
+
+    @PostConstruct
+    public void initialise(){
+        getLogger().debug(".initialise(): Entry");
+        if(initialised){
+            getLogger().debug(".initialise(): Exit, already initialised, nothing to do");
+            return;
+        }
+        String configuredKeepalive = System.getenv(KEEPALIVE_ENVIRONMENT_VARIABLE);
+        if(StringUtils.isNotEmpty(configuredKeepalive)){
+            try {
+                this.keepaliveMillis = Long.parseLong(configuredKeepalive.trim());
+            } catch(NumberFormatException nfe){
+                getLogger().warn(".initialise(): Ignoring invalid value for {}, value->{}", KEEPALIVE_ENVIRONMENT_VARIABLE, configuredKeepalive);
+            }
+        }
+        metricsHistoryDM.addComponentRetirementObserver(this::removeComponent);
+        this.initialised = true;
+        getLogger().info(".initialise(): Initialisation Finish, keepaliveMillis->{}, rules->{}", keepaliveMillis, significanceRules);
+    }
+
+    //
+    // Getters (and Setters)
+    //
+
+    protected Logger getLogger(){
+        return(LOG);
+    }
+
+    public long getKeepaliveMillis() {
+        return keepaliveMillis;
+    }
+
+    public void setKeepaliveMillis(long keepaliveMillis) {
+        this.keepaliveMillis = keepaliveMillis;
+    }
+
+    public synchronized MetricSignificanceRule getRule(PetasosComponentMetricTypeEnum metricType){
+        MetricSignificanceRule rule = null;
+        if(metricType != null){
+            rule = significanceRules.get(metricType);
+        }
+        if(rule == null){
+            rule = defaultRule;
+        }
+        return(rule);
+    }
+
+    public synchronized void setRule(PetasosComponentMetricTypeEnum metricType, MetricSignificanceRule rule){
+        if(metricType == null){
+            return;
+        }
+        if(rule == null){
+            significanceRules.remove(metricType);
+        } else {
+            significanceRules.put(metricType, rule);
+        }
+    }
+
+    public synchronized void setDefaultRule(MetricSignificanceRule rule){
+        if(rule != null){
+            this.defaultRule = rule;
+        }
+    }
+
+    public long getForwardedCount(){
+        return(forwardedCount.get());
+    }
+
+    public long getSuppressedCount(){
+        return(suppressedCount.get());
+    }
+
+    //
+    // Business Methods
+    //
+
+    public boolean isSignificant(PetasosComponentMetricSet metricSet){
+        if(metricSet == null || metricSet.getMetricSourceComponentId() == null){
+            return(true);
+        }
+        int componentSymbolId = symbolTable.lookupComponentId(metricSet.getMetricSourceComponentId().getId());
+        if(componentSymbolId == ITOpsSymbolTable.UNKNOWN_SYMBOL_ID){
+            return(true);
+        }
+        long now = System.currentTimeMillis();
+        long observedMillis = metricSet.getReportingInstant() != null ? metricSet.getReportingInstant().toEpochMilli() : now;
+        ComponentForwardingState forwardingState = forwardingStateTable.computeIfAbsent(componentSymbolId, key -> new ComponentForwardingState());
+        boolean significant;
+        synchronized (forwardingState){
+            Map<String, Double> currentRates = calculateCounterRates(metricSet, forwardingState.lastObservedSet, observedMillis - forwardingState.lastObservedMillis);
+            if(forwardingState.lastForwardedSet == null){
+                significant = true;
+            } else if(now - forwardingState.lastForwardedMillis >= keepaliveMillis){
+                getLogger().trace(".isSignificant(): Keepalive due, componentId->{}", metricSet.getMetricSourceComponentId().getId());
+                significant = true;
+            } else {
+                significant = hasSignificantChange(metricSet, currentRates, forwardingState);
+            }
+            forwardingState.lastObservedSet = metricSet;
+            forwardingState.lastObservedMillis = observedMillis;
+            if(significant){
+                forwardingState.lastForwardedSet = metricSet;
+                forwardingState.lastForwardedMillis = now;
+                forwardingState.lastForwardedRates = currentRates;
+            }
+        }
+        if(significant){
+            forwardedCount.incrementAndGet();
+        } else {
+            suppressedCount.incrementAndGet();
+        }
+        return(significant);
+    }
+
+    public void removeComponent(String componentId){
+        removeComponent(symbolTable.lookupComponentId(componentId));
+    }
+
+    public void removeComponent(int componentSymbolId){
+        if(componentSymbolId != ITOpsSymbolTable.UNKNOWN_SYMBOL_ID){
+            forwardingStateTable.remove(componentSymbolId);
+        }
+    }
+
+    //
+    // Helpers
+    //
+
+    protected boolean hasSignificantChange(PetasosComponentMetricSet currentSet, Map<String, Double> currentRates, ComponentForwardingState forwardingState){
+        PetasosComponentMetricSet forwardedSet = forwardingState.lastForwardedSet;
+        if(getMetricCount(forwardedSet) != getMetricCount(currentSet)){
+            return(true);
+        }
+        if(getMetricCount(currentSet) == 0){
+            return(false);
+        }
+        for(PetasosComponentMetric currentMetric: currentSet.getMetrics().values()){
+            if(currentMetric == null){
+                continue;
+            }
+            PetasosComponentMetric forwardedMetric = forwardedSet.getMetric(currentMetric.getMetricName());
+            if(forwardedMetric == null){
+                return(true);
+            }
+            if(!isNumeric(currentMetric) || !isNumeric(forwardedMetric)){
+                if(!StringUtils.equals(CompactMetricValueCodec.formatValue(currentMetric.getMetricValue()), CompactMetricValueCodec.formatValue(forwardedMetric.getMetricValue()))){
+                    return(true);
+                }
+                continue;
+            }
+            MetricSignificanceRule rule = getRule(currentMetric.getMetricType());
+            if(rule.isCounter()){
+                Double forwardedRate = forwardingState.lastForwardedRates.get(currentMetric.getMetricName());
+                Double currentRate = currentRates.get(currentMetric.getMetricName());
+                if(currentRate == null){
+                    continue;
+                }
+                if(forwardedRate == null || rule.isSignificantChange(forwardedRate, currentRate)){
+                    return(true);
+                }
+            } else if(rule.isSignificantChange(CompactMetricValueCodec.decodeAsDouble(forwardedMetric.getMetricValue()), CompactMetricValueCodec.decodeAsDouble(currentMetric.getMetricValue()))){
+                return(true);
+            }
+        }
+        return(false);
+    }
+
+    protected Map<String, Double> calculateCounterRates(PetasosComponentMetricSet currentSet, PetasosComponentMetricSet previousSet, long elapsedMillis){
+        Map<String, Double> rates = new HashMap<>();
+        if(previousSet == null || elapsedMillis <= 0 || getMetricCount(currentSet) == 0){
+            return(rates);
+        }
+        for(PetasosComponentMetric currentMetric: currentSet.getMetrics().values()){
+            if(currentMetric == null || !isNumeric(currentMetric) || !getRule(currentMetric.getMetricType()).isCounter()){
+                continue;
+            }
+            PetasosComponentMetric previousMetric = previousSet.getMetric(currentMetric.getMetricName());
+            if(previousMetric == null || !isNumeric(previousMetric)){
+                continue;
+            }
+            double delta = CompactMetricValueCodec.decodeAsDouble(currentMetric.getMetricValue()) - CompactMetricValueCodec.decodeAsDouble(previousMetric.getMetricValue());
+            rates.put(currentMetric.getMetricName(), (delta * 1000.0d) / elapsedMillis);
+        }
+        return(rates);
+    }
+
+    private boolean isNumeric(PetasosComponentMetric metric){
+        return(CompactMetricValueCodec.resolveValueType(metric.getMetricValue()).isNumeric());
+    }
+
+    private int getMetricCount(PetasosComponentMetricSet metricSet){
+        if(metricSet.getMetrics() == null){
+            return(0);
+        }
+        return(metricSet.getMetrics().size());
+    }
+
+    private void loadDefaultRules(){
+        // Per-task durations are noisy, the averages less so
+        significanceRules.put(PetasosComponentMetricTypeEnum.LAST_TASK_PROCESSING_TIME, MetricSignificanceRule.gauge(0.0d, 0.5d));
+        significanceRules.put(PetasosComponentMetricTypeEnum.ROLLING_TASK_PROCESSING_TIME, MetricSignificanceRule.gauge(0.0d, 0.1d));
+        significanceRules.put(PetasosComponentMetricTypeEnum.CUMULATIVE_TASK_PROCESSING_TIME, MetricSignificanceRule.gauge(0.0d, 0.05d));
+        // Throughput counters only matter when the rate changes
+        significanceRules.put(PetasosComponentMetricTypeEnum.REGISTERED_TASK_COUNT, MetricSignificanceRule.counterRate(0.05d, 0.25d));
+        significanceRules.put(PetasosComponentMetricTypeEnum.STARTED_TASK_COUNT, MetricSignificanceRule.counterRate(0.05d, 0.25d));
+        significanceRules.put(PetasosComponentMetricTypeEnum.FINISHED_TASK_COUNT, MetricSignificanceRule.counterRate(0.05d, 0.25d));
+        significanceRules.put(PetasosComponentMetricTypeEnum.FINALISED_TASK_COUNT, MetricSignificanceRule.counterRate(0.05d, 0.25d));
+        // Every failure/cancellation is reported
+        significanceRules.put(PetasosComponentMetricTypeEnum.FAILED_TASK_COUNT, MetricSignificanceRule.anyChange());
+        significanceRules.put(PetasosComponentMetricTypeEnum.CANCELLED_TASK_COUNT, MetricSignificanceRule.anyChange());
+    }
+
+    //
+    // Component Forwarding State
+    //
+
+    private static class ComponentForwardingState {
+        private PetasosComponentMetricSet lastForwardedSet;
+        private long lastForwardedMillis;
+        private Map<String, Double> lastForwardedRates;
+        private PetasosComponentMetricSet lastObservedSet;
+        private long lastObservedMillis;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.workshops.issi.metrics;
+
+/**
+ * When a change in one metric is worth forwarding. A gauge is significant if it has moved by more than absoluteDelta
+ * or by more than relativeDelta (a fraction of the last forwarded value); a counter is compared on its rate of change
+ * (per second) instead of its raw value, using the same two thresholds.
+ */
+public class MetricSignificanceRule {
+    private final boolean counter;
+    private final double absoluteDelta;
+    private final double relativeDelta;
+
+    //
+    // Constructor(s)
+    //
+
+    private MetricSignificanceRule(boolean counter, double absoluteDelta, double relativeDelta){
+        this.counter = counter;
+        this.absoluteDelta = Math.max(0.0d, absoluteDelta);
+        this.relativeDelta = Math.max(0.0d, relativeDelta);
+    }
+
+    public static MetricSignificanceRule anyChange(){
+        return(new MetricSignificanceRule(false, 0.0d, 0.0d));
+    }
+
+    public static MetricSignificanceRule gauge(double absoluteDelta, double relativeDelta){
+        return(new MetricSignificanceRule(false, absoluteDelta, relativeDelta));
+    }
+
+    public static MetricSignificanceRule counterRate(double absoluteRateDelta, double relativeRateDelta){
+        return(new MetricSignificanceRule(true, absoluteRateDelta, relativeRateDelta));
+    }
+
+    //
+    // Getters
+    //
+
+    public boolean isCounter() {
+        return counter;
+    }
+
+    public double getAbsoluteDelta() {
+        return absoluteDelta;
+    }
+
+    public double getRelativeDelta() {
+        return relativeDelta;
+    }
+
+    //
+    // Business Methods
+    //
+
+    public boolean isSignificantChange(double previousValue, double currentValue){
+        double delta = Math.abs(currentValue - previousValue);
+        if(delta == 0.0d){
+            return(false);
+        }
+        if(absoluteDelta == 0.0d && relativeDelta == 0.0d){
+            return(true);
+        }
+        if(absoluteDelta > 0.0d && delta > absoluteDelta){
+            return(true);
+        }
+        if(relativeDelta > 0.0d){
+            if(previousValue == 0.0d){
+                return(true);
+            }
+            return(delta / Math.abs(previousValue) > relativeDelta);
+        }
+        return(false);
+    }
+
+    //
+    // To String
+    //
+
+    @Override
+    public String toString() {
+        return "MetricSignificanceRule{" +
+                "counter=" + counter +
+                ", absoluteDelta=" + absoluteDelta +
+                ", relativeDelta=" + relativeDelta +
+                '}';
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.workshops.issi.metrics;
+
+import net.fhirfactory.pegacorn.communicate.matrix.model.r110.events.room.message.MRoomTextMessageEvent;
+import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.topologymaps.ITOpsKnownRoomAndSpaceMapDM;
+import net.fhirfactory.pegacorn.communicate.matrix.model.r110.api.common.MAPIResponse;
+import net.fhirfactory.pegacorn.itops.im.workshops.issi.common.egress.ITOpsMatrixEgressPipeline;
+import net.fhirfactory.pegacorn.itops.im.workshops.issi.common.egress.MatrixEgressDeferredException;
+import net.fhirfactory.pegacorn.itops.im.workshops.issi.common.egress.MatrixEgressResponseInspector;
+import net.fhirfactory.pegacorn.itops.im.workshops.transform.matrixbridge.metrics.ParticipantMetricsReportEventFactory;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Optional "live dashboard" mode for the metrics rooms. The first metrics report for a room is posted as a normal
+ * message and its event id is recorded (in ITOpsKnownRoomAndSpaceMapDM) as the room's dashboard; every later report is
+ * posted as an m.replace edit of that message, so the room timeline (and the Synapse database) stops growing with
+ * every reporting cycle. Enabled with ITOPS_IM_METRICS_DASHBOARD_MODE=true.
+ *
+ * A dashboard post that the egress pipeline has to spool stays "being created" until the pipeline reports (through
+ * this publisher's completion handler) that it has been posted or given up on, so an outage doesn't lead to a new
+ * dashboard being posted on every pass.
+ */
+@ApplicationScoped
+public class ParticipantMetricsDashboardPublisher {
+    private static final Logger LOG = LoggerFactory.getLogger(ParticipantMetricsDashboardPublisher.class);
+
+    private static final String DASHBOARD_MODE_ENVIRONMENT_VARIABLE = "ITOPS_IM_METRICS_DASHBOARD_MODE";
+    private static final String DASHBOARD_COMPLETION_HANDLER_NAME = "ParticipantMetricsDashboard";
+
+    private boolean initialised;
+    private boolean dashboardModeEnabled;
+    private Set<String> dashboardsBeingCreated;
+    private AtomicLong dashboardsCreatedCount;
+    private AtomicLong dashboardEditCount;
+    private AtomicLong skippedCount;
+
+    @Inject
+    private ITOpsMatrixEgressPipeline egressPipeline;
+
+    @Inject
+    private ITOpsKnownRoomAndSpaceMapDM roomAndSpaceMapDM;
+
+    @Inject
+    private ParticipantMetricsReportEventFactory metricsReportEventFactory;
+
+    //
+    // Constructor(s)
+    //
+
+    public ParticipantMetricsDashboardPublisher(){
+        this.initialised = false;
+        this.dashboardModeEnabled = false;
+        this.dashboardsBeingCreated = ConcurrentHashMap.newKeySet();
+        this.dashboardsCreatedCount = new AtomicLong(0);
+        this.dashboardEditCount = new AtomicLong(0);
+        this.skippedCount = new AtomicLong(0);
+    }
+
+    //
+    // Post Construct
+    //
+
+    @PostConstruct
+    public void initialise(){
+        getLogger().debug(".initialise(): Entry");
+        if(initialised){
+            getLogger().debug(".initialise(): Exit, already initialised, nothing to do");
+            return;
+        }
+        this.dashboardModeEnabled = Boolean.parseBoolean(StringUtils.trim(System.getenv(DASHBOARD_MODE_ENVIRONMENT_VARIABLE)));
+        // Registered even when disabled, a dashboard post may still be in the spool from a previous run
+        egressPipeline.registerCompletionHandler(DASHBOARD_COMPLETION_HANDLER_NAME,
+                (egressRecord, mapiResponse, failure) -> dashboardCreationCompleted(egressRecord.getRoomId(), mapiResponse, failure));
+        this.initialised = true;
+        getLogger().info(".initialise(): Initialisation Finish, dashboardModeEnabled->{}", dashboardModeEnabled);
+    }
+
+    //
+    // Getters (and Setters)
+    //
+
+    protected Logger getLogger(){
+        return(LOG);
+    }
+
+    public boolean isDashboardModeEnabled() {
+        return dashboardModeEnabled;
+    }
+
+    public long getDashboardsCreatedCount(){
+        return(dashboardsCreatedCount.get());
+    }
+
+    public long getDashboardEditCount(){
+        return(dashboardEditCount.get());
+    }
+
+    public long getSkippedCount(){
+        return(skippedCount.get());
+    }
+
+    //
+    // Business Methods
+    //
+
+    public void publish(String roomId, MRoomTextMessageEvent latestMetricsEvent){
+        getLogger().debug(".publish(): Entry, roomId->{}", roomId);
+        if(StringUtils.isEmpty(roomId) || latestMetricsEvent == null){
+            getLogger().debug(".publish(): Exit, nothing to publish");
+            return;
+        }
+        String dashboardEventId = roomAndSpaceMapDM.getDashboardEventId(roomId);
+        if(dashboardEventId != null){
+            MRoomTextMessageEvent replacementEvent = metricsReportEventFactory.newDashboardReplacementEvent(roomId, dashboardEventId, latestMetricsEvent);
+            if(replacementEvent != null){
+                egressPipeline.submitStateMessage(roomId, replacementEvent);
+                dashboardEditCount.incrementAndGet();
+                getLogger().debug(".publish(): Exit, dashboard edited");
+                return;
+            }
+        }
+        if(!dashboardsBeingCreated.add(roomId)){
+            // The dashboard post is still in flight, this report will be superseded by the next one anyway
+            skippedCount.incrementAndGet();
+            getLogger().debug(".publish(): Exit, dashboard for room still being created");
+            return;
+        }
+        egressPipeline.submit(roomId, latestMetricsEvent, DASHBOARD_COMPLETION_HANDLER_NAME).whenComplete((mapiResponse, failure) -> {
+            if(failure instanceof MatrixEgressDeferredException){
+                // Spooled, the completion handler is told once it is posted (or given up on)
+                getLogger().debug(".publish(): Dashboard creation deferred, roomId->{}", roomId);
+                return;
+            }
+            dashboardCreationCompleted(roomId, mapiResponse, failure);
+        });
+        getLogger().debug(".publish(): Exit, dashboard creation submitted");
+    }
+
+    //
+    // Helpers
+    //
+
+    protected void dashboardCreationCompleted(String roomId, MAPIResponse mapiResponse, Throwable failure){
+        try {
+            if(failure != null){
+                getLogger().warn(".dashboardCreationCompleted(): Failed to create dashboard, roomId->{}, message->{}", roomId, ExceptionUtils.getMessage(failure));
+                return;
+            }
+            String createdEventId = MatrixEgressResponseInspector.getEventId(mapiResponse);
+            if(createdEventId != null){
+                roomAndSpaceMapDM.setDashboardEventId(roomId, createdEventId);
+                dashboardsCreatedCount.incrementAndGet();
+                getLogger().debug(".dashboardCreationCompleted(): Dashboard created, roomId->{}, eventId->{}", roomId, createdEventId);
+            } else {
+                getLogger().warn(".dashboardCreationCompleted(): Dashboard posted but no event_id returned, roomId->{}", roomId);
+            }
+        } finally {
+            dashboardsBeingCreated.remove(roomId);
+        }
+    }
+}
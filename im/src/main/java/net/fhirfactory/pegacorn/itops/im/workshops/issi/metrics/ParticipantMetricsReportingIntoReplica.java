@@ -21,12 +21,12 @@
  */
 package net.fhirfactory.pegacorn.itops.im.workshops.issi.metrics;
 
-import net.fhirfactory.pegacorn.communicate.matrix.model.r110.api.common.MAPIResponse;
 import net.fhirfactory.pegacorn.communicate.matrix.model.r110.events.room.message.MRoomTextMessageEvent;
-import net.fhirfactory.pegacorn.communicate.synapse.credentials.SynapseAdminAccessToken;
 import net.fhirfactory.pegacorn.core.model.petasos.oam.metrics.reporting.PetasosComponentMetricSet;
 import net.fhirfactory.pegacorn.itops.im.valuesets.OAMRoomTypeEnum;
+import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.metrics.MetricSetChangeSubscription;
 import net.fhirfactory.pegacorn.itops.im.workshops.issi.common.OAMRoomMessageInjectorBase;
+import net.fhirfactory.pegacorn.itops.im.workshops.issi.common.egress.MatrixRoomMessageCoalescer;
 import net.fhirfactory.pegacorn.itops.im.workshops.oam.ITOpsIMMetricsProcessor;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.slf4j.Logger;
@@ -36,21 +36,33 @@ import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
 
 @ApplicationScoped
 public class ParticipantMetricsReportingIntoReplica extends OAMRoomMessageInjectorBase {
     private static final Logger LOG = LoggerFactory.getLogger(ParticipantMetricsReportingIntoReplica.class);
 
     private boolean initialised;
+    private MetricSetChangeSubscription metricsChangeSubscription;
 
-    private Long CONTENT_FORWARDER_STARTUP_DELAY = 180000L;
-    private Long CONTENT_FORWARDER_REFRESH_PERIOD = 30000L;
+    private Long CONTENT_FORWARDER_MAXIMUM_STARTUP_WAIT = 180000L;
+    private Long LOCAL_METRICS_CAPTURE_PERIOD = 30000L;
+    private Long METRICS_FORWARDER_LINGER_PERIOD = 2000L;
+    private static final int METRICS_CHANGE_BATCH_SIZE = 50;
+    private static final int MAXIMUM_METRICS_CHANGE_BATCHES_PER_CYCLE = 40;
+    private static final String METRICS_CHANGE_SUBSCRIPTION_NAME = "ReportsAndMetricsForwarder";
 
     @Inject
     private ITOpsIMMetricsProcessor localMetricsProcessor;
 
+    @Inject
+    private MatrixRoomMessageCoalescer messageCoalescer;
+
+    @Inject
+    private ParticipantMetricsDashboardPublisher dashboardPublisher;
+
+    @Inject
+    private MetricSignificanceFilter significanceFilter;
+
     //
     // Constructor(s)
     //
@@ -58,6 +70,7 @@ public class ParticipantMetricsReportingIntoReplica extends OAMRoomMessageInject
     public ParticipantMetricsReportingIntoReplica(){
         super();
         this.initialised = false;
+        this.metricsChangeSubscription = null;
     }
 
     //
@@ -73,7 +86,11 @@ public class ParticipantMetricsReportingIntoReplica extends OAMRoomMessageInject
         }
         getLogger().info(".initialise(): Initialisation Start...");
 
-        scheduleReportsAndMetricsForwarderDaemon();
+        this.metricsChangeSubscription = getSystemWideMetricsCache().registerChangeSubscription(METRICS_CHANGE_SUBSCRIPTION_NAME, METRICS_CHANGE_BATCH_SIZE);
+        if(dashboardPublisher.isDashboardModeEnabled()){
+            getMessageCoalescer().setRoomMessagePublisher(dashboardPublisher::publish);
+        }
+        startReportsAndMetricsForwarderDaemon();
 
         this.initialised = true;
 
@@ -88,26 +105,53 @@ public class ParticipantMetricsReportingIntoReplica extends OAMRoomMessageInject
         return(LOG);
     }
 
-    protected SynapseAdminAccessToken getSynapseAccessToken(){
-        return(getSynapseAccessToken());
+    protected MatrixRoomMessageCoalescer getMessageCoalescer(){
+        return(messageCoalescer);
     }
 
     //
     // Scheduler
     //
 
-    private void scheduleReportsAndMetricsForwarderDaemon() {
-        getLogger().debug(".scheduleReportsAndMetricsForwarderDaemon(): Entry");
-        TimerTask reportsAndMetricsForwardDaemon = new TimerTask() {
-            public void run() {
-                getLogger().debug(".reportsAndMetricsForwardDaemon(): Entry");
-                reportsAndMetricsForwarder();
-                getLogger().debug(".reportsAndMetricsForwardDaemon(): Exit");
+    private void startReportsAndMetricsForwarderDaemon() {
+        getLogger().debug(".startReportsAndMetricsForwarderDaemon(): Entry");
+        startForwarderThread("ReportsAndMetricsForwarderDaemon", this::reportsAndMetricsForwarderDaemon);
+        getLogger().debug(".startReportsAndMetricsForwarderDaemon(): Exit");
+    }
+
+    /**
+     * Sleeps until the metrics DM signals a change (or it is time to capture the local metrics), then lingers for
+     * METRICS_FORWARDER_LINGER_PERIOD so that a burst of updates is forwarded as one pass.
+     */
+    private void reportsAndMetricsForwarderDaemon() {
+        getLogger().info(".reportsAndMetricsForwarderDaemon(): Started");
+        long nextLocalMetricsCapture = 0L;
+        try {
+            waitForKnownRooms(CONTENT_FORWARDER_MAXIMUM_STARTUP_WAIT);
+        } catch (InterruptedException iex) {
+            Thread.currentThread().interrupt();
+        }
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                if (System.currentTimeMillis() >= nextLocalMetricsCapture) {
+                    //
+                    // Process Local Metrics 1st
+                    localMetricsProcessor.captureLocalMetrics();
+                    localMetricsProcessor.forwardLocalMetricsToServer();
+                    nextLocalMetricsCapture = System.currentTimeMillis() + LOCAL_METRICS_CAPTURE_PERIOD;
+                }
+                long waitPeriod = Math.max(1L, nextLocalMetricsCapture - System.currentTimeMillis());
+                if (getSystemWideMetricsCache().awaitChanges(metricsChangeSubscription, waitPeriod)) {
+                    Thread.sleep(METRICS_FORWARDER_LINGER_PERIOD);
+                    reportsAndMetricsForwarder();
+                }
+            } catch (InterruptedException iex) {
+                Thread.currentThread().interrupt();
+            } catch (Exception ex) {
+                getLogger().warn(".reportsAndMetricsForwarderDaemon(): Forwarding pass failed, message->{}, stackTrace->{}", ExceptionUtils.getMessage(ex), ExceptionUtils.getStackTrace(ex));
             }
-        };
-        Timer timer = new Timer("ReportsAndMetricsForwarderTimer");
-        timer.schedule(reportsAndMetricsForwardDaemon, CONTENT_FORWARDER_STARTUP_DELAY, CONTENT_FORWARDER_REFRESH_PERIOD);
-        getLogger().debug(".scheduleReportsAndMetricsForwarderDaemon(): Exit");
+        }
+        getLogger().info(".reportsAndMetricsForwarderDaemon(): Stopped");
     }
 
     //
@@ -117,42 +161,53 @@ public class ParticipantMetricsReportingIntoReplica extends OAMRoomMessageInject
     private void reportsAndMetricsForwarder(){
         getLogger().debug(".reportsAndMetricsForwarder(): Entry");
 
-
         //
-        // Process Local Metrics 1st
-        localMetricsProcessor.captureLocalMetrics();
-        localMetricsProcessor.forwardLocalMetricsToServer();
-
-        //
-        // Now Process All Metrics
-        List<PetasosComponentMetricSet> metricSets = getSystemWideMetricsCache().getUpdatedMetricSets();
-        for(PetasosComponentMetricSet currentMetricSet: metricSets){
-            if(getLogger().isDebugEnabled()) {
-                getLogger().debug(".reportsAndMetricsForwarder(): Processing Metrics From -->{}", currentMetricSet.getSourceParticipantName());
-            }
-            switch (currentMetricSet.getComponentType()) {
-                case PETASOS_MONITORED_COMPONENT_SUBSYSTEM:
-                    break;
-                case PETASOS_MONITORED_COMPONENT_SERVICE:
-                    break;
-                case PETASOS_MONITORED_COMPONENT_PROCESSING_PLANT:
-                    getLogger().trace(".reportsAndMetricsForwarder(): Processing ProcessorPlant Metrics");
-                    forwardProcessingPlantMetrics(currentMetricSet);
-                    break;
-                case PETASOS_MONITORED_COMPONENT_WORKSHOP:
-                    break;
-                case PETASOS_MONITORED_COMPONENT_WORK_UNIT_PROCESSOR:
-                    getLogger().trace(".reportsAndMetricsForwarder(): Processing WorkUnitProcessor Metrics");
-                    forwardWUPMetrics(currentMetricSet);
-                    break;
-                case PETASOS_MONITORED_COMPONENT_WORK_UNIT_PROCESSOR_COMPONENT:
-                    break;
-                case PETASOS_MONITORED_COMPONENT_ENDPOINT:
-                    getLogger().trace(".reportsAndMetricsForwarder(): Processing Endpoint Metrics");
-                    forwardEndpointMetrics(currentMetricSet);
-                    break;
+        // Process All Changed Metrics, a batch at a time
+        int batchCount = 0;
+        while(batchCount < MAXIMUM_METRICS_CHANGE_BATCHES_PER_CYCLE && getSystemWideMetricsCache().hasPendingChanges(metricsChangeSubscription)) {
+            List<PetasosComponentMetricSet> metricSets = getSystemWideMetricsCache().getNextChangeBatch(metricsChangeSubscription);
+            batchCount += 1;
+            for (PetasosComponentMetricSet currentMetricSet : metricSets) {
+                forwardMetricSet(currentMetricSet);
             }
         }
+        getLogger().debug(".reportsAndMetricsForwarder(): Exit, batchCount->{}, remainingLag->{}, suppressedCount->{}", batchCount, getSystemWideMetricsCache().getChangeSubscriptionLag(metricsChangeSubscription), significanceFilter.getSuppressedCount());
+    }
+
+    private void forwardMetricSet(PetasosComponentMetricSet currentMetricSet){
+        if(getLogger().isDebugEnabled()) {
+            getLogger().debug(".forwardMetricSet(): Processing Metrics From -->{}", currentMetricSet.getSourceParticipantName());
+        }
+        if(currentMetricSet.getComponentType() == null){
+            getLogger().debug(".forwardMetricSet(): Exit, metric set has no component type");
+            return;
+        }
+        if(!significanceFilter.isSignificant(currentMetricSet)){
+            getLogger().debug(".forwardMetricSet(): Exit, no significant change since last forwarded");
+            return;
+        }
+        switch (currentMetricSet.getComponentType()) {
+            case PETASOS_MONITORED_COMPONENT_SUBSYSTEM:
+                break;
+            case PETASOS_MONITORED_COMPONENT_SERVICE:
+                break;
+            case PETASOS_MONITORED_COMPONENT_PROCESSING_PLANT:
+                getLogger().trace(".forwardMetricSet(): Processing ProcessorPlant Metrics");
+                forwardProcessingPlantMetrics(currentMetricSet);
+                break;
+            case PETASOS_MONITORED_COMPONENT_WORKSHOP:
+                break;
+            case PETASOS_MONITORED_COMPONENT_WORK_UNIT_PROCESSOR:
+                getLogger().trace(".forwardMetricSet(): Processing WorkUnitProcessor Metrics");
+                forwardWUPMetrics(currentMetricSet);
+                break;
+            case PETASOS_MONITORED_COMPONENT_WORK_UNIT_PROCESSOR_COMPONENT:
+                break;
+            case PETASOS_MONITORED_COMPONENT_ENDPOINT:
+                getLogger().trace(".forwardMetricSet(): Processing Endpoint Metrics");
+                forwardEndpointMetrics(currentMetricSet);
+                break;
+        }
     }
 
     //
@@ -163,14 +218,7 @@ public class ParticipantMetricsReportingIntoReplica extends OAMRoomMessageInject
         getLogger().debug(".forwardWUPMetrics(): Entry, wupMetricSet->{}", wupMetricSet);
 
         try{
-
-            String roomAlias = getRoomIdentityFactory().buildWUPRoomPseudoAlias(
-                    wupMetricSet.getSourceParticipantName(),
-                    OAMRoomTypeEnum.OAM_ROOM_TYPE_WUP_METRICS);
-
-            getLogger().trace(".forwardWUPMetrics(): roomAlias for Metric->{}", roomAlias);
-
-            String roomIdFromAlias = getRoomIdFromPseudoAlias(roomAlias);
+            String roomIdFromAlias = getRoomIdForParticipant(wupMetricSet.getSourceParticipantName(), OAMRoomTypeEnum.OAM_ROOM_TYPE_WUP_METRICS);
 
             getLogger().trace(".forwardWUPMetrics(): roomId for Metric->{}", roomIdFromAlias);
 
@@ -178,10 +226,7 @@ public class ParticipantMetricsReportingIntoReplica extends OAMRoomMessageInject
 
                 List<MRoomTextMessageEvent> metricsEventSet = getMetricsReportEventFactory().createWorkUnitProcessorMetricsEvent(roomIdFromAlias, wupMetricSet);
 
-                for (MRoomTextMessageEvent currentEvent : metricsEventSet) {
-                    MAPIResponse mapiResponse = getMatrixInstantMessageAPI().postTextMessage(roomIdFromAlias, getMatrixAccessToken().getUserId(), currentEvent);
-                    getLogger().debug(".forwardWUPMetrics(): Metrics Forwarded, mapiResponse->{}", mapiResponse);
-                }
+                getMessageCoalescer().offer(roomIdFromAlias, metricsEventSet);
             } else {
                 getLogger().warn(".forwardWUPMetrics(): No room to forward work unit processor metrics into (WorkUnitProcessor->{}!", wupMetricSet.getMetricSourceComponentId());
                 // TODO either re-queue or send to DeadLetter
@@ -196,11 +241,7 @@ public class ParticipantMetricsReportingIntoReplica extends OAMRoomMessageInject
         getLogger().debug(".forwardProcessingPlantMetrics(): Entry, metricSet->{}", metricSet);
 
         try{
-            String roomAlias = getRoomIdentityFactory().buildProcessingPlantRoomPseudoAlias(metricSet.getSourceParticipantName(), OAMRoomTypeEnum.OAM_ROOM_TYPE_SUBSYSTEM_METRICS);
-
-            getLogger().trace(".forwardProcessingPlantMetrics(): roomAlias for Metric->{}", roomAlias);
-
-            String roomIdFromAlias = getRoomIdFromPseudoAlias(roomAlias);
+            String roomIdFromAlias = getRoomIdForParticipant(metricSet.getSourceParticipantName(), OAMRoomTypeEnum.OAM_ROOM_TYPE_SUBSYSTEM_METRICS);
 
             getLogger().trace(".forwardProcessingPlantMetrics(): roomId for Metric->{}", roomIdFromAlias);
 
@@ -208,10 +249,7 @@ public class ParticipantMetricsReportingIntoReplica extends OAMRoomMessageInject
 
                 List<MRoomTextMessageEvent> metricsEventSet = getMetricsReportEventFactory().createProcessingPlantMetricsEvent(roomIdFromAlias, metricSet);
 
-                for (MRoomTextMessageEvent currentEvent : metricsEventSet) {
-                    MAPIResponse mapiResponse = getMatrixInstantMessageAPI().postTextMessage(roomIdFromAlias, getMatrixAccessToken().getUserId(), currentEvent);
-                    getLogger().debug(".forwardProcessingPlantMetrics(): Metrics Forwarded, mapiResponse->{}", mapiResponse);
-                }
+                getMessageCoalescer().offer(roomIdFromAlias, metricsEventSet);
             } else {
                 getLogger().warn(".forwardProcessingPlantMetrics(): No room to forward processing plant metrics into (ProcessingPlant->{}!", metricSet.getMetricSourceComponentId());
                 // TODO either re-queue or send to DeadLetter
@@ -226,12 +264,7 @@ public class ParticipantMetricsReportingIntoReplica extends OAMRoomMessageInject
         getLogger().debug(".forwardEndpointMetrics(): Entry, metricSet->{}", metricSet);
 
         try {
-
-            String roomAlias = getRoomIdentityFactory().buildEndpointRoomPseudoAlias(metricSet.getSourceParticipantName(), OAMRoomTypeEnum.OAM_ROOM_TYPE_ENDPOINT_METRICS);
-
-            getLogger().trace(".forwardEndpointMetrics(): roomAlias for Metric->{}", roomAlias);
-
-            String roomIdFromAlias = getRoomIdFromPseudoAlias(roomAlias);
+            String roomIdFromAlias = getRoomIdForParticipant(metricSet.getSourceParticipantName(), OAMRoomTypeEnum.OAM_ROOM_TYPE_ENDPOINT_METRICS);
 
             getLogger().trace(".forwardEndpointMetrics(): roomId for Metric->{}", roomIdFromAlias);
 
@@ -239,11 +272,7 @@ public class ParticipantMetricsReportingIntoReplica extends OAMRoomMessageInject
 
                 List<MRoomTextMessageEvent> metricsEventSet = getMetricsReportEventFactory().createEndpointMetricsEvent(roomIdFromAlias, metricSet);
 
-                for (MRoomTextMessageEvent currentEvent : metricsEventSet) {
-                    getLogger().debug(".forwardEndpointMetrics(): Forward Metrics, currentEvent->{}", currentEvent);
-                    MAPIResponse mapiResponse = getMatrixInstantMessageAPI().postTextMessage(roomIdFromAlias, getMatrixAccessToken().getUserId(), currentEvent);
-                    getLogger().trace(".forwardEndpointMetrics(): Metrics Forwarded, mapiResponse->{}", mapiResponse);
-                }
+                getMessageCoalescer().offer(roomIdFromAlias, metricsEventSet);
             } else {
                 getLogger().warn(".forwardEndpointMetrics(): No room to forward processing plant metrics into (Endpoint->{}!", metricSet.getMetricSourceComponentId());
                 // TODO either re-queue or send to DeadLetter
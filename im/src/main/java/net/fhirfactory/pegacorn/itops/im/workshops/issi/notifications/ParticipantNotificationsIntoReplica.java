@@ -21,13 +21,13 @@
  */
 package net.fhirfactory.pegacorn.itops.im.workshops.issi.notifications;
 
-import net.fhirfactory.pegacorn.communicate.matrix.model.r110.api.common.MAPIResponse;
 import net.fhirfactory.pegacorn.communicate.matrix.model.r110.events.room.message.MRoomTextMessageEvent;
 import net.fhirfactory.pegacorn.core.model.petasos.oam.notifications.PetasosComponentITOpsNotification;
 import net.fhirfactory.pegacorn.core.model.petasos.oam.notifications.valuesets.PetasosComponentITOpsNotificationTypeEnum;
 import net.fhirfactory.pegacorn.itops.im.common.ITOpsIMNames;
 import net.fhirfactory.pegacorn.itops.im.valuesets.OAMRoomTypeEnum;
 import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.ITOpsNotificationsDM;
+import net.fhirfactory.pegacorn.itops.im.workshops.issi.common.DeferringNotificationForwarder;
 import net.fhirfactory.pegacorn.itops.im.workshops.issi.common.OAMRoomMessageInjectorBase;
 import net.fhirfactory.pegacorn.itops.im.workshops.transform.matrixbridge.notifications.ParticipantNotificationEventFactory;
 import org.apache.camel.ExchangePattern;
@@ -39,10 +39,6 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
 
 @ApplicationScoped
 public class ParticipantNotificationsIntoReplica extends OAMRoomMessageInjectorBase {
@@ -50,10 +46,15 @@ public class ParticipantNotificationsIntoReplica extends OAMRoomMessageInjectorB
 
     private boolean initialised;
 
-    private boolean stillRunning;
+    private DeferringNotificationForwarder forwarder;
 
-    private Long CONTENT_FORWARDER_STARTUP_DELAY = 120000L;
-    private Long CONTENT_FORWARDER_REFRESH_PERIOD = 15000L;
+    private Long CONTENT_FORWARDER_MAXIMUM_STARTUP_WAIT = 120000L;
+    private Long CONTENT_FORWARDER_RETRY_PERIOD = 15000L;
+    private Long CONTENT_FORWARDER_IDLE_PERIOD = 60000L;
+    private Long CONTENT_FORWARDER_LINGER_PERIOD = 250L;
+    private static final int CONTENT_FORWARDER_BATCH_SIZE = 50;
+    private static final int CONTENT_FORWARDER_MAXIMUM_DEFERRED = 500;
+    private static final long CONTENT_FORWARDER_MAXIMUM_DEFERRAL_AGE = 1800000L;
 
     @Inject
     private ITOpsIMNames itOpsIMNames;
@@ -74,7 +75,6 @@ public class ParticipantNotificationsIntoReplica extends OAMRoomMessageInjectorB
     public ParticipantNotificationsIntoReplica(){
         super();
         this.initialised = false;
-        this.stillRunning = false;
     }
 
     //
@@ -90,7 +90,11 @@ public class ParticipantNotificationsIntoReplica extends OAMRoomMessageInjectorB
         }
         getLogger().info(".initialise(): Initialisation Start...");
 
-        scheduleNotificationsFowarderDaemon();
+        forwarder = new DeferringNotificationForwarder("NotificationsForwarder", getLogger(), notificationsDM::awaitNotifications,
+                notificationsDM::getNextNotification, notificationsDM::requeueNotification, this::deadLetterNotification, CONTENT_FORWARDER_RETRY_PERIOD,
+                CONTENT_FORWARDER_IDLE_PERIOD, CONTENT_FORWARDER_LINGER_PERIOD, CONTENT_FORWARDER_BATCH_SIZE, CONTENT_FORWARDER_MAXIMUM_DEFERRED,
+                CONTENT_FORWARDER_MAXIMUM_DEFERRAL_AGE);
+        startNotificationsForwarderDaemon();
 
         this.initialised = true;
 
@@ -106,81 +110,67 @@ public class ParticipantNotificationsIntoReplica extends OAMRoomMessageInjectorB
     }
 
     protected boolean isStillRunning(){
-        return(this.stillRunning);
+        return(forwarder != null && forwarder.isForwarding());
     }
 
     //
     // Scheduler
     //
 
-    private void scheduleNotificationsFowarderDaemon() {
-        getLogger().debug(".scheduleNotificationsForwarderDaemon(): Entry");
-        TimerTask notificationForwarderDaemonTask = new TimerTask() {
-            public void run() {
-                getLogger().debug(".notificationForwarderDaemonTask(): Entry");
-                if(!isStillRunning()) {
-                    notificationForwarder();
-                }
-                getLogger().debug(".notificationForwarderDaemonTask(): Exit");
-            }
-        };
-        Timer timer = new Timer("NotificationsForwarderDaemonTimer");
-        timer.schedule(notificationForwarderDaemonTask, CONTENT_FORWARDER_STARTUP_DELAY, CONTENT_FORWARDER_REFRESH_PERIOD);
-        getLogger().debug(".scheduleNotificationsForwarderDaemon(): Exit");
+    private void startNotificationsForwarderDaemon() {
+        getLogger().debug(".startNotificationsForwarderDaemon(): Entry");
+        startForwarderThread("NotificationsForwarderDaemon", this::notificationForwarderDaemon);
+        getLogger().debug(".startNotificationsForwarderDaemon(): Exit");
+    }
+
+    private void notificationForwarderDaemon() {
+        try {
+            waitForKnownRooms(CONTENT_FORWARDER_MAXIMUM_STARTUP_WAIT);
+        } catch (InterruptedException iex) {
+            Thread.currentThread().interrupt();
+        }
+        forwarder.run(this::forwardNotification);
     }
 
     //
     // Content Forwarder
     //
 
-    private void notificationForwarder(){
-        getLogger().debug(".notificationForwarder(): Entry");
-        stillRunning = true;
-        List<PetasosComponentITOpsNotification> failedToSend = new ArrayList<>();
-        while(notificationsDM.hasMoreNotifications()) {
-            getLogger().trace(".notificationForwarder(): Entry");
-            PetasosComponentITOpsNotification nextNotification = notificationsDM.getNextNotification();
-            boolean successfullySent = false;
-            switch (nextNotification.getComponentType()) {
-                case PETASOS_MONITORED_COMPONENT_SUBSYSTEM:
-                    getLogger().trace(".notificationForwarder(): Processing ProcessorPlant Metrics");
-                    successfullySent = forwardProcessingPlantNotification(nextNotification);
-                    break;
-                case PETASOS_MONITORED_COMPONENT_SERVICE:
-                    break;
-                case PETASOS_MONITORED_COMPONENT_PROCESSING_PLANT:
-                    getLogger().trace(".notificationForwarder(): Processing ProcessorPlant Metrics");
-                    successfullySent = forwardProcessingPlantNotification(nextNotification);
-                    break;
-                case PETASOS_MONITORED_COMPONENT_WORKSHOP:
-                    break;
-                case PETASOS_MONITORED_COMPONENT_WORK_UNIT_PROCESSOR:
-                    getLogger().trace(".notificationForwarder(): Processing WorkUnitProcessor Metrics");
-                    successfullySent = forwardWUPNotification(nextNotification);
-                    if(nextNotification.getNotificationType().equals(PetasosComponentITOpsNotificationTypeEnum.FAILURE_NOTIFICATION_TYPE)){
-                        camelRouteInjector.sendBody(itOpsIMNames.getITOpsNotificationToCommunicateMessageIngresFeed(), ExchangePattern.InOnly, nextNotification);
-                    }
-                    break;
-                case PETASOS_MONITORED_COMPONENT_WORK_UNIT_PROCESSOR_COMPONENT:
-                    break;
-                case PETASOS_MONITORED_COMPONENT_ENDPOINT:
-                    getLogger().debug(".notificationForwarder(): Processing Endpoint Metrics");
-                    successfullySent = forwardEndpointNotification(nextNotification);
-                    if(nextNotification.getNotificationType().equals(PetasosComponentITOpsNotificationTypeEnum.FAILURE_NOTIFICATION_TYPE)){
-                        getLogger().debug(".notificationForwarder(): Is Failure, generating Email/SMS Message");
-                        camelRouteInjector.sendBody(itOpsIMNames.getITOpsNotificationToCommunicateMessageIngresFeed(), ExchangePattern.InOnly, nextNotification);
-                    }
-                    break;
-            }
-            if (!successfullySent) {
-                failedToSend.add(nextNotification);
-            }
-        }
-        for(PetasosComponentITOpsNotification currentNotification: failedToSend){
-            notificationsDM.addNotification(currentNotification);
+    private boolean forwardNotification(PetasosComponentITOpsNotification nextNotification) {
+        getLogger().trace(".forwardNotification(): Entry");
+        boolean successfullySent = false;
+        switch (nextNotification.getComponentType()) {
+            case PETASOS_MONITORED_COMPONENT_SUBSYSTEM:
+                getLogger().trace(".forwardNotification(): Processing ProcessorPlant Metrics");
+                successfullySent = forwardProcessingPlantNotification(nextNotification);
+                break;
+            case PETASOS_MONITORED_COMPONENT_SERVICE:
+                break;
+            case PETASOS_MONITORED_COMPONENT_PROCESSING_PLANT:
+                getLogger().trace(".forwardNotification(): Processing ProcessorPlant Metrics");
+                successfullySent = forwardProcessingPlantNotification(nextNotification);
+                break;
+            case PETASOS_MONITORED_COMPONENT_WORKSHOP:
+                break;
+            case PETASOS_MONITORED_COMPONENT_WORK_UNIT_PROCESSOR:
+                getLogger().trace(".forwardNotification(): Processing WorkUnitProcessor Metrics");
+                successfullySent = forwardWUPNotification(nextNotification);
+                if(nextNotification.getNotificationType().equals(PetasosComponentITOpsNotificationTypeEnum.FAILURE_NOTIFICATION_TYPE)){
+                    camelRouteInjector.sendBody(itOpsIMNames.getITOpsNotificationToCommunicateMessageIngresFeed(), ExchangePattern.InOnly, nextNotification);
+                }
+                break;
+            case PETASOS_MONITORED_COMPONENT_WORK_UNIT_PROCESSOR_COMPONENT:
+                break;
+            case PETASOS_MONITORED_COMPONENT_ENDPOINT:
+                getLogger().debug(".forwardNotification(): Processing Endpoint Metrics");
+                successfullySent = forwardEndpointNotification(nextNotification);
+                if(nextNotification.getNotificationType().equals(PetasosComponentITOpsNotificationTypeEnum.FAILURE_NOTIFICATION_TYPE)){
+                    getLogger().debug(".forwardNotification(): Is Failure, generating Email/SMS Message");
+                    camelRouteInjector.sendBody(itOpsIMNames.getITOpsNotificationToCommunicateMessageIngresFeed(), ExchangePattern.InOnly, nextNotification);
+                }
+                break;
         }
-        stillRunning = false;
-        getLogger().debug(".notificationForwarder(): Exit");
+        return(successfullySent);
     }
 
     //
@@ -190,13 +180,7 @@ public class ParticipantNotificationsIntoReplica extends OAMRoomMessageInjectorB
     private boolean forwardWUPNotification(PetasosComponentITOpsNotification notification){
         getLogger().debug(".forwardWUPNotification(): Entry, notification->{}",notification);
         try {
-            String roomAlias = getRoomIdentityFactory().buildWUPRoomPseudoAlias(
-                    notification.getParticipantName(),
-                    OAMRoomTypeEnum.OAM_ROOM_TYPE_WUP_CONSOLE);
-
-            getLogger().trace(".forwardWUPNotification(): roomAlias for Events->{}", roomAlias);
-
-            String roomIdFromAlias =  getRoomIdFromPseudoAlias(roomAlias);
+            String roomIdFromAlias = getRoomIdForParticipant(notification.getParticipantName(), OAMRoomTypeEnum.OAM_ROOM_TYPE_WUP_CONSOLE);
 
             getLogger().trace(".forwardWUPNotification(): roomId for Events->{}", roomIdFromAlias);
 
@@ -204,16 +188,10 @@ public class ParticipantNotificationsIntoReplica extends OAMRoomMessageInjectorB
 
                 MRoomTextMessageEvent notificationEvent = notificationEventFactory.newNotificationEvent(roomIdFromAlias, notification);
 
-                try {
-                    MAPIResponse mapiResponse = getMatrixInstantMessageAPI().postTextMessage(roomIdFromAlias, getMatrixAccessToken().getUserId(), notificationEvent);
-                    return(true);
-                } catch(Exception ex){
-                    getLogger().warn(".forwardWUPNotification(): Failed to send InstantMessage, message->{}, stackTrace{}", ExceptionUtils.getMessage(ex), ExceptionUtils.getStackTrace(ex));
-                    return(false);
-                }
+                submitTextMessage(roomIdFromAlias, notificationEvent);
+                return(true);
             } else {
-                getLogger().warn(".forwardWUPNotification(): No room to forward work unit processor notifications into (WorkUnitProcessor->{}), ITOps Room Pseudo Alias ->{}", notification.getParticipantName(), roomAlias);
-                // TODO either re-queue or send to DeadLetter
+                getLogger().warn(".forwardWUPNotification(): No room to forward work unit processor notifications into (WorkUnitProcessor->{}), ITOps Room Pseudo Alias ->{}", notification.getParticipantName(), getRoomIdentityFactory().buildOAMRoomPseudoAlias(notification.getParticipantName(), OAMRoomTypeEnum.OAM_ROOM_TYPE_WUP_CONSOLE));
                 return(false);
             }
         } catch (Exception ex) {
@@ -226,27 +204,17 @@ public class ParticipantNotificationsIntoReplica extends OAMRoomMessageInjectorB
         getLogger().debug(".forwardProcessingPlantNotification(): Entry, notification->{}", notification);
 
         try {
-            String roomAlias = getRoomIdentityFactory().buildProcessingPlantRoomPseudoAlias(notification.getParticipantName(), OAMRoomTypeEnum.OAM_ROOM_TYPE_SUBSYSTEM_CONSOLE);
-
-            getLogger().trace(".forwardProcessingPlantNotification(): roomAlias for Events->{}", roomAlias);
-
-            String roomIdFromAlias =  getRoomIdFromPseudoAlias(roomAlias);
+            String roomIdFromAlias = getRoomIdForParticipant(notification.getParticipantName(), OAMRoomTypeEnum.OAM_ROOM_TYPE_SUBSYSTEM_CONSOLE);
 
             getLogger().trace(".forwardProcessingPlantNotification(): roomId for Events->{}", roomIdFromAlias);
 
             if (roomIdFromAlias != null) {
                 MRoomTextMessageEvent notificationEvent = notificationEventFactory.newNotificationEvent(roomIdFromAlias, notification);
 
-                try {
-                    MAPIResponse mapiResponse = getMatrixInstantMessageAPI().postTextMessage(roomIdFromAlias, getMatrixAccessToken().getUserId(), notificationEvent);
-                    return (true);
-                } catch (Exception ex) {
-                    getLogger().warn(".forwardProcessingPlantNotification(): Failed to send InstantMessage, message->{}, stackTrace{}", ExceptionUtils.getMessage(ex), ExceptionUtils.getStackTrace(ex));
-                    return (false);
-                }
+                submitTextMessage(roomIdFromAlias, notificationEvent);
+                return(true);
             } else {
-                getLogger().warn(".forwardProcessingPlantNotification(): No room to forward processing plant notifications into (ProcessingPlant->{}), ITOps Room Pseudo Alias->{}", notification.getParticipantName(), roomAlias);
-                // TODO either re-queue or send to DeadLetter
+                getLogger().warn(".forwardProcessingPlantNotification(): No room to forward processing plant notifications into (ProcessingPlant->{}), ITOps Room Pseudo Alias->{}", notification.getParticipantName(), getRoomIdentityFactory().buildOAMRoomPseudoAlias(notification.getParticipantName(), OAMRoomTypeEnum.OAM_ROOM_TYPE_SUBSYSTEM_CONSOLE));
                 return (false);
             }
         } catch(Exception ex){
@@ -258,29 +226,17 @@ public class ParticipantNotificationsIntoReplica extends OAMRoomMessageInjectorB
     private boolean forwardEndpointNotification(PetasosComponentITOpsNotification notification){
         getLogger().debug(".forwardEndpointNotification(): Entry, notification->{}", notification);
 
-        String roomAlias = null;
         try {
-
-            roomAlias = getRoomIdentityFactory().buildEndpointRoomPseudoAlias(notification.getParticipantName(), OAMRoomTypeEnum.OAM_ROOM_TYPE_ENDPOINT_CONSOLE);
-
-            getLogger().debug(".forwardEndpointNotification(): roomAlias for Events->{}", roomAlias);
-
-            String roomIdFromAlias = getRoomIdFromPseudoAlias(roomAlias);
+            String roomIdFromAlias = getRoomIdForParticipant(notification.getParticipantName(), OAMRoomTypeEnum.OAM_ROOM_TYPE_ENDPOINT_CONSOLE);
 
             getLogger().debug(".forwardEndpointNotification(): roomId for Events->{}", roomIdFromAlias);
 
             if (roomIdFromAlias != null) {
                 MRoomTextMessageEvent notificationEvent = notificationEventFactory.newNotificationEvent(roomIdFromAlias, notification);
-                try {
-                    MAPIResponse mapiResponse = getMatrixInstantMessageAPI().postTextMessage(roomIdFromAlias, getMatrixAccessToken().getUserId(), notificationEvent);
-                    getLogger().debug(".forwardEndpointNotification(): notification sent!");
-                    return (true);
-                } catch (Exception ex) {
-                    getLogger().warn(".forwardEndpointNotification(): Failed to send InstantMessage, message->{}, stackTrace{}", ExceptionUtils.getMessage(ex), ExceptionUtils.getStackTrace(ex));
-                    return (false);
-                }
+                submitTextMessage(roomIdFromAlias, notificationEvent);
+                return(true);
             } else {
-                getLogger().warn(".forwardEndpointNotification(): No room to forward endpoint notifications into (EndpointRoom->{}), ITOps Room Pseudo Alias->{}", notification.getParticipantName(), roomAlias);
+                getLogger().warn(".forwardEndpointNotification(): No room to forward endpoint notifications into (EndpointRoom->{}), ITOps Room Pseudo Alias->{}", notification.getParticipantName(), getRoomIdentityFactory().buildOAMRoomPseudoAlias(notification.getParticipantName(), OAMRoomTypeEnum.OAM_ROOM_TYPE_ENDPOINT_CONSOLE));
                 return (false);
             }
         } catch(Exception ex){
@@ -289,4 +245,36 @@ public class ParticipantNotificationsIntoReplica extends OAMRoomMessageInjectorB
         }
     }
 
+    //
+    // Dead Letters
+    //
+
+    /**
+     * Hands a notification that waited too long for its room (or that there was no room left to hold back) to the
+     * egress pipeline's dead-letter store, from where it can be listed and replayed once the room exists.
+     */
+    private void deadLetterNotification(PetasosComponentITOpsNotification notification){
+        OAMRoomTypeEnum roomType = getNotificationRoomType(notification);
+        if(roomType == null){
+            getLogger().debug(".deadLetterNotification(): No room type for component, discarding, componentType->{}, participantName->{}", notification.getComponentType(), notification.getParticipantName());
+            return;
+        }
+        String pseudoAlias = getRoomIdentityFactory().buildOAMRoomPseudoAlias(notification.getParticipantName(), roomType);
+        MRoomTextMessageEvent notificationEvent = notificationEventFactory.newNotificationEvent(null, notification);
+        getEgressPipeline().deadLetterUnrouted(pseudoAlias, notificationEvent, "No room for pseudo alias " + pseudoAlias);
+    }
+
+    private OAMRoomTypeEnum getNotificationRoomType(PetasosComponentITOpsNotification notification){
+        switch (notification.getComponentType()) {
+            case PETASOS_MONITORED_COMPONENT_SUBSYSTEM:
+            case PETASOS_MONITORED_COMPONENT_PROCESSING_PLANT:
+                return(OAMRoomTypeEnum.OAM_ROOM_TYPE_SUBSYSTEM_CONSOLE);
+            case PETASOS_MONITORED_COMPONENT_WORK_UNIT_PROCESSOR:
+                return(OAMRoomTypeEnum.OAM_ROOM_TYPE_WUP_CONSOLE);
+            case PETASOS_MONITORED_COMPONENT_ENDPOINT:
+                return(OAMRoomTypeEnum.OAM_ROOM_TYPE_ENDPOINT_CONSOLE);
+            default:
+                return(null);
+        }
+    }
 }
@@ -21,7 +21,6 @@
  */
 package net.fhirfactory.pegacorn.itops.im.workshops.issi.reports.subscriptions;
 
-import net.fhirfactory.pegacorn.communicate.matrix.model.r110.api.common.MAPIResponse;
 import net.fhirfactory.pegacorn.communicate.matrix.model.r110.events.room.message.MRoomTextMessageEvent;
 import net.fhirfactory.pegacorn.core.model.petasos.oam.subscriptions.reporting.PetasosProcessingPlantSubscriptionSummary;
 import net.fhirfactory.pegacorn.core.model.petasos.oam.subscriptions.reporting.PetasosPublisherSubscriptionSummary;
@@ -155,12 +154,7 @@ public class ParticipantSubscriptionReportsIntoReplica extends OAMRoomMessageInj
         getLogger().debug(".forwardProcessingPlantSubscriptionReport(): Entry, subscriptionSummary->{}", subscriptionSummary);
 
         try {
-
-            String roomAlias = getRoomIdentityFactory().buildProcessingPlantRoomPseudoAlias(subscriptionSummary.getParticipantName(), OAMRoomTypeEnum.OAM_ROOM_TYPE_SUBSYSTEM_SUBSCRIPTIONS);
-
-            getLogger().trace(".forwardProcessingPlantSubscriptionReport(): roomAlias for Events->{}", roomAlias);
-
-            String roomIdFromAlias = getRoomIdFromPseudoAlias(roomAlias);
+            String roomIdFromAlias = getRoomIdForParticipant(subscriptionSummary.getParticipantName(), OAMRoomTypeEnum.OAM_ROOM_TYPE_SUBSYSTEM_SUBSCRIPTIONS);
 
             getLogger().trace(".forwardProcessingPlantSubscriptionReport(): roomId for Events->{}", roomIdFromAlias);
 
@@ -170,18 +164,14 @@ public class ParticipantSubscriptionReportsIntoReplica extends OAMRoomMessageInj
                 MRoomTextMessageEvent subscriberSummaryEvent = subscriptionReportEventFactory.newAsASubscriberSubscriptionReportEvent(roomIdFromAlias, asASubscriberValues);
                 getLogger().trace(".forwardProcessingPlantSubscriptionReport(): subscriberSummaryEvent->{}", subscriberSummaryEvent);
                 if (subscriberSummaryEvent != null) {
-                    MAPIResponse mapiResponse = getMatrixInstantMessageAPI().postTextMessage(roomIdFromAlias, getMatrixAccessToken().getUserId(), subscriberSummaryEvent);
+                    submitTextMessage(roomIdFromAlias, subscriberSummaryEvent);
                 }
 
                 Collection<PetasosPublisherSubscriptionSummary> asAPublisherValues = subscriptionSummary.getAsPublisher().values();
                 MRoomTextMessageEvent publisherSummaryEvent = subscriptionReportEventFactory.newAsAPublisherSubscriptionReportEvent(roomIdFromAlias, asAPublisherValues);
                 getLogger().trace(".forwardProcessingPlantSubscriptionReport(): publisherSummaryEvent->{}", publisherSummaryEvent);
                 if (publisherSummaryEvent != null) {
-                    try {
-                        MAPIResponse mapiResponse = getMatrixInstantMessageAPI().postTextMessage(roomIdFromAlias, getMatrixAccessToken().getUserId(), publisherSummaryEvent);
-                    } catch (Exception ex) {
-                        getLogger().warn(".forwardProcessingPlantSubscriptionReport(): Failed to send InstantMessage, message->{}, stackTrace{}", ExceptionUtils.getMessage(ex), ExceptionUtils.getStackTrace(ex));
-                    }
+                    submitTextMessage(roomIdFromAlias, publisherSummaryEvent);
                 }
 
             } else {
@@ -198,12 +188,7 @@ public class ParticipantSubscriptionReportsIntoReplica extends OAMRoomMessageInj
         getLogger().debug(".forwardWorkUnitProcessorSubscriptionReport(): Entry, subscriptionSummary->{}", subscriptionSummary);
 
         try{
-
-            String roomAlias = getRoomIdentityFactory().buildWUPRoomPseudoAlias(subscriptionSummary.getParticipantName(),OAMRoomTypeEnum.OAM_ROOM_TYPE_WUP_SUBSCRIPTIONS);
-
-            getLogger().trace(".forwardWorkUnitProcessorSubscriptionReport(): roomAlias for Events->{}", roomAlias);
-
-            String roomIdFromAlias = getRoomIdFromPseudoAlias(roomAlias);
+            String roomIdFromAlias = getRoomIdForParticipant(subscriptionSummary.getParticipantName(), OAMRoomTypeEnum.OAM_ROOM_TYPE_WUP_SUBSCRIPTIONS);
 
             getLogger().trace(".forwardWorkUnitProcessorSubscriptionReport(): roomId for Events->{}", roomIdFromAlias);
 
@@ -212,7 +197,7 @@ public class ParticipantSubscriptionReportsIntoReplica extends OAMRoomMessageInj
                 MRoomTextMessageEvent subscriberSummaryEvent = subscriptionReportEventFactory.newWUPSubscriberSubscriptionReportEvent(roomIdFromAlias, subscriptionSummary);
                 getLogger().debug(".forwardWorkUnitProcessorSubscriptionReport(): roomIdFromAlias->{}, subscriberSummaryEvent->{}", roomIdFromAlias, subscriberSummaryEvent);
                 if (subscriberSummaryEvent != null) {
-                    MAPIResponse mapiResponse = getMatrixInstantMessageAPI().postTextMessage(roomIdFromAlias, getMatrixAccessToken().getUserId(), subscriberSummaryEvent);
+                    submitTextMessage(roomIdFromAlias, subscriberSummaryEvent);
                 }
             } else {
                 getLogger().warn(".forwardWorkUnitProcessorSubscriptionReport(): No room to forward work unit processor task reports into (WorkUnitProcessor->{})!", subscriptionSummary.getParticipantName());
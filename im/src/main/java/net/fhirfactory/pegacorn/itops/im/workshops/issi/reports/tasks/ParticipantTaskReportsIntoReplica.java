@@ -21,11 +21,11 @@
  */
 package net.fhirfactory.pegacorn.itops.im.workshops.issi.reports.tasks;
 
-import net.fhirfactory.pegacorn.communicate.matrix.model.r110.api.common.MAPIResponse;
 import net.fhirfactory.pegacorn.communicate.matrix.model.r110.events.room.message.MRoomTextMessageEvent;
 import net.fhirfactory.pegacorn.core.model.petasos.oam.notifications.PetasosComponentITOpsNotification;
 import net.fhirfactory.pegacorn.itops.im.valuesets.OAMRoomTypeEnum;
 import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.ITOpsTaskReportsDM;
+import net.fhirfactory.pegacorn.itops.im.workshops.issi.common.DeferringNotificationForwarder;
 import net.fhirfactory.pegacorn.itops.im.workshops.issi.common.OAMRoomMessageInjectorBase;
 import net.fhirfactory.pegacorn.itops.im.workshops.transform.matrixbridge.reports.tasks.ParticipantTaskReportsEventFactory;
 import org.apache.commons.lang3.exception.ExceptionUtils;
@@ -35,10 +35,6 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
 
 @ApplicationScoped
 public class ParticipantTaskReportsIntoReplica extends OAMRoomMessageInjectorBase {
@@ -46,10 +42,15 @@ public class ParticipantTaskReportsIntoReplica extends OAMRoomMessageInjectorBas
 
     private boolean initialised;
 
-    private boolean stillRunning;
+    private DeferringNotificationForwarder forwarder;
 
-    private Long CONTENT_FORWARDER_STARTUP_DELAY = 120000L;
-    private Long CONTENT_FORWARDER_REFRESH_PERIOD = 15000L;
+    private Long CONTENT_FORWARDER_MAXIMUM_STARTUP_WAIT = 120000L;
+    private Long CONTENT_FORWARDER_RETRY_PERIOD = 15000L;
+    private Long CONTENT_FORWARDER_IDLE_PERIOD = 60000L;
+    private Long CONTENT_FORWARDER_LINGER_PERIOD = 250L;
+    private static final int CONTENT_FORWARDER_BATCH_SIZE = 50;
+    private static final int CONTENT_FORWARDER_MAXIMUM_DEFERRED = 500;
+    private static final long CONTENT_FORWARDER_MAXIMUM_DEFERRAL_AGE = 1800000L;
 
     @Inject
     private ParticipantTaskReportsEventFactory taskReportEventFactory;
@@ -64,7 +65,6 @@ public class ParticipantTaskReportsIntoReplica extends OAMRoomMessageInjectorBas
     public ParticipantTaskReportsIntoReplica() {
         super();
         this.initialised = false;
-        this.stillRunning = false;
     }
 
     //
@@ -80,7 +80,11 @@ public class ParticipantTaskReportsIntoReplica extends OAMRoomMessageInjectorBas
         }
         getLogger().info(".initialise(): Initialisation Start...");
 
-        scheduleTaskReportFowarderDaemon();
+        forwarder = new DeferringNotificationForwarder("TaskReportForwarder", getLogger(), taskReportsDM::awaitTaskReports,
+                taskReportsDM::getNextTaskReport, taskReportsDM::requeueTaskReport, this::deadLetterTaskReport, CONTENT_FORWARDER_RETRY_PERIOD,
+                CONTENT_FORWARDER_IDLE_PERIOD, CONTENT_FORWARDER_LINGER_PERIOD, CONTENT_FORWARDER_BATCH_SIZE, CONTENT_FORWARDER_MAXIMUM_DEFERRED,
+                CONTENT_FORWARDER_MAXIMUM_DEFERRAL_AGE);
+        startTaskReportForwarderDaemon();
 
         this.initialised = true;
 
@@ -96,74 +100,60 @@ public class ParticipantTaskReportsIntoReplica extends OAMRoomMessageInjectorBas
     }
 
     protected boolean isStillRunning() {
-        return (this.stillRunning);
+        return (forwarder != null && forwarder.isForwarding());
     }
 
     //
     // Scheduler
     //
 
-    private void scheduleTaskReportFowarderDaemon() {
-        getLogger().debug(".scheduleTaskReportFowarderDaemon(): Entry");
-        TimerTask taskReportForwarderDaemonTask = new TimerTask() {
-            public void run() {
-                getLogger().debug(".taskReportForwarderDaemonTask(): Entry");
-                if (!isStillRunning()) {
-                    taskReportForward();
-                }
-                getLogger().debug(".taskReportForwarderDaemonTask(): Exit");
-            }
-        };
-        Timer timer = new Timer("TaskReportForwarderDaemonTimer");
-        timer.schedule(taskReportForwarderDaemonTask, CONTENT_FORWARDER_STARTUP_DELAY, CONTENT_FORWARDER_REFRESH_PERIOD);
-        getLogger().debug(".scheduleTaskReportFowarderDaemon(): Exit");
+    private void startTaskReportForwarderDaemon() {
+        getLogger().debug(".startTaskReportForwarderDaemon(): Entry");
+        startForwarderThread("TaskReportForwarderDaemon", this::taskReportForwarderDaemon);
+        getLogger().debug(".startTaskReportForwarderDaemon(): Exit");
+    }
+
+    private void taskReportForwarderDaemon() {
+        try {
+            waitForKnownRooms(CONTENT_FORWARDER_MAXIMUM_STARTUP_WAIT);
+        } catch (InterruptedException iex) {
+            Thread.currentThread().interrupt();
+        }
+        forwarder.run(this::forwardTaskReport);
     }
 
     //
     // Content Forwarder
     //
 
-    private void taskReportForward() {
-        getLogger().debug(".taskReportForward(): Entry");
-        stillRunning = true;
-        List<PetasosComponentITOpsNotification> failedToSendList = new ArrayList<>();
-        while (taskReportsDM.hasMoreTaskReports()) {
-            getLogger().trace(".taskReportForward(): Entry");
-            PetasosComponentITOpsNotification nextNotification = taskReportsDM.getNextTaskReport();
-            boolean successfullySent = false;
-            switch (nextNotification.getComponentType()) {
-                case PETASOS_MONITORED_COMPONENT_SUBSYSTEM:
-                    getLogger().trace(".notificationForwarder(): Processing ProcessorPlant Metrics");
-                    successfullySent = forwardProcessingPlantTaskReport(nextNotification);
-                    break;
-                case PETASOS_MONITORED_COMPONENT_SERVICE:
-                    break;
-                case PETASOS_MONITORED_COMPONENT_PROCESSING_PLANT:
-                    getLogger().trace(".taskReportForward(): Processing ProcessorPlant Metrics");
-                    successfullySent = forwardProcessingPlantTaskReport(nextNotification);
-                    break;
-                case PETASOS_MONITORED_COMPONENT_WORKSHOP:
-                    break;
-                case PETASOS_MONITORED_COMPONENT_WORK_UNIT_PROCESSOR:
-                    getLogger().trace(".taskReportForward(): Processing WorkUnitProcessor Metrics");
-                    successfullySent = forwardWUPTaskReport(nextNotification);
-                    break;
-                case PETASOS_MONITORED_COMPONENT_WORK_UNIT_PROCESSOR_COMPONENT:
-                    break;
-                case PETASOS_MONITORED_COMPONENT_ENDPOINT:
-                    getLogger().trace(".taskReportForward(): Processing WorkUnitProcessor Metrics");
-                    successfullySent = forwardEndpointTaskReport(nextNotification);
-                    break;
-            }
-            if(!successfullySent){
-                failedToSendList.add(nextNotification);
-            }
+    private boolean forwardTaskReport(PetasosComponentITOpsNotification nextNotification) {
+        getLogger().trace(".forwardTaskReport(): Entry");
+        boolean successfullySent = false;
+        switch (nextNotification.getComponentType()) {
+            case PETASOS_MONITORED_COMPONENT_SUBSYSTEM:
+                getLogger().trace(".forwardTaskReport(): Processing ProcessorPlant Metrics");
+                successfullySent = forwardProcessingPlantTaskReport(nextNotification);
+                break;
+            case PETASOS_MONITORED_COMPONENT_SERVICE:
+                break;
+            case PETASOS_MONITORED_COMPONENT_PROCESSING_PLANT:
+                getLogger().trace(".forwardTaskReport(): Processing ProcessorPlant Metrics");
+                successfullySent = forwardProcessingPlantTaskReport(nextNotification);
+                break;
+            case PETASOS_MONITORED_COMPONENT_WORKSHOP:
+                break;
+            case PETASOS_MONITORED_COMPONENT_WORK_UNIT_PROCESSOR:
+                getLogger().trace(".forwardTaskReport(): Processing WorkUnitProcessor Metrics");
+                successfullySent = forwardWUPTaskReport(nextNotification);
+                break;
+            case PETASOS_MONITORED_COMPONENT_WORK_UNIT_PROCESSOR_COMPONENT:
+                break;
+            case PETASOS_MONITORED_COMPONENT_ENDPOINT:
+                getLogger().trace(".forwardTaskReport(): Processing WorkUnitProcessor Metrics");
+                successfullySent = forwardEndpointTaskReport(nextNotification);
+                break;
         }
-        for(PetasosComponentITOpsNotification currentNotification: failedToSendList){
-            taskReportsDM.addTaskReport(currentNotification);
-        }
-        stillRunning = false;
-        getLogger().debug(".notificationForwarder(): Exit");
+        return(successfullySent);
     }
 
     //
@@ -175,26 +165,14 @@ public class ParticipantTaskReportsIntoReplica extends OAMRoomMessageInjectorBas
         getLogger().trace(".forwardEndpointTaskReport(): notification->{}", notification);
 
         try {
-
-            String roomAlias = getRoomIdentityFactory().buildEndpointRoomPseudoAlias(
-                    notification.getParticipantName(),
-                    OAMRoomTypeEnum.OAM_ROOM_TYPE_ENDPOINT_TASKS);
-
-            getLogger().trace(".forwardEndpointTaskReport(): roomAlias for Events->{}", roomAlias);
-
-            String roomIdFromAlias = getRoomIdFromPseudoAlias(roomAlias);
+            String roomIdFromAlias = getRoomIdForParticipant(notification.getParticipantName(), OAMRoomTypeEnum.OAM_ROOM_TYPE_ENDPOINT_TASKS);
 
             getLogger().trace(".forwardEndpointTaskReport(): roomId for Events->{}", roomIdFromAlias);
 
             if (roomIdFromAlias != null) {
                 MRoomTextMessageEvent notificationEvent = taskReportEventFactory.newTaskReportEvent(roomIdFromAlias, notification);
-                try {
-                    MAPIResponse mapiResponse = getMatrixInstantMessageAPI().postTextMessage(roomIdFromAlias, getMatrixAccessToken().getUserId(), notificationEvent);
-                    return(true);
-                } catch(Exception ex){
-                    getLogger().warn(".forwardEndpointTaskReport(): Failed to send InstantMessage, message->{}, stackTrace{}", ExceptionUtils.getMessage(ex), ExceptionUtils.getStackTrace(ex));
-                    return(false);
-                }
+                submitTextMessage(roomIdFromAlias, notificationEvent);
+                return(true);
             } else {
                 getLogger().warn(".forwardEndpointTaskReport(): No room to forward endpoint task reports into (WorkUnitProcessor->{})!", notification.getParticipantName());
                 return(false);
@@ -209,26 +187,14 @@ public class ParticipantTaskReportsIntoReplica extends OAMRoomMessageInjectorBas
         getLogger().debug(".forwardEndpointTaskReport(): notification->{}", notification);
 
         try {
-
-            String roomAlias = getRoomIdentityFactory().buildWUPRoomPseudoAlias(
-                    notification.getParticipantName(),
-                    OAMRoomTypeEnum.OAM_ROOM_TYPE_WUP_TASKS);
-
-            getLogger().trace(".forwardWUPTaskReport(): roomAlias for Events->{}", roomAlias);
-
-            String roomIdFromAlias =  getRoomIdFromPseudoAlias(roomAlias);
+            String roomIdFromAlias = getRoomIdForParticipant(notification.getParticipantName(), OAMRoomTypeEnum.OAM_ROOM_TYPE_WUP_TASKS);
 
             getLogger().trace(".forwardWUPTaskReport(): roomId for Events->{}", roomIdFromAlias);
 
             if (roomIdFromAlias != null) {
                 MRoomTextMessageEvent notificationEvent = taskReportEventFactory.newTaskReportEvent(roomIdFromAlias, notification);
-                try{
-                    MAPIResponse mapiResponse = getMatrixInstantMessageAPI().postTextMessage(roomIdFromAlias, getMatrixAccessToken().getUserId(), notificationEvent);
-                    return(true);
-                } catch(Exception ex){
-                    getLogger().warn(".forwardWUPTaskReport(): Failed to send InstantMessage, message->{}, stackTrace{}", ExceptionUtils.getMessage(ex), ExceptionUtils.getStackTrace(ex));
-                    return(false);
-                }
+                submitTextMessage(roomIdFromAlias, notificationEvent);
+                return(true);
             } else {
                 getLogger().warn(".forwardWUPTaskReport(): No room to forward work unit processor task reports into (WorkUnitProcessor->{})!", notification.getParticipantName());
                 return(false);
@@ -243,23 +209,14 @@ public class ParticipantTaskReportsIntoReplica extends OAMRoomMessageInjectorBas
         getLogger().debug(".forwardProcessingPlantTaskReport(): Entry, notification->{}", notification);
 
         try {
-            String roomAlias = getRoomIdentityFactory().buildProcessingPlantRoomPseudoAlias(notification.getParticipantName(), OAMRoomTypeEnum.OAM_ROOM_TYPE_SUBSYSTEM_TASKS);
-
-            getLogger().trace(".forwardProcessingPlantTaskReport(): roomAlias for Events->{}", roomAlias);
-
-            String roomIdFromAlias =  getRoomIdFromPseudoAlias(roomAlias);
+            String roomIdFromAlias = getRoomIdForParticipant(notification.getParticipantName(), OAMRoomTypeEnum.OAM_ROOM_TYPE_SUBSYSTEM_TASKS);
 
             getLogger().trace(".forwardProcessingPlantTaskReport(): roomId for Events->{}", roomIdFromAlias);
 
             if (roomIdFromAlias != null) {
                 MRoomTextMessageEvent notificationEvent = taskReportEventFactory.newTaskReportEvent(roomIdFromAlias, notification);
-                try {
-                    MAPIResponse mapiResponse = getMatrixInstantMessageAPI().postTextMessage(roomIdFromAlias, getMatrixAccessToken().getUserId(), notificationEvent);
-                    return(true);
-                } catch(Exception ex){
-                    getLogger().warn(".forwardProcessingPlantTaskReport(): Failed to send InstantMessage, message->{}, stackTrace{}", ExceptionUtils.getMessage(ex), ExceptionUtils.getStackTrace(ex));
-                    return(false);
-                }
+                submitTextMessage(roomIdFromAlias, notificationEvent);
+                return(true);
             } else {
                 getLogger().warn(".forwardProcessingPlantTaskReport(): No room to forward processing plant notifications into (ProcessingPlant->{}!", notification.getParticipantName());
                 return(false);
@@ -269,4 +226,37 @@ public class ParticipantTaskReportsIntoReplica extends OAMRoomMessageInjectorBas
             return(false);
         }
     }
+
+    //
+    // Dead Letters
+    //
+
+    /**
+     * Hands a notification that waited too long for its room (or that there was no room left to hold back) to the
+     * egress pipeline's dead-letter store, from where it can be listed and replayed once the room exists.
+     */
+    private void deadLetterTaskReport(PetasosComponentITOpsNotification taskReport){
+        OAMRoomTypeEnum roomType = getTaskReportRoomType(taskReport);
+        if(roomType == null){
+            getLogger().debug(".deadLetterTaskReport(): No room type for component, discarding, componentType->{}, participantName->{}", taskReport.getComponentType(), taskReport.getParticipantName());
+            return;
+        }
+        String pseudoAlias = getRoomIdentityFactory().buildOAMRoomPseudoAlias(taskReport.getParticipantName(), roomType);
+        MRoomTextMessageEvent taskReportEvent = taskReportEventFactory.newTaskReportEvent(null, taskReport);
+        getEgressPipeline().deadLetterUnrouted(pseudoAlias, taskReportEvent, "No room for pseudo alias " + pseudoAlias);
+    }
+
+    private OAMRoomTypeEnum getTaskReportRoomType(PetasosComponentITOpsNotification taskReport){
+        switch (taskReport.getComponentType()) {
+            case PETASOS_MONITORED_COMPONENT_SUBSYSTEM:
+            case PETASOS_MONITORED_COMPONENT_PROCESSING_PLANT:
+                return(OAMRoomTypeEnum.OAM_ROOM_TYPE_SUBSYSTEM_TASKS);
+            case PETASOS_MONITORED_COMPONENT_WORK_UNIT_PROCESSOR:
+                return(OAMRoomTypeEnum.OAM_ROOM_TYPE_WUP_TASKS);
+            case PETASOS_MONITORED_COMPONENT_ENDPOINT:
+                return(OAMRoomTypeEnum.OAM_ROOM_TYPE_ENDPOINT_TASKS);
+            default:
+                return(null);
+        }
+    }
 }
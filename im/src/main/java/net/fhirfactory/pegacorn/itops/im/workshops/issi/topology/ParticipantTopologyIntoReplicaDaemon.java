@@ -34,6 +34,7 @@ import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.topologymaps.ITOpsKn
 import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.topologymaps.ITOpsKnownUserMapDM;
 import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.topologymaps.ITOpsSystemWideReportedTopologyMapDM;
 import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.topologymaps.ITOpsKnownRoomAndSpaceMapDM;
+import net.fhirfactory.pegacorn.itops.im.workshops.issi.topology.tasks.ITOpsIncrementalTopologySynchronisationTasks;
 import net.fhirfactory.pegacorn.itops.im.workshops.issi.topology.tasks.ITOpsSubsystemParticipantTasks;
 import net.fhirfactory.pegacorn.itops.im.workshops.issi.topology.tasks.ITOpsTopologySynchronisationTasks;
 import net.fhirfactory.pegacorn.itops.im.workshops.issi.topology.tasks.ITOpsUserTasks;
@@ -111,6 +112,9 @@ public class ParticipantTopologyIntoReplicaDaemon extends RouteBuilder {
     @Inject
     private ITOpsTopologySynchronisationTasks matrixCacheSynchronisationTasks;
 
+    @Inject
+    private ITOpsIncrementalTopologySynchronisationTasks incrementalSynchronisationTasks;
+
     @Inject
     private ITOpsUserTasks userTasks;
 
@@ -401,18 +405,23 @@ public class ParticipantTopologyIntoReplicaDaemon extends RouteBuilder {
         boolean doRegularCheck = ageSinceRun > getRoomCompleteSynchronisationPeriod();
         boolean updatedTopology = !foundParticipants.isEmpty();
         if(doRegularCheck){
-            itopsConsoleLogger.logConsoleEvent("Doing a full synchronisation ITOps-Rooms: Periodic Refresh");
-        }
-        if(updatedTopology){
-            itopsConsoleLogger.logConsoleEvent("Doing a full synchronisation ITOps-Rooms: Topology Update");
+            // The full walk is an audit, topology changes are applied incrementally (below)
+            itopsConsoleLogger.logConsoleEvent("Doing a full synchronisation ITOps-Rooms: Periodic Audit");
         }
         if(isInitialStartupPeriod){
             itopsConsoleLogger.logConsoleEvent("Doing a full synchronisation ITOps-Rooms: Initial Check Period");
         }
-        if (doRegularCheck || updatedTopology || isInitialStartupPeriod) {
+        if(doRegularCheck || isInitialStartupPeriod){
             shouldDoFullRoomSynchronisation = true;
             this.lastFullRoomUpdate = Instant.now();
         }
+        if(updatedTopology){
+            // Have the incremental pass re-check every space/room of a (re)discovered participant, not just its diff
+            for(String currentParticipantName: foundParticipants){
+                incrementalSynchronisationTasks.forgetReconciledTopology(currentParticipantName);
+            }
+        }
+        List<ProcessingPlantSummary> processingPlants = getSystemWideTopologyMap().getProcessingPlants();
 
         //
         // 3rd, Perform Synchronisation of Room List (from Synapse --> Cache)
@@ -433,7 +442,6 @@ public class ParticipantTopologyIntoReplicaDaemon extends RouteBuilder {
         getLogger().debug(".topologyReplicationSynchronisationDaemon(): [Build SpaceTrees and Synchronise with Known Rooms] Start...");
         if(shouldDoFullRoomSynchronisation) {
             try {
-                List<ProcessingPlantSummary> processingPlants = getSystemWideTopologyMap().getProcessingPlants();
                 for (ProcessingPlantSummary currentProcessingPlant : processingPlants) {
                     getLogger().debug(".topologyReplicationSynchronisationDaemon(): [Build SpaceTrees and Synchronise with Known Rooms] Processing ->{}", currentProcessingPlant.getParticipantName());
                     getLogger().debug(".topologyReplicationSynchronisationDaemon(): [Build SpaceTrees and Synchronise with Known Rooms] Getting Space Tree!");
@@ -452,22 +460,44 @@ public class ParticipantTopologyIntoReplicaDaemon extends RouteBuilder {
         // 5th, Adding Subsystem Space(s) If Required
         getLogger().debug(".topologyReplicationSynchronisationDaemon(): [Add Space(s) & Rooms As Required] Start...");
         if(shouldDoFullRoomSynchronisation) {
-            try {
-                List<ProcessingPlantSummary> processingPlants = getSystemWideTopologyMap().getProcessingPlants();
-                for (ProcessingPlantSummary currentProcessingPlant : processingPlants) {
-                    getLogger().trace(".topologyReplicationSynchronisationDaemon(): [Add Space(s) & Rooms As Required] Processing ->{}", currentProcessingPlant.getParticipantName());
-                    String participantName = currentProcessingPlant.getParticipantName();
+            for (ProcessingPlantSummary currentProcessingPlant : processingPlants) {
+                getLogger().trace(".topologyReplicationSynchronisationDaemon(): [Add Space(s) & Rooms As Required] Processing ->{}", currentProcessingPlant.getParticipantName());
+                String participantName = currentProcessingPlant.getParticipantName();
+                boolean allSpacesAndRoomsPresent = false;
+                try {
                     String pseudoAlias = roomIdentityFactory.buildProcessingPlantSpacePseudoAlias(participantName);
                     MatrixRoom subsystemParticipantSpace = getRoomCache().getRoomFromPseudoAlias(pseudoAlias);
                     getLogger().debug(".topologyReplicationSynchronisationDaemon(): [Add Space(s) & Rooms As Required] subsystemParticipantSpace ->{}", subsystemParticipantSpace);
-                    matrixCacheSynchronisationTasks.createParticipantSpacesAndRoomsIfNotThere(currentProcessingPlant, subsystemParticipantSpace);
+                    allSpacesAndRoomsPresent = matrixCacheSynchronisationTasks.createParticipantSpacesAndRoomsIfNotThere(currentProcessingPlant, subsystemParticipantSpace);
+                } catch (Exception ex) {
+                    getLogger().error(".topologyReplicationSynchronisationDaemon(): Failure to Add Spaces/Rooms to Synapse, participantName->{}, message->{}, stackTrace->{}", participantName, ExceptionUtils.getMessage(ex), ExceptionUtils.getStackTrace(ex));
+                }
+                if(allSpacesAndRoomsPresent){
+                    incrementalSynchronisationTasks.recordReconciledTopology(currentProcessingPlant);
+                } else {
+                    // Left for the incremental pass to retry (in full) on the next tick
+                    incrementalSynchronisationTasks.forgetReconciledTopology(participantName);
                 }
-            } catch (Exception ex) {
-                getLogger().error(".topologyReplicationSynchronisationDaemon(): Failure to Add Spaces/Rooms to Synapse, message->{}, stackTrace->{}", ExceptionUtils.getMessage(ex), ExceptionUtils.getStackTrace(ex));
             }
+            incrementalSynchronisationTasks.retainReportedProcessingPlants(processingPlants);
         }
         getLogger().debug(".topologyReplicationSynchronisationDaemon(): [Add Space(s) As Required & Rooms As Required] Finish...");
 
+        //
+        // 6th, Apply Topology Changes (since the last synchronisation) to the Space(s) & Rooms
+        getLogger().debug(".topologyReplicationSynchronisationDaemon(): [Apply Topology Changes] Start...");
+        if(!shouldDoFullRoomSynchronisation) {
+            try {
+                int changedProcessingPlantCount = incrementalSynchronisationTasks.synchroniseTopologyChanges(processingPlants);
+                if(changedProcessingPlantCount > 0 || updatedTopology){
+                    itopsConsoleLogger.logConsoleEvent("Synchronising ITOps-Rooms: Topology Update (" + changedProcessingPlantCount + " ProcessingPlant(s) changed)");
+                }
+            } catch (Exception ex) {
+                getLogger().error(".topologyReplicationSynchronisationDaemon(): Failure to Apply Topology Changes, message->{}, stackTrace->{}", ExceptionUtils.getMessage(ex), ExceptionUtils.getStackTrace(ex));
+            }
+        }
+        getLogger().debug(".topologyReplicationSynchronisationDaemon(): [Apply Topology Changes] Finish...");
+
         topologySynchronisationDaemonIsStillRunning = false;
 
         getLogger().debug(".topologyReplicationSynchronisationDaemon(): Exit");
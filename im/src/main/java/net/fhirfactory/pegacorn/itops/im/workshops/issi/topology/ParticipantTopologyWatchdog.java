@@ -21,7 +21,6 @@
  */
 package net.fhirfactory.pegacorn.itops.im.workshops.issi.topology;
 
-import net.fhirfactory.pegacorn.communicate.matrix.model.r110.api.common.MAPIResponse;
 import net.fhirfactory.pegacorn.communicate.matrix.model.r110.events.room.message.MRoomTextMessageEvent;
 import net.fhirfactory.pegacorn.core.constants.petasos.PetasosPropertyConstants;
 import net.fhirfactory.pegacorn.core.interfaces.topology.ProcessingPlantInterface;
@@ -371,11 +370,7 @@ public class ParticipantTopologyWatchdog extends OAMRoomMessageInjectorBase {
     protected void sendConnectivityReport(PetasosComponentITOpsNotification notification){
         getLogger().debug(".sendConnectivityReport(): Entry, notification->{}", notification);
         try {
-            String roomAlias = getRoomIdentityFactory().buildProcessingPlantRoomPseudoAlias(notification.getParticipantName(),OAMRoomTypeEnum.OAM_ROOM_TYPE_SUBSYSTEM_CONSOLE);
-
-            getLogger().debug(".forwardWUPNotification(): roomAlias for Events->{}", roomAlias);
-
-            String roomIdFromAlias =  getRoomIdFromPseudoAlias(roomAlias);
+            String roomIdFromAlias = getRoomIdForParticipant(notification.getParticipantName(), OAMRoomTypeEnum.OAM_ROOM_TYPE_SUBSYSTEM_CONSOLE);
 
             getLogger().debug(".forwardWUPNotification(): roomId for Events->{}", roomIdFromAlias);
 
@@ -383,17 +378,11 @@ public class ParticipantTopologyWatchdog extends OAMRoomMessageInjectorBase {
                 getLogger().debug(".sendConnectivityReport(): [Building MessageEvent] Start");
                 MRoomTextMessageEvent notificationEvent = notificationEventFactory.newNotificationEvent(roomIdFromAlias, notification);
                 getLogger().debug(".sendConnectivityReport(): [Building MessageEvent] Finish");
-                try {
-                    getLogger().debug(".sendConnectivityReport(): [Sending MessageEvent] Start");
-                    MAPIResponse mapiResponse = getMatrixInstantMessageAPI().postTextMessage(roomIdFromAlias, getMatrixAccessToken().getUserId(), notificationEvent);
-                    getLogger().debug(".sendConnectivityReport(): [Sending MessageEvent] mapiResponse->{}", mapiResponse);
-                    getLogger().debug(".sendConnectivityReport(): [Sending MessageEvent] Finish");
-                } catch(Exception ex){
-                    getLogger().warn(".sendConnectivityReport(): Failed to send InstantMessage, message->{}, stackTrace{}", ExceptionUtils.getMessage(ex), ExceptionUtils.getStackTrace(ex));
-                    return;
-                }
+                getLogger().debug(".sendConnectivityReport(): [Submitting MessageEvent] Start");
+                submitTextMessage(roomIdFromAlias, notificationEvent);
+                getLogger().debug(".sendConnectivityReport(): [Submitting MessageEvent] Finish");
             } else {
-                getLogger().warn(".sendConnectivityReport(): No room to forward work unit processor notifications into (ProcessingPlant->{}), ITOps Room Pseudo Alias ->{}", notification.getParticipantName(), roomAlias);
+                getLogger().warn(".sendConnectivityReport(): No room to forward work unit processor notifications into (ProcessingPlant->{}), ITOps Room Pseudo Alias ->{}", notification.getParticipantName(), getRoomIdentityFactory().buildOAMRoomPseudoAlias(notification.getParticipantName(), OAMRoomTypeEnum.OAM_ROOM_TYPE_SUBSYSTEM_CONSOLE));
                 // TODO either re-queue or send to DeadLetter
                 return;
             }
@@ -22,7 +22,7 @@
 package net.fhirfactory.pegacorn.itops.im.workshops.issi.topology.common;
 
 import net.fhirfactory.pegacorn.communicate.synapse.model.SynapseRoom;
-import net.fhirfactory.pegacorn.itops.im.valuesets.OAMRoomTypeEnum;
+import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.rooms.ITOpsRoomClassifier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -47,27 +47,9 @@ public class ITOpsRoomHelpers {
 
     public boolean isAnITOpsRoom(String roomAlias) {
         getLogger().debug(".isAnITOpsRoom(): Entry, room->{}", roomAlias);
-
-        if (roomAlias.contains(OAMRoomTypeEnum.OAM_ROOM_TYPE_WUP.getAliasPrefix()) ||
-                roomAlias.contains(OAMRoomTypeEnum.OAM_ROOM_TYPE_WUP_CONSOLE.getAliasPrefix()) ||
-                roomAlias.contains(OAMRoomTypeEnum.OAM_ROOM_TYPE_WUP_METRICS.getAliasPrefix()) ||
-                roomAlias.contains(OAMRoomTypeEnum.OAM_ROOM_TYPE_WUP_TASKS.getAliasPrefix()) ||
-                roomAlias.contains(OAMRoomTypeEnum.OAM_ROOM_TYPE_WUP_SUBSCRIPTIONS.getAliasPrefix()) ||
-                roomAlias.contains(OAMRoomTypeEnum.OAM_ROOM_TYPE_WORKSHOP.getAliasPrefix()) ||
-                roomAlias.contains(OAMRoomTypeEnum.OAM_ROOM_TYPE_SUBSYSTEM.getAliasPrefix()) ||
-                roomAlias.contains(OAMRoomTypeEnum.OAM_ROOM_TYPE_SUBSYSTEM_CONSOLE.getAliasPrefix()) ||
-                roomAlias.contains(OAMRoomTypeEnum.OAM_ROOM_TYPE_SUBSYSTEM_TASKS.getAliasPrefix()) ||
-                roomAlias.contains(OAMRoomTypeEnum.OAM_ROOM_TYPE_SUBSYSTEM_METRICS.getAliasPrefix()) ||
-                roomAlias.contains(OAMRoomTypeEnum.OAM_ROOM_TYPE_SUBSYSTEM_SUBSCRIPTIONS.getAliasPrefix()) ||
-                roomAlias.contains(OAMRoomTypeEnum.OAM_ROOM_TYPE_ENDPOINT.getAliasPrefix()) ||
-                roomAlias.contains(OAMRoomTypeEnum.OAM_ROOM_TYPE_ENDPOINT_CONSOLE.getAliasPrefix()) ||
-                roomAlias.contains(OAMRoomTypeEnum.OAM_ROOM_TYPE_ENDPOINT_METRICS.getAliasPrefix())) {
-            getLogger().debug(".isAnITOpsRoom(): Exit, returning->{}", true);
-            return (true);
-        } else {
-            getLogger().debug(".isAnITOpsRoom(): Exit, returning->{}", false);
-            return (false);
-        }
+        boolean isAnITOpsRoom = ITOpsRoomClassifier.classifyCanonicalAlias(roomAlias).isITOpsRoom();
+        getLogger().debug(".isAnITOpsRoom(): Exit, returning->{}", isAnITOpsRoom);
+        return (isAnITOpsRoom);
     }
 
     //
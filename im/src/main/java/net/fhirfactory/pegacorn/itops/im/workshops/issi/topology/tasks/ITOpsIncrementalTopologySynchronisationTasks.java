@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.workshops.issi.topology.tasks;
+
+import net.fhirfactory.pegacorn.core.model.ui.resources.summaries.ProcessingPlantSummary;
+import net.fhirfactory.pegacorn.itops.im.datatypes.ProcessingPlantTopologyDiff;
+import net.fhirfactory.pegacorn.itops.im.datatypes.ProcessingPlantTopologyShape;
+import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.topologymaps.ITOpsReconciledTopologyMapDM;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Brings the Matrix spaces/rooms into line with the reported topology by diffing each ProcessingPlant against the
+ * shape it had when it was last reconciled, and applying only the resulting create/attach/remove actions. A plant's
+ * reconciled shape is only advanced once all of its actions have been applied, so a failed action is retried (as part
+ * of the same diff) on the next pass.
+ */
+@ApplicationScoped
+public class ITOpsIncrementalTopologySynchronisationTasks {
+    private static final Logger LOG = LoggerFactory.getLogger(ITOpsIncrementalTopologySynchronisationTasks.class);
+
+    @Inject
+    private ITOpsReconciledTopologyMapDM reconciledTopologyMap;
+
+    @Inject
+    private ITOpsTopologySynchronisationTasks topologySynchronisationTasks;
+
+    //
+    // Constructor(s)
+    //
+
+    public ITOpsIncrementalTopologySynchronisationTasks(){
+    }
+
+    //
+    // Getters (and Setters)
+    //
+
+    protected Logger getLogger(){
+        return(LOG);
+    }
+
+    protected ITOpsReconciledTopologyMapDM getReconciledTopologyMap(){
+        return(reconciledTopologyMap);
+    }
+
+    //
+    // Business Methods
+    //
+
+    /**
+     * @return the number of ProcessingPlants whose topology had changed (whether or not the change could be applied)
+     */
+    public int synchroniseTopologyChanges(List<ProcessingPlantSummary> processingPlants){
+        getLogger().debug(".synchroniseTopologyChanges(): Entry");
+        if(processingPlants == null){
+            getLogger().debug(".synchroniseTopologyChanges(): Exit, processingPlants is null");
+            return(0);
+        }
+        int changedProcessingPlantCount = 0;
+        Set<String> reportedProcessingPlantNames = new HashSet<>();
+        for(ProcessingPlantSummary currentProcessingPlant: processingPlants){
+            String processingPlantName = currentProcessingPlant.getParticipantName();
+            reportedProcessingPlantNames.add(processingPlantName);
+            ProcessingPlantTopologyShape currentShape = ProcessingPlantTopologyShape.fromSummary(currentProcessingPlant);
+            ProcessingPlantTopologyShape reconciledShape = getReconciledTopologyMap().getReconciledShape(processingPlantName);
+            ProcessingPlantTopologyDiff diff = ProcessingPlantTopologyDiff.between(reconciledShape, currentShape);
+            if(diff.isEmpty()){
+                continue;
+            }
+            changedProcessingPlantCount += 1;
+            getLogger().info(".synchroniseTopologyChanges(): Topology changed, diff->{}", diff);
+            boolean applied = false;
+            try {
+                applied = topologySynchronisationTasks.synchroniseParticipantTopologyChanges(currentProcessingPlant, diff);
+            } catch (Exception ex){
+                getLogger().error(".synchroniseTopologyChanges(): Failure applying topology changes, processingPlant->{}, message->{}, stackTrace->{}", processingPlantName, ExceptionUtils.getMessage(ex), ExceptionUtils.getStackTrace(ex));
+            }
+            if(applied){
+                getReconciledTopologyMap().setReconciledShape(currentShape);
+            } else {
+                getLogger().warn(".synchroniseTopologyChanges(): Not all topology changes were applied, will retry, processingPlant->{}", processingPlantName);
+            }
+        }
+        getReconciledTopologyMap().retainProcessingPlants(reportedProcessingPlantNames);
+        getLogger().debug(".synchroniseTopologyChanges(): Exit, changedProcessingPlantCount->{}", changedProcessingPlantCount);
+        return(changedProcessingPlantCount);
+    }
+
+    /**
+     * Records a ProcessingPlant's reported topology as reconciled, used once the full (audit) synchronisation has
+     * found or created all of its spaces/rooms.
+     */
+    public void recordReconciledTopology(ProcessingPlantSummary processingPlant){
+        if(processingPlant == null){
+            return;
+        }
+        getReconciledTopologyMap().setReconciledShape(ProcessingPlantTopologyShape.fromSummary(processingPlant));
+    }
+
+    /**
+     * Forgets what was last reconciled for a ProcessingPlant, so that the next pass treats every one of its nodes as
+     * new and re-checks (creating/attaching as required) all of its spaces/rooms.
+     */
+    public void forgetReconciledTopology(String processingPlantName){
+        getLogger().debug(".forgetReconciledTopology(): processingPlantName->{}", processingPlantName);
+        getReconciledTopologyMap().removeReconciledShape(processingPlantName);
+    }
+
+    /**
+     * Forgets the reconciled topology of any ProcessingPlant that is no longer reported.
+     */
+    public void retainReportedProcessingPlants(List<ProcessingPlantSummary> processingPlants){
+        if(processingPlants == null){
+            return;
+        }
+        Set<String> reportedProcessingPlantNames = new HashSet<>();
+        for(ProcessingPlantSummary currentProcessingPlant: processingPlants){
+            reportedProcessingPlantNames.add(currentProcessingPlant.getParticipantName());
+        }
+        getReconciledTopologyMap().retainProcessingPlants(reportedProcessingPlantNames);
+    }
+}
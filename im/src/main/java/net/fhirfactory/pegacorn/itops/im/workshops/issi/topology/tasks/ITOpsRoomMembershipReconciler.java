@@ -0,0 +1,347 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.workshops.issi.topology.tasks;
+
+import net.fhirfactory.pegacorn.communicate.matrix.credentials.MatrixAccessToken;
+import net.fhirfactory.pegacorn.communicate.matrix.model.r110.api.common.MAPIResponse;
+import net.fhirfactory.pegacorn.communicate.synapse.credentials.SynapseAdminAccessToken;
+import net.fhirfactory.pegacorn.communicate.synapse.methods.SynapseRoomMethods;
+import net.fhirfactory.pegacorn.communicate.synapse.model.SynapseUser;
+import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.symbols.ITOpsSymbolTable;
+import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.topologymaps.ITOpsKnownRoomMembershipMapDM;
+import net.fhirfactory.pegacorn.itops.im.workshops.issi.common.ITOpsEnvironmentSettings;
+import net.fhirfactory.pegacorn.itops.im.workshops.issi.common.egress.MatrixEgressRateLimiter;
+import net.fhirfactory.pegacorn.itops.im.workshops.issi.common.egress.MatrixEgressResponseInspector;
+import net.fhirfactory.pegacorn.itops.im.workshops.issi.common.egress.MatrixEgressResponseStatus;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Brings the membership of the ITOps rooms up to the desired set of users by issuing only the missing joins. The
+ * desired users become a BitSet over interned user ids and each room's missing members are that set andNot() the
+ * room's known membership (see ITOpsKnownRoomMembershipMapDM), so no per-user list scans are made. A room's member
+ * list is only read from Synapse when its membership is not yet known, or when a verification sweep asks for it to be
+ * re-read. The joins are issued in batches on a small worker pool, each join taking a permit from a token bucket so
+ * the pass cannot flood the homeserver; a rate-limited join pauses the bucket and is retried. A join is only recorded
+ * in the known membership once the homeserver's typed response confirms it (see MatrixEgressResponseStatus).
+ */
+@ApplicationScoped
+public class ITOpsRoomMembershipReconciler {
+    private static final Logger LOG = LoggerFactory.getLogger(ITOpsRoomMembershipReconciler.class);
+
+    private static final String JOIN_RATE_ENVIRONMENT_VARIABLE = "ITOPS_IM_MEMBERSHIP_JOIN_RATE_PER_SECOND";
+    private static final String JOIN_WORKERS_ENVIRONMENT_VARIABLE = "ITOPS_IM_MEMBERSHIP_JOIN_WORKERS";
+
+    private static final double DEFAULT_JOIN_RATE_PER_SECOND = 5.0d;
+    private static final int DEFAULT_JOIN_BURST = 10;
+    private static final int DEFAULT_JOIN_WORKER_COUNT = 4;
+    private static final int JOIN_BATCH_SIZE = 25;
+    private static final int MAXIMUM_RATE_LIMITED_RETRIES = 3;
+    private static final long DEFAULT_RETRY_AFTER_MILLIS = 2000L;
+
+    private boolean initialised;
+    private MatrixEgressRateLimiter joinRateLimiter;
+    private ExecutorService joinExecutor;
+    private AtomicLong joinedCount;
+    private AtomicLong failedJoinCount;
+    private AtomicLong memberListReadCount;
+
+    @Inject
+    private ITOpsKnownRoomMembershipMapDM membershipCache;
+
+    @Inject
+    private SynapseRoomMethods synapseRoomAPI;
+
+    @Inject
+    private MatrixAccessToken matrixAccessToken;
+
+    @Inject
+    private SynapseAdminAccessToken synapseAccessToken;
+
+    //
+    // Constructor(s)
+    //
+
+    public ITOpsRoomMembershipReconciler(){
+        this.initialised = false;
+        this.joinedCount = new AtomicLong(0);
+        this.failedJoinCount = new AtomicLong(0);
+        this.memberListReadCount = new AtomicLong(0);
+    }
+
+    //
+    // Post Construct
+    //
+
+    @PostConstruct
+    public void initialise(){
+        getLogger().debug(".initialise(): Entry");
+        if(initialised){
+            getLogger().debug(".initialise(): Exit, already initialised, nothing to do");
+            return;
+        }
+        getLogger().info(".initialise(): Initialisation Start...");
+        double permitsPerSecond = ITOpsEnvironmentSettings.getEnvironmentDouble(JOIN_RATE_ENVIRONMENT_VARIABLE, DEFAULT_JOIN_RATE_PER_SECOND);
+        int workerCount = Math.max(1, (int)ITOpsEnvironmentSettings.getEnvironmentDouble(JOIN_WORKERS_ENVIRONMENT_VARIABLE, DEFAULT_JOIN_WORKER_COUNT));
+        this.joinRateLimiter = new MatrixEgressRateLimiter(permitsPerSecond, DEFAULT_JOIN_BURST);
+        AtomicInteger workerCounter = new AtomicInteger(0);
+        this.joinExecutor = new ThreadPoolExecutor(workerCount, workerCount, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread joinThread = new Thread(runnable, "ITOpsMembershipJoin-" + workerCounter.incrementAndGet());
+            joinThread.setDaemon(true);
+            return(joinThread);
+        });
+        this.initialised = true;
+        getLogger().info(".initialise(): Initialisation Finish, workerCount->{}, joinRateLimiter->{}", workerCount, joinRateLimiter);
+    }
+
+    //
+    // Getters (and Setters)
+    //
+
+    protected Logger getLogger(){
+        return(LOG);
+    }
+
+    protected ITOpsKnownRoomMembershipMapDM getMembershipCache() {
+        return membershipCache;
+    }
+
+    public long getJoinedCount(){
+        return(joinedCount.get());
+    }
+
+    public long getFailedJoinCount(){
+        return(failedJoinCount.get());
+    }
+
+    public long getMemberListReadCount(){
+        return(memberListReadCount.get());
+    }
+
+    //
+    // Business Methods
+    //
+
+    /**
+     * Joins every user in desiredUsers to every room in roomIds that they are not already a member of.
+     *
+     * @param roomIds the (ITOps, all-should-join) rooms to reconcile
+     * @param desiredUsers the users that should be members of those rooms
+     * @param verifyMembership if true, every room's member list is re-read from Synapse first (a verification sweep),
+     *                         otherwise only rooms with no known membership are read
+     * @return the number of joins made
+     */
+    public int reconcile(Collection<String> roomIds, Collection<? extends SynapseUser> desiredUsers, boolean verifyMembership){
+        getLogger().debug(".reconcile(): Entry, roomCount->{}, userCount->{}, verifyMembership->{}", sizeOf(roomIds), sizeOf(desiredUsers), verifyMembership);
+        if(!initialised){
+            getLogger().warn(".reconcile(): Exit, reconciler has not been initialised");
+            return(0);
+        }
+        BitSet desiredMembers = buildDesiredMembers(desiredUsers);
+        if(roomIds == null || roomIds.isEmpty() || desiredMembers.isEmpty()){
+            getLogger().debug(".reconcile(): Exit, nothing to reconcile");
+            return(0);
+        }
+        List<MembershipJoin> pendingJoins = new ArrayList<>();
+        for(String currentRoomId: roomIds){
+            if(StringUtils.isEmpty(currentRoomId)){
+                continue;
+            }
+            if(verifyMembership || !getMembershipCache().hasRoomMembership(currentRoomId)){
+                if(!readRoomMembers(currentRoomId)){
+                    continue;
+                }
+            }
+            BitSet missingMembers = getMembershipCache().getMissingMembers(currentRoomId, desiredMembers);
+            if(missingMembers == null){
+                continue;
+            }
+            for(int userSymbolId = missingMembers.nextSetBit(0); userSymbolId >= 0; userSymbolId = missingMembers.nextSetBit(userSymbolId + 1)){
+                pendingJoins.add(new MembershipJoin(currentRoomId, userSymbolId));
+            }
+        }
+        int joined = issueJoins(pendingJoins);
+        getLogger().debug(".reconcile(): Exit, pendingJoins->{}, joined->{}", pendingJoins.size(), joined);
+        return(joined);
+    }
+
+    //
+    // Helpers
+    //
+
+    protected BitSet buildDesiredMembers(Collection<? extends SynapseUser> desiredUsers){
+        BitSet desiredMembers = new BitSet();
+        if(desiredUsers == null){
+            return(desiredMembers);
+        }
+        for(SynapseUser currentUser: desiredUsers){
+            String userId = currentUser.getName();
+            if(StringUtils.isEmpty(userId) || isITOpsUser(userId)){
+                continue;
+            }
+            int userSymbolId = getMembershipCache().internUserId(userId);
+            if(userSymbolId != ITOpsSymbolTable.UNKNOWN_SYMBOL_ID){
+                desiredMembers.set(userSymbolId);
+            }
+        }
+        return(desiredMembers);
+    }
+
+    protected boolean isITOpsUser(String userId){
+        return(userId.contentEquals(matrixAccessToken.getUserId()) || userId.contentEquals(synapseAccessToken.getUserId()));
+    }
+
+    protected boolean readRoomMembers(String roomId){
+        try {
+            List<String> roomMembers = synapseRoomAPI.getRoomMembers(roomId);
+            memberListReadCount.incrementAndGet();
+            getLogger().trace(".readRoomMembers(): roomId->{}, roomMembers->{}", roomId, roomMembers);
+            getMembershipCache().setRoomMembers(roomId, roomMembers);
+            return(true);
+        } catch (Exception ex) {
+            getLogger().warn(".readRoomMembers(): Unable to read members of roomId->{}, message->{}", roomId, ExceptionUtils.getMessage(ex));
+            return(false);
+        }
+    }
+
+    protected int issueJoins(List<MembershipJoin> pendingJoins){
+        if(pendingJoins.isEmpty()){
+            return(0);
+        }
+        AtomicInteger joined = new AtomicInteger(0);
+        List<Future<?>> batchOutcomes = new ArrayList<>();
+        for(int batchStart = 0; batchStart < pendingJoins.size(); batchStart += JOIN_BATCH_SIZE){
+            List<MembershipJoin> batch = pendingJoins.subList(batchStart, Math.min(pendingJoins.size(), batchStart + JOIN_BATCH_SIZE));
+            batchOutcomes.add(joinExecutor.submit(() -> joinBatch(batch, joined)));
+        }
+        for(Future<?> currentOutcome: batchOutcomes){
+            try {
+                currentOutcome.get();
+            } catch (InterruptedException ie) {
+                getLogger().warn(".issueJoins(): Interrupted waiting for membership joins to complete");
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException ee) {
+                getLogger().warn(".issueJoins(): Membership join batch failed, message->{}", ExceptionUtils.getMessage(ee.getCause()));
+            }
+        }
+        return(joined.get());
+    }
+
+    protected void joinBatch(List<MembershipJoin> batch, AtomicInteger joined){
+        for(MembershipJoin currentJoin: batch){
+            String userId = getMembershipCache().getUserId(currentJoin.getUserSymbolId());
+            if(joinRoom(currentJoin.getRoomId(), userId)){
+                getMembershipCache().addRoomMember(currentJoin.getRoomId(), currentJoin.getUserSymbolId());
+                joined.incrementAndGet();
+                joinedCount.incrementAndGet();
+            } else {
+                failedJoinCount.incrementAndGet();
+            }
+            if(Thread.currentThread().isInterrupted()){
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return true only if the homeserver confirmed the join; anything else leaves the membership unrecorded, so the
+     * join is retried on the next pass
+     */
+    protected boolean joinRoom(String roomId, String userId){
+        for(int attempt = 0; attempt <= MAXIMUM_RATE_LIMITED_RETRIES; attempt += 1){
+            MatrixEgressResponseStatus joinStatus;
+            try {
+                joinRateLimiter.acquire();
+                getLogger().debug(".joinRoom(): Joining userId->{} to roomId->{}", userId, roomId);
+                MAPIResponse joinResponse = synapseRoomAPI.addRoomMember(roomId, userId);
+                joinStatus = MatrixEgressResponseInspector.inspect(joinResponse);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return(false);
+            } catch (Exception ex) {
+                joinStatus = MatrixEgressResponseInspector.inspect(ex);
+                if(!joinStatus.isRateLimited()){
+                    getLogger().warn(".joinRoom(): Unable to join userId->{} to roomId->{}, message->{}", userId, roomId, ExceptionUtils.getMessage(ex));
+                    return(false);
+                }
+            }
+            if(joinStatus.isSuccessful()){
+                return(true);
+            }
+            if(!joinStatus.isRateLimited()){
+                getLogger().warn(".joinRoom(): Join refused, userId->{}, roomId->{}, status->{}", userId, roomId, joinStatus);
+                return(false);
+            }
+            joinRateLimiter.pauseFor(MatrixEgressResponseInspector.getRetryAfterMillis(joinStatus, DEFAULT_RETRY_AFTER_MILLIS));
+        }
+        getLogger().warn(".joinRoom(): Still rate limited, giving up (until the next pass) on joining userId->{} to roomId->{}", userId, roomId);
+        return(false);
+    }
+
+    private int sizeOf(Collection<?> collection){
+        if(collection == null){
+            return(0);
+        }
+        return(collection.size());
+    }
+
+    //
+    // Membership Join
+    //
+
+    private static class MembershipJoin {
+        private final String roomId;
+        private final int userSymbolId;
+
+        MembershipJoin(String roomId, int userSymbolId){
+            this.roomId = roomId;
+            this.userSymbolId = userSymbolId;
+        }
+
+        String getRoomId() {
+            return roomId;
+        }
+
+        int getUserSymbolId() {
+            return userSymbolId;
+        }
+    }
+}
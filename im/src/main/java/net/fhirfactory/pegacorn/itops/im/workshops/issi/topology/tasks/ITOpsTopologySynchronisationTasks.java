@@ -33,6 +33,10 @@ import net.fhirfactory.pegacorn.core.model.ui.resources.summaries.ProcessingPlan
 import net.fhirfactory.pegacorn.core.model.ui.resources.summaries.WorkUnitProcessorSummary;
 import net.fhirfactory.pegacorn.core.model.ui.resources.summaries.WorkshopSummary;
 import net.fhirfactory.pegacorn.itops.im.datatypes.ProcessingPlantSpaceDetail;
+import net.fhirfactory.pegacorn.itops.im.datatypes.ProcessingPlantTopologyDiff;
+import net.fhirfactory.pegacorn.itops.im.datatypes.ProcessingPlantTopologyShape;
+import net.fhirfactory.pegacorn.itops.im.valuesets.ITOpsTopologyNodeTypeEnum;
+import net.fhirfactory.pegacorn.itops.im.valuesets.OAMRoomTypeEnum;
 import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.topologymaps.ITOpsKnownRoomAndSpaceMapDM;
 import net.fhirfactory.pegacorn.itops.im.workshops.issi.topology.tasks.subtasks.EndpointParticipantReplicaTasks;
 import net.fhirfactory.pegacorn.itops.im.workshops.issi.topology.tasks.subtasks.ProcessingPlantParticipantReplicaTasks;
@@ -46,6 +50,7 @@ import org.slf4j.LoggerFactory;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -103,16 +108,13 @@ public class ITOpsTopologySynchronisationTasks {
             List<SynapseRoom> roomList = synapseRoomAPI.getRooms("*");
             getLogger().trace(".topologyReplicationSynchronisationDaemon(): [Synchronise Room List] RoomList->{}", roomList);
             // remove if not available
+            Set<String> availableRoomIds = new HashSet<>();
+            for (SynapseRoom currentRoom : roomList) {
+                availableRoomIds.add(currentRoom.getRoomID());
+            }
             Set<MatrixRoom> knownRooms = roomCache.getFullRoomSet();
             for (MatrixRoom currentKnownRoom : knownRooms) {
-                boolean found = false;
-                for (SynapseRoom currentRoom : roomList) {
-                    if (currentRoom.getRoomID().contentEquals(currentKnownRoom.getRoomID())) {
-                        found = true;
-                        break;
-                    }
-                }
-                if (!found) {
+                if (!availableRoomIds.contains(currentKnownRoom.getRoomID())) {
                     roomCache.deleteRoom(currentKnownRoom.getRoomID());
                 }
             }
@@ -122,6 +124,7 @@ public class ITOpsTopologySynchronisationTasks {
                 MatrixRoom matrixRoom = new MatrixRoom(currentRoom);
                 roomCache.addRoom(matrixRoom);
             }
+            roomCache.markRoomMapReady("synapse");
         } catch (Exception ex) {
             getLogger().warn(".topologyReplicationSynchronisationDaemon(): Failure to synchronise room list, message->{}, stackTrace->{}", ExceptionUtils.getMessage(ex), ExceptionUtils.getStackTrace(ex));
         }
@@ -132,10 +135,12 @@ public class ITOpsTopologySynchronisationTasks {
      *
      * @param processingPlant
      * @param processingPlantMatrixRoom
+     * @return true if the spaces/rooms of every node of the ProcessingPlant were found or created
      */
-    public void createParticipantSpacesAndRoomsIfNotThere(ProcessingPlantSummary processingPlant, MatrixRoom processingPlantMatrixRoom){
+    public boolean createParticipantSpacesAndRoomsIfNotThere(ProcessingPlantSummary processingPlant, MatrixRoom processingPlantMatrixRoom){
         getLogger().debug(".createParticipantSpacesAndRoomsIfNotThere(): Entry, processingPlant->{}, processingPlantMatrixRoom->{}", processingPlant, processingPlantMatrixRoom);
 
+        boolean allSpacesAndRoomsPresent = true;
         ProcessingPlantSpaceDetail processingPlantSpace = processingPlantReplicaServices.createProcessingPlantSpaceIfNotThere(processingPlant.getParticipantName(), processingPlantMatrixRoom);
         if(processingPlantSpace != null) {
             getLogger().debug(".createParticipantSpacesAndRoomsIfNotThere(): processingPlantSpace->{}", processingPlantSpace);
@@ -151,19 +156,120 @@ public class ITOpsTopologySynchronisationTasks {
                             getLogger().debug(".createParticipantSpacesAndRoomsIfNotThere(): processing endpoints for wup: wupSpaceAliasId->{}", wupSpaceAliasId);
                             for (EndpointSummary currentEndpointSummary : currentWUPSummary.getEndpoints().values()) {
                                 MatrixRoom endpointSpace = processEndpointSpace(processingPlantSpace, currentWUPSpace, currentWUPSummary.getParticipantName(), currentEndpointSummary);
+                                if(endpointSpace == null){
+                                    allSpacesAndRoomsPresent = false;
+                                }
                             }
                         } else {
                             getLogger().error(".createParticipantSpacesAndRoomsIfNotThere(): Cannot create WUP Room for {}",currentWUPSummary.getParticipantName());
+                            allSpacesAndRoomsPresent = false;
                         }
                     }
                 } else {
                     getLogger().error(".createParticipantSpacesAndRoomsIfNotThere(): Cannot create Workshop Room for {}",currentWorkshop.getParticipantName());
+                    allSpacesAndRoomsPresent = false;
                 }
             }
         } else {
             getLogger().error(".createParticipantSpacesAndRoomsIfNotThere(): Cannot create Participant Room for {}",processingPlant.getParticipantName());
+            allSpacesAndRoomsPresent = false;
+        }
+        getLogger().debug(".createParticipantSpacesAndRoomsIfNotThere(): Exit, allSpacesAndRoomsPresent->{}", allSpacesAndRoomsPresent);
+        return(allSpacesAndRoomsPresent);
+    }
+
+    /**
+     * Applies the create and attach actions of a ProcessingPlantTopologyDiff, touching only the spaces/rooms of the
+     * nodes named in the diff (their parents are looked up in the room cache rather than re-verified). Removed nodes
+     * are only logged, their spaces/rooms (and history) are left in place.
+     *
+     * @return true if every action was applied, false if any failed (so the diff should be retried)
+     */
+    public boolean synchroniseParticipantTopologyChanges(ProcessingPlantSummary processingPlant, ProcessingPlantTopologyDiff diff){
+        getLogger().debug(".synchroniseParticipantTopologyChanges(): Entry, diff->{}", diff);
+        String processingPlantName = processingPlant.getParticipantName();
+        boolean allActionsApplied = true;
+
+        String processingPlantKey = ProcessingPlantTopologyShape.toNodeKey(ITOpsTopologyNodeTypeEnum.TOPOLOGY_NODE_PROCESSING_PLANT, processingPlantName);
+        ProcessingPlantSpaceDetail processingPlantSpace = null;
+        if(!diff.requiresAction(processingPlantKey)){
+            processingPlantSpace = getCachedProcessingPlantSpace(processingPlantName);
+        }
+        if(processingPlantSpace == null){
+            MatrixRoom processingPlantMatrixRoom = roomCache.getRoomFromPseudoAlias(roomIdentityFactory.buildProcessingPlantSpacePseudoAlias(processingPlantName));
+            processingPlantSpace = processingPlantReplicaServices.createProcessingPlantSpaceIfNotThere(processingPlantName, processingPlantMatrixRoom);
+        }
+        if(processingPlantSpace == null || processingPlantSpace.getProcessingPlantComponentSpace() == null){
+            getLogger().error(".synchroniseParticipantTopologyChanges(): Exit, Cannot resolve Participant Space for {}", processingPlantName);
+            return(false);
+        }
+        String componentSpaceId = processingPlantSpace.getProcessingPlantComponentSpace().getRoomID();
+
+        for (WorkshopSummary currentWorkshop : processingPlant.getWorkshops().values()) {
+            String workshopKey = ProcessingPlantTopologyShape.toNodeKey(ITOpsTopologyNodeTypeEnum.TOPOLOGY_NODE_WORKSHOP, currentWorkshop.getParticipantName());
+            MatrixRoom currentWorkshopSpace = null;
+            if(diff.requiresAction(workshopKey)){
+                getLogger().info(".synchroniseParticipantTopologyChanges(): [{}] Workshop->{}", processingPlantName, currentWorkshop.getParticipantName());
+                MatrixRoom cachedWorkshopSpace = roomCache.getRoomFromPseudoAlias(roomIdentityFactory.buildWorkshopSpacePseudoAlias(currentWorkshop.getParticipantName()));
+                currentWorkshopSpace = workshopReplicaServices.createSubSpaceIfNotThere(componentSpaceId, cachedWorkshopSpace, currentWorkshop);
+                if(currentWorkshopSpace == null){
+                    allActionsApplied = false;
+                } else if(cachedWorkshopSpace != null){
+                    // createSubSpaceIfNotThere() only attaches the spaces it finds in Synapse or creates, not one it is given
+                    matrixSpaceAPI.addChildToSpace(componentSpaceId, cachedWorkshopSpace.getRoomID(), matrixAccessToken.getHomeServer());
+                }
+            }
+            for (WorkUnitProcessorSummary currentWUPSummary : currentWorkshop.getWorkUnitProcessors().values()) {
+                String wupKey = ProcessingPlantTopologyShape.toNodeKey(ITOpsTopologyNodeTypeEnum.TOPOLOGY_NODE_WORK_UNIT_PROCESSOR, currentWUPSummary.getParticipantName());
+                MatrixRoom currentWUPSpace = null;
+                if(diff.requiresAction(wupKey)){
+                    getLogger().info(".synchroniseParticipantTopologyChanges(): [{}] WorkUnitProcessor->{}", processingPlantName, currentWUPSummary.getParticipantName());
+                    if(currentWorkshopSpace == null){
+                        currentWorkshopSpace = roomCache.getRoomFromPseudoAlias(roomIdentityFactory.buildWorkshopSpacePseudoAlias(currentWorkshop.getParticipantName()));
+                    }
+                    if(currentWorkshopSpace != null){
+                        currentWUPSpace = processWorkUnitProcessorSpace(currentWorkshopSpace, currentWUPSummary);
+                    }
+                    if(currentWUPSpace == null){
+                        allActionsApplied = false;
+                    }
+                }
+                for (EndpointSummary currentEndpointSummary : currentWUPSummary.getEndpoints().values()) {
+                    String endpointKey = ProcessingPlantTopologyShape.toNodeKey(ITOpsTopologyNodeTypeEnum.TOPOLOGY_NODE_ENDPOINT, currentEndpointSummary.getParticipantName());
+                    if(!diff.requiresAction(endpointKey)){
+                        continue;
+                    }
+                    getLogger().info(".synchroniseParticipantTopologyChanges(): [{}] Endpoint->{}", processingPlantName, currentEndpointSummary.getParticipantName());
+                    if(currentWUPSpace == null){
+                        currentWUPSpace = roomCache.getRoomFromPseudoAlias(roomIdentityFactory.buildWorkUnitProcessorSpacePseudoAlias(currentWUPSummary.getParticipantName()));
+                    }
+                    MatrixRoom endpointSpace = null;
+                    if(currentWUPSpace != null){
+                        endpointSpace = processEndpointSpace(processingPlantSpace, currentWUPSpace, currentWUPSummary.getParticipantName(), currentEndpointSummary);
+                    }
+                    if(endpointSpace == null){
+                        allActionsApplied = false;
+                    }
+                }
+            }
+        }
+        for(String removedNodeKey: diff.getRemoveNodeKeys()){
+            getLogger().info(".synchroniseParticipantTopologyChanges(): [{}] No longer reported (spaces/rooms retained)->{}", processingPlantName, removedNodeKey);
+        }
+        getLogger().debug(".synchroniseParticipantTopologyChanges(): Exit, allActionsApplied->{}", allActionsApplied);
+        return(allActionsApplied);
+    }
+
+    protected ProcessingPlantSpaceDetail getCachedProcessingPlantSpace(String processingPlantName){
+        MatrixRoom processingPlantMatrixRoom = roomCache.getRoomFromPseudoAlias(roomIdentityFactory.buildProcessingPlantSpacePseudoAlias(processingPlantName));
+        MatrixRoom componentMatrixRoom = roomCache.getRoomFromPseudoAlias(roomIdentityFactory.buildOAMRoomPseudoAlias(processingPlantName, OAMRoomTypeEnum.OAM_ROOM_TYPE_SUBSYSTEM_COMPONENTS));
+        if(processingPlantMatrixRoom == null || componentMatrixRoom == null){
+            return(null);
         }
-        getLogger().debug(".createParticipantSpacesAndRoomsIfNotThere(): Exit");
+        ProcessingPlantSpaceDetail processingPlantSpace = new ProcessingPlantSpaceDetail();
+        processingPlantSpace.setProcessingPlantSpace(processingPlantMatrixRoom);
+        processingPlantSpace.setProcessingPlantComponentSpace(componentMatrixRoom);
+        return(processingPlantSpace);
     }
 
     protected MatrixRoom processWorkshopSpace(WorkshopSummary currentWorkshop, ProcessingPlantSpaceDetail processingPlantSpace){
@@ -21,27 +21,23 @@
  */
 package net.fhirfactory.pegacorn.itops.im.workshops.issi.topology.tasks;
 
-import net.fhirfactory.pegacorn.communicate.matrix.credentials.MatrixAccessToken;
 import net.fhirfactory.pegacorn.communicate.matrix.methods.MatrixRoomMethods;
 import net.fhirfactory.pegacorn.communicate.matrix.methods.MatrixSpaceMethods;
 import net.fhirfactory.pegacorn.communicate.matrix.model.core.MatrixRoom;
 import net.fhirfactory.pegacorn.communicate.matrix.model.core.MatrixUser;
-import net.fhirfactory.pegacorn.communicate.synapse.credentials.SynapseAdminAccessToken;
-import net.fhirfactory.pegacorn.communicate.synapse.methods.SynapseRoomMethods;
-import net.fhirfactory.pegacorn.communicate.synapse.model.SynapseRoom;
-import net.fhirfactory.pegacorn.communicate.synapse.model.SynapseUser;
-import net.fhirfactory.pegacorn.itops.im.valuesets.OAMRoomTypeEnum;
+import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.rooms.ITOpsRoomClassification;
+import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.rooms.ITOpsRoomClassifier;
 import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.topologymaps.ITOpsKnownRoomAndSpaceMapDM;
+import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.topologymaps.ITOpsKnownRoomMembershipMapDM;
 import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.topologymaps.ITOpsKnownUserMapDM;
-import net.fhirfactory.pegacorn.itops.im.workshops.issi.topology.common.ITOpsRoomHelpers;
-import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
-import java.util.List;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.Set;
 
 @ApplicationScoped
@@ -55,13 +51,10 @@ public class ITOpsUserTasks {
     private ITOpsKnownRoomAndSpaceMapDM roomCache;
 
     @Inject
-    private ITOpsRoomHelpers itopsRoomHelpers;
+    private ITOpsKnownRoomMembershipMapDM membershipCache;
 
     @Inject
-    private MatrixAccessToken matrixAccessToken;
-
-    @Inject
-    private SynapseAdminAccessToken synapseAccessToken;
+    private ITOpsRoomMembershipReconciler membershipReconciler;
 
     @Inject
     private MatrixRoomMethods matrixRoomAPI;
@@ -69,9 +62,6 @@ public class ITOpsUserTasks {
     @Inject
     private MatrixSpaceMethods matrixSpaceAPI;
 
-    @Inject
-    private SynapseRoomMethods synapseRoomAPI;
-
     //
     // Constructor(s)
     //
@@ -92,31 +82,9 @@ public class ITOpsUserTasks {
 
         getLogger().debug(".addNewUsersToAllRooms(): [Auto Join New Users to the Older Rooms] Start...");
         try {
-            for (MatrixRoom currentRoom : roomCache.getFullRoomSet()) {
-                String currentRoomAlias = currentRoom.getCanonicalAlias();
-                if (StringUtils.isNotEmpty(currentRoomAlias)) {
-                    if (itopsRoomHelpers.isAnITOpsRoom(currentRoomAlias)) {
-                        if (allShouldJoin(currentRoomAlias)) {
-                            getLogger().debug(".addNewUsersToAllRooms(): [Auto Join New Users to the Older Rooms] Processing Room/Space->{}", currentRoomAlias);
-                            String roomId = currentRoom.getRoomID();
-                            List<String> roomMembers = synapseRoomAPI.getRoomMembers(roomId);
-                            for (SynapseUser currentUser : addedUserSet) {
-                                getLogger().debug(".addNewUsersToAllRooms(): RoomId->{}, roomMembers->{}", roomId, roomMembers);
-                                if(roomMembers.contains(currentUser.getName())) {
-                                    getLogger().trace(".addNewUsersToAllRooms(): [Auto Join Users to Added Rooms] User Already Member, not Adding->{}", currentUser.getName());
-                                } else {
-                                    if (currentUser.getName().contentEquals(matrixAccessToken.getUserId()) || currentUser.getName().contentEquals(synapseAccessToken.getUserId())) {
-                                        getLogger().debug(".addNewUsersToAllRooms(): [Auto Join New Users to the Older Rooms] Not Adding User->{}", currentUser.getName());
-                                    } else {
-                                        getLogger().debug(".addNewUsersToAllRooms(): [Auto Join New Users to the Older Rooms] Processing User->{}", currentUser.getName());
-                                        synapseRoomAPI.addRoomMember(roomId, currentUser.getName());
-                                    }
-                                }
-                            }
-                        }
-                    }
-                }
-            }
+            Set<String> joinableRoomIds = getAllShouldJoinRoomIds(roomCache.getFullRoomSet());
+            int joined = membershipReconciler.reconcile(joinableRoomIds, addedUserSet, false);
+            getLogger().debug(".addNewUsersToAllRooms(): [Auto Join New Users to the Older Rooms] roomCount->{}, joined->{}", joinableRoomIds.size(), joined);
         } catch (Exception ex) {
             getLogger().warn(".addNewUsersToAllRooms(): Failure to add New Users to Spaces/Rooms, message->{}, stackTrace->{}", ExceptionUtils.getMessage(ex), ExceptionUtils.getStackTrace(ex));
         }
@@ -128,69 +96,28 @@ public class ITOpsUserTasks {
     public void addAllUsersToRoomSet(Set<MatrixRoom> addedRoomSet){
         getLogger().debug(".addAllUsersToRoomSet(): Entry");
         try {
-            Set<MatrixUser> knownUsers = userCache.getKnownUsers();
-            for (SynapseRoom currentRoom : addedRoomSet) {
-                String currentRoomAlias = currentRoom.getCanonicalAlias();
-                if (StringUtils.isNotEmpty(currentRoomAlias)) {
-                    if (itopsRoomHelpers.isAnITOpsRoom(currentRoomAlias)) {
-                        if (allShouldJoin(currentRoomAlias)) {
-                            getLogger().debug(".addAllUsersToRoomSet(): [Auto Join Users to Added Rooms] Processing Space->{}", currentRoomAlias);
-                            String roomId = currentRoom.getRoomID();
-                            List<String> roomMembers = synapseRoomAPI.getRoomMembers(roomId);
-                            for (MatrixUser currentUser : knownUsers) {
-                                getLogger().debug(".addAllUsersToRoomSet(): RoomId->{}, roomMembers->{}", roomId, roomMembers);
-                                if(roomMembers.contains(currentUser.getName())) {
-                                    getLogger().trace(".addAllUsersToRoomSet(): [Auto Join Users to Added Rooms] User Already Member, not Adding->{}", currentUser.getName());
-                                } else {
-                                    if (currentUser.getName().contentEquals(matrixAccessToken.getUserId()) || currentUser.getName().contentEquals(synapseAccessToken.getUserId())) {
-                                        getLogger().trace(".addAllUsersToRoomSet(): [Auto Join Users to Added Rooms] Not Adding User->{}", currentUser.getName());
-                                    } else {
-                                        getLogger().debug(".addAllUsersToRoomSet(): [Auto Join Users to Added Rooms] Processing User->{}", currentUser.getName());
-                                        synapseRoomAPI.addRoomMember(roomId, currentUser.getName());
-                                    }
-                                }
-                            }
-                        }
-                    }
-                }
-            }
+            Set<String> joinableRoomIds = getAllShouldJoinRoomIds(addedRoomSet);
+            int joined = membershipReconciler.reconcile(joinableRoomIds, userCache.getKnownUsers(), false);
+            getLogger().debug(".addAllUsersToRoomSet(): [Auto Join Users to Added Rooms] roomCount->{}, joined->{}", joinableRoomIds.size(), joined);
         } catch (Exception ex) {
             getLogger().warn(".addAllUsersToRoomSet(): Failure to Add Users to New Spaces/Rooms, message->{}, stackTrace->{}", ExceptionUtils.getMessage(ex), ExceptionUtils.getStackTrace(ex));
         }
     }
 
+    /**
+     * The periodic verification sweep: re-reads the membership of every ITOps room from Synapse (users may have left,
+     * or been removed) and joins whoever is missing. Day-to-day joins are made incrementally by addUsersToAllRooms()
+     * and addAllUsersToRoomSet().
+     */
     public void joinAllUsersToAllRooms(){
         getLogger().debug(".joinAllUsersToAllRooms(): [Auto Join All Users to All Rooms] Start...");
 
         getLogger().debug(".joinAllUsersToAllRooms(): [Auto Join All Users to All Rooms] Starting... more than USER_SYNCHRONISATION_OVERRIDE_PERIOD since last full update");
         try {
-            Set<MatrixRoom> fullRoomSet = roomCache.getFullRoomSet();
-            Set<MatrixUser> fullUserSet = userCache.getKnownUsers();
-            for (MatrixRoom currentRoom : fullRoomSet) {
-                String currentRoomAlias = currentRoom.getCanonicalAlias();
-                if (StringUtils.isNotEmpty(currentRoomAlias)) {
-                    if (itopsRoomHelpers.isAnITOpsRoom(currentRoomAlias)) {
-                        if (allShouldJoin(currentRoomAlias)) {
-                            getLogger().debug(".joinAllUsersToAllRooms(): [Auto Join All Users to All Rooms] Processing Room/Space->{}", currentRoomAlias);
-                            String roomId = currentRoom.getRoomID();
-                            List<String> roomMembers = synapseRoomAPI.getRoomMembers(roomId);
-                            for (MatrixUser currentUser : fullUserSet) {
-                                getLogger().debug(".joinAllUsersToAllRooms(): RoomId->{}, roomMembers->{}", roomId, roomMembers);
-                                if(roomMembers.contains(currentUser.getName())) {
-                                    getLogger().trace(".joinAllUsersToAllRooms(): [Auto Join Users to Added Rooms] User Already Member, not Adding->{}", currentUser.getName());
-                                } else {
-                                    if (currentUser.getName().contentEquals(matrixAccessToken.getUserId()) || currentUser.getName().contentEquals(synapseAccessToken.getUserId())) {
-                                        getLogger().debug(".joinAllUsersToAllRooms(): [Auto Join All Users to All Rooms] Not Adding User->{}", currentUser.getName());
-                                    } else {
-                                        getLogger().debug(".joinAllUsersToAllRooms(): [Auto Join All Users to All Rooms] Processing User->{}", currentUser.getName());
-                                        synapseRoomAPI.addRoomMember(roomId, currentUser.getName());
-                                    }
-                                }
-                            }
-                        }
-                    }
-                }
-            }
+            Set<String> joinableRoomIds = getAllShouldJoinRoomIds(roomCache.getFullRoomSet());
+            membershipCache.retainRooms(joinableRoomIds);
+            int joined = membershipReconciler.reconcile(joinableRoomIds, userCache.getKnownUsers(), true);
+            getLogger().debug(".joinAllUsersToAllRooms(): [Auto Join All Users to All Rooms] roomCount->{}, joined->{}", joinableRoomIds.size(), joined);
         } catch (Exception ex) {
             getLogger().warn(".joinAllUsersToAllRooms(): Failure to add All Users to Spaces/Rooms, message->{}, stackTrace->{}", ExceptionUtils.getMessage(ex), ExceptionUtils.getStackTrace(ex));
         }
@@ -198,39 +125,57 @@ public class ITOpsUserTasks {
         getLogger().debug(".joinAllUsersToAllRooms(): [Auto Join All Users to All Rooms] Finish...");
     }
 
+    protected Set<String> getAllShouldJoinRoomIds(Collection<MatrixRoom> roomSet){
+        Set<String> roomIds = new HashSet<>();
+        if(roomSet == null){
+            return(roomIds);
+        }
+        for (MatrixRoom currentRoom : roomSet) {
+            ITOpsRoomClassification classification = roomCache.getRoomClassification(currentRoom.getRoomID());
+            if(classification == null){
+                classification = ITOpsRoomClassifier.classifyCanonicalAlias(currentRoom.getCanonicalAlias());
+            }
+            if (allShouldJoin(classification)) {
+                roomIds.add(currentRoom.getRoomID());
+            }
+        }
+        return(roomIds);
+    }
+
 
     //
     // Room Membership Requirement Check
     //
 
     public boolean allShouldJoin(String roomAlias){
-        //
-        // Do this check first
-        boolean isSubsystemComponentRom = roomAlias.contains(OAMRoomTypeEnum.OAM_ROOM_TYPE_SUBSYSTEM_COMPONENTS.getAliasPrefix());
-        if(isSubsystemComponentRom) {
-            return (false);
-        }
-        boolean isSubsystemRoom = roomAlias.contains(OAMRoomTypeEnum.OAM_ROOM_TYPE_SUBSYSTEM.getAliasPrefix());
-        boolean isSubsystemSubscriptionRoom = roomAlias.contains(OAMRoomTypeEnum.OAM_ROOM_TYPE_SUBSYSTEM_SUBSCRIPTIONS.getAliasPrefix());
-        boolean isSubsystemTaskRoom = roomAlias.contains(OAMRoomTypeEnum.OAM_ROOM_TYPE_SUBSYSTEM_TASKS.getAliasPrefix());
-        boolean isSubsystemConsoleRoom = roomAlias.contains(OAMRoomTypeEnum.OAM_ROOM_TYPE_SUBSYSTEM_CONSOLE.getAliasPrefix());
-        boolean isSubsystemMetricsRoom = roomAlias.contains(OAMRoomTypeEnum.OAM_ROOM_TYPE_SUBSYSTEM_METRICS.getAliasPrefix());
-        if( isSubsystemRoom || isSubsystemSubscriptionRoom || isSubsystemTaskRoom || isSubsystemConsoleRoom || isSubsystemMetricsRoom){
-            return(true);
+        return(allShouldJoin(ITOpsRoomClassifier.classifyCanonicalAlias(roomAlias)));
+    }
+
+    public boolean allShouldJoin(ITOpsRoomClassification classification){
+        if(classification == null || !classification.isITOpsRoom()){
+            return(false);
         }
-        boolean isEndpointRoom = roomAlias.contains(OAMRoomTypeEnum.OAM_ROOM_TYPE_ENDPOINT.getAliasPrefix());
-        boolean isEndpointTaskRoom = roomAlias.contains(OAMRoomTypeEnum.OAM_ROOM_TYPE_ENDPOINT_TASKS.getAliasPrefix());
-        boolean isEndpointConsoleRoom = roomAlias.contains(OAMRoomTypeEnum.OAM_ROOM_TYPE_ENDPOINT_CONSOLE.getAliasPrefix());
-        boolean isEndpointMetricsRoom = roomAlias.contains(OAMRoomTypeEnum.OAM_ROOM_TYPE_ENDPOINT_METRICS.getAliasPrefix());
-        if(isEndpointRoom || isEndpointTaskRoom || isEndpointConsoleRoom || isEndpointMetricsRoom){
-            boolean isMLLP = roomAlias.contains("mllp");
-            boolean isHTTP = roomAlias.contains("http");
-            boolean isFILE = roomAlias.contains("file");
-            if(isMLLP || isHTTP || isFILE){
+        switch(classification.getRoomType()){
+            case OAM_ROOM_TYPE_SUBSYSTEM:
+            case OAM_ROOM_TYPE_SUBSYSTEM_SUBSCRIPTIONS:
+            case OAM_ROOM_TYPE_SUBSYSTEM_TASKS:
+            case OAM_ROOM_TYPE_SUBSYSTEM_CONSOLE:
+            case OAM_ROOM_TYPE_SUBSYSTEM_METRICS:
                 return(true);
+            case OAM_ROOM_TYPE_ENDPOINT:
+            case OAM_ROOM_TYPE_ENDPOINT_TASKS:
+            case OAM_ROOM_TYPE_ENDPOINT_CONSOLE:
+            case OAM_ROOM_TYPE_ENDPOINT_METRICS: {
+                String endpointName = classification.getFlattenedParticipantName();
+                boolean isMLLP = endpointName.contains("mllp");
+                boolean isHTTP = endpointName.contains("http");
+                boolean isFILE = endpointName.contains("file");
+                return(isMLLP || isHTTP || isFILE);
             }
+            default:
+                // Subsystem component, workshop and work unit processor rooms
+                return(false);
         }
-        return(false);
     }
 
     //
@@ -24,7 +24,6 @@ package net.fhirfactory.pegacorn.itops.im.workshops.oam;
 import net.fhirfactory.pegacorn.communicate.matrix.credentials.MatrixAccessToken;
 import net.fhirfactory.pegacorn.communicate.matrix.methods.MatrixInstantMessageMethods;
 import net.fhirfactory.pegacorn.communicate.matrix.methods.MatrixRoomMethods;
-import net.fhirfactory.pegacorn.communicate.matrix.model.r110.api.common.MAPIResponse;
 import net.fhirfactory.pegacorn.communicate.matrix.model.r110.events.room.message.MRoomTextMessageEvent;
 import net.fhirfactory.pegacorn.core.constants.petasos.PetasosPropertyConstants;
 import net.fhirfactory.pegacorn.core.interfaces.topology.ProcessingPlantInterface;
@@ -32,6 +31,7 @@ import net.fhirfactory.pegacorn.core.model.petasos.oam.notifications.PetasosComp
 import net.fhirfactory.pegacorn.core.model.petasos.oam.notifications.valuesets.PetasosComponentITOpsNotificationTypeEnum;
 import net.fhirfactory.pegacorn.itops.im.valuesets.OAMRoomTypeEnum;
 import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.topologymaps.ITOpsKnownRoomAndSpaceMapDM;
+import net.fhirfactory.pegacorn.itops.im.workshops.issi.common.egress.ITOpsMatrixEgressPipeline;
 import net.fhirfactory.pegacorn.itops.im.workshops.transform.matrixbridge.common.ParticipantRoomIdentityFactory;
 import net.fhirfactory.pegacorn.itops.im.workshops.transform.matrixbridge.notifications.ParticipantNotificationEventFactory;
 import org.apache.commons.lang3.exception.ExceptionUtils;
@@ -71,6 +71,9 @@ public class ITOpsIMConsoleEventLogger {
     @Inject
     private ProcessingPlantInterface processingPlant;
 
+    @Inject
+    private ITOpsMatrixEgressPipeline egressPipeline;
+
     //
     // Constructor(s)
     //
@@ -119,6 +122,10 @@ public class ITOpsIMConsoleEventLogger {
         return(this.processingPlant);
     }
 
+    protected ITOpsMatrixEgressPipeline getEgressPipeline(){
+        return(this.egressPipeline);
+    }
+
     //
     // Business Methods
     //
@@ -143,11 +150,7 @@ public class ITOpsIMConsoleEventLogger {
     protected void logConsoleEvent(PetasosComponentITOpsNotification notification){
         getLogger().debug(".sendConnectivityReport(): Entry, notification->{}", notification);
         try {
-            String roomAlias = getRoomIdentityFactory().buildProcessingPlantRoomPseudoAlias(notification.getParticipantName(), OAMRoomTypeEnum.OAM_ROOM_TYPE_SUBSYSTEM_CONSOLE);
-
-            getLogger().debug(".forwardWUPNotification(): roomAlias for Events->{}", roomAlias);
-
-            String roomIdFromAlias =  getRoomCache().getRoomIdFromPseudoAlias(roomAlias);
+            String roomIdFromAlias = getRoomCache().getRoomIdForParticipant(notification.getParticipantName(), OAMRoomTypeEnum.OAM_ROOM_TYPE_SUBSYSTEM_CONSOLE);
 
             getLogger().debug(".forwardWUPNotification(): roomId for Events->{}", roomIdFromAlias);
 
@@ -155,17 +158,15 @@ public class ITOpsIMConsoleEventLogger {
                 getLogger().debug(".sendConnectivityReport(): [Building MessageEvent] Start");
                 MRoomTextMessageEvent notificationEvent = notificationEventFactory.newNotificationEvent(roomIdFromAlias, notification);
                 getLogger().debug(".sendConnectivityReport(): [Building MessageEvent] Finish");
-                try {
-                    getLogger().debug(".sendConnectivityReport(): [Sending MessageEvent] Start");
-                    MAPIResponse mapiResponse = getMatrixInstantMessageAPI().postTextMessage(roomIdFromAlias, getMatrixAccessToken().getUserId(), notificationEvent);
-                    getLogger().debug(".sendConnectivityReport(): [Sending MessageEvent] mapiResponse->{}", mapiResponse);
-                    getLogger().debug(".sendConnectivityReport(): [Sending MessageEvent] Finish");
-                } catch(Exception ex){
-                    getLogger().warn(".sendConnectivityReport(): Failed to send InstantMessage, message->{}, stackTrace{}", ExceptionUtils.getMessage(ex), ExceptionUtils.getStackTrace(ex));
-                    return;
-                }
+                getLogger().debug(".sendConnectivityReport(): [Submitting MessageEvent] Start");
+                getEgressPipeline().submit(roomIdFromAlias, notificationEvent).whenComplete((mapiResponse, failure) -> {
+                    if(failure != null){
+                        getLogger().warn(".sendConnectivityReport(): Failed to send InstantMessage, message->{}", ExceptionUtils.getMessage(failure));
+                    }
+                });
+                getLogger().debug(".sendConnectivityReport(): [Submitting MessageEvent] Finish");
             } else {
-                getLogger().warn(".sendConnectivityReport(): No room to forward work unit processor notifications into (ProcessingPlant->{}), ITOps Room Pseudo Alias ->{}", notification.getParticipantName(), roomAlias);
+                getLogger().warn(".sendConnectivityReport(): No room to forward work unit processor notifications into (ProcessingPlant->{}), ITOps Room Pseudo Alias ->{}", notification.getParticipantName(), getRoomIdentityFactory().buildOAMRoomPseudoAlias(notification.getParticipantName(), OAMRoomTypeEnum.OAM_ROOM_TYPE_SUBSYSTEM_CONSOLE));
                 // TODO either re-queue or send to DeadLetter
                 return;
             }
@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.workshops.oam;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+@ApplicationScoped
+public class ITOpsIMIngestMetricsAgent {
+    private static final Logger LOG = LoggerFactory.getLogger(ITOpsIMIngestMetricsAgent.class);
+
+    private AtomicLong metricSetDeltaCaptureCount;
+    private AtomicLong metricSetDeltaResynchronisationCount;
+    private AtomicLong metricSetBaselineCaptureCount;
+    private AtomicLong estimatedBytesSaved;
+    private AtomicLong ingestEnqueuedCount;
+    private AtomicLong ingestOverflowCount;
+    private AtomicLong ingestRejectedCount;
+    private AtomicLong ingestAppliedCount;
+    private AtomicLong ingestFailureCount;
+    private AtomicLong cumulativeIngestLatencyNanos;
+    private AtomicLong maximumIngestLatencyNanos;
+    private AtomicLong cumulativeApplyDurationNanos;
+    private AtomicInteger ingestQueueDepth;
+
+    //
+    // Constructor(s)
+    //
+
+    public ITOpsIMIngestMetricsAgent(){
+        this.metricSetDeltaCaptureCount = new AtomicLong(0);
+        this.metricSetDeltaResynchronisationCount = new AtomicLong(0);
+        this.metricSetBaselineCaptureCount = new AtomicLong(0);
+        this.estimatedBytesSaved = new AtomicLong(0);
+        this.ingestEnqueuedCount = new AtomicLong(0);
+        this.ingestOverflowCount = new AtomicLong(0);
+        this.ingestRejectedCount = new AtomicLong(0);
+        this.ingestAppliedCount = new AtomicLong(0);
+        this.ingestFailureCount = new AtomicLong(0);
+        this.cumulativeIngestLatencyNanos = new AtomicLong(0);
+        this.maximumIngestLatencyNanos = new AtomicLong(0);
+        this.cumulativeApplyDurationNanos = new AtomicLong(0);
+        this.ingestQueueDepth = new AtomicInteger(0);
+    }
+
+    //
+    // Getters (and Setters)
+    //
+
+    protected Logger getLogger(){
+        return(LOG);
+    }
+
+    public long getMetricSetDeltaCaptureCount() {
+        return metricSetDeltaCaptureCount.get();
+    }
+
+    public long getMetricSetDeltaResynchronisationCount() {
+        return metricSetDeltaResynchronisationCount.get();
+    }
+
+    public long getMetricSetBaselineCaptureCount() {
+        return metricSetBaselineCaptureCount.get();
+    }
+
+    public long getEstimatedBytesSaved() {
+        return estimatedBytesSaved.get();
+    }
+
+    public long getIngestEnqueuedCount() {
+        return ingestEnqueuedCount.get();
+    }
+
+    public long getIngestOverflowCount() {
+        return ingestOverflowCount.get();
+    }
+
+    public long getIngestRejectedCount() {
+        return ingestRejectedCount.get();
+    }
+
+    public long getIngestAppliedCount() {
+        return ingestAppliedCount.get();
+    }
+
+    public long getIngestFailureCount() {
+        return ingestFailureCount.get();
+    }
+
+    public int getIngestQueueDepth() {
+        return ingestQueueDepth.get();
+    }
+
+    public void setIngestQueueDepth(int depth) {
+        ingestQueueDepth.set(depth);
+    }
+
+    public double getAverageIngestLatencyMillis(){
+        long appliedCount = ingestAppliedCount.get();
+        if(appliedCount == 0){
+            return(0.0d);
+        }
+        return((cumulativeIngestLatencyNanos.get() / (double)appliedCount) / 1000000.0d);
+    }
+
+    public double getMaximumIngestLatencyMillis(){
+        return(maximumIngestLatencyNanos.get() / 1000000.0d);
+    }
+
+    public double getAverageApplyDurationMillis(){
+        long appliedCount = ingestAppliedCount.get();
+        if(appliedCount == 0){
+            return(0.0d);
+        }
+        return((cumulativeApplyDurationNanos.get() / (double)appliedCount) / 1000000.0d);
+    }
+
+    //
+    // Business Methods
+    //
+
+    public void incrementMetricSetDeltaCaptureCount(){
+        metricSetDeltaCaptureCount.incrementAndGet();
+    }
+
+    public void incrementMetricSetDeltaResynchronisationCount(){
+        metricSetDeltaResynchronisationCount.incrementAndGet();
+    }
+
+    public void incrementMetricSetBaselineCaptureCount(){
+        metricSetBaselineCaptureCount.incrementAndGet();
+    }
+
+    public void addEstimatedBytesSaved(long bytesSaved){
+        if(bytesSaved > 0){
+            estimatedBytesSaved.addAndGet(bytesSaved);
+        }
+    }
+
+    public void incrementIngestEnqueuedCount(){
+        ingestEnqueuedCount.incrementAndGet();
+    }
+
+    public void incrementIngestOverflowCount(){
+        ingestOverflowCount.incrementAndGet();
+    }
+
+    public void incrementIngestRejectedCount(){
+        ingestRejectedCount.incrementAndGet();
+    }
+
+    public void incrementIngestFailureCount(){
+        ingestFailureCount.incrementAndGet();
+    }
+
+    public void recordIngestApplied(long ingestLatencyNanos, long applyDurationNanos){
+        ingestAppliedCount.incrementAndGet();
+        cumulativeIngestLatencyNanos.addAndGet(ingestLatencyNanos);
+        cumulativeApplyDurationNanos.addAndGet(applyDurationNanos);
+        maximumIngestLatencyNanos.accumulateAndGet(ingestLatencyNanos, Math::max);
+    }
+
+    //
+    // To String
+    //
+
+    @Override
+    public String toString() {
+        return "ITOpsIMIngestMetricsAgent{" +
+                "metricSetDeltaCaptureCount=" + metricSetDeltaCaptureCount +
+                ", metricSetDeltaResynchronisationCount=" + metricSetDeltaResynchronisationCount +
+                ", metricSetBaselineCaptureCount=" + metricSetBaselineCaptureCount +
+                ", estimatedBytesSaved=" + estimatedBytesSaved +
+                ", ingestEnqueuedCount=" + ingestEnqueuedCount +
+                ", ingestOverflowCount=" + ingestOverflowCount +
+                ", ingestRejectedCount=" + ingestRejectedCount +
+                ", ingestAppliedCount=" + ingestAppliedCount +
+                ", ingestFailureCount=" + ingestFailureCount +
+                ", ingestQueueDepth=" + ingestQueueDepth +
+                ", averageIngestLatencyMillis=" + getAverageIngestLatencyMillis() +
+                ", maximumIngestLatencyMillis=" + getMaximumIngestLatencyMillis() +
+                ", averageApplyDurationMillis=" + getAverageApplyDurationMillis() +
+                '}';
+    }
+}
@@ -26,13 +26,22 @@ import net.fhirfactory.pegacorn.core.model.petasos.oam.metrics.reporting.Petasos
 import net.fhirfactory.pegacorn.core.model.petasos.oam.metrics.reporting.PetasosComponentMetricSet;
 import net.fhirfactory.pegacorn.core.model.petasos.oam.metrics.reporting.datatypes.PetasosComponentMetricValue;
 import net.fhirfactory.pegacorn.itops.im.datatypes.MetricsReportContentBase;
+import net.fhirfactory.pegacorn.itops.im.workshops.datagrid.metrics.CompactMetricValueCodec;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 
-import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 
 public abstract class DefaultMetricsReportContentBodyFactory {
+    protected static final String NOT_SPECIFIED = "Not Specified";
+
+    private static final ReportTemplate METRIC_REPORT_TEXT_HEADER = ReportTemplate.text("Processing Plant Metric Report ({}) \n");
+    private static final ReportTemplate METRIC_REPORT_TEXT_ROW = ReportTemplate.text("{}:{}:{}:{}\n");
+    private static final ReportTemplate METRIC_REPORT_HTML_HEADER = ReportTemplate.html("<b> Processing Plant Metric Report ({}) </b> \n" +
+            "<table style='width:100%'><tr><th>Metric Name</th><th>Metric Type</th><th>Metric Unit</th><th>Metric Value</th></tr>");
+    private static final ReportTemplate METRIC_REPORT_HTML_ROW = ReportTemplate.html("<tr><td>{}</td><td>{}</td><td>{}</td><td>{}</td></tr>");
+    private static final ReportTemplate METRIC_REPORT_HTML_FOOTER = ReportTemplate.html("</table>");
 
     private DateTimeFormatter timeFormatter;
 
@@ -58,65 +67,52 @@ public abstract class DefaultMetricsReportContentBodyFactory {
     // Business Methods
     //
 
+    /**
+     * Renders straight from the published (immutable) metric set, there is no intermediate encoding to build. Metrics
+     * without a name are skipped rather than rendered as "null".
+     */
     public MetricsReportContentBase newDefaultMetricsContentReport(PetasosComponentMetricSet metricSet) {
         if (metricSet == null) {
             return (null);
         }
 
-        String metricTimestamp = timeFormatter.format(metricSet.getReportingInstant());
+        String metricTimestamp = NOT_SPECIFIED;
         if (metricSet.getReportingInstant() != null) {
             metricTimestamp = getTimeFormatter().format(metricSet.getReportingInstant());
         }
-        if (metricTimestamp == null) {
-            metricTimestamp = "Not Specified";
-        }
 
-        StringBuilder unformattedTextBuilder = new StringBuilder();
-        StringBuilder formattedTextBuilder = new StringBuilder();
-
-        unformattedTextBuilder.append("Processing Plant Metric Report (" + metricTimestamp + ") \n");
-
-        formattedTextBuilder.append("<b> Processing Plant Metric Report (" + metricTimestamp + ") </b> \n");
-        formattedTextBuilder.append("<table style='width:100%'>");
-        formattedTextBuilder.append("<tr>");
-        formattedTextBuilder.append("<th>Metric Name</th>");
-        formattedTextBuilder.append("<th>Metric Type</th>");
-        formattedTextBuilder.append("<th>Metric Unit</th>");
-        formattedTextBuilder.append("<th>Metric Value</th>");
-        formattedTextBuilder.append("</tr>");
-
-        for (PetasosComponentMetric currentMetric : metricSet.getMetrics().values()) {
-            String metricName = currentMetric.getMetricName();
-            String metricType = null;
-            if (currentMetric.hasMetricType()) {
-                metricType = currentMetric.getMetricType().getDisplayName();
-            } else {
-                metricType = "Not Specified";
+        ReportRenderContext renderContext = ReportRenderContext.acquire();
+        try {
+            renderContext.text(METRIC_REPORT_TEXT_HEADER, metricTimestamp);
+            renderContext.html(METRIC_REPORT_HTML_HEADER, metricTimestamp);
+            if (metricSet.getMetrics() != null) {
+                for (PetasosComponentMetric currentMetric : metricSet.getMetrics().values()) {
+                    if (currentMetric == null || StringUtils.isEmpty(currentMetric.getMetricName())) {
+                        continue;
+                    }
+                    String metricName = currentMetric.getMetricName();
+                    String metricType = NOT_SPECIFIED;
+                    if (currentMetric.hasMetricType()) {
+                        metricType = currentMetric.getMetricType().getDisplayName();
+                    }
+                    String metricUnit = NOT_SPECIFIED;
+                    if (currentMetric.hasMetricUnit()) {
+                        metricUnit = currentMetric.getMetricUnit().getDisplayName();
+                    }
+                    String metricValue = getMetricValueAsString(currentMetric.getMetricValue());
+                    renderContext.text(METRIC_REPORT_TEXT_ROW, metricName, metricType, metricUnit, metricValue);
+                    renderContext.html(METRIC_REPORT_HTML_ROW, metricName, metricType, metricUnit, metricValue);
+                }
             }
-            String metricUnit = null;
-            if (currentMetric.hasMetricUnit()) {
-                metricUnit = currentMetric.getMetricUnit().getDisplayName();
-            } else {
-                metricUnit = "Not Specified";
-            }
-
-            String metricValue = getMetricValueAsString(currentMetric.getMetricValue());
-
-            unformattedTextBuilder.append(metricName + ":" + metricType + ":" + metricUnit + ":" + metricValue + "\n");
-
-            formattedTextBuilder.append("<tr>");
-            formattedTextBuilder.append("<td>" + metricName + "</td>");
-            formattedTextBuilder.append("<td>" + metricType + "</td>");
-            formattedTextBuilder.append("<td>" + metricUnit + "</td>");
-            formattedTextBuilder.append("<td>" + metricValue + "</td>");
-            formattedTextBuilder.append("</tr>");
+            renderContext.html(METRIC_REPORT_HTML_FOOTER);
+
+            MetricsReportContentBase outputContent = new MetricsReportContentBase();
+            outputContent.setHtmlText(renderContext.getHtml());
+            outputContent.setUnformatedText(renderContext.getText());
+            return(outputContent);
+        } finally {
+            renderContext.release();
         }
-        formattedTextBuilder.append("</table>");
-
-        MetricsReportContentBase outputContent = new MetricsReportContentBase();
-        outputContent.setHtmlText(formattedTextBuilder.toString());
-        outputContent.setUnformatedText(unformattedTextBuilder.toString());
-        return(outputContent);
     }
 
     //
@@ -124,41 +120,6 @@ public abstract class DefaultMetricsReportContentBodyFactory {
     //
 
     protected String getMetricValueAsString(PetasosComponentMetricValue metricValue){
-        if(metricValue == null){
-            return("-");
-        }
-        if(metricValue.getObjectType().equals(String.class)){
-            return(metricValue.getStringValue());
-        }
-        if(metricValue.getObjectType().equals(Long.class)){
-            Long value = metricValue.getLongValue();
-            String valueAsString = value.toString();
-            return(valueAsString);
-        }
-        if(metricValue.getObjectType().equals(Boolean.class)){
-            Boolean value = metricValue.getBooleanValue();
-            return(value.toString());
-        }
-        if(metricValue.getObjectType().equals(Integer.class)){
-            Integer value = metricValue.getIntegerValue();
-            String valueAsString = value.toString();
-            return(valueAsString);
-        }
-        if(metricValue.getObjectType().equals(Instant.class)){
-//            String value = metricValue.getInstantValue().toString();
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd hh:mm:ss").withZone(ZoneId.of(PetasosPropertyConstants.DEFAULT_TIMEZONE));
-//            DateTimeFormatter formatter = DateTimeFormatter.ISO_INSTANT.withZone(ZoneId.of(PetasosPropertyConstants.DEFAULT_TIMEZONE));
-            String value = formatter.format(metricValue.getInstantValue());
-            return(value);
-        }
-        if (metricValue.getObjectType().equals(Double.class)) {
-            String value = metricValue.getDoubleValue().toString();
-            return(value);
-        }
-        if(metricValue.getObjectType().equals(Float.class)){
-            String value = metricValue.getFloatValue().toString();
-            return(value);
-        }
-        return(metricValue.getObject().toString());
+        return(CompactMetricValueCodec.formatValue(metricValue));
     }
 }
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.workshops.transform.matrixbridge.common;
+
+/**
+ * The per-thread pair of text/HTML buffers reports are rendered into, so rendering a report does not grow (and then
+ * discard) a fresh pair of StringBuilders each time. A context is acquired, rendered into, and released in a finally
+ * block; a nested acquire on the same thread gets a throw-away context rather than clobbering the one in use.
+ */
+public final class ReportRenderContext {
+    private static final int INITIAL_BUFFER_CAPACITY = 2048;
+    private static final int MAXIMUM_RETAINED_CAPACITY = 65536;
+    private static final ThreadLocal<ReportRenderContext> THREAD_CONTEXT = ThreadLocal.withInitial(() -> new ReportRenderContext(true));
+
+    private final boolean threadBound;
+    private StringBuilder textBuffer;
+    private StringBuilder htmlBuffer;
+    private boolean inUse;
+
+    //
+    // Constructor(s)
+    //
+
+    private ReportRenderContext(boolean threadBound){
+        this.threadBound = threadBound;
+        this.textBuffer = new StringBuilder(INITIAL_BUFFER_CAPACITY);
+        this.htmlBuffer = new StringBuilder(INITIAL_BUFFER_CAPACITY);
+        this.inUse = false;
+    }
+
+    public static ReportRenderContext acquire(){
+        ReportRenderContext context = THREAD_CONTEXT.get();
+        if(context.inUse){
+            context = new ReportRenderContext(false);
+        }
+        context.inUse = true;
+        context.textBuffer.setLength(0);
+        context.htmlBuffer.setLength(0);
+        return(context);
+    }
+
+    //
+    // Getters
+    //
+
+    public StringBuilder getTextBuffer(){
+        return(textBuffer);
+    }
+
+    public StringBuilder getHtmlBuffer(){
+        return(htmlBuffer);
+    }
+
+    //
+    // Business Methods
+    //
+
+    public ReportRenderContext text(ReportTemplate template, String... values){
+        template.render(textBuffer, values);
+        return(this);
+    }
+
+    public ReportRenderContext html(ReportTemplate template, String... values){
+        template.render(htmlBuffer, values);
+        return(this);
+    }
+
+    public String getText(){
+        return(textBuffer.toString());
+    }
+
+    public String getHtml(){
+        return(htmlBuffer.toString());
+    }
+
+    public void release(){
+        if(!threadBound){
+            return;
+        }
+        // Don't let one outsized report pin a large buffer to the thread for good
+        if(textBuffer.capacity() > MAXIMUM_RETAINED_CAPACITY){
+            textBuffer = new StringBuilder(INITIAL_BUFFER_CAPACITY);
+        }
+        if(htmlBuffer.capacity() > MAXIMUM_RETAINED_CAPACITY){
+            htmlBuffer = new StringBuilder(INITIAL_BUFFER_CAPACITY);
+        }
+        inUse = false;
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2022 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.itops.im.workshops.transform.matrixbridge.common;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A report fragment compiled once from a pattern with SLF4J style "{}" slots. The static text between the slots is
+ * split out at compile time and written as-is: it is the template's own markup, so anything spliced into a pattern
+ * (enum display names etc.) must be escaped with escapeHtml() or escapeText() when the pattern is built. Slot values
+ * are escaped for the target format as they are appended: HTML templates (formatted_body) escape markup characters,
+ * text templates (body) backslash-escape Markdown punctuation and flatten line breaks and control characters, so a
+ * value can neither be rendered as markup nor break the line layout of the plain-text body.
+ */
+public final class ReportTemplate {
+    public static final String SLOT = "{}";
+    public static final String EMPTY_SLOT_VALUE = "-";
+
+    private final String[] fragments;
+    private final boolean html;
+
+    //
+    // Constructor(s)
+    //
+
+    private ReportTemplate(String[] fragments, boolean html){
+        this.fragments = fragments;
+        this.html = html;
+    }
+
+    public static ReportTemplate html(String pattern){
+        return(new ReportTemplate(split(pattern), true));
+    }
+
+    public static ReportTemplate text(String pattern){
+        return(new ReportTemplate(split(pattern), false));
+    }
+
+    //
+    // Getters
+    //
+
+    public int getSlotCount(){
+        return(fragments.length - 1);
+    }
+
+    public boolean isHtml(){
+        return(html);
+    }
+
+    //
+    // Business Methods
+    //
+
+    public StringBuilder render(StringBuilder buffer, String... values){
+        int slotCount = fragments.length - 1;
+        for(int slot = 0; slot < slotCount; slot += 1){
+            buffer.append(fragments[slot]);
+            String value = null;
+            if(values != null && slot < values.length){
+                value = values[slot];
+            }
+            if(value == null){
+                buffer.append(EMPTY_SLOT_VALUE);
+            } else if(html){
+                appendEscapedHtml(buffer, value);
+            } else {
+                appendEscapedText(buffer, value);
+            }
+        }
+        buffer.append(fragments[slotCount]);
+        return(buffer);
+    }
+
+    //
+    // Escaping
+    //
+
+    public static String escapeHtml(String value){
+        if(value == null || indexOfHtmlSpecial(value) < 0){
+            return(value);
+        }
+        StringBuilder escaped = new StringBuilder(value.length() + 16);
+        appendEscapedHtml(escaped, value);
+        return(escaped.toString());
+    }
+
+    public static void appendEscapedHtml(StringBuilder buffer, String value){
+        int start = indexOfHtmlSpecial(value);
+        if(start < 0){
+            buffer.append(value);
+            return;
+        }
+        buffer.append(value, 0, start);
+        for(int index = start; index < value.length(); index += 1){
+            char character = value.charAt(index);
+            switch(character){
+                case '&':
+                    buffer.append("&amp;");
+                    break;
+                case '<':
+                    buffer.append("&lt;");
+                    break;
+                case '>':
+                    buffer.append("&gt;");
+                    break;
+                case '"':
+                    buffer.append("&quot;");
+                    break;
+                case '\'':
+                    buffer.append("&#39;");
+                    break;
+                default:
+                    buffer.append(character);
+            }
+        }
+    }
+
+    public static String escapeText(String value){
+        if(value == null || indexOfTextSpecial(value) < 0){
+            return(value);
+        }
+        StringBuilder escaped = new StringBuilder(value.length() + 16);
+        appendEscapedText(escaped, value);
+        return(escaped.toString());
+    }
+
+    public static void appendEscapedText(StringBuilder buffer, String value){
+        int start = indexOfTextSpecial(value);
+        if(start < 0){
+            buffer.append(value);
+            return;
+        }
+        buffer.append(value, 0, start);
+        for(int index = start; index < value.length(); index += 1){
+            char character = value.charAt(index);
+            if(Character.isISOControl(character)){
+                buffer.append(' ');
+            } else if(isMarkdownSpecial(character)){
+                buffer.append('\\').append(character);
+            } else {
+                buffer.append(character);
+            }
+        }
+    }
+
+    //
+    // Helpers
+    //
+
+    private static String[] split(String pattern){
+        List<String> fragments = new ArrayList<>();
+        int position = 0;
+        int slotPosition;
+        while((slotPosition = pattern.indexOf(SLOT, position)) >= 0){
+            fragments.add(pattern.substring(position, slotPosition));
+            position = slotPosition + SLOT.length();
+        }
+        fragments.add(pattern.substring(position));
+        return(fragments.toArray(new String[0]));
+    }
+
+    private static int indexOfHtmlSpecial(String value){
+        for(int index = 0; index < value.length(); index += 1){
+            switch(value.charAt(index)){
+                case '&':
+                case '<':
+                case '>':
+                case '"':
+                case '\'':
+                    return(index);
+                default:
+            }
+        }
+        return(-1);
+    }
+
+    private static int indexOfTextSpecial(String value){
+        for(int index = 0; index < value.length(); index += 1){
+            char character = value.charAt(index);
+            if(Character.isISOControl(character) || isMarkdownSpecial(character)){
+                return(index);
+            }
+        }
+        return(-1);
+    }
+
+    private static boolean isMarkdownSpecial(char character){
+        switch(character){
+            case '\\':
+            case '`':
+            case '*':
+            case '_':
+            case '~':
+            case '[':
+            case ']':
+            case '<':
+            case '>':
+            case '#':
+            case '|':
+                return(true);
+            default:
+                return(false);
+        }
+    }
+}
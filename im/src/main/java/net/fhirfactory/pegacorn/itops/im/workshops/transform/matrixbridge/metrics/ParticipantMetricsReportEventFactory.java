@@ -31,8 +31,12 @@ import net.fhirfactory.pegacorn.core.model.petasos.oam.metrics.reporting.Petasos
 import net.fhirfactory.pegacorn.core.model.petasos.oam.metrics.reporting.PetasosComponentMetricSet;
 import net.fhirfactory.pegacorn.core.model.petasos.oam.metrics.reporting.valuesets.PetasosComponentMetricTypeEnum;
 import net.fhirfactory.pegacorn.core.model.petasos.oam.topology.valuesets.PetasosMonitoredComponentTypeEnum;
+import net.fhirfactory.pegacorn.itops.im.datatypes.MEventRelation;
+import net.fhirfactory.pegacorn.itops.im.datatypes.MReplaceTextContentType;
 import net.fhirfactory.pegacorn.itops.im.datatypes.MetricsReportContentBase;
 import net.fhirfactory.pegacorn.itops.im.workshops.transform.matrixbridge.common.DefaultMetricsReportContentBodyFactory;
+import net.fhirfactory.pegacorn.itops.im.workshops.transform.matrixbridge.common.ReportRenderContext;
+import net.fhirfactory.pegacorn.itops.im.workshops.transform.matrixbridge.common.ReportTemplate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -47,6 +51,39 @@ import java.util.List;
 public class ParticipantMetricsReportEventFactory extends DefaultMetricsReportContentBodyFactory {
     private static final Logger LOG = LoggerFactory.getLogger(ParticipantMetricsReportEventFactory.class);
 
+    private static final ReportTemplate TASK_DURATION_TEXT = ReportTemplate.text(
+            "--- Task Processing Duration ---\n" +
+            textLine(PetasosComponentMetricTypeEnum.LAST_TASK_PROCESSING_TIME) +
+            textLine(PetasosComponentMetricTypeEnum.ROLLING_TASK_PROCESSING_TIME) +
+            textLine(PetasosComponentMetricTypeEnum.CUMULATIVE_TASK_PROCESSING_TIME) +
+            "--------------------------------\n");
+    private static final ReportTemplate TASK_DURATION_HTML = ReportTemplate.html(
+            "<hr width=50%><b>Work Unit Processor Task Processing Durations ({})</b>" +
+            "<table style='width:100%'><tr>" +
+            headerCell(PetasosComponentMetricTypeEnum.LAST_TASK_PROCESSING_TIME) +
+            headerCell(PetasosComponentMetricTypeEnum.ROLLING_TASK_PROCESSING_TIME) +
+            headerCell(PetasosComponentMetricTypeEnum.CUMULATIVE_TASK_PROCESSING_TIME) +
+            "</tr><tr><td>{}</td><td>{}</td><td>{}</td></tr></table>");
+    private static final ReportTemplate TASK_COUNT_TEXT = ReportTemplate.text(
+            "--- Task Processing Counts ---\n" +
+            textLine(PetasosComponentMetricTypeEnum.REGISTERED_TASK_COUNT) +
+            textLine(PetasosComponentMetricTypeEnum.STARTED_TASK_COUNT) +
+            textLine(PetasosComponentMetricTypeEnum.FINISHED_TASK_COUNT) +
+            textLine(PetasosComponentMetricTypeEnum.FINALISED_TASK_COUNT) +
+            textLine(PetasosComponentMetricTypeEnum.CANCELLED_TASK_COUNT) +
+            textLine(PetasosComponentMetricTypeEnum.FAILED_TASK_COUNT) +
+            "------------------------------\n");
+    private static final ReportTemplate TASK_COUNT_HTML = ReportTemplate.html(
+            "<b>Work Unit Processor Task Counters ({})</b>" +
+            "<table style='width:100%'><tr align=center>" +
+            headerCell(PetasosComponentMetricTypeEnum.REGISTERED_TASK_COUNT) +
+            headerCell(PetasosComponentMetricTypeEnum.STARTED_TASK_COUNT) +
+            headerCell(PetasosComponentMetricTypeEnum.FINISHED_TASK_COUNT) +
+            headerCell(PetasosComponentMetricTypeEnum.FINALISED_TASK_COUNT) +
+            headerCell(PetasosComponentMetricTypeEnum.FAILED_TASK_COUNT) +
+            headerCell(PetasosComponentMetricTypeEnum.CANCELLED_TASK_COUNT) +
+            "</tr><tr align=center><td>{}</td><td>{}</td><td>{}</td><td>{}</td><td>{}</td><td>{}</td></tr></table>");
+
     private DateTimeFormatter timeFormatter;
 
     @Inject
@@ -63,6 +100,14 @@ public class ParticipantMetricsReportEventFactory extends DefaultMetricsReportCo
         timeFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd hh:mm:ss.SSS").withZone(ZoneId.of(PetasosPropertyConstants.DEFAULT_TIMEZONE));
     }
 
+    private static String textLine(PetasosComponentMetricTypeEnum metricType){
+        return(ReportTemplate.escapeText(metricType.getDisplayName()) + " --> {}\n");
+    }
+
+    private static String headerCell(PetasosComponentMetricTypeEnum metricType){
+        return("<th>" + ReportTemplate.escapeHtml(metricType.getDisplayName()) + "</th>");
+    }
+
     //
     // Business Methods
     //
@@ -147,7 +192,7 @@ public class ParticipantMetricsReportEventFactory extends DefaultMetricsReportCo
                 metricsEventList.add(durationEvent);
             }
             MRoomTextMessageEvent taskCountEvent = newTaskCountMetricReport(roomId, metricSet);
-            if(durationEvent != null){
+            if(taskCountEvent != null){
                 metricsEventList.add(taskCountEvent);
             }
         }
@@ -187,37 +232,15 @@ public class ParticipantMetricsReportEventFactory extends DefaultMetricsReportCo
             cumulativeAverageProcessingTime = getMetricValueAsString(cumulativeAverageProcessingTimeMetric.getMetricValue());
         }
 
-        StringBuilder metricTextBodyBuilder = new StringBuilder();
-        metricTextBodyBuilder.append("--- Task Processing Duration ---");
-        metricTextBodyBuilder.append(PetasosComponentMetricTypeEnum.LAST_TASK_PROCESSING_TIME.getDisplayName() + " --> "+lastTaskProcessingTime);
-        metricTextBodyBuilder.append(PetasosComponentMetricTypeEnum.ROLLING_TASK_PROCESSING_TIME.getDisplayName() + " --> "+rollingAverageProcessing);
-        metricTextBodyBuilder.append(PetasosComponentMetricTypeEnum.CUMULATIVE_TASK_PROCESSING_TIME.getDisplayName() + " --> "+cumulativeAverageProcessingTime);
-        metricTextBodyBuilder.append("--------------------------------");
-
-        StringBuilder metricFormattedTextBodyBuilder = new StringBuilder();
-        metricFormattedTextBodyBuilder.append("<hr width=50%>");
-        metricFormattedTextBodyBuilder.append("<b>Work Unit Processor Task Processing Durations ("+timeFormatter.format(metricSet.getReportingInstant())+")</b>");
-        metricFormattedTextBodyBuilder.append("<table style='width:100%'>");
-        metricFormattedTextBodyBuilder.append("<tr>");
-        metricFormattedTextBodyBuilder.append("<th>"+PetasosComponentMetricTypeEnum.LAST_TASK_PROCESSING_TIME.getDisplayName()+"</th>");
-        metricFormattedTextBodyBuilder.append("<th>"+PetasosComponentMetricTypeEnum.ROLLING_TASK_PROCESSING_TIME.getDisplayName()+"</th>");
-        metricFormattedTextBodyBuilder.append("<th>"+PetasosComponentMetricTypeEnum.CUMULATIVE_TASK_PROCESSING_TIME.getDisplayName()+"</th>");
-        metricFormattedTextBodyBuilder.append("</tr>");
-
-        metricFormattedTextBodyBuilder.append("<tr>");
-        metricFormattedTextBodyBuilder.append("<td>"+lastTaskProcessingTime+"</td>");
-        metricFormattedTextBodyBuilder.append("<td>"+rollingAverageProcessing+"</td>");
-        metricFormattedTextBodyBuilder.append("<td>"+cumulativeAverageProcessingTime+"</td>");
-        metricFormattedTextBodyBuilder.append("</tr>");
-        metricFormattedTextBodyBuilder.append("</table>");
-
-        MTextContentType textContent = new MTextContentType();
-        textContent.setBody(metricTextBodyBuilder.toString());
-        textContent.setFormattedBody(metricFormattedTextBodyBuilder.toString());
-        textContent.setMessageType(MRoomMessageTypeEnum.TEXT.getMsgtype());
-        textContent.setFormat("org.matrix.custom.html");
-
-        currentMetricEvent.setContent(textContent);
+        String reportingInstant = formatReportingInstant(metricSet);
+        ReportRenderContext renderContext = ReportRenderContext.acquire();
+        try {
+            renderContext.text(TASK_DURATION_TEXT, lastTaskProcessingTime, rollingAverageProcessing, cumulativeAverageProcessingTime);
+            renderContext.html(TASK_DURATION_HTML, reportingInstant, lastTaskProcessingTime, rollingAverageProcessing, cumulativeAverageProcessingTime);
+            currentMetricEvent.setContent(newFormattedTextContent(renderContext));
+        } finally {
+            renderContext.release();
+        }
 
         return(currentMetricEvent);
     }
@@ -240,7 +263,7 @@ public class ParticipantMetricsReportEventFactory extends DefaultMetricsReportCo
         PetasosComponentMetric finishedCountMetric = metricSet.getMetric(PetasosComponentMetricTypeEnum.FINISHED_TASK_COUNT.getDisplayName());
         PetasosComponentMetric failedCountMetric = metricSet.getMetric(PetasosComponentMetricTypeEnum.FAILED_TASK_COUNT.getDisplayName());
         PetasosComponentMetric finalisedCountMetric = metricSet.getMetric(PetasosComponentMetricTypeEnum.FINALISED_TASK_COUNT.getDisplayName());
-        PetasosComponentMetric cancelledCountMetric = metricSet.getMetric(PetasosComponentMetricTypeEnum.FINALISED_TASK_COUNT.getDisplayName());
+        PetasosComponentMetric cancelledCountMetric = metricSet.getMetric(PetasosComponentMetricTypeEnum.CANCELLED_TASK_COUNT.getDisplayName());
 
         String registrationCount = "-";
         if(registrationCountMetric != null){
@@ -267,48 +290,79 @@ public class ParticipantMetricsReportEventFactory extends DefaultMetricsReportCo
             cancelledCount = getMetricValueAsString(cancelledCountMetric.getMetricValue());
         }
 
-        StringBuilder metricTextBodyBuilder = new StringBuilder();
-        metricTextBodyBuilder.append("--- Task Processing Counts ---");
-        metricTextBodyBuilder.append(PetasosComponentMetricTypeEnum.REGISTERED_TASK_COUNT.getDisplayName() + " --> "+registrationCount);
-        metricTextBodyBuilder.append(PetasosComponentMetricTypeEnum.STARTED_TASK_COUNT.getDisplayName() + " --> "+startedCount);
-        metricTextBodyBuilder.append(PetasosComponentMetricTypeEnum.FINISHED_TASK_COUNT.getDisplayName() + " --> "+finishedCount);
-        metricTextBodyBuilder.append(PetasosComponentMetricTypeEnum.FINALISED_TASK_COUNT.getDisplayName() + " --> "+finalisedCount);
-        metricTextBodyBuilder.append(PetasosComponentMetricTypeEnum.CANCELLED_TASK_COUNT.getDisplayName() + " --> "+cancelledCount);
-        metricTextBodyBuilder.append(PetasosComponentMetricTypeEnum.FAILED_TASK_COUNT.getDisplayName() + " --> "+failedCount);
-        metricTextBodyBuilder.append("------------------------------");
-
-
-        StringBuilder metricFormattedTextBodyBuilder = new StringBuilder();
-        metricFormattedTextBodyBuilder.append("<b>Work Unit Processor Task Counters ("+timeFormatter.format(metricSet.getReportingInstant())+")</b>");
-        metricFormattedTextBodyBuilder.append("<table style='width:100%'>");
-        metricFormattedTextBodyBuilder.append("<tr align=center>");
-        metricFormattedTextBodyBuilder.append("<th>"+PetasosComponentMetricTypeEnum.REGISTERED_TASK_COUNT.getDisplayName()+"</th>");
-        metricFormattedTextBodyBuilder.append("<th>"+PetasosComponentMetricTypeEnum.STARTED_TASK_COUNT.getDisplayName()+"</th>");
-        metricFormattedTextBodyBuilder.append("<th>"+PetasosComponentMetricTypeEnum.FINISHED_TASK_COUNT.getDisplayName()+"</th>");
-        metricFormattedTextBodyBuilder.append("<th>"+PetasosComponentMetricTypeEnum.FINALISED_TASK_COUNT.getDisplayName()+"</th>");
-        metricFormattedTextBodyBuilder.append("<th>"+PetasosComponentMetricTypeEnum.FAILED_TASK_COUNT.getDisplayName()+"</th>");
-        metricFormattedTextBodyBuilder.append("<th>"+PetasosComponentMetricTypeEnum.CANCELLED_TASK_COUNT.getDisplayName()+"</th>");
-        metricFormattedTextBodyBuilder.append("</tr>");
-
-        metricFormattedTextBodyBuilder.append("<tr align=center>");
-        metricFormattedTextBodyBuilder.append("<td>"+registrationCount+"</td>");
-        metricFormattedTextBodyBuilder.append("<td>"+startedCount+"</td>");
-        metricFormattedTextBodyBuilder.append("<td>"+finishedCount+"</td>");
-        metricFormattedTextBodyBuilder.append("<td>"+finalisedCount+"</td>");
-        metricFormattedTextBodyBuilder.append("<td>"+failedCount+"</td>");
-        metricFormattedTextBodyBuilder.append("<td>"+cancelledCount+"</td>");
-        metricFormattedTextBodyBuilder.append("</tr>");
-        metricFormattedTextBodyBuilder.append("</table>");
+        String reportingInstant = formatReportingInstant(metricSet);
+        ReportRenderContext renderContext = ReportRenderContext.acquire();
+        try {
+            renderContext.text(TASK_COUNT_TEXT, registrationCount, startedCount, finishedCount, finalisedCount, cancelledCount, failedCount);
+            renderContext.html(TASK_COUNT_HTML, reportingInstant, registrationCount, startedCount, finishedCount, finalisedCount, failedCount, cancelledCount);
+            currentMetricEvent.setContent(newFormattedTextContent(renderContext));
+        } finally {
+            renderContext.release();
+        }
 
+        return(currentMetricEvent);
+    }
+
+    /**
+     * Wraps a (coalesced) metrics event as an edit of the room's dashboard message, so the dashboard shows the latest
+     * state instead of a new message being appended to the timeline each cycle.
+     *
+     * @param roomId the metrics room
+     * @param dashboardEventId the event id of the room's dashboard message
+     * @param latestMetricsEvent the event carrying the latest metrics content
+     * @return the m.replace event, or null if the latest event has no text content
+     */
+    public MRoomTextMessageEvent newDashboardReplacementEvent(String roomId, String dashboardEventId, MRoomTextMessageEvent latestMetricsEvent){
+        getLogger().debug(".newDashboardReplacementEvent(): Entry, roomId->{}, dashboardEventId->{}", roomId, dashboardEventId);
+        if(latestMetricsEvent == null || !(latestMetricsEvent.getContent() instanceof MTextContentType)){
+            getLogger().debug(".newDashboardReplacementEvent(): Exit, no text content to replace with");
+            return(null);
+        }
+        MTextContentType latestContent = (MTextContentType) latestMetricsEvent.getContent();
+
+        MTextContentType newContent = new MTextContentType();
+        newContent.setBody(latestContent.getBody());
+        newContent.setFormattedBody(latestContent.getFormattedBody());
+        newContent.setMessageType(latestContent.getMessageType());
+        newContent.setFormat(latestContent.getFormat());
+
+        MReplaceTextContentType replaceContent = new MReplaceTextContentType();
+        replaceContent.setBody("* " + latestContent.getBody());
+        replaceContent.setFormattedBody("* " + latestContent.getFormattedBody());
+        replaceContent.setMessageType(latestContent.getMessageType());
+        replaceContent.setFormat(latestContent.getFormat());
+        replaceContent.setNewContent(newContent);
+        replaceContent.setRelatesTo(new MEventRelation(MEventRelation.REPLACE_RELATION_TYPE, dashboardEventId));
+
+        MRoomTextMessageEvent replacementEvent = new MRoomTextMessageEvent();
+        replacementEvent.setRoomIdentifier(roomId);
+        replacementEvent.setEventIdentifier(transactionIdProvider.getNextAvailableID());
+        replacementEvent.setSender(matrixAccessToken.getUserId());
+        replacementEvent.setEventType("m.room.message");
+        replacementEvent.setContent(replaceContent);
+
+        getLogger().debug(".newDashboardReplacementEvent(): Exit");
+        return(replacementEvent);
+    }
+
+    //
+    // Rendering Helpers
+    //
+
+    protected String formatReportingInstant(PetasosComponentMetricSet metricSet){
+        if(metricSet.getReportingInstant() == null){
+            return(NOT_SPECIFIED);
+        }
+        return(getTimeFormatter().format(metricSet.getReportingInstant()));
+    }
+
+    protected MTextContentType newFormattedTextContent(ReportRenderContext renderContext){
         MTextContentType textContent = new MTextContentType();
-        textContent.setBody(metricTextBodyBuilder.toString());
-        textContent.setFormattedBody(metricFormattedTextBodyBuilder.toString());
+        textContent.setBody(renderContext.getText());
+        textContent.setFormattedBody(renderContext.getHtml());
         textContent.setMessageType(MRoomMessageTypeEnum.TEXT.getMsgtype());
         textContent.setFormat("org.matrix.custom.html");
-
-        currentMetricEvent.setContent(textContent);
-
-        return(currentMetricEvent);
+        return(textContent);
     }
 
     //
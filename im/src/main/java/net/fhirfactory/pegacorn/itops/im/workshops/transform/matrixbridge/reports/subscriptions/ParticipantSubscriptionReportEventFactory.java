@@ -31,6 +31,8 @@ import net.fhirfactory.pegacorn.core.model.petasos.oam.subscriptions.reporting.P
 import net.fhirfactory.pegacorn.core.model.petasos.oam.subscriptions.reporting.PetasosSubscriberSubscriptionSummary;
 import net.fhirfactory.pegacorn.core.model.petasos.oam.subscriptions.reporting.PetasosWorkUnitProcessorSubscriptionSummary;
 import net.fhirfactory.pegacorn.core.model.petasos.task.datatypes.work.datatypes.TaskWorkItemSubscriptionType;
+import net.fhirfactory.pegacorn.itops.im.workshops.transform.matrixbridge.common.ReportRenderContext;
+import net.fhirfactory.pegacorn.itops.im.workshops.transform.matrixbridge.common.ReportTemplate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -44,6 +46,18 @@ import java.util.Collection;
 public class ParticipantSubscriptionReportEventFactory {
     private static final Logger LOG = LoggerFactory.getLogger(ParticipantSubscriptionReportEventFactory.class);
 
+    private static final ReportTemplate PUBLISHER_LINE = ReportTemplate.text("Publisher --> {}\n");
+    private static final ReportTemplate SUBSCRIBER_LINE = ReportTemplate.text("Subscriber --> {}\n");
+    private static final ReportTemplate COMPONENT_ID_LINE = ReportTemplate.text("ComponentId --> {}\n");
+    private static final ReportTemplate CONTENT_DESCRIPTOR_LINE = ReportTemplate.text("*** ContentDescriptor --> {}\n");
+    private static final ReportTemplate CONTAINER_DESCRIPTOR_LINE = ReportTemplate.text("*** ContainerDescriptor --> {}\n");
+    private static final ReportTemplate NORMALISATION_LINE = ReportTemplate.text("*** Normalisation --> {}\n");
+    private static final ReportTemplate VALIDATION_LINE = ReportTemplate.text("*** Validation --> {}\n");
+    private static final ReportTemplate PEP_APPROVAL_LINE = ReportTemplate.text("*** PEP Approval --> {}\n");
+    private static final ReportTemplate FLOW_LINE = ReportTemplate.text("*** Flow --> {}\n");
+    private static final ReportTemplate SOURCE_SYSTEM_LINE = ReportTemplate.text("*** Source System --> {}\n");
+    private static final ReportTemplate TARGET_SYSTEM_LINE = ReportTemplate.text("*** Target System --> {}\n");
+
     private DateTimeFormatter timeFormatter;
 
     @Inject
@@ -92,39 +106,17 @@ public class ParticipantSubscriptionReportEventFactory {
 
         MTextContentType textContent = new MTextContentType();
 
-        StringBuilder descriptionBuilder = new StringBuilder();
-        for(PetasosSubscriberSubscriptionSummary currentSummary: subscriptionSummary){
-            descriptionBuilder.append("Publisher --> "+ currentSummary.getPublisherParticipantName()+ "\n");
-            descriptionBuilder.append("Subscriber --> "+ currentSummary.getParticipantName() + "\n");
-            for(TaskWorkItemSubscriptionType currentTopic: currentSummary.getSubscribedTaskWorkItems()) {
-                if(currentTopic.hasContentDescriptor()) {
-                    descriptionBuilder.append("*** ContentDescriptor --> " + currentTopic.getContentDescriptor().toDotString() + "\n");
-                }
-                if(currentTopic.hasContainerDescriptor()) {
-                    descriptionBuilder.append("*** ContainerDescriptor --> " + currentTopic.getContainerDescriptor().toDotString() + "\n");
-                }
-                if(currentTopic.hasNormalisationStatus()) {
-                    descriptionBuilder.append("*** Normalisation --> " + currentTopic.getNormalisationStatus().getDisplayName() + "\n");
-                }
-                if(currentTopic.hasValidationStatus()) {
-                    descriptionBuilder.append("*** Validation --> " + currentTopic.getValidationStatus().getDisplayName() + "\n");
-                }
-                if(currentTopic.hasEnforcementPointApprovalStatus()) {
-                    descriptionBuilder.append("*** PEP Approval --> " + currentTopic.getEnforcementPointApprovalStatus().getDisplayName() + "\n");
-                }
-                if(currentTopic.hasDataParcelFlowDirection()){
-                    descriptionBuilder.append("*** Flow --> " + currentTopic.getDataParcelFlowDirection().getDisplayName() + "\n");
-                }
-                if(currentTopic.hasExternalSourceSystem()) {
-                    descriptionBuilder.append("*** Source System --> " + currentTopic.getExternalSourceSystem()+ "\n");
-                }
-                if(currentTopic.hasExternalTargetSystem()) {
-                    descriptionBuilder.append("*** Target System --> " + currentTopic.getExternalTargetSystem()+ "\n");
-                }
+        ReportRenderContext renderContext = ReportRenderContext.acquire();
+        try {
+            for(PetasosSubscriberSubscriptionSummary currentSummary: subscriptionSummary){
+                renderContext.text(PUBLISHER_LINE, currentSummary.getPublisherParticipantName());
+                renderContext.text(SUBSCRIBER_LINE, currentSummary.getParticipantName());
+                renderSubscribedTopics(renderContext, currentSummary.getSubscribedTaskWorkItems());
             }
+            textContent.setBody(renderContext.getText());
+        } finally {
+            renderContext.release();
         }
-
-        textContent.setBody(descriptionBuilder.toString());
         textContent.setMessageType(MRoomMessageTypeEnum.TEXT.getMsgtype());
 
         subscriptionReportNotificationEvent.setContent(textContent);
@@ -154,40 +146,18 @@ public class ParticipantSubscriptionReportEventFactory {
 
         MTextContentType textContent = new MTextContentType();
 
-        StringBuilder descriptionBuilder = new StringBuilder();
-        for(PetasosPublisherSubscriptionSummary currentSummary: publisherSummary){
-            getLogger().trace(".newAsAPublisherSubscriptionReportEvent(): Processing currentSummary->{}", currentSummary);
-            descriptionBuilder.append("Publisher --> "+ currentSummary.getParticipantName()+ "\n");
-            descriptionBuilder.append("Subscriber --> "+ currentSummary.getSubscriberParticipantName() + "\n");
-            for(TaskWorkItemSubscriptionType currentTopic: currentSummary.getSubscribedTaskWorkItems()) {
-                if(currentTopic.hasContentDescriptor()) {
-                    descriptionBuilder.append("*** ContentDescriptor --> " + currentTopic.getContentDescriptor().toDotString() + "\n");
-                }
-                if(currentTopic.hasContainerDescriptor()) {
-                    descriptionBuilder.append("*** ContainerDescriptor --> " + currentTopic.getContainerDescriptor().toDotString() + "\n");
-                }
-                if(currentTopic.hasNormalisationStatus()) {
-                    descriptionBuilder.append("*** Normalisation --> " + currentTopic.getNormalisationStatus().getDisplayName() + "\n");
-                }
-                if(currentTopic.hasValidationStatus()) {
-                    descriptionBuilder.append("*** Validation --> " + currentTopic.getValidationStatus().getDisplayName() + "\n");
-                }
-                if(currentTopic.hasEnforcementPointApprovalStatus()) {
-                    descriptionBuilder.append("*** PEP Approval --> " + currentTopic.getEnforcementPointApprovalStatus().getDisplayName() + "\n");
-                }
-                if(currentTopic.hasDataParcelFlowDirection()){
-                    descriptionBuilder.append("*** Flow --> " + currentTopic.getDataParcelFlowDirection().getDisplayName() + "\n");
-                }
-                if(currentTopic.hasExternalSourceSystem()) {
-                    descriptionBuilder.append("*** Source System --> " + currentTopic.getExternalSourceSystem()+ "\n");
-                }
-                if(currentTopic.hasExternalTargetSystem()) {
-                    descriptionBuilder.append("*** Target System --> " + currentTopic.getExternalTargetSystem()+ "\n");
-                }
+        ReportRenderContext renderContext = ReportRenderContext.acquire();
+        try {
+            for(PetasosPublisherSubscriptionSummary currentSummary: publisherSummary){
+                getLogger().trace(".newAsAPublisherSubscriptionReportEvent(): Processing currentSummary->{}", currentSummary);
+                renderContext.text(PUBLISHER_LINE, currentSummary.getParticipantName());
+                renderContext.text(SUBSCRIBER_LINE, currentSummary.getSubscriberParticipantName());
+                renderSubscribedTopics(renderContext, currentSummary.getSubscribedTaskWorkItems());
             }
+            textContent.setBody(renderContext.getText());
+        } finally {
+            renderContext.release();
         }
-
-        textContent.setBody(descriptionBuilder.toString());
         textContent.setMessageType(MRoomMessageTypeEnum.TEXT.getMsgtype());
 
         publisherReportEvent.setContent(textContent);
@@ -213,43 +183,53 @@ public class ParticipantSubscriptionReportEventFactory {
 
         MTextContentType textContent = new MTextContentType();
 
-        StringBuilder descriptionBuilder = new StringBuilder();
-        descriptionBuilder.append("Subscriber --> "+ subscriptionSummary.getParticipantName()+ "\n");
-        descriptionBuilder.append("ComponentId --> "+ subscriptionSummary.getComponentID() + "\n");
-        for(TaskWorkItemSubscriptionType currentTopic: subscriptionSummary.getSubscribedTaskWorkItems()) {
+        ReportRenderContext renderContext = ReportRenderContext.acquire();
+        try {
+            renderContext.text(SUBSCRIBER_LINE, subscriptionSummary.getParticipantName());
+            renderContext.text(COMPONENT_ID_LINE, String.valueOf(subscriptionSummary.getComponentID()));
+            renderSubscribedTopics(renderContext, subscriptionSummary.getSubscribedTaskWorkItems());
+            textContent.setBody(renderContext.getText());
+        } finally {
+            renderContext.release();
+        }
+        textContent.setMessageType(MRoomMessageTypeEnum.TEXT.getMsgtype());
+
+        subscriptionReportNotificationEvent.setContent(textContent);
+
+        getLogger().info(".newAsASubscriberSubscriptionReportEvent(): Exit, subscriptionReportNotificationEvent->{}", subscriptionReportNotificationEvent);
+        return(subscriptionReportNotificationEvent);
+    }
+
+    protected void renderSubscribedTopics(ReportRenderContext renderContext, Collection<TaskWorkItemSubscriptionType> subscribedTopics){
+        if(subscribedTopics == null){
+            return;
+        }
+        for(TaskWorkItemSubscriptionType currentTopic: subscribedTopics) {
             if(currentTopic.hasContentDescriptor()) {
-                descriptionBuilder.append("*** ContentDescriptor --> " + currentTopic.getContentDescriptor().toDotString() + "\n");
+                renderContext.text(CONTENT_DESCRIPTOR_LINE, currentTopic.getContentDescriptor().toDotString());
             }
             if(currentTopic.hasContainerDescriptor()) {
-                descriptionBuilder.append("*** ContainerDescriptor --> " + currentTopic.getContainerDescriptor().toDotString() + "\n");
+                renderContext.text(CONTAINER_DESCRIPTOR_LINE, currentTopic.getContainerDescriptor().toDotString());
             }
             if(currentTopic.hasNormalisationStatus()) {
-                descriptionBuilder.append("*** Normalisation --> " + currentTopic.getNormalisationStatus().getDisplayName() + "\n");
+                renderContext.text(NORMALISATION_LINE, currentTopic.getNormalisationStatus().getDisplayName());
             }
             if(currentTopic.hasValidationStatus()) {
-                descriptionBuilder.append("*** Validation --> " + currentTopic.getValidationStatus().getDisplayName() + "\n");
+                renderContext.text(VALIDATION_LINE, currentTopic.getValidationStatus().getDisplayName());
             }
             if(currentTopic.hasEnforcementPointApprovalStatus()) {
-                descriptionBuilder.append("*** PEP Approval --> " + currentTopic.getEnforcementPointApprovalStatus().getDisplayName() + "\n");
+                renderContext.text(PEP_APPROVAL_LINE, currentTopic.getEnforcementPointApprovalStatus().getDisplayName());
             }
             if(currentTopic.hasDataParcelFlowDirection()){
-                descriptionBuilder.append("*** Flow --> " + currentTopic.getDataParcelFlowDirection().getDisplayName() + "\n");
+                renderContext.text(FLOW_LINE, currentTopic.getDataParcelFlowDirection().getDisplayName());
             }
             if(currentTopic.hasExternalSourceSystem()) {
-                descriptionBuilder.append("*** Source System --> " + currentTopic.getExternalSourceSystem()+ "\n");
+                renderContext.text(SOURCE_SYSTEM_LINE, currentTopic.getExternalSourceSystem());
             }
             if(currentTopic.hasExternalTargetSystem()) {
-                descriptionBuilder.append("*** Target System --> " + currentTopic.getExternalTargetSystem()+ "\n");
+                renderContext.text(TARGET_SYSTEM_LINE, currentTopic.getExternalTargetSystem());
             }
         }
-
-        textContent.setBody(descriptionBuilder.toString());
-        textContent.setMessageType(MRoomMessageTypeEnum.TEXT.getMsgtype());
-
-        subscriptionReportNotificationEvent.setContent(textContent);
-
-        getLogger().info(".newAsASubscriberSubscriptionReportEvent(): Exit, subscriptionReportNotificationEvent->{}", subscriptionReportNotificationEvent);
-        return(subscriptionReportNotificationEvent);
     }
 
     //